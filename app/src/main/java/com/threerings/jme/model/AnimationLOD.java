@@ -0,0 +1,199 @@
+//
+// $Id$
+//
+// Nenya library - tools for developing networked games
+// Copyright (C) 2002-2010 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/nenya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.jme.model;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.BoundingVolume;
+import com.jme.renderer.Camera;
+import com.jme.system.DisplaySystem;
+
+/**
+ * Chooses how much effort to spend animating models according to their size on screen and their
+ * distance from the camera.  Models in the {@link Tier#FULL} tier animate every frame; those in
+ * the {@link Tier#REDUCED} tier animate at a reduced rate; those in the {@link Tier#BAKED} tier
+ * also switch from skinning their meshes to showing stored frames, where possible; and those in
+ * the {@link Tier#FROZEN} tier hold their looping animations still.  A single policy may be shared
+ * by any number of models (see {@link Model#setAnimationLOD}), and counts the model updates that
+ * take place in each tier.
+ */
+public class AnimationLOD
+{
+    /** The levels of detail, in decreasing order. */
+    public enum Tier {
+        FULL, REDUCED, BAKED, FROZEN
+    };
+
+    /**
+     * Enables or disables the policy.  When disabled, all models animate at full detail.
+     */
+    public void setEnabled (boolean enabled)
+    {
+        _enabled = enabled;
+    }
+
+    /**
+     * Checks whether the policy is enabled.
+     */
+    public boolean isEnabled ()
+    {
+        return _enabled;
+    }
+
+    /**
+     * Sets the minimum projected sizes (the diameters of the models' bounds on screen, in
+     * pixels) of the {@link Tier#FULL}, {@link Tier#REDUCED} and {@link Tier#BAKED} tiers.
+     */
+    public void setSizeThresholds (float full, float reduced, float baked)
+    {
+        _sizes[0] = full;
+        _sizes[1] = reduced;
+        _sizes[2] = baked;
+    }
+
+    /**
+     * Sets the maximum distances from the camera of the {@link Tier#FULL}, {@link Tier#REDUCED}
+     * and {@link Tier#BAKED} tiers.
+     */
+    public void setDistanceThresholds (float full, float reduced, float baked)
+    {
+        _distances[0] = full;
+        _distances[1] = reduced;
+        _distances[2] = baked;
+    }
+
+    /**
+     * Sets the rate at which models below the {@link Tier#FULL} tier update their animations.
+     *
+     * @param rate the number of updates per second.
+     */
+    public void setReducedRate (float rate)
+    {
+        _reducedInterval = 1f / Math.max(rate, 1f);
+    }
+
+    /**
+     * Returns the time between the animation updates of models below the {@link Tier#FULL}
+     * tier, in seconds.
+     */
+    public float getReducedInterval ()
+    {
+        return _reducedInterval;
+    }
+
+    /**
+     * Returns the number of model updates that have taken place in the specified tier since the
+     * counts were last reset.
+     */
+    public int getCount (Tier tier)
+    {
+        return _counts[tier.ordinal()];
+    }
+
+    /**
+     * Resets the counts of model updates.
+     */
+    public void resetCounts ()
+    {
+        for (int ii = 0; ii < _counts.length; ii++) {
+            _counts[ii] = 0;
+        }
+    }
+
+    /**
+     * Selects the tier in which to update the specified model and counts the update.  A model
+     * moving to a more detailed tier must pass its thresholds by a margin, so that models near a
+     * threshold do not flicker between tiers.
+     *
+     * @param current the tier in which the model was last updated.
+     */
+    public Tier selectTier (Model model, Tier current)
+    {
+        Tier tier = getTier(model, current);
+        _counts[tier.ordinal()]++;
+        return tier;
+    }
+
+    /**
+     * Determines the tier in which to update the specified model.
+     */
+    protected Tier getTier (Model model, Tier current)
+    {
+        Camera camera = DisplaySystem.getDisplaySystem().getRenderer().getCamera();
+        BoundingVolume bound = model.getWorldBound();
+        float radius = getRadius(bound);
+        if (!_enabled || camera == null || radius < 0f) {
+            return Tier.FULL;
+        }
+
+        // find the diameter of the bound on screen, in pixels
+        float near = camera.getFrustumNear();
+        float distance = Math.max(camera.getLocation().distance(bound.getCenter()), near);
+        float scale = near * camera.getHeight() /
+            (camera.getFrustumTop() - camera.getFrustumBottom());
+        float size = 2f * radius * scale / distance;
+
+        for (int ii = 0; ii < _sizes.length; ii++) {
+            float margin = (current.ordinal() > ii) ? 1f + HYSTERESIS : 1f;
+            if (size >= _sizes[ii] * margin && distance * margin <= _distances[ii]) {
+                return TIERS[ii];
+            }
+        }
+        return Tier.FROZEN;
+    }
+
+    /**
+     * Returns the radius of the supplied bound, or -1 if it cannot be determined.
+     */
+    protected static float getRadius (BoundingVolume bound)
+    {
+        if (bound instanceof BoundingSphere) {
+            return ((BoundingSphere)bound).getRadius();
+        } else if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox)bound;
+            return (float)Math.sqrt(box.xExtent*box.xExtent + box.yExtent*box.yExtent +
+                box.zExtent*box.zExtent);
+        }
+        return -1f;
+    }
+
+    /** Whether or not the policy is enabled. */
+    protected boolean _enabled = true;
+
+    /** The minimum projected sizes of the full, reduced and baked tiers. */
+    protected float[] _sizes = { 64f, 32f, 12f };
+
+    /** The maximum distances of the full, reduced and baked tiers. */
+    protected float[] _distances = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+
+    /** The time between reduced rate updates. */
+    protected float _reducedInterval = 1f / 15f;
+
+    /** The number of model updates in each tier. */
+    protected int[] _counts = new int[TIERS.length];
+
+    /** The tiers, indexed by ordinal. */
+    protected static final Tier[] TIERS = Tier.values();
+
+    /** The fraction by which a model must pass a threshold to move to a more detailed tier. */
+    protected static final float HYSTERESIS = 0.15f;
+}
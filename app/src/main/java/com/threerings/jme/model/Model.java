@@ -28,6 +28,7 @@ import java.io.IOException;
 
 import java.nio.FloatBuffer;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -126,6 +128,12 @@ public class Model extends ModelNode
         /** For each frame, whether the frame has been stored in meshes. */
         public transient boolean[] stored;
 
+        /** The skinned meshes whose frames were baked by the model compiler, if any. */
+        public SkinMesh[] bakedTargets;
+
+        /** The baked vertices and normals of every frame, one buffer per baked target. */
+        public transient FloatBuffer[] bakedFrames;
+
         /**
          * Returns this animation's duration in seconds.
          */
@@ -149,6 +157,13 @@ public class Model extends ModelNode
             anim.transforms = transforms;
             anim.animId = animId;
             anim.stored = stored;
+            if (bakedTargets != null) {
+                anim.bakedTargets = new SkinMesh[bakedTargets.length];
+                for (int ii = 0; ii < bakedTargets.length; ii++) {
+                    anim.bakedTargets[ii] = (SkinMesh)pnodes.get(bakedTargets[ii]);
+                }
+                anim.bakedFrames = bakedFrames;
+            }
             return anim;
         }
 
@@ -163,6 +178,29 @@ public class Model extends ModelNode
             }
         }
 
+        /**
+         * Stores a frame of this animation in the skinned meshes from the baked vertices and
+         * normals, if the animation has been baked.
+         *
+         * @return true if the frame was stored, false if it must be stored by skinning the
+         * meshes.
+         */
+        public boolean storeBakedFrame (int fidx, int frameId, boolean blend)
+        {
+            if (bakedFrames == null) {
+                return false;
+            }
+            for (int ii = 0; ii < bakedTargets.length; ii++) {
+                if (!bakedTargets[ii].storeBakedFrame(frameId, blend, bakedFrames[ii], fidx)) {
+                    log.warning("Baked frames do not match mesh [mesh=" +
+                        bakedTargets[ii].getName() + ", frame=" + fidx + "].");
+                    bakedFrames = null;
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * Blends the transforms between two frames of this animation.
          */
@@ -201,6 +239,13 @@ public class Model extends ModelNode
                     frame[jj] = new Transform(pxforms);
                 }
             }
+            Savable[] btargets = capsule.readSavableArray("bakedTargets", null);
+            if (btargets != null) {
+                bakedTargets = ArrayUtil.copy(btargets, new SkinMesh[0]);
+                ArrayList<FloatBuffer> frames = capsule.readFloatBufferArrayList(
+                    "bakedFrames", null);
+                bakedFrames = frames.toArray(new FloatBuffer[frames.size()]);
+            }
         }
 
         // documentation inherited
@@ -221,6 +266,11 @@ public class Model extends ModelNode
             }
             pxforms.rewind();
             capsule.write(pxforms, "transforms", null);
+            if (bakedFrames != null) {
+                capsule.write(bakedTargets, "bakedTargets", null);
+                capsule.writeFloatBufferArrayList(
+                    Lists.newArrayList(bakedFrames), "bakedFrames", null);
+            }
         }
 
         protected Spatial[] rebind (Spatial[] targets, Map<ModelSpatial, ModelSpatial> pnodes)
@@ -447,28 +497,90 @@ public class Model extends ModelNode
         _anims.put(name, anim);
 
         // store the original transforms
-        Transform[] oxforms = new Transform[anim.transformTargets.length];
-        for (int ii = 0; ii < anim.transformTargets.length; ii++) {
-            Spatial target = anim.transformTargets[ii];
-            oxforms[ii] = new Transform(
-                new Vector3f(target.getLocalTranslation()),
-                new Quaternion(target.getLocalRotation()),
-                new Vector3f(target.getLocalScale()));
-        }
+        Transform[] oxforms = getTransforms(anim.transformTargets);
 
         // run through every frame of the animation, expanding the bounding
         // volumes of any deformable meshes
         for (int ii = 0; ii < anim.transforms.length; ii++) {
-            for (int jj = 0; jj < anim.transforms[ii].length; jj++) {
-                anim.transforms[ii][jj].apply(anim.transformTargets[jj]);
-            }
+            anim.applyFrame(ii);
             updateWorldData(0f);
             expandModelBounds();
         }
 
         // restore the original transforms
-        for (int ii = 0; ii < anim.transformTargets.length; ii++) {
-            oxforms[ii].apply(anim.transformTargets[ii]);
+        setTransforms(anim.transformTargets, oxforms);
+    }
+
+    /**
+     * Bakes the vertices and normals of the model's skinned meshes in every frame of every
+     * animation, so that frames need not be skinned the first time they are shown in
+     * {@link AnimationMode#FLIPBOOK} or {@link AnimationMode#MORPH} mode.  This should only be
+     * called by the model compiler, after all of the animations have been added.
+     */
+    public void bakeAnimationFrames ()
+    {
+        if (_anims == null) {
+            return;
+        }
+        final ArrayList<SkinMesh> meshes = Lists.newArrayList();
+        new SpatialVisitor<SkinMesh>(SkinMesh.class) {
+            public void visit (SkinMesh mesh) {
+                if (mesh.canBakeFrames()) {
+                    meshes.add(mesh);
+                }
+            }
+        }.traverse(this);
+        if (meshes.isEmpty()) {
+            return;
+        }
+        SkinMesh[] targets = meshes.toArray(new SkinMesh[meshes.size()]);
+
+        for (Animation anim : _anims.values()) {
+            Transform[] oxforms = getTransforms(anim.transformTargets);
+            FloatBuffer[] frames = new FloatBuffer[targets.length];
+            for (int ii = 0; ii < targets.length; ii++) {
+                frames[ii] = FloatBuffer.allocate(
+                    anim.transforms.length * targets[ii].getBakedFrameSize());
+            }
+            for (int ii = 0; ii < anim.transforms.length; ii++) {
+                anim.applyFrame(ii);
+                updateWorldData(0f);
+                for (int jj = 0; jj < targets.length; jj++) {
+                    targets[jj].bakeFrame(frames[jj]);
+                }
+            }
+            for (FloatBuffer buf : frames) {
+                buf.rewind();
+            }
+            anim.bakedTargets = targets;
+            anim.bakedFrames = frames;
+            setTransforms(anim.transformTargets, oxforms);
+        }
+    }
+
+    /**
+     * Returns the current local transforms of the specified targets.
+     */
+    protected static Transform[] getTransforms (Spatial[] targets)
+    {
+        Transform[] xforms = new Transform[targets.length];
+        for (int ii = 0; ii < targets.length; ii++) {
+            Spatial target = targets[ii];
+            xforms[ii] = new Transform(
+                new Vector3f(target.getLocalTranslation()),
+                new Quaternion(target.getLocalRotation()),
+                new Vector3f(target.getLocalScale()));
+        }
+        return xforms;
+    }
+
+    /**
+     * Restores the local transforms of the specified targets and updates the model's world data.
+     */
+    protected void setTransforms (Spatial[] targets, Transform[] xforms)
+    {
+        for (int ii = 0; ii < targets.length; ii++) {
+            xforms[ii].apply(targets[ii]);
         }
         updateWorldData(0f);
     }
@@ -491,6 +603,32 @@ public class Model extends ModelNode
         return _animMode;
     }
 
+    /**
+     * Sets the policy that determines how much effort to spend animating this model according to
+     * its size on screen, or <code>null</code> to always animate it at full detail.  Like the
+     * animation mode, this should be set on the prototype before any instances are created.
+     */
+    public void setAnimationLOD (AnimationLOD lod)
+    {
+        _lod = lod;
+    }
+
+    /**
+     * Returns the animation level of detail policy configured for this model, if any.
+     */
+    public AnimationLOD getAnimationLOD ()
+    {
+        return _lod;
+    }
+
+    /**
+     * Returns the tier in which the model's animation was last updated.
+     */
+    public AnimationLOD.Tier getAnimationLODTier ()
+    {
+        return _lodTier;
+    }
+
     /**
      * Returns the names of the model's animations.
      */
@@ -560,6 +698,7 @@ public class Model extends ModelNode
         _nidx = fidx;
         _fdir = fdir;
         _elapsed = 0f;
+        _lodElapsed = 0f;
         advanceFrameCounter();
         _animObservers.apply(new AnimStartedOp(_animName));
         return anim.getDuration() / _animSpeed;
@@ -875,6 +1014,7 @@ public class Model extends ModelNode
         }
         mstore._pnodes = Maps.newHashMap(properties.originalToCopy);
         mstore._animMode = _animMode;
+        mstore._lod = _lod;
         return mstore;
     }
 
@@ -890,7 +1030,11 @@ public class Model extends ModelNode
         // slow evvvverything down by the animation speed
         time *= _animSpeed;
         if (_anim != null) {
-            updateAnimation(time);
+            if (_lod == null || _prototype == null) {
+                updateAnimation(time);
+            } else {
+                updateAnimationLOD(time);
+            }
         }
 
         // update controllers and children with accumulated time
@@ -972,13 +1116,95 @@ public class Model extends ModelNode
         }
     }
 
+    /**
+     * Updates the model's state according to the current animation, as often as its level of
+     * detail allows.
+     */
+    protected void updateAnimationLOD (float time)
+    {
+        // keep the tier while outside the view frustum, where the meshes aren't updated anyway
+        if (!_outside) {
+            setAnimationLODTier(_lod.selectTier(this, _lodTier));
+        }
+        _lodElapsed += time;
+
+        // hold looping animations still in the lowest tier
+        if (_lodTier == AnimationLOD.Tier.FROZEN && _anim.repeatType != Controller.RT_CLAMP) {
+            _lodElapsed = 0f;
+            return;
+        }
+        if (_lodTier == AnimationLOD.Tier.FULL || _outside ||
+                _lodElapsed >= _lod.getReducedInterval()) {
+            float elapsed = _lodElapsed;
+            _lodElapsed = 0f;
+            updateAnimation(elapsed);
+        }
+    }
+
+    /**
+     * Moves the model to the specified level of detail, switching skinned meshes between skinning
+     * in real time and showing stored frames as appropriate.  Stored frames are only shown for
+     * animations whose frames were baked, as storing the frames of the others means skinning each
+     * one in turn and keeping it for good.
+     */
+    protected void setAnimationLODTier (AnimationLOD.Tier tier)
+    {
+        _lodTier = tier;
+        boolean flipbook = tier.compareTo(AnimationLOD.Tier.BAKED) >= 0 &&
+            _anim.bakedFrames != null && getFlipbookMeshes().length > 0;
+        if (flipbook == _lodFlipbook) {
+            return;
+        }
+        _lodFlipbook = flipbook;
+        for (SkinMesh mesh : _lodMeshes) {
+            if (flipbook) {
+                mesh.suspendSkinning();
+            } else {
+                mesh.resumeSkinning();
+            }
+        }
+    }
+
+    /**
+     * Returns the skinned meshes that may show stored frames in place of skinning in real time at
+     * low levels of detail: all of the model's skinned meshes, if the model skins them on the CPU,
+     * and none otherwise.
+     */
+    protected SkinMesh[] getFlipbookMeshes ()
+    {
+        if (_lodMeshes == null) {
+            final ArrayList<SkinMesh> meshes = Lists.newArrayList();
+            final boolean[] shaded = new boolean[1];
+            new SpatialVisitor<SkinMesh>(SkinMesh.class) {
+                public void visit (SkinMesh mesh) {
+                    meshes.add(mesh);
+                    shaded[0] |= mesh.isSkinnedByShader();
+                }
+            }.traverse(this);
+            boolean skinned = (_animMode == null || _animMode == AnimationMode.SKIN);
+            _lodMeshes = (skinned && !shaded[0]) ?
+                meshes.toArray(new SkinMesh[meshes.size()]) : new SkinMesh[0];
+        }
+        return _lodMeshes;
+    }
+
+    /**
+     * Returns the animation mode in which to update the model: the configured mode, or
+     * {@link AnimationMode#FLIPBOOK} if the model is showing stored frames at a low level of
+     * detail.
+     */
+    protected AnimationMode getUpdateMode ()
+    {
+        return _lodFlipbook ? AnimationMode.FLIPBOOK : _animMode;
+    }
+
     /**
      * Updates the model's state according to the current animation.
      */
     protected void updateAnimation (float time)
     {
         // no need to update between frames for flipbook animation
-        if (_animMode == AnimationMode.FLIPBOOK && _elapsed > 0f &&
+        if (getUpdateMode() == AnimationMode.FLIPBOOK && _elapsed > 0f &&
             _elapsed < 1f) {
             _elapsed += (time * _anim.frameRate);
             return;
@@ -1039,39 +1265,46 @@ public class Model extends ModelNode
      */
     protected void updateMeshes ()
     {
-        if (_animMode == AnimationMode.FLIPBOOK) {
+        AnimationMode mode = getUpdateMode();
+        if (mode == AnimationMode.FLIPBOOK) {
             int frameId = (_anim.animId << 16) | _fidx;
             _anim.applyFrame(_fidx);
             if (!_anim.stored[_fidx]) {
-                storeMeshFrame(frameId, false);
-                updateWorldData(0f);
-                _anim.stored[_fidx] = true;
+                storeAnimationFrame(_fidx, frameId, false);
             }
             setMeshFrame(frameId);
 
-        } else if (_animMode == AnimationMode.MORPH) {
+        } else if (mode == AnimationMode.MORPH) {
             int frameId1 = (_anim.animId << 16) | _fidx,
                 frameId2 = (_anim.animId << 16) | _nidx;
             if (!_anim.stored[_fidx]) {
-                storeMeshFrame(frameId1, true);
-                _anim.applyFrame(_fidx);
-                updateWorldData(0f);
-                _anim.stored[_fidx] = true;
+                storeAnimationFrame(_fidx, frameId1, true);
             }
             if (!_anim.stored[_nidx]) {
-                storeMeshFrame(frameId2, true);
-                _anim.applyFrame(_nidx);
-                updateWorldData(0f);
-                _anim.stored[_nidx] = true;
+                storeAnimationFrame(_nidx, frameId2, true);
             }
             _anim.blendFrames(_fidx, _nidx, _elapsed);
             blendMeshFrames(frameId1, frameId2, _elapsed);
 
-        } else { // _animMode == AnimationMode.SKIN
+        } else { // mode == AnimationMode.SKIN
             _anim.blendFrames(_fidx, _nidx, _elapsed);
         }
     }
 
+    /**
+     * Stores a frame of the current animation in the model's skinned meshes, using the baked
+     * vertices and normals if available and skinning the meshes in the frame's pose otherwise.
+     */
+    protected void storeAnimationFrame (int fidx, int frameId, boolean blend)
+    {
+        if (!_anim.storeBakedFrame(fidx, frameId, blend)) {
+            storeMeshFrame(frameId, blend);
+            _anim.applyFrame(fidx);
+            updateWorldData(0f);
+        }
+        _anim.stored[fidx] = true;
+    }
+
     /** A reference to the prototype, or <code>null</code> if this is a prototype. */
     protected Model _prototype;
 
@@ -1081,6 +1314,21 @@ public class Model extends ModelNode
     /** The animation mode to use for this model. */
     protected AnimationMode _animMode;
 
+    /** The policy that determines the model's animation level of detail, if any. */
+    protected AnimationLOD _lod;
+
+    /** The tier in which the model's animation was last updated. */
+    protected AnimationLOD.Tier _lodTier = AnimationLOD.Tier.FULL;
+
+    /** The animation time accumulated since the last update at a reduced level of detail. */
+    protected float _lodElapsed;
+
+    /** Whether or not the model is showing stored frames in place of skinning its meshes. */
+    protected boolean _lodFlipbook;
+
+    /** The skinned meshes that may show stored frames at low levels of detail. */
+    protected SkinMesh[] _lodMeshes;
+
     /** For instances, maps prototype nodes to their corresponding instance nodes. */
     protected Map<ModelSpatial, ModelSpatial> _pnodes;
 
@@ -435,6 +435,44 @@ public class SkinMesh extends ModelMesh
         }
     }
 
+    /**
+     * Notes that the mesh is about to show stored frames (through {@link #setMeshFrame}) in place
+     * of its own geometry, which it retains so that it can return to skinning it in real time.
+     */
+    public void suspendSkinning ()
+    {
+        TriangleBatch batch = getBatch(0);
+        if (!(batch instanceof SharedBatch)) {
+            _liveBatch = batch;
+        }
+        // stop skinning in real time, which would write into the stored frame's buffers
+        _storeFrameId = -1;
+    }
+
+    /**
+     * Restores the geometry retained by {@link #suspendSkinning} and resumes skinning it in real
+     * time.
+     */
+    public void resumeSkinning ()
+    {
+        if (_liveBatch != null && getBatch(0) != _liveBatch) {
+            clearBatches();
+            addBatch(_liveBatch);
+            _liveBatch.updateRenderState();
+        }
+        _liveBatch = null;
+        _storeFrameId = 0;
+        _skinnedTransforms = null;
+    }
+
+    /**
+     * Determines whether the mesh is skinned by a shader rather than on the CPU.
+     */
+    public boolean isSkinnedByShader ()
+    {
+        return getRenderState(RenderState.RS_GLSL_SHADER_OBJECTS) != null;
+    }
+
     @Override
     public void blendMeshFrames (int frameId1, int frameId2, float alpha)
     {
@@ -446,6 +484,7 @@ public class SkinMesh extends ModelMesh
         vbuf.put(_vbuf);
         nbuf.rewind();
         nbuf.put(_nbuf);
+        _skinnedTransforms = null;
     }
 
     @Override
@@ -456,12 +495,7 @@ public class SkinMesh extends ModelMesh
                 (_storeFrameId == 0 && getCullMode() == CULL_ALWAYS)) {
             return;
         }
-        // update the bone transforms
-        for (Bone bone : _bones) {
-            _invRefTransform.mult(bone.node.getModelTransform(),
-                bone.transform);
-            bone.transform.multLocal(bone.invRefTransform);
-        }
+        updateBoneTransforms();
 
         // if we're using shaders, initialize the uniform variables with the bone transforms
         GLSLShaderObjectsState sstate = (GLSLShaderObjectsState)getRenderState(
@@ -473,8 +507,140 @@ public class SkinMesh extends ModelMesh
             return;
         }
 
-        // deform the mesh according to the positions of the bones (this code
-        // is ugly as sin because it's optimized at a low level)
+        // if skinning in real time and the bones haven't moved since we last did so, the buffers
+        // are already up-to-date
+        if (_storeFrameId == 0 && !bonesMoved()) {
+            return;
+        }
+        skinVertices();
+
+        // if skinning in real time, copy the data from arrays to buffers;
+        // otherwise, store the mesh as an animation frame
+        if (_storeFrameId == 0) {
+            FloatBuffer vbuf = getVertexBuffer(0), nbuf = getNormalBuffer(0);
+            vbuf.rewind();
+            vbuf.put(_vbuf);
+            nbuf.rewind();
+            nbuf.put(_nbuf);
+        } else {
+            storeFrame();
+            _storeFrameId = -1;
+        }
+    }
+
+    /**
+     * Determines whether frames of this mesh can be baked by {@link #bakeFrame}.
+     */
+    public boolean canBakeFrames ()
+    {
+        return _weightGroups != null && _vbuf != null;
+    }
+
+    /**
+     * Returns the number of floats occupied by each frame baked by {@link #bakeFrame}.
+     */
+    public int getBakedFrameSize ()
+    {
+        return _vbuf.length + _nbuf.length;
+    }
+
+    /**
+     * Skins the mesh according to the current positions of the bones (whose world data must be
+     * up-to-date) and writes the resulting vertices and normals to the supplied buffer.  This
+     * should only be called by the model compiler.
+     */
+    public void bakeFrame (FloatBuffer frames)
+    {
+        updateBoneTransforms();
+        skinVertices();
+        frames.put(_vbuf);
+        frames.put(_nbuf);
+    }
+
+    /**
+     * Stores an animation frame from the vertices and normals previously written by
+     * {@link #bakeFrame}, rather than skinning the mesh on the next update.
+     *
+     * @param frames the baked frames of the animation.
+     * @param fidx the index of the frame to store.
+     * @return true if the frame was stored, false if the baked data do not match this mesh.
+     */
+    public boolean storeBakedFrame (int frameId, boolean blend, FloatBuffer frames, int fidx)
+    {
+        int size = getBakedFrameSize();
+        if (frames.capacity() < (fidx + 1) * size) {
+            return false;
+        }
+        frames.position(fidx * size);
+        frames.get(_vbuf);
+        frames.get(_nbuf);
+        _storeFrameId = frameId;
+        _storeBlend = blend;
+        storeFrame();
+        _storeFrameId = -1;
+        return true;
+    }
+
+    /**
+     * Updates the bone transforms from the model transforms of their nodes.
+     */
+    protected void updateBoneTransforms ()
+    {
+        for (Bone bone : _bones) {
+            _invRefTransform.mult(bone.node.getModelTransform(),
+                bone.transform);
+            bone.transform.multLocal(bone.invRefTransform);
+        }
+    }
+
+    /**
+     * Compares the bone transforms to those with which the mesh was last skinned in real time,
+     * recording them for the next comparison.
+     *
+     * @return true if any of the transforms have changed.
+     */
+    protected boolean bonesMoved ()
+    {
+        boolean moved = false;
+        if (_skinnedTransforms == null) {
+            _skinnedTransforms = new float[_bones.length * 12];
+            moved = true;
+        }
+        float[] last = _skinnedTransforms;
+        Matrix4f m;
+        for (int ii = 0, idx = 0; ii < _bones.length; ii++, idx += 12) {
+            m = _bones[ii].transform;
+            if (moved || last[idx] != m.m00 || last[idx + 1] != m.m01 ||
+                    last[idx + 2] != m.m02 || last[idx + 3] != m.m03 ||
+                    last[idx + 4] != m.m10 || last[idx + 5] != m.m11 ||
+                    last[idx + 6] != m.m12 || last[idx + 7] != m.m13 ||
+                    last[idx + 8] != m.m20 || last[idx + 9] != m.m21 ||
+                    last[idx + 10] != m.m22 || last[idx + 11] != m.m23) {
+                last[idx] = m.m00;
+                last[idx + 1] = m.m01;
+                last[idx + 2] = m.m02;
+                last[idx + 3] = m.m03;
+                last[idx + 4] = m.m10;
+                last[idx + 5] = m.m11;
+                last[idx + 6] = m.m12;
+                last[idx + 7] = m.m13;
+                last[idx + 8] = m.m20;
+                last[idx + 9] = m.m21;
+                last[idx + 10] = m.m22;
+                last[idx + 11] = m.m23;
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Deforms the mesh according to the bone transforms, storing the results in the vertex and
+     * normal arrays.
+     */
+    protected void skinVertices ()
+    {
+        // (this code is ugly as sin because it's optimized at a low level)
         Bone[] bones;
         int vertexCount, jj, kk, ww;
         float[] weights;
@@ -513,19 +679,6 @@ public class SkinMesh extends ModelMesh
                 _nbuf[bidx++] = nz;
             }
         }
-
-        // if skinning in real time, copy the data from arrays to buffers;
-        // otherwise, store the mesh as an animation frame
-        if (_storeFrameId == 0) {
-            FloatBuffer vbuf = getVertexBuffer(0), nbuf = getNormalBuffer(0);
-            vbuf.rewind();
-            vbuf.put(_vbuf);
-            nbuf.rewind();
-            nbuf.put(_nbuf);
-        } else {
-            storeFrame();
-            _storeFrameId = -1;
-        }
     }
 
     /**
@@ -746,6 +899,13 @@ public class SkinMesh extends ModelMesh
     /** Whether or not the stored frame id will be used for blending. */
     protected boolean _storeBlend;
 
+    /** The bone transforms with which the mesh was last skinned in real time (the top three rows
+     * of each), or <code>null</code> if it must be skinned on the next update. */
+    protected float[] _skinnedTransforms;
+
+    /** The mesh's own geometry, retained while it shows stored frames. */
+    protected TriangleBatch _liveBatch;
+
     /** Set if we determine that our shaders don't compile to prevent us from trying again. */
     protected static boolean _disableShaders;
 
@@ -68,6 +68,21 @@ public class CompileModel
      */
     public static Model compile (File source, File targetDir)
         throws Exception
+    {
+        return compile(source, targetDir, false);
+    }
+
+    /**
+     * Loads the model described by the given properties file and compiles it into a
+     * <code>.dat</code> file in the specified directory.
+     *
+     * @param bake if true, bake the skinned vertices and normals of every animation frame into the
+     * compiled model (as is done regardless for models whose properties set
+     * <code>bake_frames</code>), so that they need not be computed at runtime.
+     * @return the loaded model, or <code>null</code> if the compiled version is up-to-date
+     */
+    public static Model compile (File source, File targetDir, boolean bake)
+        throws Exception
     {
         String sname = source.getName();
         int didx = sname.lastIndexOf('.');
@@ -131,6 +146,11 @@ public class CompileModel
                 PropertiesUtil.getSubProperties(props, anims[ii]), nodes, tnodes));
         }
 
+        // bake the animation frames, if requested
+        if (bake || Boolean.parseBoolean(props.getProperty("bake_frames"))) {
+            model.bakeAnimationFrames();
+        }
+
         // write and return the model
         File parent = target.getParentFile();
         if (!parent.isDirectory() && !parent.mkdirs()) {
@@ -143,8 +163,9 @@ public class CompileModel
 
     public static void main (String[] args)
     {
-        if (args.length < 1) {
-            System.err.println("Usage: CompileModel source.properties");
+        boolean bake = (args.length > 1 && args[0].equals("-bake"));
+        if (args.length < (bake ? 2 : 1)) {
+            System.err.println("Usage: CompileModel [-bake] source.properties");
             System.exit(-1);
         }
 
@@ -153,7 +174,8 @@ public class CompileModel
         LoggingSystem.getLogger().setLevel(Level.WARNING);
 
         try {
-            compile(new File(args[0]));
+            File source = new File(args[bake ? 1 : 0]);
+            compile(source, source.getParentFile(), bake);
         } catch (Exception e) {
             System.err.println("Error compiling model: " + e);
         }
@@ -46,6 +46,15 @@ public class CompileModelTask extends Task
         _dest = dest;
     }
 
+    /**
+     * Sets whether to bake the animation frames of all models (rather than only those whose
+     * properties set <code>bake_frames</code>).
+     */
+    public void setBake (boolean bake)
+    {
+        _bake = bake;
+    }
+
     public void addFileset (FileSet set)
     {
         _filesets.add(set);
@@ -70,7 +79,7 @@ public class CompileModelTask extends Task
                 File destDir = (_dest == null) ? source.getParentFile() :
                     new File(source.getParent().replace(baseDir, _dest.getPath()));
                 try {
-                    CompileModel.compile(source, destDir);
+                    CompileModel.compile(source, destDir, _bake);
                 } catch (Exception e) {
                     System.err.println("Error compiling " + source + ": " + e);
                 }
@@ -82,6 +91,9 @@ public class CompileModelTask extends Task
      * source files. */
     protected File _dest;
 
+    /** Whether to bake the animation frames of all models. */
+    protected boolean _bake;
+
     /** A list of filesets that contain XML models. */
     protected ArrayList<FileSet> _filesets = Lists.newArrayList();
 }
@@ -1042,6 +1042,9 @@ public class BComponent
     protected BBackground[] _backgrounds = new BBackground[getStateCount()];
     protected BCursor _cursor;
 
+    /** The compiled style tables of our style class, cached by the stylesheet. */
+    protected BStyleSheet.CompiledClass _compiledStyle;
+
     /** Temporary storage for scissor box queries. */
     protected static IntBuffer _bbuf = BufferUtils.createIntBuffer(16);
 
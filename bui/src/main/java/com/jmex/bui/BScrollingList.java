@@ -7,8 +7,11 @@ package com.jmex.bui;
 
 import org.lwjgl.opengl.GL11;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import com.jme.renderer.Renderer;
@@ -21,7 +24,11 @@ import com.jmex.bui.util.Rectangle;
 import com.jmex.bui.layout.GroupLayout;
 
 /**
- * Provides a scrollable, lazily instantiated component view of values
+ * Provides a scrollable, lazily instantiated component view of values. Only the components of the
+ * values in view are added to the list. Subclasses may have the components of values that
+ * scroll out of view (or that were created only to be measured) reused for other values by
+ * overriding {@link #getComponentType} and {@link #reconfigureComponent}. Values may be
+ * efficiently added to the bottom and removed from the top of the list.
  */
 public abstract class BScrollingList<V, C extends BComponent> extends BContainer
 {
@@ -40,7 +47,7 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
     {
         super(new BorderLayout(0, 0));
 
-        _values = new ArrayList<Entry<V, C>>();
+        _values = new EntryList<Entry<V, C>>();
         if (values != null) {
             for (V value : values) {
                 _values.add(new Entry<V, C>(value));
@@ -79,7 +86,12 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
      */
     public void removeValues ()
     {
+        for (int ii = 0, ll = _values.size(); ii < ll; ii++) {
+            releaseComponent(_values.get(ii));
+        }
         _values.clear();
+        _inView.clear();
+        _measured = 0;
         _model.setValue(0);
         _vport.removeAll();
         _vport.invalidate();
@@ -92,9 +104,13 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
     {
         num = Math.min(num, _values.size());
         for (int ii = 0; ii < num; ii++) {
-            Entry<V, C> value = _values.remove(0);
-            _vport.remove(value.component);
+            Entry<V, C> entry = _values.remove(0);
+            if (entry.visible) {
+                _inView.remove(entry);
+            }
+            releaseComponent(entry);
         }
+        _measured = Math.max(0, _measured - num);
         _vport.invalidate();
     }
 
@@ -104,15 +120,90 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
      */
     protected abstract C createComponent (V value);
 
+    /**
+     * Returns the type of component used to display the specified value. Components of a non-null
+     * type are pooled when their values scroll out of view and reused (via {@link
+     * #reconfigureComponent}) to display other values of the same type. By default, components are
+     * not reused.
+     */
+    protected Object getComponentType (V value)
+    {
+        return null;
+    }
+
+    /**
+     * Configures a component previously used to display another value of the same type to
+     * display the specified value. Subclasses that override {@link #getComponentType} should
+     * override this method to reuse the component; by default, a new component is created.
+     *
+     * @return the component with which to display the value.
+     */
+    protected C reconfigureComponent (C component, V value)
+    {
+        return createComponent(value);
+    }
+
+    /**
+     * Notes that the component displaying the value at the specified index has changed in size.
+     */
+    protected void remeasureValue (int index)
+    {
+        _values.get(index).height = -1;
+        _measured = Math.min(_measured, index);
+    }
+
     /**
      * Adds a value to the list and snaps to the bottom of the list if desired.
      */
     protected void addValue (int index, V value, boolean snap)
     {
         _values.add(index, new Entry<V, C>(value));
+        _measured = Math.min(_measured, index);
         _vport.invalidateAndSnap();
     }
 
+    /**
+     * Provides the supplied entry with a component, reusing a pooled one if possible.
+     */
+    protected C obtainComponent (Entry<V, C> entry)
+    {
+        if (entry.component == null) {
+            entry.type = getComponentType(entry.value);
+            ArrayList<C> pool = (entry.type == null) ? null : _pools.get(entry.type);
+            if (pool != null && !pool.isEmpty()) {
+                entry.component = reconfigureComponent(pool.remove(pool.size() - 1), entry.value);
+            } else {
+                entry.component = createComponent(entry.value);
+            }
+        }
+        return entry.component;
+    }
+
+    /**
+     * Removes the component of the supplied entry (if it has one), returning it to its pool if
+     * it is reusable.
+     */
+    protected void releaseComponent (Entry<V, C> entry)
+    {
+        C comp = entry.component;
+        if (comp == null) {
+            return;
+        }
+        entry.component = null;
+        if (comp.isAdded()) {
+            _vport.remove(comp);
+        }
+        if (entry.type != null) {
+            ArrayList<C> pool = _pools.get(entry.type);
+            if (pool == null) {
+                _pools.put(entry.type, pool = new ArrayList<C>());
+            }
+            if (pool.size() < MAX_POOLED_COMPONENTS) {
+                pool.add(comp);
+            }
+        }
+    }
+
     /** Does all the heavy lifting for the {@link BScrollingList}. */
     protected class BViewport extends BContainer
         implements ChangeListener
@@ -189,29 +280,48 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
             int theight = getHeight() - insets.getVertical();
             int gap = ((GroupLayout)getLayoutManager()).getGap();
 
-            // first make sure all of our entries have been measured and
-            // compute our total height and extent
-            int totheight = 0;
-            for (Entry<V, C> entry : _values) {
+            // measure any entries added (or changed) since our last layout and update the
+            // positions of those that follow them
+            ArrayList<Entry<V, C>> measured = null;
+            for (int ii = _measured, ll = _values.size(); ii < ll; ii++) {
+                Entry<V, C> entry = _values.get(ii);
                 if (entry.height < 0) {
-                    if (entry.component == null) {
-                        entry.component = createComponent(entry.value);
-                    }
+                    C comp = obtainComponent(entry);
                     boolean remove = false;
-                    if (!entry.component.isAdded()) {
-                        add(entry.component);
+                    if (!comp.isAdded()) {
+                        add(comp);
                         remove = true;
                     }
-                    entry.height =
-                        entry.component.getPreferredSize(twidth, 0).height;
+                    entry.height = comp.getPreferredSize(twidth, 0).height;
                     if (remove) {
-                        remove(entry.component);
+                        remove(comp);
+                        if (entry.type != null) {
+                            // reusable components can be measuring the next entry right away
+                            releaseComponent(entry);
+                        } else {
+                            if (measured == null) {
+                                measured = new ArrayList<Entry<V, C>>();
+                            }
+                            measured.add(entry);
+                        }
                     }
                 }
-                totheight += entry.height;
+                if (ii == 0) {
+                    entry.top = 0;
+                } else {
+                    Entry<V, C> prev = _values.get(ii-1);
+                    entry.top = prev.top + prev.height + gap;
+                }
             }
-            if (_values.size() > 1) {
-                totheight += (gap * _values.size()-1);
+            _measured = _values.size();
+
+            // compute our total height and extent (our entries' positions are relative to the
+            // first one, which remains where it was when those above it are removed)
+            int totheight = 0, base = 0;
+            if (_values.size() > 0) {
+                Entry<V, C> first = _values.get(0), last = _values.get(_values.size()-1);
+                base = first.top;
+                totheight = last.top + last.height - base;
             }
             int extent = Math.min(theight, totheight);
 
@@ -228,60 +338,75 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
                 _model.setRange(0, value, extent, totheight);
             }
 
-            // now back up from the last component until we reach the first one
-            // that's in view
-            _offset = _model.getValue();
-            int compIx = 0;
-            for (int ii = 0; ii < _values.size(); ii++) {
-                Entry<V, C> entry = _values.get(ii);
-                if (_offset < entry.height) {
-                    compIx = ii;
-                    break;
-                }
-                _offset -= (entry.height + gap);
-
-                // remove and clear out the components before our top component
-                if (entry.component != null) {
-                    if (entry.component.isAdded()) {
-                        remove(entry.component);
-                    }
-                    entry.component = null;
-                }
-            }
+            // find the first component that's in view
+            value = _model.getValue();
+            int topIx = findEntry(base + value);
+            _offset = (topIx < _values.size()) ? value - (_values.get(topIx).top - base) : 0;
 
-            // compensate for the partially visible topmost component
+            // compensate for the partially visible topmost component and determine how many
+            // components we need to use up our extent
             extent += _offset;
+            int compIx = topIx;
+            for (; compIx < _values.size() && extent > 0; compIx++) {
+                extent -= (_values.get(compIx).height + gap);
+            }
 
-            // now add components until we use up our extent
-            int topIx = compIx;
-            while (compIx < _values.size() && extent > 0) {
-                Entry<V, C> entry = _values.get(compIx);
-                if (entry.component == null) {
-                    entry.component = createComponent(entry.value);
+            // remove the components that are no longer in view, including those created only to
+            // be measured
+            for (int ii = 0, ll = _inView.size(); ii < ll; ii++) {
+                _inView.get(ii).visible = false;
+            }
+            for (int ii = topIx; ii < compIx; ii++) {
+                _values.get(ii).visible = true;
+            }
+            for (int ii = 0, ll = _inView.size(); ii < ll; ii++) {
+                Entry<V, C> entry = _inView.get(ii);
+                if (!entry.visible) {
+                    releaseComponent(entry);
                 }
-                if (!entry.component.isAdded()) {
-                    add(compIx-topIx, entry.component);
+            }
+            if (measured != null) {
+                for (Entry<V, C> entry : measured) {
+                    if (!entry.visible) {
+                        releaseComponent(entry);
+                    }
                 }
-                extent -= (entry.height + gap);
-                compIx++;
             }
 
-            // lastly remove any components below the last visible component
-            while (compIx < _values.size()) {
-                Entry<V, C> entry = _values.get(compIx);
-                if (entry.component != null) {
-                    if (entry.component.isAdded()) {
-                        remove(entry.component);
-                    }
-                    entry.component = null;
+            // now add the components in view that are not yet added
+            _inView.clear();
+            for (int ii = topIx; ii < compIx; ii++) {
+                Entry<V, C> entry = _values.get(ii);
+                _inView.add(entry);
+                C comp = obtainComponent(entry);
+                if (!comp.isAdded()) {
+                    add(ii-topIx, comp);
                 }
-                compIx++;
             }
 
             // now have the layout manager layout our added components
             super.layout();
         }
 
+        /**
+         * Returns the index of the first entry whose bottom lies below the specified position (or
+         * the number of entries if there is no such entry).
+         */
+        protected int findEntry (int position)
+        {
+            int low = 0, high = _values.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                Entry<V, C> entry = _values.get(mid);
+                if (entry.top + entry.height > position) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
         @Override // from BComponent
         protected void renderComponent (Renderer renderer)
         {
@@ -339,17 +464,130 @@ public abstract class BScrollingList<V, C extends BComponent> extends BContainer
         public C component;
         public V value;
         public int height = -1;
+
+        /** The position of the top of this entry relative to the top of the first entry ever
+         * added after the list was last emptied. */
+        public int top;
+
+        /** The type of our component, if it is reusable. */
+        public Object type;
+
+        /** Whether our component is in view. */
+        public boolean visible;
+
         public Entry (V value) {
             this.value = value;
         }
     }
 
+    /** A list stored in a circular buffer, which can be efficiently added to and removed from at
+     * either end. */
+    protected static class EntryList<E> extends AbstractList<E>
+    {
+        @Override // from AbstractList
+        public E get (int index)
+        {
+            checkIndex(index, _size);
+            return _items[(_head + index) % _items.length];
+        }
+
+        @Override // from AbstractList
+        public E set (int index, E element)
+        {
+            checkIndex(index, _size);
+            int idx = (_head + index) % _items.length;
+            E oelement = _items[idx];
+            _items[idx] = element;
+            return oelement;
+        }
+
+        @Override // from AbstractList
+        public int size ()
+        {
+            return _size;
+        }
+
+        @Override // from AbstractList
+        public void add (int index, E element)
+        {
+            checkIndex(index, _size + 1);
+            if (_size == _items.length) {
+                @SuppressWarnings("unchecked") E[] items = (E[])new Object[_items.length * 2];
+                for (int ii = 0; ii < _size; ii++) {
+                    items[ii] = get(ii);
+                }
+                _items = items;
+                _head = 0;
+            }
+            if (index == 0) {
+                _head = (_head + _items.length - 1) % _items.length;
+            } else {
+                for (int ii = _size; ii > index; ii--) {
+                    _items[(_head + ii) % _items.length] =
+                        _items[(_head + ii - 1) % _items.length];
+                }
+            }
+            _items[(_head + index) % _items.length] = element;
+            _size++;
+            modCount++;
+        }
+
+        @Override // from AbstractList
+        public E remove (int index)
+        {
+            E element = get(index);
+            if (index == 0) {
+                _items[_head] = null;
+                _head = (_head + 1) % _items.length;
+            } else {
+                for (int ii = index; ii < _size - 1; ii++) {
+                    _items[(_head + ii) % _items.length] =
+                        _items[(_head + ii + 1) % _items.length];
+                }
+                _items[(_head + _size - 1) % _items.length] = null;
+            }
+            _size--;
+            modCount++;
+            return element;
+        }
+
+        @Override // from AbstractList
+        public void clear ()
+        {
+            Arrays.fill(_items, null);
+            _head = _size = 0;
+            modCount++;
+        }
+
+        protected static void checkIndex (int index, int size)
+        {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+
+        @SuppressWarnings("unchecked") protected E[] _items = (E[])new Object[16];
+        protected int _head, _size;
+    }
+
     protected MouseWheelListener _wheelListener;
     protected BoundedRangeModel _model;
     protected List<Entry<V, C>> _values;
+
+    /** The entries whose components are in view. */
+    protected ArrayList<Entry<V, C>> _inView = new ArrayList<Entry<V, C>>();
+
+    /** The number of entries at the top of the list that have been measured and positioned. */
+    protected int _measured;
+
+    /** Pools of reusable components, by type. */
+    protected HashMap<Object, ArrayList<C>> _pools = new HashMap<Object, ArrayList<C>>();
     protected BViewport _vport;
     protected BScrollBar _vbar;
     protected int _lastBottom;
 
     protected static final int EXTENT = 2;
+
+    /** The maximum number of components of each type that we pool. */
+    protected static final int MAX_POOLED_COMPONENTS = 32;
 }
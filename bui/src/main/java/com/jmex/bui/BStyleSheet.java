@@ -103,6 +103,12 @@ import com.jmex.bui.util.Insets;
  * hierarchy and the result is used to configure the component. We tradeoff the relative expense of
  * doing the lookup every time the component is rendered (every frame) with the memory expense of
  * storing the style of every component in memory.
+ *
+ * <p> To keep those lookups cheap, the properties of each style class and pseudo-class pair are
+ * compiled (on first use) into a table indexed by property, with the <code>root</code> class
+ * filled in where the class itself defines nothing, and each component remembers the compiled
+ * tables of its style class so that climbing the hierarchy involves no string manipulation or map
+ * lookups.
  */
 public class BStyleSheet
 {
@@ -249,84 +255,84 @@ public class BStyleSheet
 
     public ColorRGBA getColor (BComponent component, String pseudoClass)
     {
-        return (ColorRGBA)findProperty(component, pseudoClass, "color", true);
+        return (ColorRGBA)findProperty(component, pseudoClass, COLOR, true);
     }
 
     public BBackground getBackground (BComponent component, String pseudoClass)
     {
-        return (BBackground)findProperty(component, pseudoClass, "background", false);
+        return (BBackground)findProperty(component, pseudoClass, BACKGROUND, false);
     }
 
     public BIcon getIcon (BComponent component, String pseudoClass)
     {
-        return (BIcon)findProperty(component, pseudoClass, "icon", false);
+        return (BIcon)findProperty(component, pseudoClass, ICON, false);
     }
 
     public BCursor getCursor (BComponent component, String pseudoClass)
     {
-        return (BCursor)findProperty(component, pseudoClass, "cursor", true);
+        return (BCursor)findProperty(component, pseudoClass, CURSOR, true);
     }
 
     public BTextFactory getTextFactory (
         BComponent component, String pseudoClass)
     {
-        return (BTextFactory)findProperty(component, pseudoClass, "font", true);
+        return (BTextFactory)findProperty(component, pseudoClass, FONT, true);
     }
 
     public int getTextAlignment (BComponent component, String pseudoClass)
     {
-        Integer value = (Integer)findProperty(component, pseudoClass, "text-align", true);
+        Integer value = (Integer)findProperty(component, pseudoClass, TEXT_ALIGN, true);
         return (value == null) ? BConstants.LEFT : value.intValue();
     }
 
     public int getVerticalAlignment (BComponent component, String pseudoClass)
     {
-        Integer value = (Integer)findProperty(component, pseudoClass, "vertical-align", true);
+        Integer value = (Integer)findProperty(component, pseudoClass, VERTICAL_ALIGN, true);
         return (value == null) ? BConstants.CENTER : value.intValue();
     }
 
     public int getTextEffect (BComponent component, String pseudoClass)
     {
-        Integer value = (Integer)findProperty(component, pseudoClass, "text-effect", true);
+        Integer value = (Integer)findProperty(component, pseudoClass, TEXT_EFFECT, true);
         return (value == null) ? BConstants.NORMAL : value.intValue();
     }
 
     public int getLineSpacing (BComponent component, String pseudoClass)
     {
-        Integer value = (Integer)findProperty(component, pseudoClass, "line-spacing", true);
+        Integer value = (Integer)findProperty(component, pseudoClass, LINE_SPACING, true);
         return (value == null) ? BConstants.DEFAULT_SPACING : value.intValue();
     }
 
     public int getEffectSize (BComponent component, String pseudoClass)
     {
-        Integer value = (Integer)findProperty(component, pseudoClass, "effect-size", true);
+        Integer value = (Integer)findProperty(component, pseudoClass, EFFECT_SIZE, true);
         return (value == null) ? BConstants.DEFAULT_SIZE : value.intValue();
     }
 
     public ColorRGBA getEffectColor (BComponent component, String pseudoClass)
     {
-        return (ColorRGBA)findProperty(component, pseudoClass, "effect-color", true);
+        return (ColorRGBA)findProperty(component, pseudoClass, EFFECT_COLOR, true);
     }
 
     public Insets getInsets (BComponent component, String pseudoClass)
     {
-        Insets insets = (Insets)findProperty(component, pseudoClass, "padding", false);
+        Insets insets = (Insets)findProperty(component, pseudoClass, PADDING, false);
         return (insets == null) ? Insets.ZERO_INSETS : insets;
     }
 
     public BBorder getBorder (BComponent component, String pseudoClass)
     {
-        return (BBorder)findProperty(component, pseudoClass, "border", false);
+        return (BBorder)findProperty(component, pseudoClass, BORDER, false);
     }
 
     public Dimension getSize (BComponent component, String pseudoClass)
     {
-        return (Dimension)findProperty(component, pseudoClass, "size", false);
+        return (Dimension)findProperty(component, pseudoClass, SIZE, false);
     }
 
     public String getTooltipStyle (BComponent component, String pseudoClass)
     {
-        return (String)findProperty(component, pseudoClass, "tooltip", true);
+        return (String)findProperty(component, pseudoClass, TOOLTIP, true);
     }
 
     public BKeyMap getKeyMap (BComponent component, String pseudoClass)
@@ -335,58 +341,112 @@ public class BStyleSheet
     }
 
     protected Object findProperty (
-        BComponent component, String pseudoClass, String property, boolean climb)
+        BComponent component, String pseudoClass, int property, boolean climb)
     {
-        Object value;
-
-        // first try this component's configured style class
-        String styleClass = component.getStyleClass();
-        String fqClass = makeFQClass(styleClass, pseudoClass);
-        if ((value = getProperty(fqClass, property)) != null) {
-            return value;
-        }
+        int pseudoId = getPseudoId(pseudoClass);
+        StyleTable table = getCompiledClass(component).getTable(pseudoId, pseudoClass);
 
-        // next fall back to its un-qualified configured style
-        if (pseudoClass != null) {
-            if ((value = getProperty(styleClass, property)) != null) {
-                return value;
+        // if applicable climb up the hierarchy until we find a component whose own style class
+        // (rather than the "root" class) defines the property
+        if (climb) {
+            for (BComponent parent = component.getParent();
+                 parent != null && (table.fromRoot[property] || table.values[property] == null);
+                 parent = parent.getParent()) {
+                table = getCompiledClass(parent).getTable(pseudoId, pseudoClass);
             }
         }
 
-        // if applicable climb up the hierarch to its parent and try there
-        if (climb) {
-            BComponent parent = component.getParent();
-            if (parent != null) {
-                return findProperty(parent, pseudoClass, property, climb);
-            }
+        // we need to lazily resolve certain properties at this time
+        Object value = table.values[property];
+        return (value instanceof Property) ? ((Property)value).get(_rsrcprov) : value;
+    }
+
+    /**
+     * Returns the compiled tables for the supplied component's style class, which are cached in the
+     * component.
+     */
+    protected CompiledClass getCompiledClass (BComponent component)
+    {
+        String styleClass = component.getStyleClass();
+        CompiledClass cclass = component._compiledStyle;
+        if (cclass != null && cclass.sheet == this && cclass.generation == _generation &&
+            cclass.styleClass.equals(styleClass)) {
+            return cclass;
+        }
+        if ((cclass = _compiled.get(styleClass)) == null) {
+            _compiled.put(styleClass, cclass = new CompiledClass(this, styleClass));
         }
+        component._compiledStyle = cclass;
+        return cclass;
+    }
 
-        // finally check the "root" class
-        fqClass = makeFQClass("root", pseudoClass);
-        if ((value = getProperty(fqClass, property)) != null) {
-            return value;
+    /**
+     * Returns the id assigned to the specified pseudo-class, assigning one if necessary.
+     */
+    protected int getPseudoId (String pseudoClass)
+    {
+        if (pseudoClass == null) {
+            return 0;
         }
-        if (pseudoClass != null) {
-            return getProperty("root", property);
+        Integer id = _pseudoIds.get(pseudoClass);
+        if (id == null) {
+            _pseudoIds.put(pseudoClass, id = _pseudoIds.size() + 1);
         }
+        return id;
+    }
 
-        return null;
+    /**
+     * Compiles the table of properties for the specified style class and pseudo-class, first from
+     * the pseudo-class qualified class, then from the unqualified class and finally from the
+     * "root" class.
+     */
+    protected StyleTable compileTable (String styleClass, String pseudoClass)
+    {
+        StyleTable table = new StyleTable();
+        Object[] qualified = getRuleValues(makeFQClass(styleClass, pseudoClass));
+        Object[] unqualified = (pseudoClass == null) ? null : getRuleValues(styleClass);
+        Object[] rqualified = getRuleValues(makeFQClass("root", pseudoClass));
+        Object[] runqualified = (pseudoClass == null) ? null : getRuleValues("root");
+        for (int ii = 0; ii < PROPERTY_NAMES.length; ii++) {
+            Object value = getValue(qualified, unqualified, ii);
+            if (value == null) {
+                value = getValue(rqualified, runqualified, ii);
+                table.fromRoot[ii] = (value != null);
+            }
+            table.values[ii] = value;
+        }
+        return table;
     }
 
-    protected Object getProperty (String fqClass, String property)
+    /**
+     * Returns the values of the properties of the specified rule (including those inherited from
+     * its parents), indexed by property, or null if there is no such rule.
+     */
+    protected Object[] getRuleValues (String fqClass)
     {
         Rule rule = _rules.get(fqClass);
         if (rule == null) {
             return null;
         }
+        if (rule.values == null) {
+            rule.values = new Object[PROPERTY_NAMES.length];
+            for (int ii = 0; ii < PROPERTY_NAMES.length; ii++) {
+                rule.values[ii] = rule.get(_rules, PROPERTY_NAMES[ii]);
+            }
+        }
+        return rule.values;
+    }
 
-        // we need to lazily resolve certain properties at this time
-        Object prop = rule.get(_rules, property);
-        if (prop instanceof Property) {
-            prop = ((Property)prop).resolve(_rsrcprov);
-            rule.properties.put(property, prop);
+    /**
+     * Clears the compiled property tables, which must be done whenever the rules change.
+     */
+    protected void invalidate ()
+    {
+        _generation++;
+        _compiled.clear();
+        for (Rule rule : _rules.values()) {
+            rule.values = null;
         }
-        return prop;
     }
 
     protected void parse (StreamTokenizer tok)
@@ -398,6 +458,7 @@ public class BStyleSheet
             }
             _rules.put(makeFQClass(rule.styleClass, rule.pseudoClass), rule);
         }
+        invalidate();
     }
 
     protected Rule startRule (StreamTokenizer tok)
@@ -673,6 +734,12 @@ public class BStyleSheet
         return (pseudoClass == null) ? styleClass : (styleClass + ":" + pseudoClass);
     }
 
+    protected static Object getValue (Object[] first, Object[] second, int property)
+    {
+        Object value = (first == null) ? null : first[property];
+        return (value == null && second != null) ? second[property] : value;
+    }
+
     protected static class Rule
     {
         public String styleClass;
@@ -681,6 +748,9 @@ public class BStyleSheet
 
         public Map<String, Object> properties = new HashMap<String, Object>();
 
+        /** The values of our properties (including inherited ones) indexed by property. */
+        public Object[] values;
+
         public Object get (Map<String, Rule> rules, String key)
         {
             Object value = properties.get(key);
@@ -697,9 +767,70 @@ public class BStyleSheet
         }
     }
 
+    /** The compiled property tables of a style class, indexed by pseudo-class id. */
+    protected static class CompiledClass
+    {
+        /** The stylesheet that compiled us. */
+        public final BStyleSheet sheet;
+
+        /** The generation of the stylesheet's rules from which we were compiled. */
+        public final int generation;
+
+        /** Our style class. */
+        public final String styleClass;
+
+        public CompiledClass (BStyleSheet sheet, String styleClass)
+        {
+            this.sheet = sheet;
+            this.generation = sheet._generation;
+            this.styleClass = styleClass;
+        }
+
+        public StyleTable getTable (int pseudoId, String pseudoClass)
+        {
+            if (pseudoId >= _tables.length) {
+                StyleTable[] tables = new StyleTable[pseudoId + 1];
+                System.arraycopy(_tables, 0, tables, 0, _tables.length);
+                _tables = tables;
+            }
+            StyleTable table = _tables[pseudoId];
+            if (table == null) {
+                _tables[pseudoId] = table = sheet.compileTable(styleClass, pseudoClass);
+            }
+            return table;
+        }
+
+        protected StyleTable[] _tables = new StyleTable[STATE_PSEUDO_CLASSES];
+    }
+
+    /** The properties of a style class in a particular pseudo-class, indexed by property. */
+    protected static class StyleTable
+    {
+        /** The value of each property, or null if neither our class nor root defines it. */
+        public Object[] values = new Object[PROPERTY_NAMES.length];
+
+        /** Whether each value came from the root class rather than our own. */
+        public boolean[] fromRoot = new boolean[PROPERTY_NAMES.length];
+    }
+
     protected static abstract class Property
     {
         public abstract Object resolve (ResourceProvider rsrcprov);
+
+        /**
+         * Returns the resolved value of this property, resolving it on first use.
+         */
+        public Object get (ResourceProvider rsrcprov)
+        {
+            if (!_resolved) {
+                _value = resolve(rsrcprov);
+                _resolved = true;
+            }
+            return _value;
+        }
+
+        protected Object _value;
+        protected boolean _resolved;
     }
 
     protected static class FontProperty extends Property
@@ -790,6 +921,42 @@ public class BStyleSheet
     protected ResourceProvider _rsrcprov;
     protected HashMap<String, Rule> _rules = new HashMap<String, Rule>();
 
+    /** The compiled tables of each style class that has been looked up. */
+    protected HashMap<String, CompiledClass> _compiled = new HashMap<String, CompiledClass>();
+
+    /** The ids assigned to pseudo-classes (zero being reserved for no pseudo-class). */
+    protected HashMap<String, Integer> _pseudoIds = new HashMap<String, Integer>();
+
+    /** Incremented whenever the compiled tables are invalidated. */
+    protected int _generation;
+
+    /** Property ids, which index the compiled tables. */
+    protected static final int COLOR = 0;
+    protected static final int EFFECT_COLOR = 1;
+    protected static final int BACKGROUND = 2;
+    protected static final int ICON = 3;
+    protected static final int CURSOR = 4;
+    protected static final int FONT = 5;
+    protected static final int TEXT_ALIGN = 6;
+    protected static final int VERTICAL_ALIGN = 7;
+    protected static final int TEXT_EFFECT = 8;
+    protected static final int EFFECT_SIZE = 9;
+    protected static final int LINE_SPACING = 10;
+    protected static final int PADDING = 11;
+    protected static final int BORDER = 12;
+    protected static final int SIZE = 13;
+    protected static final int TOOLTIP = 14;
+
+    /** The names of the properties, indexed by id. */
+    protected static final String[] PROPERTY_NAMES = {
+        "color", "effect-color", "background", "icon", "cursor", "font", "text-align",
+        "vertical-align", "text-effect", "effect-size", "line-spacing", "padding", "border", "size",
+        "tooltip" };
+
+    /** The number of pseudo-classes for which we initially make room (those of the standard
+     * component states, plus none). */
+    protected static final int STATE_PSEUDO_CLASSES = 4;
+
     protected static HashMap<String, Integer> _taconsts = new HashMap<String, Integer>();
     protected static HashMap<String, Integer> _vaconsts = new HashMap<String, Integer>();
     protected static HashMap<String, Integer> _teconsts = new HashMap<String, Integer>();
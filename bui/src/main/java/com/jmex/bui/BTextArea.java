@@ -21,6 +21,11 @@ import com.jmex.bui.util.Insets;
  * Displays one or more lines of text which may contain basic formatting (changing of color,
  * toggling bold, italic and underline). Newline characters in the appended text will result in
  * line breaks in the on-screen layout.
+ *
+ * <p> Appended text is wrapped onto the existing lines, so the cost of appending does not grow
+ * with the amount of text already displayed; the text is only rewrapped in its entirety when the
+ * width or style of the area changes. Areas that accumulate text indefinitely (logs and the like)
+ * may limit the number of lines they retain with {@link #setMaximumLines}.
  */
 public class BTextArea extends BContainer
 {
@@ -86,6 +91,16 @@ public class BTextArea extends BContainer
         _prefWidth = width;
     }
 
+    /**
+     * Configures the maximum number of lines retained by this text area, or zero (the default) for
+     * no limit. When the limit is exceeded, the oldest lines (and their text) are discarded.
+     */
+    public void setMaximumLines (int maxLines)
+    {
+        _maxLines = maxLines;
+        invalidate();
+    }
+
     /**
      * Returns a model that can be wired to a scroll bar to allow scrolling up and down through the
      * lines in this text area.
@@ -142,7 +157,7 @@ public class BTextArea extends BContainer
         if (offset < text.length()) {
             _runs.add(new Run(text.substring(offset), color, style, false));
         }
-        // TODO: optimize appending
+        // the new runs will be wrapped onto our existing lines when we're laid out
         invalidate();
     }
 
@@ -152,6 +167,7 @@ public class BTextArea extends BContainer
     public void clearText ()
     {
         _runs.clear();
+        clearLines();
         invalidate();
     }
 
@@ -223,6 +239,8 @@ public class BTextArea extends BContainer
         boolean wasEnabled = isEnabled();
         super.setEnabled(enabled);
         if (isAdded() && wasEnabled != isEnabled()) {
+            // our text factory may have changed, so we need to rewrap everything
+            _wrapWidth = -1;
             refigureContents(getWidth());
         }
     }
@@ -296,6 +314,9 @@ public class BTextArea extends BContainer
         for (int ii = 0; ii < getStateCount(); ii++) {
             _textfacts[ii] = style.getTextFactory(this, getStatePseudoClass(ii));
         }
+
+        // our lines were created with our old style, so we need to rewrap everything
+        _wrapWidth = -1;
     }
 
     protected int[] checkNonDefault (int[] styles, int defval)
@@ -367,19 +388,13 @@ public class BTextArea extends BContainer
             refigureContents(whint);
         }
 
-        // compute our dimensions based on the dimensions of our text
-        Dimension d = new Dimension();
-        for (int ii = 0, ll = _lines.size(); ii < ll; ii++) {
-            Line line = _lines.get(ii);
-            d.width = Math.max(line.getWidth(), d.width);
-            d.height += line.height;
-        }
-
-        return d;
+        // our dimensions are those of our text
+        return new Dimension(_textWidth, _textHeight);
     }
 
     /**
-     * Reflows the entirety of our text.
+     * Wraps any text appended since we were last laid out onto our lines, reflowing the entirety
+     * of our text if our width or style has changed, and updates our scroll model.
      */
     protected void refigureContents (int width)
     {
@@ -388,36 +403,29 @@ public class BTextArea extends BContainer
             return;
         }
 
-        // remove and recreate our existing lines
-        for (int ii = 0, ll = _lines.size(); ii < ll; ii++) {
-            _lines.get(ii).wasRemoved();
+        // if our lines were wrapped to a different width (or style), we need to start over
+        int maxWidth = width - getInsets().getHorizontal();
+        boolean changed = false;
+        if (maxWidth != _wrapWidth) {
+            clearLines();
+            _wrapWidth = maxWidth;
+            changed = true;
         }
-        _lines.clear();
 
-        int insets = getInsets().getHorizontal();
-        int maxWidth = (width - insets);
+        // wrap any runs that have not yet been wrapped
+        if (_wrapped < _runs.size()) {
+            wrapRuns(maxWidth);
+            changed = true;
+        }
 
-        // wrap our text into lines
-        Line current = null;
-        for (int ii = 0, ll = _runs.size(); ii < ll; ii++) {
-            Run run = _runs.get(ii);
-            if (current == null) {
-                _lines.add(current = new Line());
-            }
-            int offset = 0;
-            ColorRGBA color = (run.color == null) ? getColor() : run.color;
-            while ((offset = current.addRun(
-                        getTextFactory(), run, color, getTextEffect(),
-                        getEffectSize(), getEffectColor(), maxWidth, offset)) > 0) {
-                _lines.add(current = new Line());
-            }
-            if (run.endsLine) {
-                current = null;
-            }
+        // discard our oldest lines if we have too many
+        if (_maxLines > 0 && _lines.size() > _maxLines) {
+            trimLines(_lines.size() - _maxLines);
+            changed = true;
         }
 
         // determine how many lines we can display in total
-        insets = getInsets().getVertical();
+        int insets = getInsets().getVertical();
 
         // start at the last line and see how many we can fit
         int lines = 0, lheight = 0;
@@ -431,13 +439,93 @@ public class BTextArea extends BContainer
 
         // update our model (which will cause the text to be repositioned)
         int sline = Math.max(0, _lines.size() - lines);
-        if (!_model.setRange(0, sline, lines, _lines.size())) {
+        if (!_model.setRange(0, sline, lines, _lines.size()) && changed) {
             // we need to force adjustment of the text even if we didn't change anything because we
-            // wiped out and recreated all of our lines
+            // changed our lines
             modelDidChange();
         }
     }
 
+    /**
+     * Wraps the runs that have been appended since we last wrapped onto the end of our lines.
+     */
+    protected void wrapRuns (int maxWidth)
+    {
+        // the last line may continue to grow if its run did not end it
+        int first = (_current == null) ? _lines.size() : _lines.size() - 1;
+        if (_current != null) {
+            _textHeight -= _current.height;
+        }
+
+        for (int ii = _wrapped, ll = _runs.size(); ii < ll; ii++) {
+            Run run = _runs.get(ii);
+            if (_current == null) {
+                _lines.add(_current = new Line());
+            }
+            int offset = 0;
+            ColorRGBA color = (run.color == null) ? getColor() : run.color;
+            while ((offset = _current.addRun(
+                        getTextFactory(), run, color, getTextEffect(),
+                        getEffectSize(), getEffectColor(), maxWidth, offset)) > 0) {
+                _lines.add(_current = new Line());
+            }
+            if (run.endsLine) {
+                _current = null;
+            }
+        }
+        _wrapped = _runs.size();
+
+        for (int ii = first, ll = _lines.size(); ii < ll; ii++) {
+            Line line = _lines.get(ii);
+            _textWidth = Math.max(_textWidth, line.getWidth());
+            _textHeight += line.height;
+        }
+    }
+
+    /**
+     * Discards the specified number of lines from the start of our text, along with the runs that
+     * begin on those lines.
+     */
+    protected void trimLines (int count)
+    {
+        for (int ii = 0; ii < count; ii++) {
+            _lines.get(ii).wasRemoved();
+        }
+        _lines.subList(0, count).clear();
+
+        // remove the runs that precede the first remaining line so that they do not reappear if
+        // we are rewrapped (the run that starts it may also have started trimmed lines)
+        int runs = _lines.isEmpty() ? _wrapped : _runs.indexOf(_lines.get(0).start);
+        if (runs > 0) {
+            _runs.subList(0, runs).clear();
+            _wrapped -= runs;
+        }
+
+        _textWidth = _textHeight = 0;
+        for (int ii = 0, ll = _lines.size(); ii < ll; ii++) {
+            Line line = _lines.get(ii);
+            _textWidth = Math.max(_textWidth, line.getWidth());
+            _textHeight += line.height;
+        }
+    }
+
+    /**
+     * Discards all of our lines, so that our text will be wrapped from the start.
+     */
+    protected void clearLines ()
+    {
+        // our lines were already removed if we were
+        if (isAdded()) {
+            for (int ii = 0, ll = _lines.size(); ii < ll; ii++) {
+                _lines.get(ii).wasRemoved();
+            }
+        }
+        _lines.clear();
+        _current = null;
+        _wrapped = 0;
+        _textWidth = _textHeight = 0;
+    }
+
     /**
      * Called when our model has changed (due to scrolling by a scroll bar or a call to {@link
      * #scrollToLine}, etc.).
@@ -522,11 +610,7 @@ public class BTextArea extends BContainer
          */
         public int getWidth ()
         {
-            int width = 0;
-            for (int ii = 0, ll = segments.size(); ii < ll; ii++) {
-                width += segments.get(ii).getSize().width;
-            }
-            return width;
+            return dx;
         }
 
         public void wasAdded ()
@@ -554,4 +638,19 @@ public class BTextArea extends BContainer
 
     protected ArrayList<Run> _runs = new ArrayList<Run>();
     protected ArrayList<Line> _lines = new ArrayList<Line>();
+
+    /** The maximum number of lines we retain, or zero for no limit. */
+    protected int _maxLines;
+
+    /** The width to which our lines were wrapped, or -1 if they must be rewrapped. */
+    protected int _wrapWidth = -1;
+
+    /** The number of runs that have been wrapped onto our lines. */
+    protected int _wrapped;
+
+    /** The last line, if the last run wrapped onto it did not end it. */
+    protected Line _current;
+
+    /** The dimensions of our wrapped text. */
+    protected int _textWidth, _textHeight;
 }
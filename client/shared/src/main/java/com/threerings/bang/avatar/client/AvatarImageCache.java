@@ -0,0 +1,339 @@
+//
+// $Id$
+
+package com.threerings.bang.avatar.client;
+
+import java.awt.image.BufferedImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.samskivert.util.StringUtil;
+
+import com.threerings.bang.client.BasicClient;
+import com.threerings.bang.data.BaseAvatarInfo;
+import com.threerings.bang.util.DeploymentConfig;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Stores composited avatar images on the client's file system and manages the pool of threads on
+ * which avatars are loaded from that cache or composited afresh. Images are addressed by a digest
+ * of the avatar fingerprint, action and dimensions (along with the deployment version, so that
+ * new media invalidates old composites). The total size of the stored images is bounded: when it
+ * exceeds the limit, the least recently used images are deleted.
+ */
+public class AvatarImageCache
+{
+    /**
+     * Returns the cache key for the specified avatar, or <code>null</code> if the avatar has no
+     * fingerprint from which to compute one.
+     */
+    public static String computeKey (BaseAvatarInfo avatar)
+    {
+        if (avatar.print == null || avatar.print.length == 0) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream dout = new DataOutputStream(bout);
+            dout.writeInt(CACHE_VERSION);
+            dout.writeLong(DeploymentConfig.getVersion());
+            dout.writeUTF(avatar.getClass().getName());
+            dout.writeUTF(String.valueOf(avatar.getCharacterAction()));
+            dout.writeInt(avatar.getWidth());
+            dout.writeInt(avatar.getHeight());
+            for (int value : avatar.print) {
+                dout.writeInt(value);
+            }
+            dout.flush();
+            return StringUtil.hexlate(MessageDigest.getInstance("MD5").digest(bout.toByteArray()));
+
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe); // not possible with a byte array stream
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae);
+        }
+    }
+
+    /**
+     * Creates a cache that stores up to the specified number of bytes of images in the specified
+     * directory.
+     */
+    public AvatarImageCache (File dir, long maxBytes)
+    {
+        _dir = dir;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the executor on which avatars should be resolved.
+     */
+    public ExecutorService getExecutor ()
+    {
+        if (_exec == null) {
+            ThreadPoolExecutor exec = new ThreadPoolExecutor(
+                POOL_SIZE, POOL_SIZE, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(
+                            runnable, "Avatar Compositor " + _tcount.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                    protected AtomicInteger _tcount = new AtomicInteger();
+                });
+            exec.allowCoreThreadTimeOut(true);
+            _exec = exec;
+        }
+        return _exec;
+    }
+
+    /**
+     * Loads the cached image for the specified avatar from disk. May be called from any thread.
+     *
+     * @return the cached image or <code>null</code> if the avatar has not yet been cached.
+     */
+    public BufferedImage loadImage (String key)
+    {
+        File file = getImageFile(key);
+        if (!file.exists()) {
+            _diskMisses.incrementAndGet();
+            return null;
+        }
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image != null) {
+                _diskHits.incrementAndGet();
+                file.setLastModified(System.currentTimeMillis()); // for pruning
+                return image;
+            }
+        } catch (IOException ioe) {
+            log.warning("Failed to read cached avatar", "file", file, "error", ioe);
+        }
+        // the file is corrupt; clear it out so that we recomposite and store a fresh copy
+        _diskMisses.incrementAndGet();
+        _errors.incrementAndGet();
+        if (!file.delete()) {
+            log.warning("Failed to delete corrupt cached avatar", "file", file);
+        }
+        return null;
+    }
+
+    /**
+     * Stores the supplied composited image in the disk cache. May be called from any thread.
+     */
+    public void storeImage (String key, BufferedImage image)
+    {
+        File file = getImageFile(key), dir = file.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        // write to a temporary file and move it into place so that concurrent readers never see
+        // a partially written image
+        File tmp = new File(dir, key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            if (!ImageIO.write(image, "png", tmp)) {
+                throw new IOException("No PNG writer available");
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        } catch (IOException ioe) {
+            log.warning("Failed to store avatar in cache!", "file", file, "error", ioe);
+            _errors.incrementAndGet();
+            tmp.delete();
+            return;
+        }
+        noteStored(file.length());
+    }
+
+    /**
+     * Notes that an image request was satisfied from the in-memory cache.
+     */
+    public void noteMemoryHit ()
+    {
+        _memHits.incrementAndGet();
+    }
+
+    /**
+     * Notes that an avatar was composited, taking the specified number of milliseconds.
+     */
+    public void noteComposited (long elapsed)
+    {
+        _composites.incrementAndGet();
+        _compositeTime.addAndGet(elapsed);
+    }
+
+    /**
+     * Returns the number of requests satisfied from the in-memory cache.
+     */
+    public int getMemoryHits ()
+    {
+        return _memHits.get();
+    }
+
+    /**
+     * Returns the number of requests satisfied from the disk cache.
+     */
+    public int getDiskHits ()
+    {
+        return _diskHits.get();
+    }
+
+    /**
+     * Returns the number of requests that missed the disk cache.
+     */
+    public int getDiskMisses ()
+    {
+        return _diskMisses.get();
+    }
+
+    /**
+     * Returns the number of avatars composited from their component frames.
+     */
+    public int getComposites ()
+    {
+        return _composites.get();
+    }
+
+    /**
+     * Returns a summary of our cache statistics suitable for logging.
+     */
+    public String summarizeStats ()
+    {
+        int composites = _composites.get();
+        return "memHits=" + _memHits.get() + ", diskHits=" + _diskHits.get() +
+            ", diskMisses=" + _diskMisses.get() + ", composites=" + composites +
+            ", avgCompositeMillis=" + (composites == 0 ? 0 : _compositeTime.get() / composites) +
+            ", pruned=" + _pruned.get() + ", errors=" + _errors.get();
+    }
+
+    /**
+     * Notes that an image of the specified size was stored, pruning the cache if it has grown
+     * beyond its limit.
+     */
+    protected synchronized void noteStored (long length)
+    {
+        // scan the directory the first time through; after that, keep a running total
+        if (_totalBytes < 0L) {
+            _totalBytes = 0L;
+            for (File file : listImages()) {
+                _totalBytes += file.length();
+            }
+        } else {
+            _totalBytes += length;
+        }
+        if (_totalBytes > _maxBytes) {
+            pruneImages();
+        }
+    }
+
+    /**
+     * Deletes the least recently used images until the cache is comfortably within its size
+     * limit (so that we needn't prune again on the very next store).
+     */
+    protected void pruneImages ()
+    {
+        File[] files = listImages();
+        long total = 0L;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare (File f1, File f2) {
+                long m1 = f1.lastModified(), m2 = f2.lastModified();
+                return (m1 < m2) ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        long target = (long)(_maxBytes * PRUNE_TARGET);
+        int pruned = 0;
+        for (int ii = 0; ii < files.length && total > target; ii++) {
+            long length = files[ii].length();
+            if (files[ii].delete()) {
+                total -= length;
+                pruned++;
+            }
+        }
+        _totalBytes = total;
+        _pruned.addAndGet(pruned);
+    }
+
+    /**
+     * Returns the images stored in our directory.
+     */
+    protected File[] listImages ()
+    {
+        File[] files = _dir.listFiles(new FileFilter() {
+            public boolean accept (File file) {
+                return file.getName().endsWith(".png");
+            }
+        });
+        return (files == null) ? new File[0] : files;
+    }
+
+    /**
+     * Returns the file in which the image with the specified key is stored.
+     */
+    protected File getImageFile (String key)
+    {
+        return new File(_dir, key + ".png");
+    }
+
+    /** The directory in which we store our images. */
+    protected File _dir;
+
+    /** The maximum total size of our images. */
+    protected long _maxBytes;
+
+    /** The total size of our images, or -1 if not yet determined. */
+    protected long _totalBytes = -1L;
+
+    /** The pool on which we resolve avatars, created on demand. */
+    protected ExecutorService _exec;
+
+    /** Our cache statistics. */
+    protected AtomicInteger _memHits = new AtomicInteger(), _diskHits = new AtomicInteger(),
+        _diskMisses = new AtomicInteger(), _composites = new AtomicInteger(),
+        _errors = new AtomicInteger(), _pruned = new AtomicInteger();
+
+    /** The total time spent compositing avatars. */
+    protected AtomicLong _compositeTime = new AtomicLong();
+
+    /** The maximum total size of the images in the default cache. */
+    protected static final long MAX_CACHE_BYTES = 1024L * 1024 * 32;
+
+    /** The default cache, stored in the local data directory. */
+    public static final AvatarImageCache instance = new AvatarImageCache(
+        new File(BasicClient.localDataDir("avatars")), MAX_CACHE_BYTES);
+
+    /** Increment this to invalidate all previously cached composites. */
+    protected static final int CACHE_VERSION = 1;
+
+    /** When pruning, we delete images until the total size is this fraction of the limit. */
+    protected static final float PRUNE_TARGET = 0.75f;
+
+    /** The number of threads on which we load and composite avatars. */
+    protected static final int POOL_SIZE =
+        Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+}
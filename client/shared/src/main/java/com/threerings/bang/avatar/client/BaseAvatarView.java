@@ -22,7 +22,6 @@ import com.jme.util.geom.BufferUtils;
 import com.jmex.bui.BImage;
 import com.jmex.bui.BLabel;
 
-import com.samskivert.util.Invoker;
 import com.samskivert.util.ObjectUtil;
 import com.samskivert.util.ResultListener;
 import com.samskivert.util.StringUtil;
@@ -125,6 +124,7 @@ public abstract class BaseAvatarView extends BLabel
         SoftReference<BufferedImage> iref = _icache.get(avatar);
         BufferedImage image;
         if (iref != null && (image = iref.get()) != null) {
+            AvatarImageCache.instance.noteMemoryHit();
             receiver.requestCompleted(image);
             return;
         }
@@ -152,6 +152,21 @@ public abstract class BaseAvatarView extends BLabel
         }
     }
 
+    /**
+     * Starts resolving the images for the specified avatars (loading them from the disk cache or
+     * compositing them as necessary) so that they are ready by the time they are displayed.
+     */
+    public static void prefetchImages (
+        BasicContext ctx, Iterable<? extends BaseAvatarInfo> avatars)
+    {
+        for (BaseAvatarInfo avatar : avatars) {
+            // custom images are loaded synchronously, so there's no point in prefetching them
+            if (avatar != null && StringUtil.isBlank(avatar.getImage())) {
+                getImage(ctx, avatar, new ResultListener.NOOP<BufferedImage>());
+            }
+        }
+    }
+
     public BaseAvatarView (BasicContext ctx, int scale)
     {
         this(ctx, 1f / scale);
@@ -318,8 +333,12 @@ public abstract class BaseAvatarView extends BLabel
         return image;
     }
 
-    /** Handles composition of avatars on the invoker thread. */
-    protected static class AvatarResolver extends Invoker.Unit
+    /**
+     * Handles the loading or composition of avatars on the avatar cache's thread pool and the
+     * delivery of the results on the main thread.
+     */
+    protected static class AvatarResolver
+        implements Runnable
     {
         public ArrayList<ResultListener<BufferedImage>> receivers =
             new ArrayList<ResultListener<BufferedImage>>();
@@ -330,30 +349,57 @@ public abstract class BaseAvatarView extends BLabel
             _avatar = avatar;
             _cdesc = avatar.decodePrint(ctx);
             receivers.add(receiver);
-            _ctx.getInvoker().postUnit(this);
+            AvatarImageCache.instance.getExecutor().execute(this);
         }
 
-        public boolean invoke () {
-            ActionFrames af;
+        public void run () {
             try {
-                af = _ctx.getCharacterManager().getActionFrames(
-                    _cdesc, _avatar.getCharacterAction());
-            } catch (Exception e) {
-                log.warning("Unable to load action frames " + _cdesc + ".", e);
-                // return a blank image rather than null
+                resolve();
+            } catch (Throwable t) {
+                log.warning("Failed to resolve avatar " + _cdesc + ".", t);
+            }
+            if (_image == null) {
                 _image = ImageCache.createCompatibleImage(
                     _avatar.getWidth(), _avatar.getHeight(), true);
-                return true;
             }
+            _ctx.getApp().postRunnable(new Runnable() {
+                public void run () {
+                    handleResult();
+                }
+            });
+        }
+
+        protected void resolve () {
+            AvatarImageCache cache = AvatarImageCache.instance;
+            String key = AvatarImageCache.computeKey(_avatar);
+            if (key != null && (_image = cache.loadImage(key)) != null) {
+                return;
+            }
+
+            // the character manager and its frame caches are not thread-safe, so we composite
+            // one avatar at a time; loading from and storing to the disk cache runs in parallel
+            long start = System.currentTimeMillis();
+            synchronized (_ctx.getCharacterManager()) {
+                ActionFrames af;
+                try {
+                    af = _ctx.getCharacterManager().getActionFrames(
+                        _cdesc, _avatar.getCharacterAction());
+                } catch (Exception e) {
+                    log.warning("Unable to load action frames " + _cdesc + ".", e);
+                    return; // we'll return a blank image rather than null
+                }
 
-            // composite the myriad components and render them into an image
-            _image = renderFrame(_ctx, af, _avatar.getWidth(), _avatar.getHeight());
+                // composite the myriad components and render them into an image
+                _image = renderFrame(_ctx, af, _avatar.getWidth(), _avatar.getHeight());
+            }
+            cache.noteComposited(System.currentTimeMillis() - start);
 
-            // TODO: cache composited avatars on disk
-            return true;
+            if (key != null) {
+                cache.storeImage(key, _image);
+            }
         }
 
-        public void handleResult () {
+        protected void handleResult () {
             _icache.put(_avatar, new SoftReference<BufferedImage>(_image));
             for (ResultListener<BufferedImage> receiver : receivers) {
                 receiver.requestCompleted(_image);
@@ -361,10 +407,6 @@ public abstract class BaseAvatarView extends BLabel
             _rcache.remove(_avatar);
         }
 
-        public long getLongThreshold () {
-            return 10000L; // this could take a while...
-        }
-
         protected BasicContext _ctx;
         protected BaseAvatarInfo _avatar;
         protected CharacterDescriptor _cdesc;
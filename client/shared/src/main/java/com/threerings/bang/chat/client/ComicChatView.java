@@ -99,6 +99,37 @@ public abstract class ComicChatView
         return builder.build();
     }
 
+    @Override // from BScrollingList
+    protected Object getComponentType (EntryBuilder<BComponent> builder)
+    {
+        if (builder instanceof SystemEntryBuilder) {
+            // labels keep some of the style with which they were first added, so we only reuse
+            // them for messages of the same style
+            return ((SystemEntryBuilder)builder).getStyle();
+
+        } else if (builder instanceof ChatEntryBuilder) {
+            // an entry that may yet be appended to belongs to its builder, so it can't be reused
+            ChatEntryBuilder cbuilder = (ChatEntryBuilder)builder;
+            return cbuilder.isCached() ? null :
+                (isLeftSide(cbuilder.getSpeaker()) ? SENT_ENTRY : RECEIVED_ENTRY);
+        }
+        return null;
+    }
+
+    @Override // from BScrollingList
+    protected BComponent reconfigureComponent (
+        BComponent component, EntryBuilder<BComponent> builder)
+    {
+        if (builder instanceof SystemEntryBuilder) {
+            ((BLabel)component).setText(((SystemEntryBuilder)builder).getMessage());
+            return component;
+
+        } else if (builder instanceof ChatEntryBuilder) {
+            return ((ChatEntryBuilder)builder).rebuild((ChatEntry)component);
+        }
+        return super.reconfigureComponent(component, builder);
+    }
+
     /**
      *  A concrete {@link EntryBuilder} that lazily constructs a fancy {@link ChatEntry} instance
      *  on demand.
@@ -117,21 +148,17 @@ public abstract class ComicChatView
             if (_cachedEntry != null) {
                 return _cachedEntry;
             }
+            return addMessages(new ChatEntry(loadSpeaker(), isLeftSide(_speaker)));
+        }
 
-            // look up our speaker record for this speaker
-            Speaker sprec = _speakers.get(_speaker);
-
-            sprec.loadAvatar(_ctx,
-                    isLeftSide(_speaker) ^ !_ctx.getAvatarLogic().isMale(sprec.getAvatar()));
-
-            ChatEntry entry = new ChatEntry(sprec, isLeftSide(_speaker));
-            if (_message != null) {
-                entry.addMessage(_message);
-            }
-            if (_secondMessage != null) {
-                entry.addMessage(_secondMessage);
-            }
-            return entry;
+        /**
+         *  Reconfigure a {@link ChatEntry} that displayed another builder's messages (from a
+         *  speaker on the same side) to display ours, then return it.
+         */
+        public ChatEntry rebuild (ChatEntry entry)
+        {
+            entry.reset(loadSpeaker());
+            return addMessages(entry);
         }
 
         /**
@@ -179,6 +206,37 @@ public abstract class ComicChatView
             return _speaker;
         }
 
+        /** Checks whether this builder holds on to the entry it built. */
+        protected boolean isCached ()
+        {
+            return _cachedEntry != null;
+        }
+
+        /**
+         *  Look up our speaker record and make sure its avatar is loading.
+         */
+        protected Speaker loadSpeaker ()
+        {
+            Speaker sprec = _speakers.get(_speaker);
+            sprec.loadAvatar(_ctx,
+                    isLeftSide(_speaker) ^ !_ctx.getAvatarLogic().isMale(sprec.getAvatar()));
+            return sprec;
+        }
+
+        /**
+         *  Add our message(s) to the supplied entry and return it.
+         */
+        protected ChatEntry addMessages (ChatEntry entry)
+        {
+            if (_message != null) {
+                entry.addMessage(_message);
+            }
+            if (_secondMessage != null) {
+                entry.addMessage(_secondMessage);
+            }
+            return entry;
+        }
+
         /**
          * When we're done adding messages to this entry, we absolutely must get rid of the cached
          * entry, or the whole point is lost.
@@ -206,7 +264,7 @@ public abstract class ComicChatView
             builder.setSecondMessage(message);
             // clear out the cached height for our builder or the scrolling list won't properly
             // figure things out
-            _values.get(_values.size()-1).height = -1;
+            remeasureValue(_values.size()-1);
             // and inject a snap to bottom request
             _vport.invalidateAndSnap();
         }
@@ -221,16 +279,41 @@ public abstract class ComicChatView
         }
     }
 
+    /**
+     *  An {@link EntryBuilder} for system messages, which are displayed in plain labels.
+     */
+    protected static class SystemEntryBuilder implements EntryBuilder<BComponent>
+    {
+        public SystemEntryBuilder (String message, String style)
+        {
+            _message = message;
+            _style = style;
+        }
+
+        public BComponent build ()
+        {
+            return new BLabel(_message, _style);
+        }
+
+        public String getMessage ()
+        {
+            return _message;
+        }
+
+        public String getStyle ()
+        {
+            return _style;
+        }
+
+        protected String _message, _style;
+    }
+
     // documentation inherited from interface ChatTab
     public void appendSystem (ChatMessage msg)
     {
-        final String formattedMsg = SystemChatView.format(_ctx, msg);
-        final String style = SystemChatView.getAttentionLevel(msg) + "_chat_label";
-        addValue(new EntryBuilder<BComponent>() {
-            public BComponent build() {
-                return new BLabel(formattedMsg, style);
-            }
-        }, true);
+        String formattedMsg = SystemChatView.format(_ctx, msg);
+        String style = SystemChatView.getAttentionLevel(msg) + "_chat_label";
+        addValue(new SystemEntryBuilder(formattedMsg, style), true);
         _last = null;
     }
 
@@ -425,6 +508,18 @@ public abstract class ComicChatView
             add(_left ? 0 : 1, _slabel = speaker.createLabel(_ctx, _showNames), GroupLayout.FIXED);
         }
 
+        /**
+         * Clears out this entry's messages so that it may display those of the specified speaker
+         * (who must be on the same side).
+         */
+        public void reset (Speaker speaker)
+        {
+            this.speaker = speaker;
+            remove(_slabel);
+            add(_left ? 0 : 1, _slabel = speaker.createLabel(_ctx, _showNames), GroupLayout.FIXED);
+            _mcont.removeAll();
+        }
+
         public void addMessage (String msg)
         {
             BLabel label = new BLabel(msg, _left ? "sent_chat_bubble" : "received_chat_bubble") {
@@ -453,6 +548,9 @@ public abstract class ComicChatView
      * of bubbles in sequence. */
     protected ImageBackground _sfbg, _srbg, _rfbg, _rrbg;
 
+    /** The types of reusable chat entries (see {@link #getComponentType}). */
+    protected static final String SENT_ENTRY = "sent_entry", RECEIVED_ENTRY = "received_entry";
+
     /** The max number of chat entries to allow. */
     protected static final int MAX_VALUES = 250;
 
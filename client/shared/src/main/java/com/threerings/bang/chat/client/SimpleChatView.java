@@ -69,6 +69,21 @@ public class SimpleChatView extends BScrollingList<SimpleMessage, BLabel>
         return msg.build();
     }
 
+    @Override // from BScrollingList
+    protected Object getComponentType (SimpleMessage msg)
+    {
+        // labels keep some of the style with which they were first added, so we only reuse them
+        // for messages of the same style
+        return msg.style;
+    }
+
+    @Override // from BScrollingList
+    protected BLabel reconfigureComponent (BLabel label, SimpleMessage msg)
+    {
+        ((MessageLabel)label).setMessage(msg);
+        return label;
+    }
+
     protected void appendSpoken (Handle speaker, String message)
     {
         String formatted = "<" + speaker + "> " + message;
@@ -92,16 +107,35 @@ public class SimpleChatView extends BScrollingList<SimpleMessage, BLabel>
 
         public BLabel build ()
         {
-            if (handle == null) {
-                return new BLabel(message, style);
-            }
-            return new BLabel(message, style) {
-                public boolean dispatchEvent (BEvent event) {
-                    return PlayerPopupMenu.checkPopup(_ctx, getWindow(), event, handle, true) ||
-                        super.dispatchEvent(event);
-                }
-            };
+            MessageLabel label = new MessageLabel(style);
+            label.setMessage(this);
+            return label;
+        }
+    }
+
+    /** Displays a message, popping up the player menu for the speaker (if any). */
+    protected class MessageLabel extends BLabel
+    {
+        public MessageLabel (String style)
+        {
+            super("", style);
+        }
+
+        public void setMessage (SimpleMessage msg)
+        {
+            setText(msg.message);
+            _handle = msg.handle;
         }
+
+        @Override // from BComponent
+        public boolean dispatchEvent (BEvent event)
+        {
+            return (_handle != null &&
+                    PlayerPopupMenu.checkPopup(_ctx, getWindow(), event, _handle, true)) ||
+                super.dispatchEvent(event);
+        }
+
+        protected Handle _handle;
     }
 
     protected BangContext _ctx;
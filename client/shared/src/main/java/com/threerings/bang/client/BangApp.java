@@ -275,6 +275,7 @@ public class BangApp extends JmeApp
     {
         super.update(frameTick);
         _client._soundmgr.updateStreams(_frameTime);
+        _client._detailgov.noteFrame(_frameTime);
     }
 
     @Override // documentation inherited
@@ -52,6 +52,7 @@ import com.threerings.jme.effect.FadeInOutEffect;
 import com.threerings.jme.effect.WindowSlider;
 
 import com.threerings.openal.FileStream;
+import com.threerings.openal.Stream;
 
 import com.threerings.presents.client.Client;
 import com.threerings.presents.client.ClientObserver;
@@ -69,6 +70,7 @@ import com.threerings.crowd.data.PlaceObject;
 
 import com.threerings.admin.data.AdminCodes;
 
+import com.threerings.bang.avatar.client.AvatarImageCache;
 import com.threerings.bang.avatar.client.CreateAvatarView;
 import com.threerings.bang.ranch.data.RanchObject;
 import com.threerings.bang.station.client.FreePassView;
@@ -91,6 +93,8 @@ import com.threerings.bang.saloon.data.SaloonObject;
 
 import com.threerings.bang.client.bui.OptionDialog;
 import com.threerings.bang.client.util.BoardCache;
+import com.threerings.bang.client.util.DecodedAudioCache;
+import com.threerings.bang.client.util.PCMStream;
 import com.threerings.bang.client.util.ReportingListener;
 import com.threerings.bang.data.BangAuthCodes;
 import com.threerings.bang.data.BangAuthResponseData;
@@ -739,11 +743,15 @@ public class BangClient extends BasicClient
 
         try {
             _playingMusic = key;
-            if (!_playedIntro && ifile != null && ifile.exists()) {
-                _playedIntro = true;
-                _mstream = new FileStream(_soundmgr, ifile, false);
-                _mstream.queueFile(mfile, loop);
-            } else {
+            boolean intro = (!_playedIntro && ifile != null && ifile.exists());
+            _playedIntro = _playedIntro || intro;
+            // prefer previously decoded audio; fall back to decoding as we play
+            _mstream = createDecodedStream(intro ? ifile : null, mfile, loop);
+            if (_mstream == null && intro) {
+                FileStream fstream = new FileStream(_soundmgr, ifile, false);
+                fstream.queueFile(mfile, loop);
+                _mstream = fstream;
+            } else if (_mstream == null) {
                 _mstream = new FileStream(_soundmgr, mfile, loop);
             }
 
@@ -759,6 +767,33 @@ public class BangClient extends BasicClient
         }
     }
 
+    /**
+     * Creates a stream that plays the specified (optional) intro and music from the decoded audio
+     * cache, or returns <code>null</code> if either has not yet been decoded, in which case they
+     * will be decoded in the background for the next time they are played.
+     */
+    protected Stream createDecodedStream (File ifile, File mfile, boolean loop)
+    {
+        if (!mfile.getName().endsWith(".ogg")) {
+            return null;
+        }
+        DecodedAudioCache.PCMData intro =
+            (ifile == null) ? null : BangUI.audioCache.getTrack(ifile);
+        DecodedAudioCache.PCMData music = BangUI.audioCache.getTrack(mfile);
+        if (music == null || (ifile != null && intro == null)) {
+            return null;
+        }
+        if (intro == null) {
+            return new PCMStream(_soundmgr, music, loop);
+        }
+        if (intro.format != music.format || intro.frequency != music.frequency) {
+            return null;
+        }
+        PCMStream stream = new PCMStream(_soundmgr, intro, false);
+        stream.queueTrack(music, loop);
+        return stream;
+    }
+
     /**
      * Adjusts the volume of any currently playing music.
      *
@@ -1007,6 +1042,9 @@ public class BangClient extends BasicClient
     // documentation inherited from interface ClientObserver
     public void clientDidLogoff (Client client)
     {
+        log.info("Avatar image cache", "stats", AvatarImageCache.instance.summarizeStats());
+        log.info("Decoded audio cache", "stats", BangUI.audioCache.summarizeStats());
+
         // clear our status view key bindings
         StatusView.clearKeys(_ctx);
 
@@ -1544,7 +1582,7 @@ public class BangClient extends BasicClient
     protected FKeyPopups _functionPopup;
 
     protected String _playingMusic;
-    protected FileStream _mstream;
+    protected Stream _mstream;
     protected boolean _playedIntro;
     protected boolean _viewTransition = false;
     protected String _priorLocationIdent;
@@ -198,6 +198,15 @@ public class BangPrefs
         config.setValue("detail_level", level.name());
     }
 
+    /**
+     * Returns the frame rate that the detail governor tries to maintain during games by shedding
+     * individual effects.
+     */
+    public static int getTargetFrameRate ()
+    {
+        return Math.max(config.getValue("target_frame_rate", 30), 1);
+    }
+
     /**
      * Checks whether the application should recommend changes to the graphical detail level based
      * on performance history.
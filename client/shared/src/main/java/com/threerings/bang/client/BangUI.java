@@ -19,16 +19,13 @@ import javax.swing.text.StyleConstants;
 import javax.swing.text.html.CSS;
 import javax.swing.text.html.StyleSheet;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 
-import org.lwjgl.openal.AL10;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.util.WaveData;
 
@@ -61,7 +58,7 @@ import com.threerings.util.MessageBundle;
 
 import com.threerings.bang.gang.client.GangPopupMenu;
 
-import com.threerings.bang.client.util.OggInputStream;
+import com.threerings.bang.client.util.DecodedAudioCache;
 import com.threerings.bang.client.util.TexturePool;
 import com.threerings.bang.data.Handle;
 import com.threerings.bang.data.UnitConfig;
@@ -132,6 +129,11 @@ public class BangUI
     /** Used to load sounds from the classpath. */
     public static ClipProvider clipprov;
 
+    /** Caches decoded Ogg/Vorbis clips and music tracks. */
+    public static DecodedAudioCache audioCache = new DecodedAudioCache(
+        BangUI.CLIP_CACHE_SIZE, new File(BasicClient.localDataDir("pcm")),
+        BangUI.TRACK_CACHE_SIZE);
+
     /** An icon used to indicate a quantity of scrip. */
     public static BIcon scripIcon;
 
@@ -220,10 +222,7 @@ public class BangUI
         // create our sound clip provider
         clipprov = new ClipProvider() {
             public Clip loadClip (String path) throws IOException {
-                if (path.startsWith("rsrc/")) {
-                    path = path.substring(5);
-                }
-                File file = _ctx.getResourceManager().getResourceFile(path);
+                File file = getSoundFile(path);
                 if (!file.exists()) {
                     throw new IOException("Missing sound resource '" + path + "'.");
                 }
@@ -533,24 +532,25 @@ public class BangUI
         return font;
     }
 
+    /**
+     * Returns the resource file for the specified sound path.
+     */
+    protected static File getSoundFile (String path)
+    {
+        if (path.startsWith("rsrc/")) {
+            path = path.substring(5);
+        }
+        return _ctx.getResourceManager().getResourceFile(path);
+    }
+
     protected static Clip loadOggClip (File file)
         throws IOException
     {
-        OggInputStream istream = new OggInputStream(new FileInputStream(file));
+        DecodedAudioCache.PCMData pcm = audioCache.getClip(file);
         Clip clip = new Clip();
-        clip.format = (istream.getFormat() == OggInputStream.FORMAT_MONO16) ?
-            AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
-        clip.frequency = istream.getRate();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int read;
-        while ((read = istream.read(buffer, 0, buffer.length)) > 0) {
-            out.write(buffer, 0, read);
-        }
-        byte[] bytes = out.toByteArray();
-        clip.data = ByteBuffer.allocateDirect(bytes.length);
-        clip.data.put(bytes);
-        clip.data.rewind();
+        clip.format = pcm.format;
+        clip.frequency = pcm.frequency;
+        clip.data = pcm.getData();
         return clip;
     }
 
@@ -607,6 +607,12 @@ public class BangUI
     /** The number of simultaneous UI sounds allowed. */
     protected static final int UI_SOURCE_COUNT = 2;
 
+    /** The size (in bytes) of the in-memory cache of decoded sound clips. */
+    protected static final int CLIP_CACHE_SIZE = 1024 * 1024 * 16;
+
+    /** The size (in bytes) of the on-disk cache of decoded music tracks. */
+    protected static final long TRACK_CACHE_SIZE = 1024L * 1024 * 256;
+
     /** Sizes of icons we need. */
     protected static final int[] ICON_SIZES = {16, 32, 128};
 
@@ -55,6 +55,7 @@ import com.threerings.bang.util.BasicContext;
 import com.threerings.bang.util.RenderUtil;
 import com.threerings.bang.util.SoundUtil;
 
+import com.threerings.bang.client.util.DetailGovernor;
 import com.threerings.bang.client.util.ModelCache;
 import com.threerings.bang.client.util.ParticleCache;
 import com.threerings.bang.client.util.PerfMonitor;
@@ -134,6 +135,7 @@ public class BasicClient
         _scache = new ShaderCache(_ctx.getResourceManager());
         _mcache = new ModelCache(_ctx);
         _pcache = new ParticleCache(_ctx);
+        _detailgov = new DetailGovernor(1f / BangPrefs.getTargetFrameRate());
 
         // intialize our performance monitor
         PerfMonitor.init(_ctx);
@@ -303,6 +305,10 @@ public class BasicClient
             return _pcache;
         }
 
+        public DetailGovernor getDetailGovernor () {
+            return _detailgov;
+        }
+
         public DisplaySystem getDisplay () {
             return _app.getContext().getDisplay();
         }
@@ -388,6 +394,7 @@ public class BasicClient
     protected ShaderCache _scache;
     protected ModelCache _mcache;
     protected ParticleCache _pcache;
+    protected DetailGovernor _detailgov;
     protected CharacterManager _charmgr;
     protected AvatarLogic _alogic;
 
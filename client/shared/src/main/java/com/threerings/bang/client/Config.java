@@ -65,6 +65,34 @@ public class Config
     /** Whether or not to display unit geometry. */
     public static boolean displayUnits = true;
 
+    /** Whether or not models that are small on screen animate at reduced detail. */
+    public static boolean animationLOD = true;
+
+    /** The minimum size on screen (in pixels) at which models animate at full detail. */
+    public static float lodFullSize = 64f;
+
+    /** The minimum size on screen (in pixels) at which models animate at a reduced rate (below
+     * which they show stored frames). */
+    public static float lodReducedSize = 32f;
+
+    /** The minimum size on screen (in pixels) at which models play looping animations. */
+    public static float lodBakedSize = 12f;
+
+    /** The maximum distance from the camera at which models animate at full detail (zero for
+     * no limit). */
+    public static float lodFullDistance = 600f;
+
+    /** The maximum distance from the camera at which models animate at a reduced rate (zero for
+     * no limit). */
+    public static float lodReducedDistance = 1200f;
+
+    /** The maximum distance from the camera at which models play looping animations (zero for
+     * no limit). */
+    public static float lodBakedDistance = 2400f;
+
+    /** The rate (in updates per second) at which models animate at reduced detail. */
+    public static float lodReducedRate = 15f;
+
     /** Returns the unit movement speed modulated by the total
      * animation speed. */
     public static float getMovementSpeed ()
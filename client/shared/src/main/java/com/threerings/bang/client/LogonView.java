@@ -88,7 +88,9 @@ public class LogonView extends BWindow
             }
 
             // change the new account button to server status for certain response codes
-            if (msg.equals(BangAuthCodes.UNDER_MAINTENANCE)) {
+            if (msg.equals(BangAuthCodes.UNDER_MAINTENANCE) ||
+                msg.equals(BangAuthCodes.SERVER_STARTING) ||
+                msg.startsWith(BangAuthCodes.SERVER_BUSY)) {
                 connectionFailure = true;
             } else if (msg.startsWith(BangAuthCodes.TEMP_BANNED)) {
                 msg = BangAuthCodes.TEMP_BANNED;
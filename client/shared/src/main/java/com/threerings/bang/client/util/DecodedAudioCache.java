@@ -0,0 +1,470 @@
+//
+// $Id$
+
+package com.threerings.bang.client.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.openal.AL10;
+
+import com.samskivert.util.LRUHashMap;
+import com.samskivert.util.StringUtil;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Caches decoded Ogg/Vorbis audio so that sounds need not be decoded every time they are played.
+ * Short clips are decoded into direct buffers held in a size-bounded LRU cache. Long tracks are
+ * decoded ahead of time (on a background thread) into raw PCM files on disk which are then
+ * memory-mapped for playback.
+ */
+public class DecodedAudioCache
+{
+    /** Decoded audio along with its format. */
+    public static class PCMData
+    {
+        /** The OpenAL format of the data. */
+        public final int format;
+
+        /** The sample rate of the data. */
+        public final int frequency;
+
+        public PCMData (int format, int frequency, ByteBuffer data)
+        {
+            this.format = format;
+            this.frequency = frequency;
+            _data = data;
+        }
+
+        /**
+         * Returns a view of the data positioned at its start. The view may be modified freely
+         * without affecting the cached copy.
+         */
+        public ByteBuffer getData ()
+        {
+            return _data.duplicate();
+        }
+
+        /**
+         * Returns the size of the data in bytes.
+         */
+        public int getSize ()
+        {
+            return _data.capacity();
+        }
+
+        protected ByteBuffer _data;
+    }
+
+    /**
+     * Decodes the specified Ogg/Vorbis file in its entirety into a direct buffer.
+     */
+    public static PCMData decode (File file)
+        throws IOException
+    {
+        OggInputStream istream = new OggInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = istream.read(buffer, 0, buffer.length)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            byte[] bytes = out.toByteArray();
+            ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+            data.put(bytes);
+            data.rewind();
+            return new PCMData(getFormat(istream), istream.getRate(), data);
+        } finally {
+            istream.close();
+        }
+    }
+
+    /**
+     * Creates a cache that holds up to the specified number of bytes of decoded clips in memory
+     * and stores up to the specified number of bytes of decoded tracks in the given directory.
+     */
+    public DecodedAudioCache (int maxClipBytes, File trackDir, long maxTrackBytes)
+    {
+        _clips = new LRUHashMap<File, PCMData>(
+            maxClipBytes, new LRUHashMap.ItemSizer<PCMData>() {
+            public int computeSize (PCMData clip) {
+                return clip.getSize();
+            }
+        });
+        _trackDir = trackDir;
+        _maxTrackBytes = maxTrackBytes;
+    }
+
+    /**
+     * Returns the decoded contents of the specified clip, decoding it on the calling thread if it
+     * is not already cached (or waiting for another caller's decode to finish). May be called
+     * from any thread.
+     */
+    public PCMData getClip (File file)
+        throws IOException
+    {
+        FutureTask<PCMData> task;
+        boolean run = false;
+        synchronized (this) {
+            PCMData clip = _clips.get(file);
+            if (clip != null) {
+                _clipHits++;
+                return clip;
+            }
+            _clipMisses++;
+            task = _pending.get(file);
+            if (task == null) {
+                _pending.put(file, task = createClipTask(file));
+                run = true;
+            }
+        }
+        if (run) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            throw (IOException)new IOException("Interrupted decoding " + file).initCause(ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            throw (IOException)new IOException("Failed to decode " + file).initCause(cause);
+        }
+    }
+
+    /**
+     * Returns the decoded contents of the specified track, memory-mapped from the disk cache, or
+     * <code>null</code> if the track has not yet been decoded (in which case decoding will be
+     * started on a background thread).
+     */
+    public PCMData getTrack (File file)
+    {
+        File pfile = getTrackFile(file);
+        if (pfile.exists()) {
+            try {
+                PCMData track = mapTrack(pfile);
+                synchronized (this) {
+                    _trackHits++;
+                }
+                pfile.setLastModified(System.currentTimeMillis()); // for pruning
+                return track;
+            } catch (IOException ioe) {
+                log.warning("Failed to map decoded track", "file", pfile, "error", ioe);
+                pfile.delete();
+            }
+        }
+        synchronized (this) {
+            _trackMisses++;
+        }
+        decodeTrackAhead(file);
+        return null;
+    }
+
+    /**
+     * Starts decoding the specified track to the disk cache on a background thread if it has not
+     * already been decoded.
+     */
+    public void decodeTrackAhead (final File file)
+    {
+        final File pfile = getTrackFile(file);
+        synchronized (this) {
+            if (pfile.exists() || _pendingTracks.containsKey(pfile)) {
+                return;
+            }
+            _pendingTracks.put(pfile, file);
+        }
+        getExecutor().execute(new Runnable() {
+            public void run () {
+                try {
+                    writeTrack(file, pfile);
+                    pruneTracks();
+                } catch (IOException ioe) {
+                    log.warning("Failed to decode track", "file", file, "error", ioe);
+                } finally {
+                    synchronized (DecodedAudioCache.this) {
+                        _pendingTracks.remove(pfile);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of clip requests satisfied from the cache.
+     */
+    public synchronized int getClipHits ()
+    {
+        return _clipHits;
+    }
+
+    /**
+     * Returns the number of clip requests that required (or waited on) a decode.
+     */
+    public synchronized int getClipMisses ()
+    {
+        return _clipMisses;
+    }
+
+    /**
+     * Returns the fraction of clip requests satisfied from the cache.
+     */
+    public synchronized float getClipHitRate ()
+    {
+        int total = _clipHits + _clipMisses;
+        return (total == 0) ? 0f : _clipHits / (float)total;
+    }
+
+    /**
+     * Returns the total number of bytes of PCM audio we have decoded.
+     */
+    public synchronized long getDecodedBytes ()
+    {
+        return _decodedBytes;
+    }
+
+    /**
+     * Returns our decoding throughput in bytes of PCM audio per second.
+     */
+    public synchronized float getDecodeThroughput ()
+    {
+        return (_decodeNanos == 0L) ? 0f : _decodedBytes * 1e9f / _decodeNanos;
+    }
+
+    /**
+     * Returns a summary of our cache statistics suitable for logging.
+     */
+    public synchronized String summarizeStats ()
+    {
+        return "clipHits=" + _clipHits + ", clipMisses=" + _clipMisses +
+            ", clips=" + _clips.size() + ", trackHits=" + _trackHits +
+            ", trackMisses=" + _trackMisses + ", decodedBytes=" + _decodedBytes +
+            ", decodeKBps=" + (int)(getDecodeThroughput() / 1024);
+    }
+
+    /**
+     * Creates a task to decode the specified clip and store it in the cache.
+     */
+    protected FutureTask<PCMData> createClipTask (final File file)
+    {
+        return new FutureTask<PCMData>(new Callable<PCMData>() {
+            public PCMData call () throws Exception {
+                try {
+                    long start = System.nanoTime();
+                    PCMData clip = decode(file);
+                    synchronized (DecodedAudioCache.this) {
+                        noteDecoded(clip.getSize(), System.nanoTime() - start);
+                        _clips.put(file, clip);
+                    }
+                    return clip;
+                } finally {
+                    synchronized (DecodedAudioCache.this) {
+                        _pending.remove(file);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes the specified Ogg/Vorbis file into a raw PCM file.
+     */
+    protected void writeTrack (File file, File pfile)
+        throws IOException
+    {
+        long start = System.nanoTime();
+        File dir = pfile.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File tmp = new File(dir, pfile.getName() + ".tmp");
+        OggInputStream istream = new OggInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        long written = 0L;
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(TRACK_MAGIC);
+                out.writeInt(getFormat(istream));
+                out.writeInt(istream.getRate());
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = istream.read(buffer, 0, buffer.length)) > 0) {
+                    out.write(buffer, 0, read);
+                    written += read;
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            tmp.delete();
+            throw ioe;
+        } finally {
+            istream.close();
+        }
+        if (!tmp.renameTo(pfile)) {
+            tmp.delete();
+            throw new IOException("Unable to rename " + tmp + " to " + pfile);
+        }
+        synchronized (this) {
+            noteDecoded(written, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Maps the contents of a decoded track file into memory.
+     */
+    protected PCMData mapTrack (File pfile)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(pfile, "r");
+        try {
+            if (raf.readInt() != TRACK_MAGIC) {
+                throw new IOException("Invalid track header");
+            }
+            int format = raf.readInt(), frequency = raf.readInt();
+            FileChannel channel = raf.getChannel();
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, TRACK_HEADER_SIZE,
+                                          channel.size() - TRACK_HEADER_SIZE);
+            return new PCMData(format, frequency, data);
+        } finally {
+            raf.close(); // the mapping remains valid after the file is closed
+        }
+    }
+
+    /**
+     * Deletes the least recently used decoded tracks until we're within our size limit.
+     */
+    protected void pruneTracks ()
+    {
+        File[] files = _trackDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0L;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare (File f1, File f2) {
+                long m1 = f1.lastModified(), m2 = f2.lastModified();
+                return (m1 < m2) ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        for (int ii = 0; ii < files.length && total > _maxTrackBytes; ii++) {
+            long length = files[ii].length();
+            if (files[ii].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * Returns the disk cache file for the specified track, which incorporates the track's path,
+     * size and modification time so that updated tracks are decoded afresh.
+     */
+    protected File getTrackFile (File file)
+    {
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified() +
+            ":" + ByteOrder.nativeOrder();
+        return new File(_trackDir, StringUtil.md5hex(key) + ".pcm");
+    }
+
+    /**
+     * Notes that we decoded the specified amount of data in the specified time.
+     */
+    protected void noteDecoded (long bytes, long nanos)
+    {
+        _decodedBytes += bytes;
+        _decodeNanos += nanos;
+    }
+
+    /**
+     * Returns the executor on which we decode tracks in the background, creating it if necessary.
+     * Clips are never decoded here, so that they need not wait behind a long track.
+     */
+    protected synchronized ExecutorService getExecutor ()
+    {
+        if (_exec == null) {
+            ThreadPoolExecutor exec = new ThreadPoolExecutor(
+                1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Track Decoder");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+            exec.allowCoreThreadTimeOut(true);
+            _exec = exec;
+        }
+        return _exec;
+    }
+
+    /**
+     * Returns the OpenAL format corresponding to the format of the supplied stream.
+     */
+    protected static int getFormat (OggInputStream istream)
+    {
+        return (istream.getFormat() == OggInputStream.FORMAT_MONO16) ?
+            AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+    }
+
+    /** Decoded clips, bounded by total size. */
+    protected LRUHashMap<File, PCMData> _clips;
+
+    /** Clips currently being decoded. */
+    protected HashMap<File, FutureTask<PCMData>> _pending =
+        new HashMap<File, FutureTask<PCMData>>();
+
+    /** Decoded track files currently being written, mapped to their sources. */
+    protected HashMap<File, File> _pendingTracks = new HashMap<File, File>();
+
+    /** The directory in which we store decoded tracks. */
+    protected File _trackDir;
+
+    /** The maximum total size of our decoded tracks. */
+    protected long _maxTrackBytes;
+
+    /** The executor on which we decode tracks in the background, created on demand. */
+    protected ExecutorService _exec;
+
+    /** Cache statistics. */
+    protected int _clipHits, _clipMisses, _trackHits, _trackMisses;
+    protected long _decodedBytes, _decodeNanos;
+
+    /** Identifies our decoded track files. */
+    protected static final int TRACK_MAGIC = 0x50434D31; // "PCM1"
+
+    /** The size of the header that precedes the PCM data in a track file. */
+    protected static final int TRACK_HEADER_SIZE = 12;
+}
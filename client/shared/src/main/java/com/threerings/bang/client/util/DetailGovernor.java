@@ -0,0 +1,251 @@
+//
+// $Id$
+
+package com.threerings.bang.client.util;
+
+import java.util.Arrays;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Adjusts individual graphical features at runtime in order to keep the frame time within a
+ * budget.  The governor watches a rolling window of frame times and, when the average exceeds the
+ * budget, sheds detail one step at a time (cheapest to lose first); when the average stays well
+ * under the budget for long enough, it restores detail one step at a time.  The gap between the
+ * two thresholds and the delay before restoring provide hysteresis, and the delay doubles each
+ * time a restored step has to be shed again straight away (and halves each time one holds up), so
+ * that the governor settles rather than oscillating between two steps.
+ *
+ * <p> The governor only ever lowers detail below that allowed by the configured {@link
+ * com.threerings.bang.client.BangPrefs.DetailLevel}; call sites check both.  It does not depend on
+ * the display and may be driven with synthetic frame times.
+ */
+public class DetailGovernor
+{
+    /**
+     * Creates a governor that aims to keep frames within the specified budget.
+     *
+     * @param budget the target frame time, in seconds.
+     */
+    public DetailGovernor (float budget)
+    {
+        _budget = budget;
+    }
+
+    /**
+     * Returns the target frame time, in seconds.
+     */
+    public float getBudget ()
+    {
+        return _budget;
+    }
+
+    /**
+     * Starts or stops sampling frame times.  Frames noted while not sampling are ignored, so that
+     * loading screens and the like do not influence the level of detail.  Either way, the window
+     * is cleared; the current step is retained.
+     */
+    public void setSampling (boolean sampling)
+    {
+        _sampling = sampling;
+        clearWindow();
+        _calm = 0;
+    }
+
+    /**
+     * Checks whether we are sampling frame times.
+     */
+    public boolean isSampling ()
+    {
+        return _sampling;
+    }
+
+    /**
+     * Notes the duration of a frame and adjusts the level of detail if necessary.
+     *
+     * @param time the duration of the frame, in seconds.
+     */
+    public void noteFrame (float time)
+    {
+        if (!_sampling || time <= 0f) {
+            return;
+        }
+
+        // clamp hitches so that a single slow frame can't dominate the window
+        time = Math.min(time, _budget * MAX_SPIKE);
+        _sum += time - _window[_idx];
+        _window[_idx] = time;
+        _idx = (_idx + 1) % WINDOW_SIZE;
+        _frames++;
+
+        // if the last restored step has held up, relax the delay before the next
+        if (++_sinceUpgrade == WINDOW_SIZE * 2 + 1) {
+            _upgradeDelay = Math.max(_upgradeDelay / 2, MIN_UPGRADE_DELAY);
+        }
+
+        // wait until the window is full of frames rendered at the current step
+        if (_frames < WINDOW_SIZE) {
+            return;
+        }
+        float avg = getAverageFrameTime();
+        if (avg > _budget * DEGRADE_THRESHOLD) {
+            _calm = 0;
+            if (_step < STEPS - 1) {
+                // if we just restored this step and it didn't fit, wait longer next time
+                if (_sinceUpgrade <= WINDOW_SIZE * 2) {
+                    _upgradeDelay = Math.min(_upgradeDelay * 2, MAX_UPGRADE_DELAY);
+                }
+                _sinceUpgrade = NO_UPGRADE;
+                setStep(_step + 1, avg);
+            }
+
+        } else if (avg < _budget * UPGRADE_THRESHOLD) {
+            if (_step > 0 && ++_calm >= _upgradeDelay) {
+                _calm = 0;
+                _sinceUpgrade = 0;
+                setStep(_step - 1, avg);
+            }
+
+        } else {
+            _calm = 0;
+        }
+    }
+
+    /**
+     * Returns the average frame time in the window, in seconds.
+     */
+    public float getAverageFrameTime ()
+    {
+        int count = Math.min(_frames, WINDOW_SIZE);
+        return (count == 0) ? 0f : _sum / count;
+    }
+
+    /**
+     * Returns the current degradation step, from zero (full detail) to {@link #STEPS} - 1.
+     */
+    public int getStep ()
+    {
+        return _step;
+    }
+
+    /**
+     * Returns the number of frames that the average must remain under the upgrade threshold before
+     * a step of detail is restored.
+     */
+    public int getUpgradeDelay ()
+    {
+        return _upgradeDelay;
+    }
+
+    /**
+     * Returns the factor by which to scale the release rates of newly created particle systems.
+     */
+    public float getParticleScale ()
+    {
+        return PARTICLE_SCALES[_step];
+    }
+
+    /**
+     * Returns the number of frames between updates of the water's wave simulation, or zero if the
+     * waves should be frozen.
+     */
+    public int getWaveInterval ()
+    {
+        return WAVE_INTERVALS[_step];
+    }
+
+    /**
+     * Checks whether idle units should play their idle animations.
+     */
+    public boolean areIdleAnimationsEnabled ()
+    {
+        return IDLE_ANIMATIONS[_step];
+    }
+
+    /**
+     * Changes the current step and starts a new window.
+     */
+    protected void setStep (int step, float avg)
+    {
+        log.info("Adjusting detail", "step", step, "avgFrameTime", avg, "budget", _budget,
+                 "upgradeDelay", _upgradeDelay);
+        _step = step;
+        clearWindow();
+    }
+
+    /**
+     * Clears out the window of frame times.
+     */
+    protected void clearWindow ()
+    {
+        Arrays.fill(_window, 0f);
+        _sum = 0f;
+        _idx = 0;
+        _frames = 0;
+    }
+
+    /** The target frame time. */
+    protected float _budget;
+
+    /** Whether or not we're sampling frame times. */
+    protected boolean _sampling;
+
+    /** The rolling window of frame times. */
+    protected float[] _window = new float[WINDOW_SIZE];
+
+    /** The sum of the frame times in the window. */
+    protected float _sum;
+
+    /** The index at which to record the next frame time. */
+    protected int _idx;
+
+    /** The number of frames recorded since the window was last cleared. */
+    protected int _frames;
+
+    /** The current degradation step. */
+    protected int _step;
+
+    /** The number of consecutive frames on which the average has been under the upgrade
+     * threshold. */
+    protected int _calm;
+
+    /** The number of frames since the last upgrade, if we haven't downgraded since. */
+    protected int _sinceUpgrade = NO_UPGRADE;
+
+    /** The current number of calm frames required for an upgrade. */
+    protected int _upgradeDelay = MIN_UPGRADE_DELAY;
+
+    /** The value of {@link #_sinceUpgrade} when no upgrade has taken place since the last
+     * downgrade. */
+    protected static final int NO_UPGRADE = Integer.MAX_VALUE / 2;
+
+    /** The number of frames in the rolling window. */
+    protected static final int WINDOW_SIZE = 60;
+
+    /** We shed detail when the average frame time exceeds the budget by this factor. */
+    protected static final float DEGRADE_THRESHOLD = 1.1f;
+
+    /** We restore detail when the average frame time is below the budget by this factor. */
+    protected static final float UPGRADE_THRESHOLD = 0.7f;
+
+    /** Frame times are clamped to this multiple of the budget. */
+    protected static final float MAX_SPIKE = 4f;
+
+    /** The initial (and minimum) number of calm frames required for an upgrade. */
+    protected static final int MIN_UPGRADE_DELAY = WINDOW_SIZE * 3;
+
+    /** The maximum number of calm frames required for an upgrade. */
+    protected static final int MAX_UPGRADE_DELAY = WINDOW_SIZE * 48;
+
+    /** The particle release rate scale at each step. */
+    protected static final float[] PARTICLE_SCALES = { 1f, 0.5f, 0.5f, 0.5f, 0.25f, 0.25f };
+
+    /** The wave update interval at each step. */
+    protected static final int[] WAVE_INTERVALS = { 1, 1, 2, 2, 2, 0 };
+
+    /** Whether idle animations are enabled at each step. */
+    protected static final boolean[] IDLE_ANIMATIONS = { true, true, true, false, false, false };
+
+    /** The number of degradation steps. */
+    public static final int STEPS = PARTICLE_SCALES.length;
+}
@@ -30,6 +30,7 @@ import com.samskivert.util.ObjectUtil;
 import com.samskivert.util.ResultHandler;
 import com.samskivert.util.ResultListener;
 
+import com.threerings.jme.model.AnimationLOD;
 import com.threerings.jme.model.Model;
 import com.threerings.jme.model.ModelMesh;
 import com.threerings.jme.model.TextureProvider;
@@ -67,6 +68,39 @@ public class ModelCache extends PrototypeCache<ModelCache.ModelKey, Model>
                 _ctx.getRenderer().clearVBOCache();
             }
         }.schedule(FLUSH_INTERVAL, true);
+
+        // keep the animation level of detail policy up to date with the runtime configuration
+        Config.Hook hook = new Config.Hook() {
+            public void valueUpdated () {
+                _animLOD.setEnabled(Config.animationLOD);
+                _animLOD.setSizeThresholds(
+                    Config.lodFullSize, Config.lodReducedSize, Config.lodBakedSize);
+                _animLOD.setDistanceThresholds(
+                    getDistance(Config.lodFullDistance), getDistance(Config.lodReducedDistance),
+                    getDistance(Config.lodBakedDistance));
+                _animLOD.setReducedRate(Config.lodReducedRate);
+            }
+        };
+        for (String field : LOD_FIELDS) {
+            Config.registerHook(field, hook);
+        }
+    }
+
+    /**
+     * Converts a configured level of detail distance to a threshold, where zero (or less) means
+     * no limit.
+     */
+    protected static float getDistance (float distance)
+    {
+        return (distance > 0f) ? distance : Float.MAX_VALUE;
+    }
+
+    /**
+     * Returns the policy that determines the animation level of detail of all models.
+     */
+    public AnimationLOD getAnimationLOD ()
+    {
+        return _animLOD;
     }
 
     /**
@@ -172,6 +206,7 @@ public class ModelCache extends PrototypeCache<ModelCache.ModelKey, Model>
         }
         prototype.lockStaticMeshes(_ctx.getRenderer(), Config.useVBOs,
             Config.useDisplayLists);
+        prototype.setAnimationLOD(_animLOD);
     }
 
     // documentation inherited
@@ -391,6 +426,14 @@ public class ModelCache extends PrototypeCache<ModelCache.ModelKey, Model>
     /** The queue of prototypes to destroy. */
     protected ReferenceQueue<Model> _cleared = new ReferenceQueue<Model>();
 
+    /** The animation level of detail policy shared by all models. */
+    protected AnimationLOD _animLOD = new AnimationLOD();
+
     /** The rate at which to check for cleared prototypes to destroy. */
     protected static final long FLUSH_INTERVAL = 5000L;
+
+    /** The configuration fields that control the animation level of detail. */
+    protected static final String[] LOD_FIELDS = {
+        "animationLOD", "lodFullSize", "lodReducedSize", "lodBakedSize", "lodFullDistance",
+        "lodReducedDistance", "lodBakedDistance", "lodReducedRate" };
 }
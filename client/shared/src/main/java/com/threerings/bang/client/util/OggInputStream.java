@@ -112,8 +112,8 @@ public class OggInputStream extends JMEAudioInputStream {
     /// Conversion buffer size
     private static int convsize = bufsize * 2;
 
-    // Conversion buffer
-    private static byte[] convbuffer = new byte[convsize];
+    // Conversion buffer (per stream, so that streams may be decoded on multiple threads)
+    private byte[] convbuffer = new byte[convsize];
 
     // where we are in the convbuffer
     private int convbufferOff = 0;
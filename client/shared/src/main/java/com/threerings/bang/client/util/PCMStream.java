@@ -0,0 +1,111 @@
+//
+// $Id$
+
+package com.threerings.bang.client.util;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+
+import com.threerings.openal.SoundManager;
+import com.threerings.openal.Stream;
+
+/**
+ * Streams previously decoded (and typically memory-mapped) PCM audio, avoiding the cost of
+ * decoding compressed audio while the game is rendering.
+ */
+public class PCMStream extends Stream
+{
+    /**
+     * Creates a stream that plays the supplied track.
+     */
+    public PCMStream (SoundManager soundmgr, DecodedAudioCache.PCMData track, boolean loop)
+    {
+        super(soundmgr);
+        _format = track.format;
+        _frequency = track.frequency;
+        _data = track.getData();
+        _loop = loop;
+    }
+
+    /**
+     * Queues up a track to play after the current one, which must have the same format as this
+     * stream's first track.
+     */
+    public void queueTrack (DecodedAudioCache.PCMData track, boolean loop)
+    {
+        if (track.format != _format || track.frequency != _frequency) {
+            throw new IllegalArgumentException("Queued track format does not match stream.");
+        }
+        _queue.add(new QueuedTrack(track, loop));
+    }
+
+    @Override // documentation inherited
+    protected int getFormat ()
+    {
+        return _format;
+    }
+
+    @Override // documentation inherited
+    protected int getFrequency ()
+    {
+        return _frequency;
+    }
+
+    @Override // documentation inherited
+    protected int populateBuffer (ByteBuffer buf)
+        throws IOException
+    {
+        int read = 0;
+        while (buf.hasRemaining()) {
+            if (!_data.hasRemaining()) {
+                if (!_queue.isEmpty()) {
+                    QueuedTrack next = _queue.remove(0);
+                    _data = next.track.getData();
+                    _loop = next.loop;
+                } else if (_loop) {
+                    _data.rewind();
+                } else {
+                    break;
+                }
+                if (!_data.hasRemaining()) {
+                    break; // empty track; avoid spinning
+                }
+            }
+            int length = Math.min(buf.remaining(), _data.remaining());
+            ByteBuffer slice = _data.slice();
+            slice.limit(length);
+            buf.put(slice);
+            _data.position(_data.position() + length);
+            read += length;
+        }
+        return read;
+    }
+
+    /** A track waiting to be played. */
+    protected static class QueuedTrack
+    {
+        public DecodedAudioCache.PCMData track;
+        public boolean loop;
+
+        public QueuedTrack (DecodedAudioCache.PCMData track, boolean loop)
+        {
+            this.track = track;
+            this.loop = loop;
+        }
+    }
+
+    /** The format and sample rate of our tracks. */
+    protected int _format, _frequency;
+
+    /** The data for the track currently playing. */
+    protected ByteBuffer _data;
+
+    /** Whether to loop the current track. */
+    protected boolean _loop;
+
+    /** Tracks queued to play after the current one. */
+    protected ArrayList<QueuedTrack> _queue = new ArrayList<QueuedTrack>();
+}
@@ -204,7 +204,7 @@ public class ParticleCache extends PrototypeCache<String, Spatial>
 
         // copy flow parameters
         instance.setControlFlow(prototype.getParticleController().isControlFlow());
-        instance.setReleaseRate(prototype.getReleaseRate());
+        instance.setReleaseRate(getReleaseRate(prototype));
         instance.setReleaseVariance(prototype.getReleaseVariance());
         instance.setRepeatType(prototype.getParticleController().getRepeatType());
 
@@ -256,6 +256,17 @@ public class ParticleCache extends PrototypeCache<String, Spatial>
         return instance;
     }
 
+    /**
+     * Returns the release rate for a new instance of the given prototype, scaled down as required
+     * by the detail governor.
+     */
+    protected int getReleaseRate (ParticleGeometry prototype)
+    {
+        int rate = prototype.getReleaseRate();
+        float scale = _ctx.getDetailGovernor().getParticleScale();
+        return (scale < 1f && rate > 0) ? Math.max(1, Math.round(rate * scale)) : rate;
+    }
+
     /** The particle effects available for loading. */
     protected HashSet<String> _particles = new HashSet<String>();
 }
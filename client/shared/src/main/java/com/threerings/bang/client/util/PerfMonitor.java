@@ -5,6 +5,7 @@ package com.threerings.bang.client.util;
 
 import com.samskivert.util.Interval;
 
+import com.threerings.jme.model.AnimationLOD;
 import com.threerings.media.timer.NanoTimer;
 import com.threerings.util.MessageBundle;
 
@@ -78,6 +79,27 @@ public class PerfMonitor
                 _models[0] = _models[1] = _models[2] = 0;
             }
         }
+
+        // report the number of model animation updates at each level of detail (which happen
+        // continuously during play, so only when statistics have been requested)
+        AnimationLOD lod = _ctx.getModelCache().getAnimationLOD();
+        if (_reportToChat) {
+            int full = lod.getCount(AnimationLOD.Tier.FULL);
+            int reduced = lod.getCount(AnimationLOD.Tier.REDUCED);
+            int baked = lod.getCount(AnimationLOD.Tier.BAKED);
+            int frozen = lod.getCount(AnimationLOD.Tier.FROZEN);
+            if (full + reduced + baked + frozen > 0) {
+                log.info("Animation LOD report", "full", full, "reduced", reduced,
+                         "baked", baked, "frozen", frozen);
+                if (_ctx instanceof BangContext) {
+                    String msg = "Anim LOD: " + full + "/" + reduced + "/" + baked + "/" +
+                        frozen;
+                    ((BangContext)_ctx).getChatDirector().displayInfo(
+                        null, MessageBundle.taint(msg));
+                }
+            }
+        }
+        lod.resetCounts();
     }
 
     protected static BasicContext _ctx;
@@ -41,6 +41,17 @@ public interface BangAuthCodes extends AuthCodes
      * login is not allowed. */
     public static final String UNDER_MAINTENANCE = "m.under_maintenance";
 
+    /** A code indicating that the server is still starting up and not yet accepting logons. */
+    public static final String SERVER_STARTING = "m.server_starting";
+
+    /** A code indicating that too many clients are waiting to be authenticated; composed with the
+     * number of clients ahead of the one being turned away. */
+    public static final String SERVER_BUSY = "m.server_busy";
+
+    /** A code indicating that the logon was abandoned in favor of a later one for the same
+     * account. */
+    public static final String LOGON_SUPERSEDED = "m.logon_superseded";
+
     /** A code indicating that the client version is out of date. */
     public static final String VERSION_MISMATCH = "m.version_mismatch";
 
@@ -301,7 +301,7 @@ public class EditorBoardView extends BoardView
 
         // dirty the edit and update the terrain splats
         _tedit.dirty(dirty);
-        _tnode.refreshTerrain(dirty.x, dirty.y, dirty.x + dirty.width - 1,
+        _tnode.queueTerrainRefresh(dirty.x, dirty.y, dirty.x + dirty.width - 1,
             dirty.y + dirty.height - 1);
     }
 
@@ -951,7 +951,7 @@ public class EditorBoardView extends BoardView
      */
     protected void heightfieldChanged (int x1, int y1, int x2, int y2)
     {
-        _tnode.refreshHeightfield(x1, y1, x2, y2);
+        _tnode.queueHeightfieldRefresh(x1, y1, x2, y2);
 
         int txmax = _board.getWidth() - 1, tymax = _board.getHeight() - 1,
             tx1 = clamp(x1 / BangBoard.HEIGHTFIELD_SUBDIVISIONS, 0, txmax),
@@ -61,7 +61,9 @@ public interface BangService extends InvocationService<PlayerObject>
      * @param perfhisto a histogram of one second samples of frame rate, each
      * bucket represents 10 fps (0-9, 10-19, 20-29, etc.) up to 60 fps for a
      * total of seven buckets. The client samples FPS every second and
-     * increments the counter in the appropriate bucket.
+     * increments the counter in the appropriate bucket. These are followed by
+     * ten buckets of hover pick times, each representing 100 microseconds
+     * (0-99, 100-199, etc.) with the last collecting all slower picks.
      */
     public void reportPerformance (String board, String driver, int[] perfhisto);
 }
@@ -657,11 +657,16 @@ public class BangView extends BWindow
 
         public void start () {
             _boardId = StringUtil.hexlate(_bangobj.boardHash);
+            view.getSpritePicker().getPickTimes().clear();
             schedule(1000L, true);
+
+            // let the detail governor trim effects to keep up the frame rate during the round
+            _ctx.getDetailGovernor().setSampling(true);
         }
 
         public void end () {
             cancel();
+            _ctx.getDetailGovernor().setSampling(false);
 
             // if we've already reported, then stop here
             if (_boardId == null) {
@@ -670,7 +675,12 @@ public class BangView extends BWindow
 
             // make sure we're not too late to the party
             if (_bangobj != null) {
-                int[] histo = _perfhisto.getBuckets().clone();
+                // append the hover pick time buckets to the frame rate buckets
+                int[] fps = _perfhisto.getBuckets(),
+                    picks = view.getSpritePicker().getPickTimes().getBuckets();
+                int[] histo = new int[fps.length + picks.length];
+                System.arraycopy(fps, 0, histo, 0, fps.length);
+                System.arraycopy(picks, 0, histo, fps.length, picks.length);
                 String driver = GL11.glGetString(GL11.GL_VENDOR) + ", " +
                     GL11.glGetString(GL11.GL_RENDERER) + ", " +
                     GL11.glGetString(GL11.GL_VERSION);
@@ -685,6 +695,7 @@ public class BangView extends BWindow
             }
 
             _perfhisto.clear();
+            view.getSpritePicker().getPickTimes().clear();
             _boardId = null;
         }
 
@@ -257,6 +257,7 @@ public class BoardView extends BComponent
         if (Config.displayModels) {
             _node.attachChild(_pnode);
         }
+        _picker = new SpritePicker(_pnode);
 
         // create our highlight alpha state
         _hastate = ctx.getDisplay().getRenderer().createAlphaState();
@@ -346,6 +347,7 @@ public class BoardView extends BComponent
         _board = _bangobj.board;
         _board.init(_bangobj.teams, _bangobj.getPropPieceIterator());
         _bbounds = new Rectangle(0, 0, _board.getWidth(), _board.getHeight());
+        _picker.setBoardSize(_board.getWidth(), _board.getHeight());
 
         // create a marquee if we've been configured to do so
         if (_bangobj.marquee != null) {
@@ -667,11 +669,13 @@ public class BoardView extends BComponent
         sprite.updateRenderState();
         sprite.updateGeometricState(0.0f, true);
         if (sprite instanceof PieceSprite) {
+            _picker.addTarget(sprite);
             Spatial highlight = ((PieceSprite)sprite).getHighlight();
             if (highlight != null) {
                 _pnode.attachChild(highlight);
                 highlight.updateRenderState();
                 _plights.put(highlight, sprite);
+                _picker.addTarget(highlight);
             }
         }
     }
@@ -683,10 +687,12 @@ public class BoardView extends BComponent
     {
         _pnode.detachChild(sprite);
         if (sprite instanceof PieceSprite) {
+            _picker.removeTarget(sprite);
             Spatial highlight = ((PieceSprite)sprite).getHighlight();
             if (highlight != null) {
                 _pnode.detachChild(highlight);
                 _plights.remove(highlight);
+                _picker.removeTarget(highlight);
             }
         }
     }
@@ -718,6 +724,14 @@ public class BoardView extends BComponent
         return _pieces.get(piece.pieceId);
     }
 
+    /**
+     * Returns the picker used to find the sprites under the mouse.
+     */
+    public SpritePicker getSpritePicker ()
+    {
+        return _picker;
+    }
+
     /**
      * Returns true if the specified sprite is part of the active view.
      */
@@ -1520,7 +1534,7 @@ public class BoardView extends BComponent
     {
         Vector3f camloc = _ctx.getCameraHandler().getCamera().getLocation();
         _pick.clear();
-        _pnode.findPick(new Ray(camloc, _worldMouse), _pick);
+        _picker.findPick(camloc, _worldMouse, _pick);
         float dist = Float.MAX_VALUE, tdist = Float.MAX_VALUE;
         Sprite hit = null, thit = null;
         for (int ii = 0; ii < _pick.getNumber(); ii++) {
@@ -1590,7 +1604,9 @@ public class BoardView extends BComponent
             Vector3f camloc =
                 _ctx.getCameraHandler().getCamera().getLocation();
             _pick.clear();
-            _hnode.findPick(new Ray(camloc, _worldMouse), _pick);
+            _pray.origin.set(camloc);
+            _pray.direction.set(_worldMouse);
+            _hnode.findPick(_pray, _pick);
             float dist = Float.MAX_VALUE;
 
             for (int ii = 0; ii < _pick.getNumber(); ii++) {
@@ -2146,6 +2162,7 @@ public class BoardView extends BComponent
     protected Vector3f _worldMouse;
     protected Ray _pray = new Ray();
     protected TrianglePickResults _pick = new TrianglePickResults();
+    protected SpritePicker _picker;
     protected Sprite _hover, _thover;
 
     protected ArrayList<BoardAction> _ractions = new ArrayList<BoardAction>();
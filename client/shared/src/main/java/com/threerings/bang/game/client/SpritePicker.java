@@ -0,0 +1,321 @@
+//
+// $Id$
+
+package com.threerings.bang.game.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.BoundingVolume;
+import com.jme.bounding.OrientedBoundingBox;
+import com.jme.intersection.PickResults;
+import com.jme.math.FastMath;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.scene.Controller;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+
+import com.samskivert.util.Histogram;
+
+import static com.threerings.bang.client.BangMetrics.*;
+
+/**
+ * Accelerates hover picking against the sprites on the board. The world bounds of the pickable
+ * spatials are indexed in a grid of board tiles (rebuilt at most once per frame, on demand), and
+ * a pick walks only the tiles crossed by the pick ray, running triangle-level picks on the few
+ * spatials found there.
+ */
+public class SpritePicker
+{
+    /**
+     * Creates a picker for spatials attached to the supplied node.
+     */
+    public SpritePicker (Node pnode)
+    {
+        // our index goes stale whenever the sprites move, which may happen every frame
+        pnode.addController(new Controller() {
+            public void update (float time) {
+                _stale = true;
+            }
+        });
+    }
+
+    /**
+     * Sets the dimensions (in tiles) of the board over which we pick.
+     */
+    public void setBoardSize (int width, int height)
+    {
+        _width = width;
+        _height = height;
+        _cells = new ArrayList<?>[width * height];
+        _stale = true;
+    }
+
+    /**
+     * Adds a spatial that can be hit by our picks.
+     */
+    public void addTarget (Spatial target)
+    {
+        _targets.add(target);
+        _stale = true;
+    }
+
+    /**
+     * Removes a previously added spatial.
+     */
+    public void removeTarget (Spatial target)
+    {
+        _targets.remove(target);
+        _stale = true;
+    }
+
+    /**
+     * Picks against the targets hit by the ray with the supplied origin and direction, adding the
+     * results to the supplied pick results.
+     */
+    public void findPick (Vector3f origin, Vector3f direction, PickResults results)
+    {
+        long start = System.nanoTime();
+        if (_stale) {
+            rebuildIndex();
+        }
+
+        _ray.origin.set(origin);
+        _ray.direction.set(direction);
+        _candidates.clear();
+        _candidates.addAll(_unindexed);
+        if (_indexed > 0) {
+            gatherCandidates();
+        }
+        for (Spatial target : _candidates) {
+            // this will reject targets whose bounds the ray misses before any triangle picking
+            target.findPick(_ray, results);
+        }
+
+        _picktimes.addValue((int)((System.nanoTime() - start) / 1000L));
+    }
+
+    /**
+     * Returns a histogram of pick times, in microseconds.
+     */
+    public Histogram getPickTimes ()
+    {
+        return _picktimes;
+    }
+
+    /**
+     * Rebuilds the index from the current world bounds of our targets.
+     */
+    protected void rebuildIndex ()
+    {
+        for (ArrayList<?> cell : _cells) {
+            if (cell != null) {
+                cell.clear();
+            }
+        }
+        _unindexed.clear();
+        _indexed = 0;
+        _zmin = Float.MAX_VALUE;
+        _zmax = -Float.MAX_VALUE;
+
+        for (Spatial target : _targets) {
+            if (target.getParent() == null) {
+                continue;
+            }
+            BoundingVolume bound = target.getWorldBound();
+            float ext = (bound == null) ? -1f : getExtent(bound);
+            if (ext < 0f) {
+                _unindexed.add(target);
+                continue;
+            }
+            Vector3f center = bound.getCenter();
+            int x1 = (int)FastMath.floor((center.x - ext) / TILE_SIZE),
+                y1 = (int)FastMath.floor((center.y - ext) / TILE_SIZE),
+                x2 = (int)FastMath.floor((center.x + ext) / TILE_SIZE),
+                y2 = (int)FastMath.floor((center.y + ext) / TILE_SIZE);
+            if (x1 < 0 || y1 < 0 || x2 >= _width || y2 >= _height ||
+                (x2 - x1 + 1) * (y2 - y1 + 1) > MAX_INDEXED_CELLS) {
+                _unindexed.add(target);
+                continue;
+            }
+            for (int yy = y1; yy <= y2; yy++) {
+                for (int xx = x1; xx <= x2; xx++) {
+                    getCell(xx, yy, true).add(target);
+                }
+            }
+            _zmin = Math.min(_zmin, center.z - ext);
+            _zmax = Math.max(_zmax, center.z + ext);
+            _indexed++;
+        }
+        _stale = false;
+    }
+
+    /**
+     * Walks the tiles crossed by the ray between the lowest and highest points of the indexed
+     * bounds, adding the targets found in them to the candidate set.
+     */
+    protected void gatherCandidates ()
+    {
+        Vector3f o = _ray.origin, d = _ray.direction;
+
+        // find the segment of the ray that lies within the vertical range of our bounds
+        float t1 = 0f, t2 = Float.MAX_VALUE;
+        if (Math.abs(d.z) > FastMath.FLT_EPSILON) {
+            float ta = (_zmin - o.z) / d.z, tb = (_zmax - o.z) / d.z;
+            t1 = Math.max(0f, Math.min(ta, tb));
+            t2 = Math.max(ta, tb);
+        } else if (o.z < _zmin || o.z > _zmax) {
+            return;
+        }
+
+        // clip that segment to the board
+        float bwidth = _width * TILE_SIZE, bheight = _height * TILE_SIZE;
+        float[] range = { t1, t2 };
+        if (t2 < t1 || !clip(o.x, d.x, bwidth, range) || !clip(o.y, d.y, bheight, range)) {
+            return;
+        }
+        t1 = range[0];
+        t2 = range[1];
+
+        // walk the tiles crossed by the segment
+        float sx = o.x + d.x * t1, sy = o.y + d.y * t1;
+        int tx = clamp((int)(sx / TILE_SIZE), _width), ty = clamp((int)(sy / TILE_SIZE), _height);
+        int ex = clamp((int)((o.x + d.x * t2) / TILE_SIZE), _width),
+            ey = clamp((int)((o.y + d.y * t2) / TILE_SIZE), _height);
+        int stepx = (d.x > 0f) ? 1 : -1, stepy = (d.y > 0f) ? 1 : -1;
+        float dtx = (d.x == 0f) ? Float.MAX_VALUE : Math.abs(TILE_SIZE / d.x),
+            dty = (d.y == 0f) ? Float.MAX_VALUE : Math.abs(TILE_SIZE / d.y);
+        float ntx = (d.x == 0f) ? Float.MAX_VALUE :
+            ((tx + (stepx > 0 ? 1 : 0)) * TILE_SIZE - sx) / d.x;
+        float nty = (d.y == 0f) ? Float.MAX_VALUE :
+            ((ty + (stepy > 0 ? 1 : 0)) * TILE_SIZE - sy) / d.y;
+
+        _seen.clear();
+        for (int steps = _width + _height; steps >= 0; steps--) {
+            addCandidates(getCell(tx, ty, false));
+            if (tx == ex && ty == ey) {
+                break;
+            }
+            if (ntx < nty) {
+                tx += stepx;
+                ntx += dtx;
+            } else {
+                ty += stepy;
+                nty += dty;
+            }
+            if (tx < 0 || ty < 0 || tx >= _width || ty >= _height) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds the (not yet seen) targets in the supplied cell to the candidate set.
+     */
+    protected void addCandidates (ArrayList<Spatial> cell)
+    {
+        if (cell == null) {
+            return;
+        }
+        for (int ii = 0, nn = cell.size(); ii < nn; ii++) {
+            Spatial target = cell.get(ii);
+            if (_seen.add(target)) {
+                _candidates.add(target);
+            }
+        }
+    }
+
+    /**
+     * Returns the cell at the specified tile coordinates, optionally creating it.
+     */
+    @SuppressWarnings("unchecked")
+    protected ArrayList<Spatial> getCell (int x, int y, boolean create)
+    {
+        int idx = y * _width + x;
+        ArrayList<Spatial> cell = (ArrayList<Spatial>)_cells[idx];
+        if (cell == null && create) {
+            _cells[idx] = cell = new ArrayList<Spatial>();
+        }
+        return cell;
+    }
+
+    /**
+     * Returns the maximum extent (along any axis) of the supplied bounding volume about its
+     * center, padded slightly to absorb rounding error, or -1 if it is of a type we don't know
+     * how to index.
+     */
+    protected static float getExtent (BoundingVolume bound)
+    {
+        float ext;
+        if (bound instanceof BoundingBox) {
+            BoundingBox bbox = (BoundingBox)bound;
+            ext = Math.max(Math.max(bbox.xExtent, bbox.yExtent), bbox.zExtent);
+        } else if (bound instanceof BoundingSphere) {
+            ext = ((BoundingSphere)bound).getRadius();
+        } else if (bound instanceof OrientedBoundingBox) {
+            ext = ((OrientedBoundingBox)bound).extent.length();
+        } else {
+            return -1f;
+        }
+        return ext + TILE_SIZE * 0.01f;
+    }
+
+    /**
+     * Clips the parametric range of a ray to the interval [0, size) along one axis.
+     *
+     * @return false if the ray does not pass through the interval within the range.
+     */
+    protected static boolean clip (float origin, float dir, float size, float[] range)
+    {
+        if (dir == 0f) {
+            return (origin >= 0f && origin < size);
+        }
+        float ta = -origin / dir, tb = (size - origin) / dir;
+        range[0] = Math.max(range[0], Math.min(ta, tb));
+        range[1] = Math.min(range[1], Math.max(ta, tb));
+        return range[0] <= range[1];
+    }
+
+    /**
+     * Clamps a tile coordinate to the range [0, size).
+     */
+    protected static int clamp (int value, int size)
+    {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    /** The spatials against which we pick. */
+    protected ArrayList<Spatial> _targets = new ArrayList<Spatial>();
+
+    /** The board dimensions in tiles. */
+    protected int _width, _height;
+
+    /** The index cells, each a list of the targets whose bounds overlap the tile. */
+    protected ArrayList<?>[] _cells = new ArrayList<?>[0];
+
+    /** Targets that could not be indexed (off the board, too big, or of unknown bounds). */
+    protected ArrayList<Spatial> _unindexed = new ArrayList<Spatial>();
+
+    /** The number of indexed targets. */
+    protected int _indexed;
+
+    /** The vertical range of the indexed bounds. */
+    protected float _zmin, _zmax;
+
+    /** Whether the index must be rebuilt before the next pick. */
+    protected boolean _stale = true;
+
+    /** Reused for each pick. */
+    protected Ray _ray = new Ray();
+    protected ArrayList<Spatial> _candidates = new ArrayList<Spatial>();
+    protected HashSet<Spatial> _seen = new HashSet<Spatial>();
+
+    /** Pick times in 100 microsecond buckets. */
+    protected Histogram _picktimes = new Histogram(0, 100, 10);
+
+    /** Targets that span more than this many tiles are tested on every pick. */
+    protected static final int MAX_INDEXED_CELLS = 64;
+}
@@ -26,6 +26,7 @@ import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
 import com.jme.renderer.ColorRGBA;
 import com.jme.renderer.Renderer;
+import com.jme.scene.Controller;
 import com.jme.scene.Line;
 import com.jme.scene.Node;
 import com.jme.scene.SharedMesh;
@@ -568,6 +569,13 @@ public class TerrainNode extends Node
         mstate.setShininess(1f);
 
         setRenderState(mstate);
+
+        // perform any queued refreshes before each frame is rendered
+        addController(new Controller() {
+            public void update (float time) {
+                flushQueuedRefreshes();
+            }
+        });
     }
 
     /**
@@ -584,6 +592,7 @@ public class TerrainNode extends Node
         // clean up any existing geometry
         detachAllChildren();
         cleanup();
+        _dirtyHeightfield = _dirtyTerrain = null;
 
         // find out now whether we should use shaders (so that the block creator knows)
         boolean useShaders = false;
@@ -662,39 +671,77 @@ public class TerrainNode extends Node
     {
         // make sure the scale is up-to-date
         float elevationScale = _board.getElevationScale(TILE_SIZE);
+        boolean rescaled = false;
         if (_elevationScale != elevationScale) {
             _elevationScale = elevationScale;
             computeBoundingBoxPlanes();
+            rescaled = true;
         }
 
-        // if the region includes the edges, we have to update all blocks
-        // on the edges, plus the skirt
-        boolean updateEdges = false;
+        // if the region includes the edges, the minimum edge height may have
+        // changed, in which case we have to update the skirt and the parts of
+        // the edge blocks beyond the board
+        boolean updateEdges = rescaled;
         if (x1 <= 0 || y1 <= 0 || x2 >= _board.getHeightfieldWidth() - 1 ||
             y2 >= _board.getHeightfieldHeight() - 1) {
+            byte oheight = _board.getHeightfieldValue(-1, -1);
             _board.updateMinEdgeHeight();
+            updateEdges = updateEdges || (_board.getHeightfieldValue(-1, -1) != oheight);
+        }
+        if (updateEdges) {
             _skirt.updateVertices();
-            updateEdges = true;
+            _skirt.updateWorldBound();
         }
 
         // grow the rectangle to make sure it includes the normals
         Rectangle rect = new Rectangle(x1, y1, 1 + x2 - x1, 1 + y2 - y1);
         rect.grow(1, 1);
 
-        for (int x = 0; x < _blocks.length; x++) {
-            for (int y = 0; y < _blocks[x].length; y++) {
+        // refresh the parts of the edge blocks beyond the board, if necessary
+        if (updateEdges) {
+            for (int x = 0; x < _blocks.length; x++) {
+                for (int y = 0; y < _blocks[x].length; y++) {
+                    SplatBlock block = _blocks[x][y];
+                    if (block.isOnEdge()) {
+                        block.refreshEdgeGeometry();
+                        block.updateBounds();
+                    }
+                }
+            }
+        }
+
+        // refresh the blocks that overlap the region, which share their
+        // boundary vertices with their neighbors
+        int bx1 = Math.max(0, (rect.x - 1) / SPLAT_SIZE),
+            by1 = Math.max(0, (rect.y - 1) / SPLAT_SIZE),
+            bx2 = Math.min(_blocks.length - 1, (rect.x + rect.width - 1) / SPLAT_SIZE),
+            by2 = Math.min(_blocks[0].length - 1, (rect.y + rect.height - 1) / SPLAT_SIZE);
+        for (int x = bx1; x <= bx2; x++) {
+            for (int y = by1; y <= by2; y++) {
                 SplatBlock block = _blocks[x][y];
                 Rectangle isect = rect.intersection(block.ebounds);
-                if (updateEdges && block.isOnEdge()) {
-                    block.refreshGeometry(block.ebounds);
-                    block.mesh.updateModelBound();
-                } else if (!isect.isEmpty()) {
+                if (!isect.isEmpty()) {
                     block.refreshGeometry(isect);
-                    block.mesh.updateModelBound();
+                    block.updateBounds();
                 }
             }
         }
-        updateGeometricState(0, true);
+
+        // rather than updating the geometric state of the entire terrain,
+        // merge the updated block bounds and pass the result up the tree
+        updateWorldBound();
+        propagateBoundToRoot();
+    }
+
+    /**
+     * Queues up a region of the heightfield (in sub-tile coordinates) to be
+     * refreshed at the start of the next frame, merging it with any other
+     * regions queued in the meantime.  Used by brushes, which may modify the
+     * heightfield many times per frame.
+     */
+    public void queueHeightfieldRefresh (int x1, int y1, int x2, int y2)
+    {
+        _dirtyHeightfield = addDirtyRegion(_dirtyHeightfield, x1, y1, x2, y2);
     }
 
     /**
@@ -708,33 +755,99 @@ public class TerrainNode extends Node
 
     /**
      * Refreshes the terrain splats over the specified region in sub-tile
-     * coordinates.
+     * coordinates.  The alpha maps are regenerated on the invoker thread and
+     * the updated splats swapped in on the main thread when they're ready.
      */
     public void refreshTerrain (int x1, int y1, int x2, int y2)
     {
-        // if the region includes the edges, we have to update the skirt
+        // if the region includes the edges, we have to update the skirt (and,
+        // if the edge terrain has changed, the blocks that include the edge)
+        boolean updateEdges = false;
         if (x1 <= 0 || y1 <= 0 || x2 >= _board.getHeightfieldWidth() - 1 ||
             y2 >= _board.getHeightfieldHeight() - 1) {
+            byte ocode = _board.getTerrainValue(-1, -1);
             _board.updateEdgeTerrain();
             _skirt.updateTexture();
+            updateEdges = (_board.getTerrainValue(-1, -1) != ocode);
         }
 
         // grow the rectangle to make sure it includes surroundings
         Rectangle rect = new Rectangle(x1, y1, 1 + x2 - x1, 1 + y2 - y1);
         rect.grow(1, 1);
 
-        for (int x = 0; x < _blocks.length; x++) {
-            for (int y = 0; y < _blocks[x].length; y++) {
+        if (updateEdges) {
+            for (int x = 0; x < _blocks.length; x++) {
+                for (int y = 0; y < _blocks[x].length; y++) {
+                    SplatBlock block = _blocks[x][y];
+                    if (block.isOnEdge()) {
+                        block.queueSplatRefresh(block.bounds);
+                    }
+                }
+            }
+        }
+
+        int bx1 = Math.max(0, (rect.x - 1) / SPLAT_SIZE),
+            by1 = Math.max(0, (rect.y - 1) / SPLAT_SIZE),
+            bx2 = Math.min(_blocks.length - 1, (rect.x + rect.width - 1) / SPLAT_SIZE),
+            by2 = Math.min(_blocks[0].length - 1, (rect.y + rect.height - 1) / SPLAT_SIZE);
+        for (int x = bx1; x <= bx2; x++) {
+            for (int y = by1; y <= by2; y++) {
                 SplatBlock block = _blocks[x][y];
                 Rectangle isect = rect.intersection(block.bounds);
                 if (!isect.isEmpty()) {
-                    block.refreshSplats(isect);
-                    block.refreshShaders();
+                    block.queueSplatRefresh(isect);
                 }
             }
         }
     }
 
+    /**
+     * Queues up a region of the terrain (in sub-tile coordinates) to be
+     * refreshed at the start of the next frame, merging it with any other
+     * regions queued in the meantime.
+     */
+    public void queueTerrainRefresh (int x1, int y1, int x2, int y2)
+    {
+        _dirtyTerrain = addDirtyRegion(_dirtyTerrain, x1, y1, x2, y2);
+    }
+
+    /**
+     * Performs any queued heightfield and terrain refreshes immediately.
+     * This is called automatically once per frame.
+     */
+    public void flushQueuedRefreshes ()
+    {
+        if (_dirtyHeightfield != null) {
+            Rectangle dirty = _dirtyHeightfield;
+            _dirtyHeightfield = null;
+            refreshHeightfield(dirty.x, dirty.y, dirty.x + dirty.width - 1,
+                dirty.y + dirty.height - 1);
+        }
+        if (_dirtyTerrain != null) {
+            Rectangle dirty = _dirtyTerrain;
+            _dirtyTerrain = null;
+            refreshTerrain(dirty.x, dirty.y, dirty.x + dirty.width - 1,
+                dirty.y + dirty.height - 1);
+        }
+    }
+
+    /**
+     * Adds the specified region to a dirty rectangle, creating the rectangle
+     * if necessary.
+     *
+     * @return the (possibly new) dirty rectangle.
+     */
+    protected static Rectangle addDirtyRegion (
+        Rectangle dirty, int x1, int y1, int x2, int y2)
+    {
+        Rectangle rect = new Rectangle(x1, y1, 1 + x2 - x1, 1 + y2 - y1);
+        if (dirty == null) {
+            return rect;
+        }
+        dirty.add(rect);
+        return dirty;
+    }
+
     /**
      * Refreshes the shadow colors obtained from the board.
      */
@@ -1144,29 +1257,6 @@ public class TerrainNode extends Node
         result.normalizeLocal();
     }
 
-    /**
-     * Computes and returns the alpha value for the specified terrain code at
-     * the given sub-tile coordinates.
-     */
-    protected float getTerrainAlpha (int code, float x, float y)
-    {
-        int rx = (int)FastMath.floor(x + 0.5f),
-            ry = (int)FastMath.floor(y + 0.5f);
-        float alpha = 0f, total = 0f;
-        for (int sx = rx - 1, sxmax = rx + 1; sx <= sxmax; sx++) {
-            for (int sy = ry - 1, symax = ry + 1; sy <= symax; sy++) {
-                float xdist = (x - sx), ydist = (y - sy),
-                    weight = Math.max(0f,
-                        1f - (xdist*xdist + ydist*ydist)/(1.75f*1.75f));
-                if (_board.getTerrainValue(sx, sy) == code) {
-                    alpha += weight;
-                }
-                total += weight;
-            }
-        }
-        return alpha / total;
-    }
-
     /**
      * Returns the smoothed shadow value for the specified sub-tile coordinate.
      * 0.0 is completely unshadowed, 1.0 is completely shadowed.
@@ -1430,6 +1520,45 @@ public class TerrainNode extends Node
         protected boolean _useShaders;
     }
 
+    /** Computes the updated splats for a block on the invoker thread. */
+    protected class SplatUpdater extends Invoker.Unit
+    {
+        public SplatUpdater (SplatBlock block, Rectangle rect)
+        {
+            _block = block;
+            _rect = rect;
+
+            // the board may change while we're computing, so we work from a
+            // copy of the terrain taken on the main thread
+            _terrain = block.sampleTerrain();
+        }
+
+        // documentation inherited
+        public boolean invoke ()
+        {
+            _splats = _block.computeSplats(_rect, _terrain);
+            return true;
+        }
+
+        @Override // documentation inherited
+        public void handleResult ()
+        {
+            _block.splatsComputed(_splats);
+        }
+
+        /** The block to update. */
+        protected SplatBlock _block;
+
+        /** The modified region. */
+        protected Rectangle _rect;
+
+        /** The terrain around the block at the time of the update. */
+        protected TerrainSample _terrain;
+
+        /** The computed splats. */
+        protected SplatLayers _splats;
+    }
+
     /** Contains all the state associated with a splat block (a collection of
      * splats covering a single block of terrain). */
     protected class SplatBlock
@@ -1466,6 +1595,13 @@ public class TerrainNode extends Node
         /** Whether or not we're using shaders. */
         public boolean useShaders;
 
+        /** The region awaiting splat regeneration, if any. */
+        public Rectangle dirtySplats;
+
+        /** Whether or not we're waiting for the invoker to regenerate our
+         * splats. */
+        public boolean updatingSplats;
+
         public SplatBlock (int sx, int sy, boolean useShaders)
         {
             // create the containing node
@@ -1683,6 +1819,41 @@ public class TerrainNode extends Node
             }
         }
 
+        /**
+         * Refreshes the geometry beyond the edges of the board (plus the
+         * vertices just inside, whose normals and diagonals depend on it) in
+         * response to a change in the minimum edge height.
+         */
+        public void refreshEdgeGeometry ()
+        {
+            int hfwidth = _board.getHeightfieldWidth(),
+                hfheight = _board.getHeightfieldHeight();
+            Rectangle[] strips = {
+                new Rectangle(-2, -2, 4, hfheight + 4),
+                new Rectangle(hfwidth - 2, -2, 4, hfheight + 4),
+                new Rectangle(-2, -2, hfwidth + 4, 4),
+                new Rectangle(-2, hfheight - 2, hfwidth + 4, 4) };
+            for (Rectangle strip : strips) {
+                Rectangle isect = strip.intersection(ebounds);
+                if (!isect.isEmpty()) {
+                    refreshGeometry(isect);
+                }
+            }
+        }
+
+        /**
+         * Updates the bounds of the mesh and the splats that share it after
+         * the geometry has been refreshed.
+         */
+        public void updateBounds ()
+        {
+            mesh.updateModelBound();
+            for (int ii = 0, nn = node.getQuantity(); ii < nn; ii++) {
+                node.getChild(ii).updateWorldBound();
+            }
+            node.updateWorldBound();
+        }
+
         /**
          * Sets the geometry for the entire block.  Because this method creates
          * a single triangle strip, it can only be used when the terrain will
@@ -1761,17 +1932,73 @@ public class TerrainNode extends Node
          */
         public void refreshSplats (Rectangle rect)
         {
-            // remove all the existing children and delete created textures
-            node.detachAllChildren();
-            deleteCreatedTextures();
+            applySplats(computeSplats(rect, sampleTerrain()));
+        }
+
+        /**
+         * Copies the terrain codes that the block's splats depend upon: those
+         * of the extended bounds, plus those around the alpha map samples.
+         */
+        public TerrainSample sampleTerrain ()
+        {
+            return new TerrainSample(_board, new Rectangle(
+                bounds.x - 2, bounds.y - 2, SPLAT_SIZE + 5, SPLAT_SIZE + 5));
+        }
 
+        /**
+         * Queues up a refresh of the splats over the specified rectangle (in
+         * sub-tile coordinates), which will be merged with any other pending
+         * refreshes and computed on the invoker thread.
+         */
+        public void queueSplatRefresh (Rectangle rect)
+        {
+            if (dirtySplats == null) {
+                dirtySplats = new Rectangle(rect);
+            } else {
+                dirtySplats.add(rect);
+            }
+            // only one update may be in flight at a time, because each
+            // builds on the layers and buffers produced by the last
+            if (!updatingSplats) {
+                updatingSplats = true;
+                _ctx.getInvoker().postUnit(new SplatUpdater(this, dirtySplats));
+                dirtySplats = null;
+            }
+        }
+
+        /**
+         * Called on the main thread when the invoker has finished computing
+         * a queued splat update.
+         */
+        public void splatsComputed (SplatLayers splats)
+        {
+            updatingSplats = false;
+            if (node.getParent() == null) {
+                return; // the terrain has been recreated in the meantime
+            }
+            applySplats(splats);
+            refreshShaders();
+            if (dirtySplats != null) {
+                queueSplatRefresh(dirtySplats);
+            }
+        }
+
+        /**
+         * Determines the layers required by the block and computes their
+         * alpha maps according to terrain changes over the specified
+         * rectangle.  This doesn't modify the block, create any textures or
+         * read the board (only the supplied copy of its terrain), and so may
+         * be called on the invoker thread.
+         */
+        public SplatLayers computeSplats (Rectangle rect, TerrainSample terrain)
+        {
             // find out which terrain codes this block contains and determine
             // which one is the most common
             IntIntMap codes = new IntIntMap();
             int ccount = 0, ccode = 0, count, code;
             for (int y = ebounds.y, ymax = y + ebounds.height; y < ymax; y++) {
                 for (int x = ebounds.x, xmax = x + ebounds.width; x < xmax; x++) {
-                    code = _board.getTerrainValue(x, y)+1;
+                    code = terrain.getTerrainValue(x, y)+1;
                     if ((count = codes.increment(code, 1)) > ccount) {
                         ccount = count;
                         ccode = code;
@@ -1794,46 +2021,86 @@ public class TerrainNode extends Node
                 }
             }
 
+            int[] nlayers;
             if (layers == null || layers[0] != ccode) {
-                layers = new int[] { ccode };
+                nlayers = new int[] { ccode };
                 rect = bounds;
 
             } else {
-                for (int ii = 1; ii < layers.length; ii++) {
-                    if (!codes.containsKey(layers[ii])) {
-                        layers[ii] = 0;
+                nlayers = layers.clone();
+                for (int ii = 1; ii < nlayers.length; ii++) {
+                    if (!codes.containsKey(nlayers[ii])) {
+                        nlayers[ii] = 0;
                         rect = bounds;
                     }
                 }
             }
             for (Interator it = codes.keys(); it.hasNext(); ) {
                 code = it.nextInt();
-                int[] nlayers = IntListUtil.testAndAdd(layers, code);
-                if (nlayers != null) {
-                    layers = nlayers;
+                int[] alayers = IntListUtil.testAndAdd(nlayers, code);
+                if (alayers != null) {
+                    nlayers = alayers;
                     rect = bounds;
                 }
             }
-            layers = IntListUtil.compact(layers);
+            SplatLayers splats = new SplatLayers();
+            splats.layers = nlayers = IntListUtil.compact(nlayers);
 
-            // build layers using shaders or fixed functionality pipeline
-            if (useShaders && layers.length > 1) {
-                buildShaderLayers(rect);
-            } else {
-                buildFixedLayers(rect);
+            // determine which layers require alpha maps: with shaders, all
+            // of them; with the fixed functionality pipeline, all but the
+            // base layer (and only if we're rendering splats at all)
+            boolean additive = (useShaders && nlayers.length > 1);
+            int first = additive ? 0 : (shouldRenderSplats() ? 1 : nlayers.length);
+            for (int ii = first; ii < nlayers.length; ii++) {
+                if (!alphaBuffers.containsKey(nlayers[ii] - 1)) {
+                    rect = bounds;
+                }
             }
 
-            // prune any unused alpha buffers from the map
+            // compute the alpha maps, starting from copies of the existing
+            // buffers (which may still be in use by our textures)
+            float[] atotals = (additive || first >= nlayers.length) ?
+                null : computeAlphaTotals(terrain, nlayers[0] - 1, rect);
+            for (int ii = first; ii < nlayers.length; ii++) {
+                code = nlayers[ii] - 1;
+                splats.alphaBuffers.put(code, computeAlphaBuffer(
+                    terrain, code, rect, alphaBuffers.get(code), atotals));
+            }
+
+            // hang on to any unused alpha buffers for terrain the block still
+            // contains
             for (Interator it = alphaBuffers.keys(); it.hasNext(); ) {
-                if (!codes.containsKey(it.nextInt()+1)) {
-                    it.remove();
+                code = it.nextInt();
+                if (codes.containsKey(code+1) && !splats.alphaBuffers.containsKey(code)) {
+                    splats.alphaBuffers.put(code, alphaBuffers.get(code));
                 }
             }
+            return splats;
+        }
+
+        /**
+         * Replaces the block's splats with the supplied, precomputed layers.
+         */
+        public void applySplats (SplatLayers splats)
+        {
+            // remove all the existing children and delete created textures
+            node.detachAllChildren();
+            deleteCreatedTextures();
+
+            layers = splats.layers;
+            alphaBuffers = splats.alphaBuffers;
+
+            // build layers using shaders or fixed functionality pipeline
+            if (useShaders && layers.length > 1) {
+                buildShaderLayers();
+            } else {
+                buildFixedLayers();
+            }
 
             node.updateRenderState();
         }
 
-        protected void buildShaderLayers (Rectangle rect)
+        protected void buildShaderLayers ()
         {
             int units = TextureState.getNumberOfFragmentUnits();
 
@@ -1876,7 +2143,7 @@ public class TerrainNode extends Node
                     sstate.setUniform("terrainScales[" + jj + "]", gtex.getScale().x);
                     gtex.setScale(null);
 
-                    Texture alpha = createAlphaTexture(code, rect, true);
+                    Texture alpha = createAlphaTexture(code);
                     tstate.setTexture(alpha, tidx);
                     sstate.setUniform("splatTextures[" + tidx + "]", tidx++);
                     alphaTextures.add(alpha);
@@ -1884,7 +2151,7 @@ public class TerrainNode extends Node
             }
         }
 
-        protected void buildFixedLayers (Rectangle rect)
+        protected void buildFixedLayers ()
         {
             // use the most common terrain for the base mesh (which both tests
             // and writes to the z buffer)
@@ -1902,7 +2169,6 @@ public class TerrainNode extends Node
             }
 
             // add the rest as splats (which only test the z buffer)
-            initAlphaTotals(ccode, rect);
             for (int ii = 1; ii < layers.length; ii++) {
 
                 SharedMesh splat = new SharedMesh("layer" + ii, mesh);
@@ -1918,7 +2184,7 @@ public class TerrainNode extends Node
                 }
 
                 tstate.setTexture(ground, 0);
-                Texture alpha = createAlphaTexture(code, rect, false);
+                Texture alpha = createAlphaTexture(code);
                 alpha.setApply(Texture.AM_MODULATE);
                 tstate.setTexture(alpha, 1);
                 alphaTextures.add(alpha);
@@ -1963,14 +2229,13 @@ public class TerrainNode extends Node
         }
 
         /**
-         * Initializes the alpha totals with the alpha values for the base
-         * texture.
+         * Computes the alpha totals for the specified region, starting with
+         * the alpha values for the base texture.
          */
-        protected void initAlphaTotals (int code, Rectangle rect)
+        protected float[] computeAlphaTotals (
+            TerrainSample terrain, int code, Rectangle rect)
         {
-            if (_atotals == null) {
-                _atotals = new float[TEXTURE_SIZE * TEXTURE_SIZE];
-            }
+            float[] atotals = new float[TEXTURE_SIZE * TEXTURE_SIZE];
             float step = (SPLAT_SIZE + 1.0f) / TEXTURE_SIZE;
             int x1 = (int)((rect.x - bounds.x) / step),
                 y1 = (int)((rect.y - bounds.y) / step),
@@ -1980,28 +2245,34 @@ public class TerrainNode extends Node
                     step);
             for (int y = y1; y <= y2; y++) {
                 for (int x = x1; x <= x2; x++) {
-                    _atotals[y*TEXTURE_SIZE + x] = getTerrainAlpha(code,
+                    atotals[y*TEXTURE_SIZE + x] = terrain.getTerrainAlpha(code,
                         bounds.x + x*step, bounds.y + y*step);
                 }
             }
+            return atotals;
         }
 
         /**
-         * Creates and returns an alpha texture for the specified terrain
-         * code, using preexisting buffers when possible.
+         * Computes the alpha buffer for the specified terrain code, copying
+         * the unmodified regions from the previous buffer.
          *
          * @param rect the modified region
-         * @param additive if true, the texture will be used for additive blending; use the
-         * interpolated alpha directly without scaling by and adjusting totals
+         * @param obuf the previous contents of the buffer, or
+         * <code>null</code> if there is no previous buffer (in which case
+         * <code>rect</code> must cover the entire block).
+         * @param atotals the alpha totals for the modified region, or
+         * <code>null</code> if the buffer will be used for additive blending,
+         * in which case the interpolated alpha is used directly without
+         * scaling by and adjusting totals.
          */
-        protected Texture createAlphaTexture (int code, Rectangle rect, boolean additive)
+        protected ByteBuffer computeAlphaBuffer (TerrainSample terrain,
+            int code, Rectangle rect, ByteBuffer obuf, float[] atotals)
         {
-            // create the buffer if it doesn't already exist
-            ByteBuffer abuf = alphaBuffers.get(code);
-            if (abuf == null) {
-                alphaBuffers.put(code, abuf = ByteBuffer.allocateDirect(
-                    TEXTURE_SIZE*TEXTURE_SIZE));
-                rect = bounds;
+            ByteBuffer abuf = ByteBuffer.allocateDirect(TEXTURE_SIZE*TEXTURE_SIZE);
+            if (obuf != null) {
+                obuf = obuf.duplicate();
+                obuf.rewind();
+                abuf.put(obuf);
             }
 
             // update the affected region of the buffer
@@ -2013,18 +2284,27 @@ public class TerrainNode extends Node
             for (int y = y1; y <= y2; y++) {
                 for (int x = x1; x <= x2; x++) {
                     idx = y*TEXTURE_SIZE + x;
-                    alpha = getTerrainAlpha(code, bounds.x + x*step,
+                    alpha = terrain.getTerrainAlpha(code, bounds.x + x*step,
                         bounds.y + y*step);
-                    if (!additive) {
-                        alpha /= (_atotals[idx] += alpha);
+                    if (atotals != null) {
+                        alpha /= (atotals[idx] += alpha);
                     }
                     abuf.put(idx, (byte)(alpha * 255));
                 }
             }
+            abuf.rewind();
+            return abuf;
+        }
 
+        /**
+         * Creates and returns an alpha texture for the specified terrain
+         * code using its precomputed buffer.
+         */
+        protected Texture createAlphaTexture (int code)
+        {
             Texture texture = _ctx.getTextureCache().createTexture();
-            abuf.rewind();
-            texture.setImage(new Image(Image.A8, TEXTURE_SIZE, TEXTURE_SIZE, abuf));
+            texture.setImage(new Image(Image.A8, TEXTURE_SIZE, TEXTURE_SIZE,
+                alphaBuffers.get(code)));
 
             // set the filter parameters
             texture.setFilter(Texture.FM_LINEAR);
@@ -2034,6 +2314,71 @@ public class TerrainNode extends Node
         }
     }
 
+    /** The layers and alpha buffers computed for a splat block. */
+    protected static class SplatLayers
+    {
+        /** The code for each terrain layer (plus one). */
+        public int[] layers;
+
+        /** Maps terrain codes to alpha texture buffers. */
+        public HashIntMap<ByteBuffer> alphaBuffers = new HashIntMap<ByteBuffer>();
+    }
+
+    /** A copy of the board's terrain codes over a region, which may be read
+     * on any thread. */
+    protected static class TerrainSample
+    {
+        public TerrainSample (BangBoard board, Rectangle region)
+        {
+            _region = region;
+            _values = new byte[region.width * region.height];
+            for (int y = 0, idx = 0; y < region.height; y++) {
+                for (int x = 0; x < region.width; x++) {
+                    _values[idx++] = board.getTerrainValue(
+                        region.x + x, region.y + y);
+                }
+            }
+        }
+
+        /**
+         * Returns the terrain value at the specified sub-tile coordinates,
+         * which must lie within the sampled region.
+         */
+        public byte getTerrainValue (int x, int y)
+        {
+            return _values[(y - _region.y)*_region.width + (x - _region.x)];
+        }
+
+        /**
+         * Computes and returns the alpha value for the specified terrain code
+         * at the given sub-tile coordinates.
+         */
+        public float getTerrainAlpha (int code, float x, float y)
+        {
+            int rx = (int)FastMath.floor(x + 0.5f),
+                ry = (int)FastMath.floor(y + 0.5f);
+            float alpha = 0f, total = 0f;
+            for (int sx = rx - 1, sxmax = rx + 1; sx <= sxmax; sx++) {
+                for (int sy = ry - 1, symax = ry + 1; sy <= symax; sy++) {
+                    float xdist = (x - sx), ydist = (y - sy),
+                        weight = Math.max(0f,
+                            1f - (xdist*xdist + ydist*ydist)/(1.75f*1.75f));
+                    if (getTerrainValue(sx, sy) == code) {
+                        alpha += weight;
+                    }
+                    total += weight;
+                }
+            }
+            return alpha / total;
+        }
+
+        /** The sampled region. */
+        protected Rectangle _region;
+
+        /** The terrain values over the region, in row-major order. */
+        protected byte[] _values;
+    }
+
     /** Surrounds the board with the most common edge terrain. */
     protected class Skirt extends TriMesh
     {
@@ -2139,6 +2484,10 @@ public class TerrainNode extends Node
     /** The flat skirt that surrounds the board. */
     protected Skirt _skirt;
 
+    /** The regions of the heightfield and terrain queued for refresh, if
+     * any. */
+    protected Rectangle _dirtyHeightfield, _dirtyTerrain;
+
     /** Reusable objects for efficiency. */
     protected ColorRGBA _c1 = new ColorRGBA(), _c2 = new ColorRGBA();
 
@@ -2155,9 +2504,6 @@ public class TerrainNode extends Node
     /** A temporary result vector. */
     protected Vector3f _isect = new Vector3f();
 
-    /** Used to store alpha totals when computing alpha maps. */
-    protected float[] _atotals;
-
     /** If true, the shaders didn't link; don't try to compile them again. */
     protected static boolean _disableShaders;
 
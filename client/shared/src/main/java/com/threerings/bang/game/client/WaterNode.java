@@ -291,8 +291,15 @@ public class WaterNode extends Node
             return;
         }
 
-        // compute the vertices and normals for the entire wave map
+        // update the waves as often as the detail governor allows, accumulating the time
         _t += time;
+        int interval = _ctx.getDetailGovernor().getWaveInterval();
+        if (interval == 0 || ++_skipped < interval) {
+            return;
+        }
+        _skipped = 0;
+
+        // compute the vertices and normals for the entire wave map
         WaveUtil.getAmplitudes(WAVE_MAP_SIZE, WAVE_MAP_SIZE,
             MAP_WORLD_SIZE, MAP_WORLD_SIZE, _iramps, _iiamps, _disp, _t,
             _ramps, _iamps);
@@ -491,6 +498,9 @@ public class WaterNode extends Node
     /** The time of the last frame within the animation period. */
     protected float _t;
 
+    /** The number of frames since the waves were last updated. */
+    protected int _skipped;
+
     /** The dispersion model. */
     protected static WaveUtil.DispersionModel _disp;
 
@@ -193,7 +193,7 @@ public class ActiveSprite extends PieceSprite
                 startNext();
             }
             
-        } else if (_nextIdle > 0) {
+        } else if (_nextIdle > 0 && !holdIdle()) {
             _nextIdle -= time;
             if (_nextIdle <= 0) {
                 startNextIdle(false);
@@ -347,6 +347,7 @@ public class ActiveSprite extends PieceSprite
      */
     protected float setAction (String action)
     {
+        _idleHeld = false;
         ProceduralAction paction = _procActions.get(action);
         if (paction != null) {
             return paction.activate();
@@ -430,6 +431,27 @@ public class ActiveSprite extends PieceSprite
         }
     }
     
+    /**
+     * Pauses or resumes the current idle animation according to the detail governor.
+     *
+     * @return true if the idle animation is being held still.
+     */
+    protected boolean holdIdle ()
+    {
+        if (_idle == null || _model == null) {
+            return false;
+        }
+        boolean hold = !_ctx.getDetailGovernor().areIdleAnimationsEnabled();
+        if (hold && !_idleHeld && !_model.isAnimationPaused()) {
+            _model.pauseAnimation(true);
+            _idleHeld = true;
+        } else if (!hold && _idleHeld) {
+            _model.pauseAnimation(false);
+            _idleHeld = false;
+        }
+        return _idleHeld;
+    }
+
     /**
      * Returns the array of idle animations (which by default are those
      * specified by the <code>idle</code> model property).
@@ -464,6 +486,7 @@ public class ActiveSprite extends PieceSprite
 
     protected String _action, _idle;
     protected float _nextAction, _nextIdle;
+    protected boolean _idleHeld;
     protected ArrayList<String> _actions = new ArrayList<String>();
     protected ArrayList<ActionHandler> _actionHandlers = 
         new ArrayList<ActionHandler>();
@@ -131,6 +131,33 @@ public class BangBoard extends SimpleStreamableObject
         }
     }
 
+    /**
+     * Creates a copy of the board in its current state, for use on another thread while play
+     * continues on this one.  Unlike {@link #clone}, the copy retains the shadows of the pieces on
+     * the board (but has its own copy of them, so that it may shadow and clear pieces
+     * independently).  The terrain and heightfield, which don't change during play, are shared;
+     * the lazily computed tile heights are copied.
+     */
+    public BangBoard snapshot ()
+    {
+        try {
+            BangBoard board = (BangBoard)super.clone();
+            board._tstate = _tstate.clone();
+            board._btstate = _btstate.clone();
+            board._estate = _estate.clone();
+            board._dstate = _dstate.clone();
+            board._pgrid = new byte[_pgrid.length];
+            board._playarea = new Rectangle(_playarea);
+            if (_maxHeight != null) {
+                board._maxHeight = _maxHeight.clone();
+            }
+            return board;
+
+        } catch (CloneNotSupportedException cnse) {
+            throw new RuntimeException(cnse);
+        }
+    }
+
     /**
      * Tells the board information it needs to know about the game.
      */
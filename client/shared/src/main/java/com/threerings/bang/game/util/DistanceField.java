@@ -0,0 +1,162 @@
+//
+// $Id$
+
+package com.threerings.bang.game.util;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import com.threerings.bang.game.data.BangBoard;
+
+/**
+ * Records the number of steps from every tile on the board to the nearest of a set of goal tiles
+ * for a particular kind of traverser.  The distances are computed with a single breadth-first
+ * search outward from the goals (following each step in reverse, as some steps are one-way), after
+ * which any number of pieces that move like the traverser can look up their distance to the goals,
+ * and that of each of their potential moves, in constant time.  Steps are the same as those of the
+ * default {@link com.threerings.bang.game.data.piece.Piece#getStepper} (one tile in any of the four
+ * directions, at a cost of one), plus any jumps added (for teleporters, say).
+ */
+public class DistanceField
+{
+    /** The distance to the goals from tiles that cannot reach them. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * Creates a field for the supplied board and traverser.
+     */
+    public DistanceField (BangBoard board, Object traverser)
+    {
+        _board = board;
+        _traverser = traverser;
+        _width = board.getWidth();
+        _dists = new int[_width * board.getHeight()];
+        Arrays.fill(_dists, UNREACHABLE);
+    }
+
+    /**
+     * Adds a one step jump from one tile to another (not necessarily adjacent) tile.  Jumps must be
+     * added before the field is computed.
+     */
+    public void addJump (int sx, int sy, int dx, int dy)
+    {
+        if (_jumps == 0) {
+            _jsources = new int[4];
+            _jdests = new int[4];
+        } else if (_jumps == _jsources.length) {
+            _jsources = grow(_jsources);
+            _jdests = grow(_jdests);
+        }
+        _jsources[_jumps] = sy * _width + sx;
+        _jdests[_jumps++] = dy * _width + dx;
+    }
+
+    /**
+     * Computes the distances to the goals: those traversable tiles whose distance from any of the
+     * targets is between the specified bounds (inclusive).
+     */
+    public void compute (PointSet targets, int mindist, int maxdist)
+    {
+        Arrays.fill(_dists, UNREACHABLE);
+        int[] queue = new int[_dists.length];
+        int head = 0, tail = 0;
+
+        // the goals are at distance zero
+        Rectangle playarea = _board.getPlayableArea();
+        for (int ii = 0, nn = targets.size(); ii < nn; ii++) {
+            int tx = targets.getX(ii), ty = targets.getY(ii);
+            for (int yy = ty - maxdist; yy <= ty + maxdist; yy++) {
+                int dy = Math.abs(yy - ty);
+                for (int xx = tx - maxdist + dy, xmax = tx + maxdist - dy; xx <= xmax; xx++) {
+                    int idx = yy * _width + xx;
+                    if (dy + Math.abs(xx - tx) < mindist || !playarea.contains(xx, yy) ||
+                        _dists[idx] == 0 || !_board.canTraverse(_traverser, xx, yy)) {
+                        continue;
+                    }
+                    _dists[idx] = 0;
+                    queue[tail++] = idx;
+                }
+            }
+        }
+
+        // then work outwards, considering the steps that lead to each tile
+        while (head < tail) {
+            int idx = queue[head++], x = idx % _width, y = idx / _width;
+            int ndist = _dists[idx] + 1;
+            for (int dir = 0; dir < 4; dir++) {
+                int sx = x + STEP_X[dir], sy = y + STEP_Y[dir], sidx = sy * _width + sx;
+                if (playarea.contains(sx, sy) && _dists[sidx] == UNREACHABLE &&
+                    _board.canTraverse(_traverser, sx, sy, x, y)) {
+                    _dists[sidx] = ndist;
+                    queue[tail++] = sidx;
+                }
+            }
+            for (int ii = 0; ii < _jumps; ii++) {
+                int sidx = _jsources[ii];
+                if (_jdests[ii] == idx && _dists[sidx] == UNREACHABLE) {
+                    _dists[sidx] = ndist;
+                    queue[tail++] = sidx;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of steps from the specified tile to the nearest goal, or {@link
+     * #UNREACHABLE} if no goal can be reached.
+     */
+    public int getDistance (int x, int y)
+    {
+        return (x < 0 || y < 0 || x >= _width || y >= _dists.length / _width) ?
+            UNREACHABLE : _dists[y * _width + x];
+    }
+
+    /**
+     * Finds the move from which the nearest goal can be reached in the fewest steps.
+     *
+     * @return the index of the move in the set, or -1 if no move can reach any goal.
+     */
+    public int getBestMove (PointSet moves)
+    {
+        int best = -1, bdist = UNREACHABLE;
+        for (int ii = 0, nn = moves.size(); ii < nn; ii++) {
+            int dist = getDistance(moves.getX(ii), moves.getY(ii));
+            if (dist < bdist) {
+                best = ii;
+                bdist = dist;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a copy of the supplied array with twice the length.
+     */
+    protected static int[] grow (int[] array)
+    {
+        int[] narray = new int[array.length * 2];
+        System.arraycopy(array, 0, narray, 0, array.length);
+        return narray;
+    }
+
+    /** The board over which the distances are computed. */
+    protected BangBoard _board;
+
+    /** The object whose steps we consider. */
+    protected Object _traverser;
+
+    /** The width of the board. */
+    protected int _width;
+
+    /** The distance to the goals from each tile. */
+    protected int[] _dists;
+
+    /** The number of jumps. */
+    protected int _jumps;
+
+    /** The source and destination tile indices of the jumps. */
+    protected int[] _jsources, _jdests;
+
+    /** The offsets of the four steps. */
+    protected static final int[] STEP_X = { 0, -1, 1, 0 }, STEP_Y = { -1, 0, 0, 1 };
+}
@@ -3,6 +3,8 @@
 
 package com.threerings.bang.gang.client;
 
+import java.util.ArrayList;
+
 import com.jmex.bui.BContainer;
 import com.jmex.bui.BLabel;
 import com.jmex.bui.BScrollPane;
@@ -20,7 +22,9 @@ import com.threerings.presents.dobj.EntryRemovedEvent;
 import com.threerings.presents.dobj.EntryUpdatedEvent;
 import com.threerings.presents.dobj.SetListener;
 
+import com.threerings.bang.avatar.client.AvatarView;
 import com.threerings.bang.client.bui.StatusLabel;
+import com.threerings.bang.data.AvatarInfo;
 import com.threerings.bang.util.BangContext;
 
 import com.threerings.bang.gang.data.GangCodes;
@@ -152,6 +156,15 @@ public class RosterView extends BContainer
 
     protected void updateMembers ()
     {
+        // warm up the avatars of the members in the hideout, which will show up in the chat view
+        ArrayList<AvatarInfo> avatars = new ArrayList<AvatarInfo>();
+        for (GangMemberEntry entry : _gangobj.members) {
+            if (entry.avatar != null) {
+                avatars.add(entry.avatar);
+            }
+        }
+        AvatarView.prefetchImages(_ctx, avatars);
+
         updateMembers(true);
         updateMembers(false);
     }
@@ -3,6 +3,8 @@
 
 package com.threerings.bang.saloon.client;
 
+import java.util.ArrayList;
+
 import com.jmex.bui.BButton;
 import com.jmex.bui.BContainer;
 import com.jmex.bui.BLabel;
@@ -19,6 +21,7 @@ import com.threerings.util.MessageBundle;
 
 import com.threerings.bang.avatar.client.AvatarView;
 import com.threerings.bang.client.PlayerPopupMenu;
+import com.threerings.bang.data.AvatarInfo;
 import com.threerings.bang.data.Handle;
 import com.threerings.bang.util.BangContext;
 
@@ -61,7 +64,9 @@ public class TopScoreView extends BContainer
 
         boolean thisWeek = false, lastWeek = false;
         int pages = 1;
+        ArrayList<AvatarInfo> snapshots = new ArrayList<AvatarInfo>();
         for (TopRankedList list : rankobj.getTopRanked()) {
+            snapshots.add(list.topDogSnapshot);
             if (list.period == TopRankedList.THIS_WEEK) {
                 if (!thisWeek) {
                     pages++;
@@ -84,6 +89,9 @@ public class TopScoreView extends BContainer
             _pages[idx++] = TopRankedList.LAST_WEEK;
         }
         _pages[idx] = TopRankedList.LIFETIME;
+
+        // warm up the avatars for every page so that flipping through them is snappy
+        AvatarView.prefetchImages(_ctx, snapshots);
         showList(_pages[_page]);
         if (_pages.length == 1) {
             _right.setEnabled(false);
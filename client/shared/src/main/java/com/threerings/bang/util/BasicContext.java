@@ -25,6 +25,7 @@ import com.threerings.util.MessageManager;
 import com.threerings.bang.avatar.util.AvatarLogic;
 
 import com.threerings.bang.client.GlobalKeyManager;
+import com.threerings.bang.client.util.DetailGovernor;
 import com.threerings.bang.client.util.ModelCache;
 import com.threerings.bang.client.util.ParticleCache;
 import com.threerings.bang.client.util.TextureCache;
@@ -75,6 +76,9 @@ public interface BasicContext extends JmeContext
     /** Returns a reference to our particle effect cache. */
     public ParticleCache getParticleCache ();
 
+    /** Returns the governor that adjusts graphical detail to fit the frame budget. */
+    public DetailGovernor getDetailGovernor ();
+
     /** Returns a reference to our character manager. */
     public CharacterManager getCharacterManager ();
 
@@ -0,0 +1,221 @@
+//
+// $Id$
+
+package com.jme.renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.jme.image.Texture;
+import com.jme.scene.Node;
+import com.jme.scene.SceneElement;
+import com.jme.scene.batch.GeomBatch;
+import com.jme.scene.state.GLSLShaderObjectsState;
+import com.jme.scene.state.RenderState;
+import com.jme.scene.state.StateRecord;
+import com.jme.scene.state.TextureState;
+import com.jme.util.DummyDisplaySystem;
+
+/**
+ * Verifies that the key based sorting of the {@link RenderQueue} produces the same orderings as
+ * the comparators it replaced, on randomly generated (but repeatable) scenes.
+ */
+public class RenderQueueUnitTest extends TestCase
+{
+    public RenderQueueUnitTest ()
+    {
+        super(RenderQueueUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        _renderer = new DummyDisplaySystem().getRenderer();
+        Random rand = new Random(SEED);
+        for (int ii = 0; ii < SCENES; ii++) {
+            int size = 1 + rand.nextInt(MAX_ELEMENTS);
+            checkOrder("batches", Renderer.QUEUE_OPAQUE, createBatches(rand, size), OPAQUE);
+            checkOrder("opaque", Renderer.QUEUE_OPAQUE, createNodes(rand, size), DISTANCE);
+            checkOrder("transparent", Renderer.QUEUE_TRANSPARENT,
+                       createNodes(rand, size), TRANSPARENT);
+            checkOrder("ortho", Renderer.QUEUE_ORTHO, createNodes(rand, size), ORTHO);
+        }
+    }
+
+    /**
+     * Queues the supplied elements and compares the order in which the queue would render them
+     * to the order given by a stable sort with the supplied comparator.
+     */
+    protected void checkOrder (
+        String scene, int bucket, SceneElement[] elements, Comparator<SceneElement> comp)
+    {
+        RenderQueue queue = new RenderQueue(_renderer);
+        for (SceneElement element : elements) {
+            queue.addToQueue(element, bucket);
+        }
+        SceneElement[] expected = elements.clone();
+        Arrays.sort(expected, comp); // stable, like the merge sort it replaced
+        SceneElement[] actual = queue.sortBucket(bucket);
+        assertEquals(scene + " size", expected.length, actual.length);
+        for (int ii = 0; ii < expected.length; ii++) {
+            assertSame(scene + " element " + ii + " of " + expected.length,
+                       expected[ii], actual[ii]);
+        }
+    }
+
+    /**
+     * Creates batches that share shaders and texture states drawn from small pools. Within a
+     * scene, every texture state has the same number of textures, as the old comparator only
+     * compared the textures that both states had.
+     */
+    protected SceneElement[] createBatches (Random rand, int count)
+    {
+        ArrayList<GLSLShaderObjectsState> shaders = new ArrayList<GLSLShaderObjectsState>();
+        shaders.add(null);
+        for (int ii = 0; ii < 4; ii++) {
+            GLSLShaderObjectsState shader = _renderer.createGLSLShaderObjectsState();
+            shader.setProgramID(rand.nextInt(3) == 0 ? -1 : 1 + rand.nextInt(8));
+            shaders.add(shader);
+        }
+        int textures = 1 + rand.nextInt(3);
+        ArrayList<TextureState> tstates = new ArrayList<TextureState>();
+        tstates.add(null);
+        for (int ii = 0; ii < 8; ii++) {
+            int[] ids = new int[textures];
+            for (int tt = 0; tt < ids.length; tt++) {
+                ids[tt] = rand.nextInt(6);
+            }
+            tstates.add(new TestTextureState(ids));
+        }
+
+        SceneElement[] batches = new SceneElement[count];
+        for (int ii = 0; ii < count; ii++) {
+            GeomBatch batch = new GeomBatch();
+            batch.states[RenderState.RS_GLSL_SHADER_OBJECTS] =
+                shaders.get(rand.nextInt(shaders.size()));
+            batch.states[RenderState.RS_TEXTURE] = tstates.get(rand.nextInt(tstates.size()));
+            batches[ii] = batch;
+        }
+        return batches;
+    }
+
+    /**
+     * Creates nodes with precomputed camera distances and Z orders, some of which are shared.
+     */
+    protected SceneElement[] createNodes (Random rand, int count)
+    {
+        SceneElement[] nodes = new SceneElement[count];
+        for (int ii = 0; ii < count; ii++) {
+            Node node = new Node("node" + ii);
+            node.queueDistance = (rand.nextInt(4) == 0) ?
+                rand.nextInt(10) : rand.nextFloat() * 10000f;
+            node.setZOrder(rand.nextInt(40) - 20);
+            nodes[ii] = node;
+        }
+        return nodes;
+    }
+
+    /** A texture state with fixed texture ids. */
+    protected static class TestTextureState extends TextureState
+    {
+        public TestTextureState (int[] ids)
+        {
+            texture = new ArrayList<Texture>();
+            for (int ii = 0; ii < ids.length; ii++) {
+                texture.add(null);
+            }
+            idCache = ids;
+        }
+
+        @Override public void load (int unit) {
+        }
+
+        @Override public void delete (int unit) {
+        }
+
+        @Override public void deleteAll () {
+        }
+
+        @Override public void deleteAll (boolean removeFromCache) {
+        }
+
+        @Override public void apply () {
+        }
+
+        @Override public StateRecord createStateRecord () {
+            return null;
+        }
+    }
+
+    /** The renderer from which we obtain our states. */
+    protected Renderer _renderer;
+
+    /** The comparator previously used to sort opaque batches by state. */
+    protected static final Comparator<SceneElement> OPAQUE = new Comparator<SceneElement>() {
+        public int compare (SceneElement o1, SceneElement o2) {
+            GeomBatch g1 = (GeomBatch)o1, g2 = (GeomBatch)o2;
+            GLSLShaderObjectsState ss1 =
+                (GLSLShaderObjectsState)g1.states[RenderState.RS_GLSL_SHADER_OBJECTS];
+            GLSLShaderObjectsState ss2 =
+                (GLSLShaderObjectsState)g2.states[RenderState.RS_GLSL_SHADER_OBJECTS];
+            if (ss1 != ss2) {
+                if (ss1 == null && ss2 != null) return -1;
+                else if (ss2 == null && ss1 != null) return 1;
+                int pid1 = ss1.getProgramID();
+                int pid2 = ss2.getProgramID();
+                if (pid1 != pid2) {
+                    return (pid1 < pid2) ? -1 : 1;
+                }
+            }
+
+            TextureState ts1 = (TextureState)g1.states[RenderState.RS_TEXTURE];
+            TextureState ts2 = (TextureState)g2.states[RenderState.RS_TEXTURE];
+            if (ts1 == ts2) return 0;
+            else if (ts1 == null && ts2 != null) return -1;
+            else if (ts2 == null && ts1 != null) return  1;
+
+            for (int x = 0, nots = Math.min(ts1.getNumberOfSetTextures(),
+                                            ts2.getNumberOfSetTextures()); x < nots; x++) {
+                int tid1 = ts1.getTextureID(x);
+                int tid2 = ts2.getTextureID(x);
+                if (tid1 != tid2) {
+                    return (tid1 < tid2) ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+    };
+
+    /** The comparator previously used to sort other opaque elements (closest first). */
+    protected static final Comparator<SceneElement> DISTANCE = new Comparator<SceneElement>() {
+        public int compare (SceneElement o1, SceneElement o2) {
+            return Float.compare(o1.queueDistance, o2.queueDistance);
+        }
+    };
+
+    /** The comparator previously used to sort transparent elements (farthest first). */
+    protected static final Comparator<SceneElement> TRANSPARENT = new Comparator<SceneElement>() {
+        public int compare (SceneElement o1, SceneElement o2) {
+            return Float.compare(o2.queueDistance, o1.queueDistance);
+        }
+    };
+
+    /** The comparator previously used to sort ortho elements (highest Z order first). */
+    protected static final Comparator<SceneElement> ORTHO = new Comparator<SceneElement>() {
+        public int compare (SceneElement o1, SceneElement o2) {
+            return o2.getZOrder() - o1.getZOrder();
+        }
+    };
+
+    /** The seed for our scenes, fixed so that failures are repeatable. */
+    protected static final long SEED = 1138L;
+
+    /** The number of scenes we generate. */
+    protected static final int SCENES = 200;
+
+    /** The maximum number of elements in a scene. */
+    protected static final int MAX_ELEMENTS = 2000;
+}
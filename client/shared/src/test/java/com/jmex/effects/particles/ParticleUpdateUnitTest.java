@@ -0,0 +1,461 @@
+//
+// $Id$
+
+package com.jmex.effects.particles;
+
+import java.nio.FloatBuffer;
+
+import junit.framework.TestCase;
+
+import com.jme.math.FastMath;
+import com.jme.math.Matrix4f;
+import com.jme.math.Rectangle;
+import com.jme.math.Vector3f;
+import com.jme.renderer.AbstractCamera;
+import com.jme.renderer.Camera;
+import com.jme.renderer.ColorRGBA;
+import com.jme.util.geom.BufferUtils;
+
+/**
+ * Verifies that the batched update of particle systems (the {@link ParticleController} passes
+ * over the {@link ParticleData} arrays) produces the same vertex and color buffers as the per
+ * particle update it replaced, which is reproduced here.  Both are driven by the same sequence of
+ * random numbers, so only deterministic influences are used: influences that draw random numbers
+ * now draw them for all particles before the update rather than between particles.
+ */
+public class ParticleUpdateUnitTest extends TestCase
+{
+    public ParticleUpdateUnitTest ()
+    {
+        super(ParticleUpdateUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        Camera camera = createCamera();
+        for (boolean aligned : new boolean[] { false, true }) {
+            checkUpdate("quads", ParticleGeometry.PT_QUAD, aligned, camera);
+            checkUpdate("triangles", ParticleGeometry.PT_TRIANGLE, aligned, camera);
+            checkUpdate("lines", ParticleGeometry.PT_LINE, aligned, camera);
+        }
+    }
+
+    /**
+     * Runs a particle system of the specified type through the current and the previous update
+     * paths, comparing the resulting buffers after each frame.
+     */
+    protected void checkUpdate (String name, int type, boolean aligned, Camera camera)
+    {
+        name = name + (aligned ? " (velocity aligned)" : "");
+
+        FastMath.rand.setSeed(SEED);
+        ParticleGeometry geom = createGeometry(type, aligned);
+        ParticleController controller = new ParticleController(geom);
+        geom.addController(controller);
+        configureController(controller);
+        controller.addInfluence(SimpleParticleInfluenceFactory.createBasicGravity(
+            GRAVITY, false));
+        controller.addInfluence(SimpleParticleInfluenceFactory.createBasicDrag(DRAG));
+
+        FastMath.rand.setSeed(SEED);
+        ReferenceParticles reference = new ReferenceParticles(createGeometry(type, aligned));
+        configureController(reference);
+
+        compareBuffers(name + " warmed up", geom, reference);
+        for (int ii = 0; ii < FRAMES; ii++) {
+            // both paths draw from the shared generator, so each starts from the same seed
+            float elapsed = 0.005f + 0.01f * (ii % 4);
+            FastMath.rand.setSeed(SEED + ii);
+            controller.update(elapsed);
+            FastMath.rand.setSeed(SEED + ii);
+            reference.update(elapsed);
+            compareBuffers(name + " frame " + ii + " update", geom, reference);
+
+            // update the vertices as when drawing
+            ParticleData data = geom.getParticleData();
+            data.updateVerts(camera);
+            data.flush();
+            reference.updateVerts(camera);
+            compareBuffers(name + " frame " + ii + " draw", geom, reference);
+        }
+    }
+
+    /**
+     * Creates and configures a particle system of the specified type.
+     */
+    protected ParticleGeometry createGeometry (int type, boolean aligned)
+    {
+        ParticleGeometry geom = (type == ParticleGeometry.PT_LINE) ?
+            new ParticleLines("lines", PARTICLES) : new ParticleMesh("mesh", PARTICLES, type);
+        geom.setGeometry(new Rectangle(new Vector3f(-5f, 0f, -5f), new Vector3f(5f, 0f, -5f),
+                                       new Vector3f(-5f, 0f, 5f)));
+        geom.setEmissionDirection(new Vector3f(0f, 1f, 0f));
+        geom.setMaximumAngle(FastMath.PI / 4f);
+        geom.setInitialVelocity(0.02f);
+        geom.setMinimumLifeTime(200f);
+        geom.setMaximumLifeTime(900f);
+        geom.setStartSize(1f);
+        geom.setEndSize(3f);
+        geom.setStartColor(new ColorRGBA(1f, 0.8f, 0.2f, 1f));
+        geom.setEndColor(new ColorRGBA(0.2f, 0.2f, 0.2f, 0f));
+        geom.setParticleSpinSpeed(2f);
+        geom.setParticleMass(2f);
+        geom.setCameraFacing(true);
+        geom.setVelocityAligned(aligned);
+        return geom;
+    }
+
+    /**
+     * Configures a controller (after its warm up) to regulate the flow of particles.
+     */
+    protected void configureController (ParticleController controller)
+    {
+        controller.setControlFlow(true);
+        controller.setReleaseVariance(0.5f);
+    }
+
+    /**
+     * Configures the reference controller as {@link #configureController(ParticleController)}.
+     */
+    protected void configureController (ReferenceParticles reference)
+    {
+        reference.controlFlow = true;
+        reference.releaseVariance = 0.5f;
+    }
+
+    /**
+     * Compares the vertex and color buffers of the supplied particle systems.
+     */
+    protected void compareBuffers (String what, ParticleGeometry geom, ReferenceParticles ref)
+    {
+        compareBuffers(what + " vertices", ref.vertices, geom.getVertexBuffer(0));
+        compareBuffers(what + " colors", ref.colors, geom.getColorBuffer(0));
+    }
+
+    /**
+     * Compares the contents of two buffers.
+     */
+    protected void compareBuffers (String what, FloatBuffer expected, FloatBuffer actual)
+    {
+        assertEquals(what + " size", expected.capacity(), actual.capacity());
+        for (int ii = 0, nn = expected.capacity(); ii < nn; ii++) {
+            assertEquals(what + " [" + ii + "]", expected.get(ii), actual.get(ii), 0f);
+        }
+    }
+
+    /**
+     * Creates a camera looking down at the particles from an angle.
+     */
+    protected static Camera createCamera ()
+    {
+        Camera camera = new AbstractCamera() {
+            public Matrix4f getProjectionMatrix () {
+                return null;
+            }
+            public Matrix4f getModelViewMatrix () {
+                return null;
+            }
+            public int getHeight () {
+                return 480;
+            }
+            public int getWidth () {
+                return 640;
+            }
+            public void resize (int width, int height) {
+            }
+            public void onViewPortChange () {
+            }
+        };
+        camera.lookAt(new Vector3f(0f, 0f, 0f), Vector3f.UNIT_Y);
+        camera.setLocation(new Vector3f(20f, 30f, 40f));
+        camera.lookAt(new Vector3f(0f, 0f, 0f), Vector3f.UNIT_Y);
+        return camera;
+    }
+
+    /**
+     * A particle system updated as by the controller and particles before their state moved into
+     * {@link ParticleData}.  The particles' parameters are obtained from (and their locations and
+     * velocities generated by) a separate geometry, but their state and buffers are our own.
+     */
+    protected static class ReferenceParticles
+    {
+        /** The vertex and color buffers, which should match those of the geometry. */
+        public FloatBuffer vertices, colors;
+
+        /** The controller's settings. */
+        public boolean controlFlow;
+        public float releaseVariance;
+
+        public ReferenceParticles (ParticleGeometry parent)
+        {
+            _parent = parent;
+            ParticleData data = parent.getParticleData();
+            _verts = data.verts;
+            vertices = BufferUtils.createVector3Buffer(data.count * _verts);
+            colors = BufferUtils.createColorBuffer(data.count * _verts);
+
+            // copy the initial state of the particles, which is created as it always was
+            _particles = new OldParticle[data.count];
+            for (int ii = 0; ii < _particles.length; ii++) {
+                OldParticle p = _particles[ii] = new OldParticle(ii * _verts);
+                ParticleData.getVector(data.position, ii, p.position);
+                ParticleData.getVector(data.velocity, ii, p.velocity);
+                ParticleData.getColor(data.startColor, ii, p.startColor);
+                p.currColor.set(p.startColor);
+                p.lifeSpan = data.lifeSpan[ii];
+                p.currentSize = data.size[ii];
+                p.invMass = data.invMass[ii];
+                for (int vv = 0; vv < _verts; vv++) {
+                    BufferUtils.setInBuffer(p.currColor, colors, p.startIndex + vv);
+                }
+            }
+
+            parent.updateRotationMatrix();
+            for (int ii = 600; --ii >= 0; ) {
+                update(0.1f);
+            }
+
+            // the controller warms up before the influences are added to it
+            _influenced = true;
+        }
+
+        /**
+         * Updates the particles, as the controller did.
+         */
+        public void update (float secondsPassed)
+        {
+            if (!_active) {
+                return;
+            }
+            _currentTime += secondsPassed;
+            float timePassed = _currentTime - _prevTime;
+            if (timePassed < PRECISION) {
+                return;
+            }
+            _prevTime = _currentTime;
+
+            _parent.updateRotationMatrix();
+            if (controlFlow) {
+                _releaseParticles += (_parent.getReleaseRate() * timePassed *
+                    (1.0f + releaseVariance * (FastMath.nextRandomFloat() - 0.5f)));
+                _particlesToCreate = (int)_releaseParticles;
+                if (_particlesToCreate > 0) {
+                    _releaseParticles -= _particlesToCreate;
+                } else {
+                    _particlesToCreate = 0;
+                }
+            }
+            _parent.updateInvScale();
+
+            ParticleData data = _parent.getParticleData();
+            boolean dead = true;
+            for (int ii = 0; ii < _particles.length; ii++) {
+                OldParticle p = _particles[ii];
+                if (_influenced && p.status == Particle.ALIVE) {
+                    // gravity, then drag
+                    p.velocity.scaleAdd(timePassed, GRAVITY, p.velocity);
+                    _tempVec.set(p.velocity);
+                    p.velocity.addLocal(_tempVec.multLocal(-DRAG * timePassed * p.invMass));
+                }
+                if (p.updateAndCheck(timePassed) && (!controlFlow || _particlesToCreate > 0)) {
+                    dead = false;
+                    if (controlFlow) {
+                        _particlesToCreate--;
+                    }
+                    p.recreateParticle(_parent.getRandomLifeSpan());
+                    p.status = Particle.ALIVE;
+                    _parent.initParticleLocation(ii);
+                    ParticleData.getVector(data.position, ii, p.position);
+                    _parent.resetParticleVelocity(ii);
+                    ParticleData.getVector(data.velocity, ii, p.velocity);
+                    p.updateVerts(null);
+                } else {
+                    dead = false;
+                }
+            }
+            if (dead) {
+                _active = false;
+            }
+        }
+
+        /**
+         * Updates the vertices of the living particles, as the geometry did when drawn.
+         */
+        public void updateVerts (Camera camera)
+        {
+            for (OldParticle p : _particles) {
+                if (p.status == Particle.ALIVE) {
+                    p.updateVerts(camera);
+                }
+            }
+        }
+
+        /** The state of a single particle. */
+        protected class OldParticle
+        {
+            public int startIndex;
+            public Vector3f position = new Vector3f(), velocity = new Vector3f();
+            public ColorRGBA startColor = new ColorRGBA(), currColor = new ColorRGBA();
+            public int status = Particle.AVAILABLE;
+            public float currentSize, lifeSpan, spinAngle, invMass;
+            public int currentAge;
+            public float rChange, gChange, bChange, aChange;
+
+            public OldParticle (int startIndex)
+            {
+                this.startIndex = startIndex;
+            }
+
+            public void recreateParticle (float lifeSpan)
+            {
+                this.lifeSpan = lifeSpan;
+                startColor.set(_parent.getStartColor());
+                currColor.set(startColor);
+                rChange = startColor.r - _parent.getEndColor().r;
+                gChange = startColor.g - _parent.getEndColor().g;
+                bChange = startColor.b - _parent.getEndColor().b;
+                aChange = startColor.a - _parent.getEndColor().a;
+                for (int x = 0; x < _verts; x++) {
+                    BufferUtils.setInBuffer(currColor, colors, startIndex + x);
+                }
+                currentSize = _parent.getStartSize();
+                currentAge = 0;
+                spinAngle = 0;
+                status = Particle.AVAILABLE;
+            }
+
+            public boolean updateAndCheck (float secondsPassed)
+            {
+                if (status != Particle.ALIVE) {
+                    _tempVec.set(_parent.getOriginCenter());
+                    for (int x = 0; x < _verts; x++) {
+                        BufferUtils.setInBuffer(_tempVec, vertices, startIndex + x);
+                    }
+                    return true;
+                }
+                currentAge += secondsPassed * 1000;
+                if (currentAge > lifeSpan) {
+                    status = Particle.DEAD;
+                    currColor.a = 0;
+                    for (int x = 0; x < _verts; x++) {
+                        BufferUtils.setInBuffer(currColor, colors, startIndex + x);
+                    }
+                    return true;
+                }
+
+                position.scaleAdd(secondsPassed * 1000f, velocity, position);
+                spinAngle = spinAngle + _parent.getParticleSpinSpeed() * secondsPassed;
+
+                float lifeRatio = currentAge / lifeSpan;
+                currentSize = _parent.getStartSize();
+                currentSize -= ((currentSize - _parent.getEndSize()) * lifeRatio);
+
+                currColor.set(startColor);
+                currColor.r -= rChange * lifeRatio;
+                currColor.g -= gChange * lifeRatio;
+                currColor.b -= bChange * lifeRatio;
+                currColor.a -= aChange * lifeRatio;
+                for (int x = 0; x < _verts; x++) {
+                    BufferUtils.setInBuffer(currColor, colors, startIndex + x);
+                }
+                return false;
+            }
+
+            public void updateVerts (Camera cam)
+            {
+                float orient = _parent.getParticleOrientation() + spinAngle;
+                if (cam != null && _parent.isCameraFacing()) {
+                    if (_parent.isVelocityAligned()) {
+                        _bbX.set(velocity).normalizeLocal().multLocal(currentSize);
+                        cam.getDirection().cross(_bbX, _bbY).normalizeLocal().multLocal(
+                            currentSize);
+                    } else if (orient == 0) {
+                        _bbX.set(cam.getLeft()).multLocal(currentSize);
+                        _bbY.set(cam.getUp()).multLocal(currentSize);
+                    } else {
+                        float cA = FastMath.cos(orient) * currentSize;
+                        float sA = FastMath.sin(orient) * currentSize;
+                        _bbX.set(cam.getLeft()).multLocal(cA).addLocal(
+                            cam.getUp().x * sA, cam.getUp().y * sA, cam.getUp().z * sA);
+                        _bbY.set(cam.getLeft()).multLocal(-sA).addLocal(
+                            cam.getUp().x * cA, cam.getUp().y * cA, cam.getUp().z * cA);
+                    }
+                } else {
+                    _bbX.set(_parent.getLeftVector()).multLocal(currentSize);
+                    _bbY.set(_parent.getUpVector()).multLocal(currentSize);
+                }
+
+                _tempPos.set(position);
+                if (_parent.isTransformParticles()) {
+                    _parent.getEmitterTransform().multPoint(_tempPos);
+                }
+
+                switch (_parent.getParticleType()) {
+                case ParticleGeometry.PT_QUAD:
+                    _tempPos.add(_bbX, _tempVec).subtractLocal(_bbY);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex);
+                    _tempPos.add(_bbX, _tempVec).addLocal(_bbY);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex + 1);
+                    _tempPos.subtract(_bbX, _tempVec).subtractLocal(_bbY);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex + 2);
+                    _tempPos.subtract(_bbX, _tempVec).addLocal(_bbY);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex + 3);
+                    break;
+
+                case ParticleGeometry.PT_TRIANGLE:
+                    _tempPos.add(_bbX, _tempVec).subtractLocal(_bbY);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex);
+                    _tempPos.add(_bbX, _tempVec).addLocal(3*_bbY.x, 3*_bbY.y, 3*_bbY.z);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex + 1);
+                    _tempPos.subtract(_bbX.multLocal(3), _tempVec).subtractLocal(_bbY);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex + 2);
+                    break;
+
+                case ParticleGeometry.PT_LINE:
+                    _tempPos.subtract(_bbX, _tempVec);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex);
+                    _tempPos.add(_bbX, _tempVec);
+                    BufferUtils.setInBuffer(_tempVec, vertices, startIndex + 1);
+                    break;
+                }
+            }
+        }
+
+        /** Supplies the particles' parameters, locations and velocities. */
+        protected ParticleGeometry _parent;
+
+        /** Our particles. */
+        protected OldParticle[] _particles;
+
+        /** The number of vertices per particle. */
+        protected int _verts;
+
+        /** The controller's state. */
+        protected boolean _active = true;
+        protected float _currentTime, _prevTime, _releaseParticles;
+        protected int _particlesToCreate;
+
+        /** Whether or not to apply the influences (not applied while warming up). */
+        protected boolean _influenced;
+
+        /** Working vectors. */
+        protected Vector3f _tempVec = new Vector3f(), _tempPos = new Vector3f();
+        protected Vector3f _bbX = new Vector3f(), _bbY = new Vector3f();
+    }
+
+    /** The seed shared by both update paths. */
+    protected static final long SEED = 4242L;
+
+    /** The number of particles in each system. */
+    protected static final int PARTICLES = 64;
+
+    /** The number of frames to compare after warming up. */
+    protected static final int FRAMES = 200;
+
+    /** The influences applied to the particles. */
+    protected static final Vector3f GRAVITY = new Vector3f(0f, -0.00002f, 0f);
+    protected static final float DRAG = 0.5f;
+
+    /** The default precision of the controller. */
+    protected static final float PRECISION = 0.01f;
+}
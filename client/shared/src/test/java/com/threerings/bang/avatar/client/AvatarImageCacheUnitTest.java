@@ -0,0 +1,90 @@
+//
+// $Id$
+
+package com.threerings.bang.avatar.client;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link AvatarImageCache}, which checks that stored images can be loaded back
+ * and that the cache prunes the least recently used images once it exceeds its size limit.
+ */
+public class AvatarImageCacheUnitTest extends TestCase
+{
+    public AvatarImageCacheUnitTest ()
+    {
+        super(AvatarImageCacheUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        try {
+            File tmpdir = File.createTempFile("avatars", "");
+            tmpdir.delete();
+
+            // measure an image so that we can size the cache to hold a handful of them
+            AvatarImageCache cache = new AvatarImageCache(tmpdir, Long.MAX_VALUE);
+            cache.storeImage("probe", createImage(0));
+            long size = cache.getImageFile("probe").length();
+            assertTrue("Image not stored", size > 0);
+            assertNotNull(cache.loadImage("probe"));
+            cache.getImageFile("probe").delete();
+
+            // store more images than fit, making each older than the next, except for the
+            // oldest, which we touch by loading it so that it becomes the most recently used
+            cache = new AvatarImageCache(tmpdir, size * IMAGES / 2);
+            long stamp = System.currentTimeMillis() - 1000L * 60 * 60;
+            for (int ii = 0; ii < IMAGES / 2; ii++) {
+                cache.storeImage("image" + ii, createImage(ii));
+                cache.getImageFile("image" + ii).setLastModified(stamp + ii * 1000L);
+            }
+            assertNotNull(cache.loadImage("image0"));
+            for (int ii = IMAGES / 2; ii < IMAGES; ii++) {
+                cache.storeImage("image" + ii, createImage(ii));
+                cache.getImageFile("image" + ii).setLastModified(stamp + ii * 1000L);
+            }
+
+            long total = 0L;
+            for (File file : cache.listImages()) {
+                total += file.length();
+            }
+            assertTrue("Cache exceeds limit: " + total, total <= size * IMAGES / 2);
+            assertNotNull("Recently used image pruned", cache.loadImage("image0"));
+            assertNull("Least recently used image kept", cache.loadImage("image1"));
+            assertNotNull("Newest image pruned", cache.loadImage("image" + (IMAGES - 1)));
+
+            for (File file : cache.listImages()) {
+                file.delete();
+            }
+            tmpdir.delete();
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a test image filled with noise generated from the supplied seed, so that all test
+     * images compress to (very nearly) the same size.
+     */
+    protected BufferedImage createImage (int seed)
+    {
+        Random rand = new Random(seed);
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        for (int yy = 0; yy < 32; yy++) {
+            for (int xx = 0; xx < 32; xx++) {
+                image.setRGB(xx, yy, 0xFF000000 | rand.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    /** The number of images to store. */
+    protected static final int IMAGES = 12;
+}
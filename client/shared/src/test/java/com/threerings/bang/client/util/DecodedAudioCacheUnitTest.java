@@ -0,0 +1,100 @@
+//
+// $Id$
+
+package com.threerings.bang.client.util;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link DecodedAudioCache}, which also reports decoding throughput and cache
+ * hit rates. Decodes the sound effects found in the directory named by the <code>rsrc_dir</code>
+ * system property (defaulting to the assets module's resources).
+ */
+public class DecodedAudioCacheUnitTest extends TestCase
+{
+    public DecodedAudioCacheUnitTest ()
+    {
+        super(DecodedAudioCacheUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        File rsrcdir = new File(System.getProperty("rsrc_dir", "../../assets/rsrc"));
+        ArrayList<File> clips = new ArrayList<File>();
+        findClips(new File(rsrcdir, "effects"), clips);
+        if (clips.isEmpty()) {
+            System.err.println("No clips found in " + rsrcdir + "; skipping test.");
+            return;
+        }
+
+        try {
+            File tmpdir = File.createTempFile("pcm", "");
+            tmpdir.delete();
+            DecodedAudioCache cache = new DecodedAudioCache(Integer.MAX_VALUE, tmpdir, 0L);
+
+            // the first pass should decode everything and the second should hit the cache
+            long start = System.currentTimeMillis();
+            for (File clip : clips) {
+                assertTrue(clip + " decoded empty", cache.getClip(clip).getSize() > 0);
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            for (File clip : clips) {
+                cache.getClip(clip);
+            }
+            assertEquals(clips.size(), cache.getClipMisses());
+            assertEquals(clips.size(), cache.getClipHits());
+            assertEquals(0.5f, cache.getClipHitRate());
+            System.out.println("Decoded " + clips.size() + " clips (" +
+                               cache.getDecodedBytes() + " bytes) in " + elapsed + "ms: " +
+                               cache.summarizeStats());
+
+            // decoded tracks should match the in-memory decoding
+            File track = clips.get(0);
+            File pfile = cache.getTrackFile(track);
+            cache.writeTrack(track, pfile);
+            DecodedAudioCache.PCMData mapped = cache.mapTrack(pfile);
+            DecodedAudioCache.PCMData decoded = cache.getClip(track);
+            assertEquals(decoded.format, mapped.format);
+            assertEquals(decoded.frequency, mapped.frequency);
+            assertEquals(decoded.getData(), mapped.getData());
+
+            // with a zero byte limit, pruning should clear out the track
+            cache.pruneTracks();
+            assertFalse(pfile.exists());
+            tmpdir.delete();
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void findClips (File dir, ArrayList<File> clips)
+    {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findClips(file, clips);
+            } else if (file.getName().endsWith(".ogg")) {
+                clips.add(file);
+            }
+        }
+    }
+
+    public static Test suite ()
+    {
+        return new DecodedAudioCacheUnitTest();
+    }
+
+    public static void main (String[] args)
+    {
+        DecodedAudioCacheUnitTest test = new DecodedAudioCacheUnitTest();
+        test.runTest();
+    }
+}
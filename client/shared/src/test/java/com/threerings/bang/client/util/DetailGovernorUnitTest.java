@@ -0,0 +1,99 @@
+//
+// $Id$
+
+package com.threerings.bang.client.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Drives the {@link DetailGovernor} with synthetic frame times and checks that it sheds and
+ * restores detail as expected, ignores frames when not sampling and within its hysteresis band,
+ * and backs off rather than oscillating between two steps.
+ */
+public class DetailGovernorUnitTest extends TestCase
+{
+    public DetailGovernorUnitTest ()
+    {
+        super(DetailGovernorUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        DetailGovernor gov = new DetailGovernor(BUDGET);
+        assertEquals(0, gov.getStep());
+        assertEquals(1f, gov.getParticleScale());
+        assertEquals(1, gov.getWaveInterval());
+        assertTrue(gov.areIdleAnimationsEnabled());
+
+        // frames noted while not sampling are ignored
+        feed(gov, BUDGET * 3, DetailGovernor.WINDOW_SIZE * 10);
+        assertEquals(0, gov.getStep());
+
+        // a single hitch amid fast frames is clamped rather than triggering a downgrade
+        gov.setSampling(true);
+        feed(gov, BUDGET * 0.5f, DetailGovernor.WINDOW_SIZE - 1);
+        feed(gov, 10f, 1);
+        assertEquals(0, gov.getStep());
+
+        // slow frames shed one step per window, down to the bottom and no further
+        gov.setSampling(true);
+        feed(gov, BUDGET * 2, DetailGovernor.WINDOW_SIZE - 1);
+        assertEquals(0, gov.getStep());
+        feed(gov, BUDGET * 2, 1);
+        assertEquals(1, gov.getStep());
+        feed(gov, BUDGET * 2, DetailGovernor.WINDOW_SIZE * (DetailGovernor.STEPS + 5));
+        assertEquals(DetailGovernor.STEPS - 1, gov.getStep());
+        assertTrue(gov.getParticleScale() < 1f);
+        assertEquals(0, gov.getWaveInterval());
+        assertFalse(gov.areIdleAnimationsEnabled());
+
+        // frames within the hysteresis band change nothing
+        feed(gov, BUDGET * 0.9f, DetailGovernor.WINDOW_SIZE * 50);
+        assertEquals(DetailGovernor.STEPS - 1, gov.getStep());
+
+        // fast frames restore one step after the upgrade delay
+        gov.setSampling(true);
+        int delay = gov.getUpgradeDelay();
+        feed(gov, BUDGET * 0.5f, DetailGovernor.WINDOW_SIZE - 1 + delay - 1);
+        assertEquals(DetailGovernor.STEPS - 1, gov.getStep());
+        feed(gov, BUDGET * 0.5f, 1);
+        assertEquals(DetailGovernor.STEPS - 2, gov.getStep());
+
+        // if the restored step immediately proves too slow, the delay doubles
+        feed(gov, BUDGET * 2, DetailGovernor.WINDOW_SIZE);
+        assertEquals(DetailGovernor.STEPS - 1, gov.getStep());
+        assertEquals(delay * 2, gov.getUpgradeDelay());
+
+        // simulate a load that is only affordable at the bottom two steps; the governor should
+        // spend ever less of its time trying the step that doesn't fit
+        int trials = 0, total = DetailGovernor.WINDOW_SIZE * 2000;
+        for (int ii = 0; ii < total; ii++) {
+            boolean cheap = gov.getStep() == DetailGovernor.STEPS - 1;
+            gov.noteFrame(cheap ? BUDGET * 0.6f : BUDGET * 1.3f);
+            if (!cheap) {
+                trials++;
+            }
+        }
+        assertTrue("Oscillated too often: " + trials, trials < total / 10);
+        assertEquals(DetailGovernor.MAX_UPGRADE_DELAY, gov.getUpgradeDelay());
+
+        // once there's plenty of headroom, everything is eventually restored
+        feed(gov, BUDGET * 0.2f, DetailGovernor.MAX_UPGRADE_DELAY * DetailGovernor.STEPS * 2);
+        assertEquals(0, gov.getStep());
+        assertEquals(1f, gov.getParticleScale());
+        assertTrue(gov.areIdleAnimationsEnabled());
+    }
+
+    /**
+     * Feeds the governor the specified number of frames of the given duration.
+     */
+    protected void feed (DetailGovernor gov, float time, int frames)
+    {
+        for (int ii = 0; ii < frames; ii++) {
+            gov.noteFrame(time);
+        }
+    }
+
+    /** The frame budget: thirty frames per second. */
+    protected static final float BUDGET = 1f / 30f;
+}
@@ -0,0 +1,255 @@
+//
+// $Id$
+
+package com.threerings.bang.game.util;
+
+import java.awt.Point;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.threerings.media.util.AStarPathUtil;
+
+import com.threerings.bang.game.data.BangBoard;
+
+/**
+ * Checks the {@link DistanceField} against the A* paths computed with the default piece stepper
+ * on randomly generated (but repeatable) boards with walls and one-way sides: the distance of each
+ * tile along a shortest path must match its position on the path, and the best move that the field
+ * picks from a set of moves must get as close to the target as the last move along the path.
+ */
+public class DistanceFieldUnitTest extends TestCase
+{
+    public DistanceFieldUnitTest ()
+    {
+        super(DistanceFieldUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        Random rand = new Random(SEED);
+        int paths = 0;
+        for (int ii = 0; ii < BOARDS; ii++) {
+            TestBoard board = new TestBoard(rand);
+            for (int jj = 0; jj < TRIALS; jj++) {
+                Point start = board.getRandomTile(rand), target = board.getRandomTile(rand);
+                if (start.equals(target)) {
+                    continue;
+                }
+                if (checkPath(board, start, target, 1 + rand.nextInt(MAX_MOVE))) {
+                    paths++;
+                }
+            }
+        }
+        assertTrue("Too few reachable targets: " + paths, paths > BOARDS * TRIALS / 4);
+
+        checkRange();
+        checkJumps();
+    }
+
+    /**
+     * Compares the field to the A* path between the specified points.
+     *
+     * @return true if the target was reachable.
+     */
+    protected boolean checkPath (TestBoard board, Point start, Point target, int move)
+    {
+        PointSet targets = new PointSet();
+        targets.add(target.x, target.y);
+        DistanceField field = new DistanceField(board, TRAVERSER);
+        field.compute(targets, 0, 0);
+
+        List<Point> path = AStarPathUtil.getPath(
+            board, STEPPER, TRAVERSER, board.getWidth() * board.getHeight(),
+            start.x, start.y, target.x, target.y, false);
+        if (path == null) {
+            assertEquals(DistanceField.UNREACHABLE, field.getDistance(start.x, start.y));
+            return false;
+        }
+
+        // every tile along a shortest path is that much closer to the target
+        int length = path.size() - 1;
+        for (int ii = 0; ii <= length; ii++) {
+            Point pt = path.get(ii);
+            assertEquals(length - ii, field.getDistance(pt.x, pt.y));
+        }
+
+        // the field should pick a move as close to the target as the last one along the path
+        PointSet moves = getMoves(board, start, move);
+        Point apick = null;
+        for (int ii = length; ii > 0 && apick == null; ii--) {
+            Point pt = path.get(ii);
+            if (moves.contains(pt.x, pt.y)) {
+                apick = pt;
+            }
+        }
+        int fidx = field.getBestMove(moves);
+        assertNotNull(apick);
+        assertTrue(fidx != -1);
+        assertEquals(field.getDistance(apick.x, apick.y),
+                     field.getDistance(moves.getX(fidx), moves.getY(fidx)));
+        return true;
+    }
+
+    /**
+     * Checks that goals at a range from the target are honored.
+     */
+    protected void checkRange ()
+    {
+        TestBoard board = new TestBoard(null);
+        int x = BangBoard.BORDER_SIZE + 4, y = BangBoard.BORDER_SIZE + 4;
+        PointSet targets = new PointSet();
+        targets.add(x, y);
+        DistanceField field = new DistanceField(board, TRAVERSER);
+        field.compute(targets, 2, 3);
+        assertEquals(2, field.getDistance(x, y));
+        assertEquals(1, field.getDistance(x + 1, y));
+        assertEquals(0, field.getDistance(x + 2, y));
+        assertEquals(0, field.getDistance(x + 2, y + 1));
+        assertEquals(0, field.getDistance(x + 3, y));
+        assertEquals(1, field.getDistance(x + 4, y));
+        assertEquals(3, field.getDistance(x + 6, y));
+        assertEquals(DistanceField.UNREACHABLE, field.getDistance(0, 0));
+    }
+
+    /**
+     * Checks that jumps lead across otherwise impassable walls.
+     */
+    protected void checkJumps ()
+    {
+        TestBoard board = new TestBoard(null);
+        int wall = board.getWidth() / 2;
+        for (int yy = 0; yy < board.getHeight(); yy++) {
+            board.setWall(wall, yy);
+        }
+        int y = BangBoard.BORDER_SIZE + 4;
+        PointSet targets = new PointSet();
+        targets.add(wall + 3, y);
+        DistanceField field = new DistanceField(board, TRAVERSER);
+        field.compute(targets, 0, 0);
+        assertEquals(DistanceField.UNREACHABLE, field.getDistance(wall - 1, y));
+
+        field = new DistanceField(board, TRAVERSER);
+        field.addJump(wall - 2, y + 2, wall + 1, y + 2);
+        field.compute(targets, 0, 0);
+        assertEquals(0, field.getDistance(wall + 3, y));
+        assertEquals(4, field.getDistance(wall + 1, y + 2));
+        assertEquals(5, field.getDistance(wall - 2, y + 2));
+        assertEquals(7, field.getDistance(wall - 2, y));
+    }
+
+    /**
+     * Returns the tiles reachable from the start within the specified number of steps, not
+     * including the start itself.
+     */
+    protected PointSet getMoves (TestBoard board, Point start, int move)
+    {
+        PointSet moves = new PointSet();
+        int[] xs = new int[SIZE * SIZE], ys = new int[SIZE * SIZE], steps = new int[SIZE * SIZE];
+        int head = 0, tail = 0;
+        xs[tail] = start.x;
+        ys[tail++] = start.y;
+        while (head < tail) {
+            int x = xs[head], y = ys[head], step = steps[head++];
+            if (step == move) {
+                continue;
+            }
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + DistanceField.STEP_X[dir], ny = y + DistanceField.STEP_Y[dir];
+                if (board.canTraverse(TRAVERSER, x, y, nx, ny) && !moves.contains(nx, ny) &&
+                    (nx != start.x || ny != start.y)) {
+                    moves.add(nx, ny);
+                    xs[tail] = nx;
+                    ys[tail] = ny;
+                    steps[tail++] = step + 1;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /** A board with random walls and one-way sides. */
+    protected static class TestBoard extends BangBoard
+    {
+        public TestBoard (Random rand)
+        {
+            super(SIZE, SIZE);
+            _walls = new boolean[SIZE * SIZE];
+            _blocked = new int[SIZE * SIZE];
+            if (rand == null) {
+                return;
+            }
+            for (int ii = 0; ii < _walls.length; ii++) {
+                _walls[ii] = rand.nextInt(4) == 0;
+                if (rand.nextInt(6) == 0) {
+                    _blocked[ii] = 1 << rand.nextInt(4);
+                }
+            }
+        }
+
+        public void setWall (int x, int y)
+        {
+            _walls[y * SIZE + x] = true;
+        }
+
+        public Point getRandomTile (Random rand)
+        {
+            while (true) {
+                int x = _playarea.x + rand.nextInt(_playarea.width),
+                    y = _playarea.y + rand.nextInt(_playarea.height);
+                if (!_walls[y * SIZE + x]) {
+                    return new Point(x, y);
+                }
+            }
+        }
+
+        @Override // documentation inherited
+        public boolean canTraverse (Object traverser, int x, int y)
+        {
+            return _playarea.contains(x, y) && !_walls[y * SIZE + x];
+        }
+
+        @Override // documentation inherited
+        public boolean canTraverse (Object traverser, int sx, int sy, int dx, int dy)
+        {
+            if (!canTraverse(traverser, dx, dy) || Math.abs(sx - dx) + Math.abs(sy - dy) != 1) {
+                return false;
+            }
+            // a tile may refuse entry from one side
+            int dir = (dx > sx) ? 0 : (dx < sx ? 1 : (dy > sy ? 2 : 3));
+            return (_blocked[dy * SIZE + dx] & (1 << dir)) == 0;
+        }
+
+        protected boolean[] _walls;
+        protected int[] _blocked;
+    }
+
+    /** The default piece stepper, which the field mirrors. */
+    protected static final AStarPathUtil.Stepper STEPPER = new AStarPathUtil.Stepper() {
+        public void considerSteps (int x, int y) {
+            considerStep(x, y - 1, 1);
+            considerStep(x - 1, y, 1);
+            considerStep(x + 1, y, 1);
+            considerStep(x, y + 1, 1);
+        }
+    };
+
+    /** The traverser passed to the board, which our test board ignores. */
+    protected static final Object TRAVERSER = new Object();
+
+    /** The seed used to generate the boards. */
+    protected static final long SEED = 1138L;
+
+    /** The number of boards to generate. */
+    protected static final int BOARDS = 50;
+
+    /** The number of paths to check on each board. */
+    protected static final int TRIALS = 40;
+
+    /** The size of the test boards (including the border). */
+    protected static final int SIZE = BangBoard.DEFAULT_SIZE;
+
+    /** The maximum move distance. */
+    protected static final int MAX_MOVE = 6;
+}
@@ -33,7 +33,6 @@
 package com.jme.renderer;
 
 import java.util.Arrays;
-import java.util.Comparator;
 
 import com.jme.math.Vector3f;
 import com.jme.scene.SceneElement;
@@ -45,7 +44,6 @@ import com.jme.scene.state.RenderState;
 import com.jme.scene.state.TextureState;
 import com.jme.scene.state.ZBufferState;
 import com.jme.system.JmeException;
-import com.jme.util.SortUtil;
 
 /**
  * This optional class supports queueing of rendering states that are drawn when
@@ -128,12 +126,12 @@ public class RenderQueue {
      * Creates the buckets needed.
      */
     private void setupBuckets() {
-        opaqueBucket = new SceneElementList(new OpaqueComp());
-        opaqueBackBucket = new SceneElementList(new OpaqueComp());
-        transparentBucket = new SceneElementList(new TransparentComp());
-        transparentBackBucket = new SceneElementList(new TransparentComp());
-        orthoBucket = new SceneElementList(new OrthoComp());
-        orthoBackBucket = new SceneElementList(new OrthoComp());
+        opaqueBucket = new SceneElementList(new OpaqueKey());
+        opaqueBackBucket = new SceneElementList(new OpaqueKey());
+        transparentBucket = new SceneElementList(new TransparentKey());
+        transparentBackBucket = new SceneElementList(new TransparentKey());
+        orthoBucket = new SceneElementList(new OrthoKey());
+        orthoBackBucket = new SceneElementList(new OrthoKey());
     }
 
     /**
@@ -190,6 +188,40 @@ public class RenderQueue {
         return spat.queueDistance;
     }
 
+    /**
+     * Converts a float into an int whose unsigned ordering matches that of
+     * the float (with negative and positive zero being equal).
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value + 0f);
+        return bits ^ ((bits >> 31) | 0x80000000);
+    }
+
+    /**
+     * Sorts the specified bucket and returns its contents in the order in
+     * which they would be rendered. Exposed for testing.
+     */
+    SceneElement[] sortBucket(int bucket) {
+        SceneElementList list;
+        switch (bucket) {
+        case Renderer.QUEUE_OPAQUE:
+            list = opaqueBucket;
+            break;
+        case Renderer.QUEUE_TRANSPARENT:
+            list = transparentBucket;
+            break;
+        case Renderer.QUEUE_ORTHO:
+            list = orthoBucket;
+            break;
+        default:
+            throw new JmeException("Illegal Render queue order of " + bucket);
+        }
+        list.sort();
+        SceneElement[] sorted = new SceneElement[list.listSize];
+        System.arraycopy(list.list, 0, sorted, 0, list.listSize);
+        return sorted;
+    }
+
     /**
      * clears all of the buckets.
      */
@@ -299,16 +331,22 @@ public class RenderQueue {
 
         SceneElement[] list, tlist;
 
+        /** The sort keys of the elements in list and their scratch space. */
+        long[] keys, tkeys;
+
         int listSize;
 
         private static final int DEFAULT_SIZE = 32;
 
-        private Comparator<SceneElement> c;
+        private SortKey key;
+
+        /** The radix sort histogram. */
+        private int[] counts = new int[256];
 
-        SceneElementList(Comparator<SceneElement> c) {
+        SceneElementList(SortKey key) {
             listSize = 0;
             list = new SceneElement[DEFAULT_SIZE];
-            this.c = c;
+            this.key = key;
         }
 
         /**
@@ -338,99 +376,137 @@ public class RenderQueue {
         }
 
         /**
-         * Sorts the elements in the list acording to their Comparator.
+         * Sorts the elements in the list according to their keys. Each key is
+         * computed once and the keys are then radix sorted a byte at a time,
+         * skipping the bytes that all keys share. The sort is stable, so
+         * elements with equal keys are drawn in the order they were queued.
          */
         void sort() {
-            if (listSize > 1) {
-                // resize or populate our temporary array as necessary
-                if (tlist == null || tlist.length != list.length) {
-                    tlist = list.clone();
-                } else {
-                    System.arraycopy(list, 0, tlist, 0, list.length);
+            if (listSize < 2) {
+                return;
+            }
+            // resize our temporary arrays as necessary
+            if (tlist == null || tlist.length != list.length) {
+                tlist = new SceneElement[list.length];
+                keys = new long[list.length];
+                tkeys = new long[list.length];
+            }
+            for (int i = 0; i < listSize; i++) {
+                keys[i] = key.compute(list[i]);
+            }
+
+            SceneElement[] src = list, dest = tlist;
+            long[] ksrc = keys, kdest = tkeys;
+            for (int shift = 0; shift < key.bits; shift += 8) {
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < listSize; i++) {
+                    counts[(int)(ksrc[i] >>> shift) & 0xFF]++;
+                }
+                if (counts[(int)(ksrc[0] >>> shift) & 0xFF] == listSize) {
+                    continue; // every key has the same byte here
+                }
+                for (int b = 0, total = 0; b < counts.length; b++) {
+                    int count = counts[b];
+                    counts[b] = total;
+                    total += count;
+                }
+                for (int i = 0; i < listSize; i++) {
+                    int pos = counts[(int)(ksrc[i] >>> shift) & 0xFF]++;
+                    dest[pos] = src[i];
+                    kdest[pos] = ksrc[i];
                 }
-                // now merge sort tlist into list
-                SortUtil.msort(tlist, list, 0, listSize, c);
+                SceneElement[] swap = src;
+                src = dest;
+                dest = swap;
+                long[] kswap = ksrc;
+                ksrc = kdest;
+                kdest = kswap;
+            }
+            if (src != list) {
+                System.arraycopy(src, 0, list, 0, listSize);
             }
         }
     }
 
-    private class OpaqueComp implements Comparator<SceneElement> {
+    /**
+     * Computes the keys by which the elements of a bucket are sorted. Keys
+     * are compared as unsigned values and elements with lower keys are drawn
+     * first.
+     */
+    private abstract class SortKey {
 
-        @Override
-		public int compare(SceneElement o1, SceneElement o2) {
-            if ((o1.getType() & SceneElement.GEOMBATCH & o2.getType()) != 0) {
-                return compareByStates((GeomBatch) o1, (GeomBatch) o2);
-            }
+        /** The number of low order bits used by the keys. */
+        final int bits;
 
-            float d1 = distanceToCam(o1);
-            float d2 = distanceToCam(o2);
-            if (d1 == d2)
-                return 0;
-            else if (d1 < d2)
-                return -1;
-            else
-                return 1;
+        SortKey(int bits) {
+            this.bits = bits;
         }
 
-        /**
-         * Compare opaque items by their texture states - generally the most
-         * expensive switch. Later this might expand to comparisons by other
-         * states as well, such as lighting or material.
-         */
-        private int compareByStates(GeomBatch g1, GeomBatch g2) {
-            GLSLShaderObjectsState ss1 = (GLSLShaderObjectsState)g1.states[RenderState.RS_GLSL_SHADER_OBJECTS];
-            GLSLShaderObjectsState ss2 = (GLSLShaderObjectsState)g2.states[RenderState.RS_GLSL_SHADER_OBJECTS];
-            if (ss1 != ss2) {
-                if (ss1 == null && ss2 != null) return -1;
-                else if (ss2 == null && ss1 != null) return 1;
-                int pid1 = ss1.getProgramID();
-                int pid2 = ss2.getProgramID();
-                if (pid1 != pid2) {
-                    return (pid1 < pid2) ? -1 : 1;
-                }
-            }
+        abstract long compute(SceneElement s);
+    }
+
+    /**
+     * Sorts opaque batches by shader program and then by the ids of their
+     * first three textures (generally the most expensive switches), and draws
+     * them before any other opaque elements, which are sorted from closest to
+     * farthest.
+     */
+    private class OpaqueKey extends SortKey {
 
-            TextureState ts1 = (TextureState)g1.states[RenderState.RS_TEXTURE];
-            TextureState ts2 = (TextureState)g2.states[RenderState.RS_TEXTURE];
-            if (ts1 == ts2) return 0;
-            else if (ts1 == null && ts2 != null) return -1;
-            else if (ts2 == null && ts1 != null) return  1;
-
-            for (int x = 0, nots = Math.min(ts1.getNumberOfSetTextures(), ts2.getNumberOfSetTextures()); x < nots; x++) {
-
-            	int tid1 = ts1.getTextureID(x);
-            	int tid2 = ts2.getTextureID(x);
-            	if (tid1 == tid2)
-            		continue;
-            	else if (tid1 < tid2)
-            		return -1;
-            	else
-            		return 1;
+        OpaqueKey() {
+            super(64);
+        }
+
+        @Override
+        long compute(SceneElement s) {
+            if ((s.getType() & SceneElement.GEOMBATCH) == 0) {
+                return (1L << 63) | (sortableBits(distanceToCam(s)) & 0xFFFFFFFFL);
+            }
+            GeomBatch batch = (GeomBatch)s;
+            long key = 0L;
+            GLSLShaderObjectsState ss = (GLSLShaderObjectsState)batch.states[RenderState.RS_GLSL_SHADER_OBJECTS];
+            if (ss != null) {
+                key = Math.max(1, Math.min(ss.getProgramID() + 2, 0x7FFF));
             }
-            return 0;
+            TextureState ts = (TextureState)batch.states[RenderState.RS_TEXTURE];
+            int nots = (ts == null) ? 0 : ts.getNumberOfSetTextures();
+            for (int x = 0; x < 3; x++) {
+                key <<= 16;
+                if (x < nots) {
+                    key |= Math.min(ts.getTextureID(x), 0xFFFE) + 1;
+                }
+            }
+            return key;
         }
     }
 
-    private class TransparentComp implements Comparator<SceneElement> {
+    /**
+     * Sorts transparent elements from farthest to closest.
+     */
+    private class TransparentKey extends SortKey {
+
+        TransparentKey() {
+            super(32);
+        }
 
         @Override
-		public int compare(SceneElement o1, SceneElement o2) {
-            float d1 = distanceToCam(o1);
-            float d2 = distanceToCam(o2);
-            if (d1 == d2)
-                return 0;
-            else if (d1 < d2)
-                return 1;
-            else
-                return -1;
+        long compute(SceneElement s) {
+            return ~sortableBits(distanceToCam(s)) & 0xFFFFFFFFL;
         }
     }
 
-    private class OrthoComp implements Comparator<SceneElement> {
+    /**
+     * Sorts ortho elements from the highest to the lowest Z order.
+     */
+    private class OrthoKey extends SortKey {
+
+        OrthoKey() {
+            super(32);
+        }
 
         @Override
-		public int compare(SceneElement o1, SceneElement o2) {
-            return (o2.getZOrder() - o1.getZOrder());
+        long compute(SceneElement s) {
+            return ~(s.getZOrder() ^ 0x80000000) & 0xFFFFFFFFL;
         }
     }
 }
@@ -34,23 +34,21 @@ package com.jmex.effects.particles;
 
 import java.io.IOException;
 
-import com.jme.math.FastMath;
-import com.jme.math.Quaternion;
 import com.jme.math.Triangle;
 import com.jme.math.Vector3f;
 import com.jme.renderer.Camera;
 import com.jme.renderer.ColorRGBA;
-import com.jme.system.DisplaySystem;
 import com.jme.util.export.InputCapsule;
 import com.jme.util.export.JMEExporter;
 import com.jme.util.export.JMEImporter;
 import com.jme.util.export.OutputCapsule;
 import com.jme.util.export.Savable;
-import com.jme.util.geom.BufferUtils;
 
 /**
  * <code>Particle</code> defines a single Particle of a Particle system.
- * Generally, you would not interact with this class directly.
+ * Generally, you would not interact with this class directly. The state of
+ * the particle is stored in its parent's {@link ParticleData}; this class
+ * provides access to one particle's slots in those arrays.
  * 
  * @author Joshua Slack
  * @version $Id$
@@ -67,31 +65,15 @@ public class Particle implements Savable {
     public static final int AVAILABLE = 2;
 
 
+    private int index;
     private int startIndex;
-    private Vector3f position;
-    private ColorRGBA startColor = new ColorRGBA(ColorRGBA.black);
-    private ColorRGBA currColor = new ColorRGBA(ColorRGBA.black);;
-    private int status = AVAILABLE;
-    private float currentSize;
-    private float lifeSpan;
-    private float spinAngle;
-    private float mass = 1;
-    private float invMass = 1;
-    private int currentAge;
     private ParticleGeometry parent;
-    private Vector3f velocity;
-    private Vector3f bbX = new Vector3f(), bbY = new Vector3f();
 
-    // colors
-    private float rChange, gChange, bChange, aChange;
-
-    private int type = ParticleGeometry.PT_QUAD;
-
-    private Triangle triModel;
-    
-    // static variable for use in calculations to eliminate object creation
-    private static Vector3f tempVec = new Vector3f(), tempPos = new Vector3f();
-    private static Quaternion tempQuat = new Quaternion();
+    // copies of the particle's vectors, which are written back to the
+    // particle data after influences are applied
+    private Vector3f position = new Vector3f(), velocity = new Vector3f();
+    private ColorRGBA currColor = new ColorRGBA(ColorRGBA.black);
+    private boolean bound;
 
     /**
      * Empty constructor - mostly for use with Savable interface
@@ -99,15 +81,17 @@ public class Particle implements Savable {
     public Particle() {}
 
     /**
-     * Normal use constructor. Sets up the parent and particle type for this
-     * particle.
+     * Normal use constructor. Sets up the parent and index of this particle.
      * 
      * @param parent
      *            the particle collection this particle belongs to
+     * @param index
+     *            the index of this particle within the collection
      */
-    public Particle(ParticleGeometry parent) {
+    public Particle(ParticleGeometry parent, int index) {
         this.parent = parent;
-        this.type = parent.getParticleType();
+        this.index = index;
+        this.startIndex = index * getData().verts;
     }
 
     /**
@@ -117,7 +101,7 @@ public class Particle implements Savable {
      * particle params.
      */
     public void init() {
-        init(parent.getRandomVelocity(null), new Vector3f(), parent.getRandomLifeSpan());
+        getData().init(index);
     }
 
     /**
@@ -135,15 +119,11 @@ public class Particle implements Savable {
      */
     public void init(Vector3f velocity, Vector3f position,
             float lifeSpan) {
-        this.lifeSpan = lifeSpan;
-        this.velocity = (Vector3f) velocity.clone();
-        this.position = (Vector3f) position.clone();
-
-        startColor = parent.getStartColor().clone();
-        currColor = new ColorRGBA(startColor);
-        currentAge = 0;
-        status = AVAILABLE;
-        currentSize = parent.getStartSize();
+        ParticleData data = getData();
+        data.init(index);
+        data.lifeSpan[index] = lifeSpan;
+        ParticleData.setVector(data.velocity, index, velocity);
+        ParticleData.setVector(data.position, index, position);
     }
 
     /**
@@ -155,119 +135,17 @@ public class Particle implements Savable {
      *            the recreated particle's new lifespan
      */
     public void recreateParticle(float lifeSpan) {
-        this.lifeSpan = lifeSpan;
-
-        int verts = ParticleGeometry.getVertsForParticleType(type);
-        startColor.set(parent.getStartColor());
-        currColor.set(startColor);
-        rChange = startColor.r - parent.getEndColor().r;
-        gChange = startColor.g - parent.getEndColor().g;
-        bChange = startColor.b - parent.getEndColor().b;
-        aChange = startColor.a - parent.getEndColor().a;
-        for (int x = 0; x < verts; x++)
-            BufferUtils.setInBuffer(currColor, parent.getColorBuffer(0), startIndex+x);
-        currentSize = parent.getStartSize();
-        currentAge = 0;
-        spinAngle = 0;
-        status = AVAILABLE;
+        getData().recreate(index, lifeSpan);
     }
 
     /**
      * Update the vertices for this particle, taking size, spin and viewer into
-     * consideration. In the case of particle type PT_GEOMBATCH, the original
-     * triangle normal is maintained rather than rotating it to face the camera
-     * or parent vectors.
+     * consideration.
      * 
-     * @param cam
-     *            Camera to use in determining viewer aspect. If null, or if
-     *            parent is not set to camera facing, parent's left and up
-     *            vectors are used.
+     * @see ParticleData#updateVerts(int, Camera)
      */
     public void updateVerts(Camera cam) {
-        float orient = parent.getParticleOrientation() + spinAngle;
-        
-        if (type == ParticleGeometry.PT_GEOMBATCH || type == ParticleGeometry.PT_POINT) {
-            ; // nothing to do
-        } else if (cam != null && parent.isCameraFacing()) {
-            if (parent.isVelocityAligned()) {
-                bbX.set(velocity).normalizeLocal().multLocal(currentSize);
-                cam.getDirection().cross(bbX, bbY).normalizeLocal().multLocal(
-                    currentSize);
-            } else if (orient == 0) {
-                bbX.set(cam.getLeft()).multLocal(currentSize);
-                bbY.set(cam.getUp()).multLocal(currentSize);
-            } else {
-                float cA = FastMath.cos(orient) * currentSize;
-                float sA = FastMath.sin(orient) * currentSize;
-                bbX.set(cam.getLeft()).multLocal(cA).addLocal(cam.getUp().x * sA,
-                        cam.getUp().y * sA, cam.getUp().z * sA);
-                bbY.set(cam.getLeft()).multLocal(-sA).addLocal(cam.getUp().x * cA,
-                        cam.getUp().y * cA, cam.getUp().z * cA);
-            }
-        } else {
-            bbX.set(parent.getLeftVector()).multLocal(currentSize);
-            bbY.set(parent.getUpVector()).multLocal(currentSize);
-        }
-
-        tempPos.set(position);
-        if (parent.isTransformParticles()) {
-            parent.getEmitterTransform().multPoint(tempPos);
-        }
-        
-        switch (type) {
-            case ParticleGeometry.PT_QUAD: {
-                tempPos.add(bbX, tempVec).subtractLocal(bbY);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex);
-                
-                tempPos.add(bbX, tempVec).addLocal(bbY);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+1);
-
-                tempPos.subtract(bbX, tempVec).subtractLocal(bbY);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+2);
-
-                tempPos.subtract(bbX, tempVec).addLocal(bbY);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+3);
-                break;
-            }
-            case ParticleGeometry.PT_GEOMBATCH: {
-                Vector3f norm = triModel.getNormal();
-                if (orient != 0)
-                    tempQuat.fromAngleNormalAxis(orient, norm);
-
-                for (int x = 0; x < 3; x++) {
-                    if (orient != 0)
-                        tempQuat.mult(triModel.get(x), tempVec);
-                    else
-                        tempVec.set(triModel.get(x));
-                    tempVec.multLocal(currentSize).addLocal(tempPos);
-                    BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex + x);
-                }
-                break;
-            }
-            case ParticleGeometry.PT_TRIANGLE: {
-                tempPos.add(bbX, tempVec).subtractLocal(bbY);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex);
-                
-                tempPos.add(bbX, tempVec).addLocal(3*bbY.x, 3*bbY.y, 3*bbY.z);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+1);
-
-                tempPos.subtract(bbX.multLocal(3), tempVec).subtractLocal(bbY);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+2);
-                break;
-            }
-            case ParticleGeometry.PT_LINE: {
-                tempPos.subtract(bbX, tempVec);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex);
-
-                tempPos.add(bbX, tempVec);
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+1);
-                break;
-            }
-            case ParticleGeometry.PT_POINT: {
-                BufferUtils.setInBuffer(tempPos, parent.getVertexBuffer(0), startIndex);
-                break;
-            }
-        }
+        getData().updateVerts(index, cam);
     }
 
     /**
@@ -289,74 +167,31 @@ public class Particle implements Savable {
      *         ready to be reused.)
      */
     public boolean updateAndCheck(float secondsPassed) {
-        int verts = ParticleGeometry.getVertsForParticleType(type);
-        if (status != ALIVE) {
-            tempVec.set(parent.getOriginCenter());
-            for (int x = 0; x < verts; x++) {
-                BufferUtils.setInBuffer(tempVec, parent.getVertexBuffer(0), startIndex+x);
-            }
-            return true;
-        }
-        currentAge += secondsPassed * 1000; // add ms time to age
-        if (currentAge > lifeSpan || (parent.getEmitType() ==
-                ParticleGeometry.ET_FRUSTUM &&
-                parent.getFrustum().pseudoDistance(position) > currentSize)) {
-            status = DEAD;
-            currColor.a = 0;
-            
-            for (int x = 0; x < verts; x++) {
-                BufferUtils.setInBuffer(currColor, parent.getColorBuffer(0), startIndex+x);
-            }
-            return true;
-        }
-        
-        position.scaleAdd(secondsPassed * 1000f, velocity, position);
-        spinAngle = spinAngle + parent.getParticleSpinSpeed() * secondsPassed;
-
-        float lifeRatio = currentAge / lifeSpan;
-
-        // update the size
-        currentSize = parent.getStartSize();
-        currentSize -= ((currentSize - parent.getEndSize()) * lifeRatio);
-        
-        // interpolate colors
-        currColor.set(startColor);
-        currColor.r -= rChange * lifeRatio;
-        currColor.g -= gChange * lifeRatio;
-        currColor.b -= bChange * lifeRatio;
-        currColor.a -= aChange * lifeRatio;
-        float falloff = parent.getAlphaFalloff();
-        if (falloff > 0f) {
-            DisplaySystem.getDisplaySystem().getRenderer().
-                getCamera().getLocation().mult(parent.getInvScale(), tempVec);
-            currColor.a *= FastMath.exp(-FastMath.sqr(
-                falloff * tempVec.distance(position)));
-        }
-        for (int x = 0; x < verts; x++)
-            BufferUtils.setInBuffer(currColor, parent.getColorBuffer(0), startIndex+x);
-
-        return false;
+        return getData().update(index, secondsPassed);
     }
 
     /**
      * Resets current age to 0
      */
     public void resetAge() {
-        currentAge = 0;
+        getData().age[index] = 0;
     }
     
     /**
      * @return the current age of the particle in ms
      */
     public int getCurrentAge() {
-        return currentAge;
+        return getData().age[index];
     }
 
     /**
-     * @return the current position of the particle in space
+     * Returns the current position of the particle in space. Changes made to
+     * the returned vector by an influence's
+     * {@link ParticleInfluence#apply(float, Particle, int)} are stored when it
+     * returns; elsewhere, use {@link #setPosition}.
      */
     public Vector3f getPosition() {
-        return position;
+        return bound ? position : ParticleData.getVector(getData().position, index, position);
     }
     
     /**
@@ -367,6 +202,7 @@ public class Particle implements Savable {
      */
     public void setPosition(Vector3f position) {
         this.position.set(position);
+        ParticleData.setVector(getData().position, index, position);
     }
 
     /**
@@ -374,7 +210,7 @@ public class Particle implements Savable {
      *         AVAILABLE
      */
     public int getStatus() {
-        return status;
+        return getData().status[index];
     }
 
     /**
@@ -384,14 +220,17 @@ public class Particle implements Savable {
      *            new status of this particle, one of DEAD, ALIVE, AVAILABLE
      */
     public void setStatus(int status) {
-        this.status = status;
+        getData().status[index] = status;
     }
 
     /**
-     * @return the current velocity of this particle
+     * Returns the current velocity of this particle. Changes made to the
+     * returned vector by an influence's
+     * {@link ParticleInfluence#apply(float, Particle, int)} are stored when it
+     * returns; elsewhere, use {@link #setVelocity}.
      */
     public Vector3f getVelocity() {
-        return velocity;
+        return bound ? velocity : ParticleData.getVector(getData().velocity, index, velocity);
     }
 
     /**
@@ -402,13 +241,21 @@ public class Particle implements Savable {
      */
     public void setVelocity(Vector3f velocity) {
         this.velocity.set(velocity);
+        ParticleData.setVector(getData().velocity, index, velocity);
     }
 
     /**
-     * @return the current color applied to this particle
+     * @return a copy of the current color applied to this particle
      */
     public ColorRGBA getCurrentColor() {
-        return currColor;
+        return ParticleData.getColor(getData().color, index, currColor);
+    }
+
+    /**
+     * @return the index of this particle within its parent.
+     */
+    public int getIndex() {
+        return index;
     }
 
     /**
@@ -421,12 +268,13 @@ public class Particle implements Savable {
     
     /**
      * Set the starting index where this particle is represented in its parent's
-     * geometry data
+     * geometry data, which also determines its index within its parent.
      * 
      * @param index
      */
     public void setStartIndex(int index) {
         this.startIndex = index;
+        this.index = index / getData().verts;
     }
 
     /**
@@ -434,7 +282,7 @@ public class Particle implements Savable {
      *         as drag.
      */
     public float getMass() {
-        return mass;
+        return getData().mass[index];
     }
 
     /**
@@ -448,7 +296,7 @@ public class Particle implements Savable {
      *            the new mass of the particle.
      */
     public void setMass(float mass) {
-        this.mass = mass;
+        float invMass;
         if (mass == 0)
             invMass = Float.POSITIVE_INFINITY;
         else if (mass == Float.POSITIVE_INFINITY)
@@ -456,6 +304,7 @@ public class Particle implements Savable {
         else if (mass == Float.NEGATIVE_INFINITY)
             invMass = -0;
         else invMass = 1f / mass;
+        setMasses(mass, invMass);
     }
     
     /**
@@ -465,8 +314,9 @@ public class Particle implements Savable {
      * @see #setMass(float)
      */
     public void setMasses(float mass, float invMass) {
-        this.mass = mass;
-        this.invMass = invMass;
+        ParticleData data = getData();
+        data.mass[index] = mass;
+        data.invMass[index] = invMass;
     }
 
     /**
@@ -474,7 +324,7 @@ public class Particle implements Savable {
      *         constant division by mass calculations.
      */
     public float getInvMass() {
-        return invMass;
+        return getData().invMass[index];
     }
 
     /**
@@ -488,7 +338,7 @@ public class Particle implements Savable {
      *            the triangle to model this particle after.
      */
     public void setTriangleModel(Triangle t) {
-        this.triModel = t;
+        getData().triModel[index] = t;
     }
 
     /**
@@ -496,7 +346,33 @@ public class Particle implements Savable {
      * @see #setTriangleModel(Triangle)
      */
     public Triangle getTriangleModel() {
-        return this.triModel;
+        return getData().triModel[index];
+    }
+
+    /**
+     * Copies the particle's position and velocity out of the particle data so
+     * that an influence may modify them in place.
+     */
+    void bindVectors() {
+        ParticleData data = getData();
+        ParticleData.getVector(data.position, index, position);
+        ParticleData.getVector(data.velocity, index, velocity);
+        bound = true;
+    }
+
+    /**
+     * Stores the (possibly modified) position and velocity back into the
+     * particle data.
+     */
+    void unbindVectors() {
+        ParticleData data = getData();
+        ParticleData.setVector(data.position, index, position);
+        ParticleData.setVector(data.velocity, index, velocity);
+        bound = false;
+    }
+
+    private ParticleData getData() {
+        return parent.getParticleData();
     }
 
     
@@ -506,44 +382,51 @@ public class Particle implements Savable {
     
     @Override
 	public void write(JMEExporter e) throws IOException {
+        ParticleData data = getData();
+        int cidx = index * 4;
         OutputCapsule capsule = e.getCapsule(this);
         capsule.write(startIndex, "startIndex", 0);
-        capsule.write(position, "position", Vector3f.ZERO);
-        capsule.write(startColor, "startColor", ColorRGBA.black);
-        capsule.write(currColor, "currColor", ColorRGBA.black);
-        capsule.write(status, "status", AVAILABLE);
-        capsule.write(currentSize, "currentSize", 0);
-        capsule.write(lifeSpan, "lifeSpan", 0);
-        capsule.write(currentAge, "currentAge", 0);
+        capsule.write(getPosition(), "position", Vector3f.ZERO);
+        capsule.write(ParticleData.getColor(data.startColor, index, new ColorRGBA()),
+            "startColor", ColorRGBA.black);
+        capsule.write(getCurrentColor(), "currColor", ColorRGBA.black);
+        capsule.write(getStatus(), "status", AVAILABLE);
+        capsule.write(data.size[index], "currentSize", 0);
+        capsule.write(data.lifeSpan[index], "lifeSpan", 0);
+        capsule.write(getCurrentAge(), "currentAge", 0);
         capsule.write(parent, "parent", null);
-        capsule.write(velocity, "velocity", Vector3f.UNIT_XYZ);
-        capsule.write(rChange, "rChange", 0);
-        capsule.write(gChange, "gChange", 0);
-        capsule.write(bChange, "bChange", 0);
-        capsule.write(aChange, "aChange", 0);
-        capsule.write(mass, "mass", 1);
-        capsule.write(type, "type", ParticleGeometry.PT_QUAD);
+        capsule.write(getVelocity(), "velocity", Vector3f.UNIT_XYZ);
+        capsule.write(data.colorChange[cidx], "rChange", 0);
+        capsule.write(data.colorChange[cidx + 1], "gChange", 0);
+        capsule.write(data.colorChange[cidx + 2], "bChange", 0);
+        capsule.write(data.colorChange[cidx + 3], "aChange", 0);
+        capsule.write(getMass(), "mass", 1);
+        capsule.write(parent.getParticleType(), "type", ParticleGeometry.PT_QUAD);
     }
 
     @Override
 	public void read(JMEImporter e) throws IOException {
         InputCapsule capsule = e.getCapsule(this);
-        startIndex = capsule.readInt("startIndex", 0);
-        position = (Vector3f)capsule.readSavable("position", new Vector3f(Vector3f.ZERO));
-        startColor = (ColorRGBA)capsule.readSavable("startColor", new ColorRGBA(ColorRGBA.black));
-        currColor = (ColorRGBA)capsule.readSavable("currColor", new ColorRGBA(ColorRGBA.black));
-        status = capsule.readInt("status", AVAILABLE);
-        currentSize = capsule.readFloat("currentSize", 0);
-        lifeSpan = capsule.readFloat("lifeSpan", 0);
-        currentAge = capsule.readInt("currentAge", 0);
         parent = (ParticleGeometry)capsule.readSavable("parent", null);
-        velocity = (Vector3f)capsule.readSavable("velocity", new Vector3f(Vector3f.UNIT_XYZ));
-        rChange = capsule.readFloat("rChange", 0);
-        gChange = capsule.readFloat("gChange", 0);
-        bChange = capsule.readFloat("bChange", 0);
-        aChange = capsule.readFloat("aChange", 0);
+        setStartIndex(capsule.readInt("startIndex", 0));
+        ParticleData data = getData();
+        int cidx = index * 4;
+        setPosition((Vector3f)capsule.readSavable("position", new Vector3f(Vector3f.ZERO)));
+        ParticleData.setColor(data.startColor, index, (ColorRGBA)capsule.readSavable(
+            "startColor", new ColorRGBA(ColorRGBA.black)));
+        ParticleData.setColor(data.color, index, (ColorRGBA)capsule.readSavable(
+            "currColor", new ColorRGBA(ColorRGBA.black)));
+        data.writeColor(index);
+        setStatus(capsule.readInt("status", AVAILABLE));
+        data.size[index] = capsule.readFloat("currentSize", 0);
+        data.lifeSpan[index] = capsule.readFloat("lifeSpan", 0);
+        data.age[index] = capsule.readInt("currentAge", 0);
+        setVelocity((Vector3f)capsule.readSavable("velocity", new Vector3f(Vector3f.UNIT_XYZ)));
+        data.colorChange[cidx] = capsule.readFloat("rChange", 0);
+        data.colorChange[cidx + 1] = capsule.readFloat("gChange", 0);
+        data.colorChange[cidx + 2] = capsule.readFloat("bChange", 0);
+        data.colorChange[cidx + 3] = capsule.readFloat("aChange", 0);
         setMass(capsule.readFloat("mass", 1));
-        type = capsule.readInt("type", ParticleGeometry.PT_QUAD);
     }
 
     @Override
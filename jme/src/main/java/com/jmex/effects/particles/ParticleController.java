@@ -134,6 +134,7 @@ public class ParticleController extends Controller {
                         particles.getInvScale(), true);
                 }
 
+                ParticleData data = particles.getParticleData();
                 if (influences != null) {
                     ParticleInfluence inf;
                     for (int ii = 0, nn = influences.size(); ii < nn; ii++) {
@@ -142,25 +143,19 @@ public class ParticleController extends Controller {
                             inf.prepare(particles);
                         }
                     }
-                }
-
-                int i = 0;
-                boolean dead = true;
-                while (i < particles.getNumParticles()) {
-                    Particle p = particles.getParticle(i);
-
-                    if (influences != null && p.getStatus() == Particle.ALIVE) {
-                        for (int x = 0; x < influences.size(); x++) {
-                            ParticleInfluence inf = influences.get(x);
-                            if (inf.isEnabled())
-                                inf.apply(timePassed, p, i);
+                    for (int ii = 0, nn = influences.size(); ii < nn; ii++) {
+                        inf = influences.get(ii);
+                        if (inf.isEnabled()) {
+                            inf.apply(timePassed, data, particles);
                         }
                     }
+                }
 
-
-                    if (p.updateAndCheck(timePassed)
+                boolean dead = true;
+                for (int i = 0; i < data.count; i++) {
+                    if (data.update(i, timePassed)
                             && (!controlFlow || particlesToCreate > 0)) {
-                        if (p.getStatus() == Particle.DEAD
+                        if (data.status[i] == Particle.DEAD
                                 && getRepeatType() == RT_CLAMP) {
                             ;
                         } else {
@@ -168,17 +163,17 @@ public class ParticleController extends Controller {
                             if (controlFlow) {
                                 particlesToCreate--;
                             }
-                            p.recreateParticle(particles.getRandomLifeSpan());
-                            p.setStatus(Particle.ALIVE);
+                            data.recreate(i, particles.getRandomLifeSpan());
+                            data.status[i] = Particle.ALIVE;
                             particles.initParticleLocation(i);
                             particles.resetParticleVelocity(i);
-                            p.updateVerts(null);
+                            data.updateVerts(i, null);
                         }
                     } else {
                         dead = false;
                     }
-                    i++;
                 }
+                data.flush();
                 if (dead) {
                     setActive(false);
                 }
@@ -0,0 +1,372 @@
+package com.jmex.effects.particles;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import com.jme.math.FastMath;
+import com.jme.math.Quaternion;
+import com.jme.math.Triangle;
+import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
+import com.jme.renderer.ColorRGBA;
+import com.jme.system.DisplaySystem;
+
+/**
+ * <code>ParticleData</code> holds the state of all of the particles of a
+ * ParticleGeometry in flat arrays, one or more slots per particle, so that the
+ * controller and influences can update the particles in passes over the arrays
+ * rather than through individual particle objects. The vertex and color data
+ * of the particles are accumulated in arrays of their own and copied into the
+ * geometry's buffers in bulk when they change.
+ */
+public class ParticleData {
+
+    /** The number of particles. */
+    public final int count;
+
+    /** The number of vertices used by each particle. */
+    public final int verts;
+
+    /** The positions and velocities of the particles (three floats apiece). */
+    public final float[] position, velocity;
+
+    /** The current and starting colors of the particles and the total
+     * changes from the starting to the ending colors (four floats apiece). */
+    public final float[] color, startColor, colorChange;
+
+    /** The sizes, lifespans (in ms), spin angles and masses of the particles. */
+    public final float[] size, lifeSpan, spinAngle, mass, invMass;
+
+    /** The ages (in ms) of the particles. */
+    public final int[] age;
+
+    /** The statuses of the particles: {@link Particle#DEAD},
+     * {@link Particle#ALIVE} or {@link Particle#AVAILABLE}. */
+    public final int[] status;
+
+    /** The triangles modeled by particles of type PT_GEOMBATCH. */
+    public final Triangle[] triModel;
+
+    public ParticleData(ParticleGeometry parent, int count, int verts) {
+        this.parent = parent;
+        this.count = count;
+        this.verts = verts;
+        position = new float[count * 3];
+        velocity = new float[count * 3];
+        color = new float[count * 4];
+        startColor = new float[count * 4];
+        colorChange = new float[count * 4];
+        size = new float[count];
+        lifeSpan = new float[count];
+        spinAngle = new float[count];
+        mass = new float[count];
+        invMass = new float[count];
+        age = new int[count];
+        status = new int[count];
+        triModel = new Triangle[count];
+        vertexData = new float[count * verts * 3];
+        colorData = new float[count * verts * 4];
+        Arrays.fill(mass, 1f);
+        Arrays.fill(invMass, 1f);
+        Arrays.fill(status, Particle.AVAILABLE);
+    }
+
+    /**
+     * Resets the specified particle with a random velocity and lifespan at the
+     * origin, with the parent's starting color and size. The particle's status
+     * is set to AVAILABLE.
+     */
+    public void init(int index) {
+        parent.getRandomVelocity(tempVec);
+        setVector(velocity, index, tempVec);
+        setVector(position, index, Vector3f.ZERO);
+        lifeSpan[index] = parent.getRandomLifeSpan();
+        setColor(startColor, index, parent.getStartColor());
+        setColor(color, index, parent.getStartColor());
+        writeColor(index);
+        age[index] = 0;
+        status[index] = Particle.AVAILABLE;
+        size[index] = parent.getStartSize();
+    }
+
+    /**
+     * Resets the lifespan, color, size, age and spin angle of the specified
+     * particle as it is reused. The particle's status is set to AVAILABLE.
+     */
+    public void recreate(int index, float lifeSpan) {
+        this.lifeSpan[index] = lifeSpan;
+        ColorRGBA start = parent.getStartColor(), end = parent.getEndColor();
+        setColor(startColor, index, start);
+        setColor(color, index, start);
+        int cidx = index * 4;
+        colorChange[cidx] = start.r - end.r;
+        colorChange[cidx + 1] = start.g - end.g;
+        colorChange[cidx + 2] = start.b - end.b;
+        colorChange[cidx + 3] = start.a - end.a;
+        writeColor(index);
+        size[index] = parent.getStartSize();
+        age[index] = 0;
+        spinAngle[index] = 0;
+        status[index] = Particle.AVAILABLE;
+    }
+
+    /**
+     * Ages the specified particle, updating its position, spin, size and
+     * color. Particles that exceed their lifespans (or leave the emission
+     * frustum) are marked DEAD and made transparent, and particles that are
+     * not alive are collapsed onto the origin.
+     *
+     * @return true if the particle is not ALIVE and may be reused.
+     */
+    public boolean update(int index, float secondsPassed) {
+        if (status[index] != Particle.ALIVE) {
+            Vector3f origin = parent.getOriginCenter();
+            for (int vidx = index * verts * 3, end = vidx + verts * 3;
+                    vidx < end; vidx += 3) {
+                vertexData[vidx] = origin.x;
+                vertexData[vidx + 1] = origin.y;
+                vertexData[vidx + 2] = origin.z;
+            }
+            verticesDirty = true;
+            return true;
+        }
+        int pidx = index * 3, cidx = index * 4;
+        age[index] += secondsPassed * 1000; // add ms time to age
+        if (age[index] > lifeSpan[index] || (parent.getEmitType() ==
+                ParticleGeometry.ET_FRUSTUM && parent.getFrustum().pseudoDistance(
+                    getVector(position, index, tempPos)) > size[index])) {
+            status[index] = Particle.DEAD;
+            color[cidx + 3] = 0;
+            writeColor(index);
+            return true;
+        }
+
+        float scale = secondsPassed * 1000f;
+        position[pidx] = velocity[pidx] * scale + position[pidx];
+        position[pidx + 1] = velocity[pidx + 1] * scale + position[pidx + 1];
+        position[pidx + 2] = velocity[pidx + 2] * scale + position[pidx + 2];
+        spinAngle[index] = spinAngle[index] + parent.getParticleSpinSpeed() * secondsPassed;
+
+        float lifeRatio = age[index] / lifeSpan[index];
+
+        // update the size
+        float startSize = parent.getStartSize();
+        size[index] = startSize - ((startSize - parent.getEndSize()) * lifeRatio);
+
+        // interpolate colors
+        color[cidx] = startColor[cidx] - colorChange[cidx] * lifeRatio;
+        color[cidx + 1] = startColor[cidx + 1] - colorChange[cidx + 1] * lifeRatio;
+        color[cidx + 2] = startColor[cidx + 2] - colorChange[cidx + 2] * lifeRatio;
+        color[cidx + 3] = startColor[cidx + 3] - colorChange[cidx + 3] * lifeRatio;
+        float falloff = parent.getAlphaFalloff();
+        if (falloff > 0f) {
+            DisplaySystem.getDisplaySystem().getRenderer().
+                getCamera().getLocation().mult(parent.getInvScale(), tempVec);
+            color[cidx + 3] *= FastMath.exp(-FastMath.sqr(
+                falloff * tempVec.distance(getVector(position, index, tempPos))));
+        }
+        writeColor(index);
+        return false;
+    }
+
+    /**
+     * Updates the vertices of all living particles.
+     *
+     * @see #updateVerts(int, Camera)
+     */
+    public void updateVerts(Camera cam) {
+        for (int ii = 0; ii < count; ii++) {
+            if (status[ii] == Particle.ALIVE) {
+                updateVerts(ii, cam);
+            }
+        }
+    }
+
+    /**
+     * Updates the vertices of the specified particle, taking size, spin and
+     * viewer into consideration. In the case of particle type PT_GEOMBATCH,
+     * the original triangle normal is maintained rather than rotating it to
+     * face the camera or parent vectors.
+     *
+     * @param cam
+     *            Camera to use in determining viewer aspect. If null, or if
+     *            parent is not set to camera facing, parent's left and up
+     *            vectors are used.
+     */
+    public void updateVerts(int index, Camera cam) {
+        int type = parent.getParticleType();
+        float currentSize = size[index];
+        float orient = parent.getParticleOrientation() + spinAngle[index];
+
+        if (type == ParticleGeometry.PT_GEOMBATCH || type == ParticleGeometry.PT_POINT) {
+            ; // nothing to do
+        } else if (cam != null && parent.isCameraFacing()) {
+            if (parent.isVelocityAligned()) {
+                getVector(velocity, index, bbX).normalizeLocal().multLocal(currentSize);
+                cam.getDirection().cross(bbX, bbY).normalizeLocal().multLocal(
+                    currentSize);
+            } else if (orient == 0) {
+                bbX.set(cam.getLeft()).multLocal(currentSize);
+                bbY.set(cam.getUp()).multLocal(currentSize);
+            } else {
+                float cA = FastMath.cos(orient) * currentSize;
+                float sA = FastMath.sin(orient) * currentSize;
+                bbX.set(cam.getLeft()).multLocal(cA).addLocal(cam.getUp().x * sA,
+                        cam.getUp().y * sA, cam.getUp().z * sA);
+                bbY.set(cam.getLeft()).multLocal(-sA).addLocal(cam.getUp().x * cA,
+                        cam.getUp().y * cA, cam.getUp().z * cA);
+            }
+        } else {
+            bbX.set(parent.getLeftVector()).multLocal(currentSize);
+            bbY.set(parent.getUpVector()).multLocal(currentSize);
+        }
+
+        getVector(position, index, tempPos);
+        if (parent.isTransformParticles()) {
+            parent.getEmitterTransform().multPoint(tempPos);
+        }
+        float px = tempPos.x, py = tempPos.y, pz = tempPos.z;
+        int vidx = index * verts * 3;
+
+        switch (type) {
+            case ParticleGeometry.PT_QUAD: {
+                setVertex(vidx, (px + bbX.x) - bbY.x, (py + bbX.y) - bbY.y, (pz + bbX.z) - bbY.z);
+                setVertex(vidx + 3, (px + bbX.x) + bbY.x, (py + bbX.y) + bbY.y, (pz + bbX.z) + bbY.z);
+                setVertex(vidx + 6, (px - bbX.x) - bbY.x, (py - bbX.y) - bbY.y, (pz - bbX.z) - bbY.z);
+                setVertex(vidx + 9, (px - bbX.x) + bbY.x, (py - bbX.y) + bbY.y, (pz - bbX.z) + bbY.z);
+                break;
+            }
+            case ParticleGeometry.PT_GEOMBATCH: {
+                Triangle triangle = triModel[index];
+                Vector3f norm = triangle.getNormal();
+                if (orient != 0)
+                    tempQuat.fromAngleNormalAxis(orient, norm);
+
+                for (int x = 0; x < 3; x++) {
+                    if (orient != 0)
+                        tempQuat.mult(triangle.get(x), tempVec);
+                    else
+                        tempVec.set(triangle.get(x));
+                    tempVec.multLocal(currentSize).addLocal(tempPos);
+                    setVertex(vidx + x * 3, tempVec.x, tempVec.y, tempVec.z);
+                }
+                break;
+            }
+            case ParticleGeometry.PT_TRIANGLE: {
+                setVertex(vidx, (px + bbX.x) - bbY.x, (py + bbX.y) - bbY.y, (pz + bbX.z) - bbY.z);
+                setVertex(vidx + 3, (px + bbX.x) + 3 * bbY.x, (py + bbX.y) + 3 * bbY.y,
+                    (pz + bbX.z) + 3 * bbY.z);
+                setVertex(vidx + 6, (px - bbX.x * 3) - bbY.x, (py - bbX.y * 3) - bbY.y,
+                    (pz - bbX.z * 3) - bbY.z);
+                break;
+            }
+            case ParticleGeometry.PT_LINE: {
+                setVertex(vidx, px - bbX.x, py - bbX.y, pz - bbX.z);
+                setVertex(vidx + 3, px + bbX.x, py + bbX.y, pz + bbX.z);
+                break;
+            }
+            case ParticleGeometry.PT_POINT: {
+                setVertex(vidx, px, py, pz);
+                break;
+            }
+        }
+        verticesDirty = true;
+    }
+
+    /**
+     * Copies any modified vertex and color data into the parent's buffers.
+     */
+    public void flush() {
+        if (verticesDirty) {
+            copy(vertexData, parent.getVertexBuffer(0));
+            verticesDirty = false;
+        }
+        if (colorsDirty) {
+            copy(colorData, parent.getColorBuffer(0));
+            colorsDirty = false;
+        }
+    }
+
+    /**
+     * Stores the specified particle's current color in its vertex colors.
+     */
+    public void writeColor(int index) {
+        int cidx = index * 4;
+        float r = color[cidx], g = color[cidx + 1], b = color[cidx + 2], a = color[cidx + 3];
+        for (int didx = index * verts * 4, end = didx + verts * 4; didx < end; didx += 4) {
+            colorData[didx] = r;
+            colorData[didx + 1] = g;
+            colorData[didx + 2] = b;
+            colorData[didx + 3] = a;
+        }
+        colorsDirty = true;
+    }
+
+    /**
+     * Copies a three element vector out of the specified array.
+     */
+    public static Vector3f getVector(float[] array, int index, Vector3f result) {
+        int idx = index * 3;
+        return result.set(array[idx], array[idx + 1], array[idx + 2]);
+    }
+
+    /**
+     * Copies a vector into a three element slot of the specified array.
+     */
+    public static void setVector(float[] array, int index, Vector3f vector) {
+        int idx = index * 3;
+        array[idx] = vector.x;
+        array[idx + 1] = vector.y;
+        array[idx + 2] = vector.z;
+    }
+
+    /**
+     * Copies a four element color out of the specified array.
+     */
+    public static ColorRGBA getColor(float[] array, int index, ColorRGBA result) {
+        int idx = index * 4;
+        result.set(array[idx], array[idx + 1], array[idx + 2], array[idx + 3]);
+        return result;
+    }
+
+    /**
+     * Copies a color into a four element slot of the specified array.
+     */
+    public static void setColor(float[] array, int index, ColorRGBA color) {
+        int idx = index * 4;
+        array[idx] = color.r;
+        array[idx + 1] = color.g;
+        array[idx + 2] = color.b;
+        array[idx + 3] = color.a;
+    }
+
+    protected void setVertex(int vidx, float x, float y, float z) {
+        vertexData[vidx] = x;
+        vertexData[vidx + 1] = y;
+        vertexData[vidx + 2] = z;
+    }
+
+    protected static void copy(float[] data, FloatBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        buffer.clear();
+        buffer.put(data, 0, Math.min(data.length, buffer.capacity()));
+        buffer.rewind();
+    }
+
+    protected ParticleGeometry parent;
+
+    /** The vertex positions and colors of the particles, which mirror the
+     * contents of the parent's buffers. */
+    protected float[] vertexData, colorData;
+
+    /** Whether the vertex positions or colors have changed since they were
+     * copied into the parent's buffers. */
+    protected boolean verticesDirty, colorsDirty;
+
+    // working objects used to avoid object creation
+    protected Vector3f tempVec = new Vector3f(), tempPos = new Vector3f();
+    protected Vector3f bbX = new Vector3f(), bbY = new Vector3f();
+    protected Quaternion tempQuat = new Quaternion();
+}
@@ -2,6 +2,7 @@ package com.jmex.effects.particles;
 
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 import com.jme.math.FastMath;
@@ -14,6 +15,7 @@ import com.jme.math.TransformMatrix;
 import com.jme.math.Triangle;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
 import com.jme.renderer.ColorRGBA;
 import com.jme.scene.Controller;
 import com.jme.scene.Geometry;
@@ -94,6 +96,7 @@ public abstract class ParticleGeometry extends Geometry {
     protected Vector3f invScale;
 
     protected Particle particles[];
+    protected ParticleData particleData;
 
     // protected Vector3f particleSpeed;
     protected int releaseRate; // particles per second
@@ -141,6 +144,20 @@ public abstract class ParticleGeometry extends Geometry {
 
     protected abstract void initializeParticles(int numParticles);
 
+    /**
+     * Creates the particles and the arrays holding their state, initializing
+     * each particle. Called by {@link #initializeParticles}.
+     */
+    protected void createParticles(int numParticles) {
+        particleData = new ParticleData(this, numParticles,
+            getVertsForParticleType(getParticleType()));
+        particles = new Particle[numParticles];
+        for (int k = 0; k < numParticles; k++) {
+            particles[k] = new Particle(this, k);
+            particleData.init(k);
+        }
+    }
+
     public static int getVertsForParticleType(int type) {
         switch (type) {
             case PT_TRIANGLE:
@@ -157,12 +174,13 @@ public abstract class ParticleGeometry extends Geometry {
     }
 
     public void forceRespawn() {
-        for (int i = particles.length; --i >= 0;) {
-            particles[i].recreateParticle(0);
-            particles[i].setStatus(Particle.ALIVE);
-            particles[i].updateAndCheck(1);
-            particles[i].setStatus(Particle.AVAILABLE);
+        for (int i = particleData.count; --i >= 0;) {
+            particleData.recreate(i, 0);
+            particleData.status[i] = Particle.ALIVE;
+            particleData.update(i, 1);
+            particleData.status[i] = Particle.AVAILABLE;
         }
+        particleData.flush();
 
         if (controller != null) {
             controller.setActive(true);
@@ -175,6 +193,7 @@ public abstract class ParticleGeometry extends Geometry {
      * the set* methods for those parameters.
      */
     protected Vector3f oldEmit = new Vector3f(Float.NaN, Float.NaN, Float.NaN);
+    protected Vector3f workPosition = new Vector3f(), workVelocity = new Vector3f();
     protected float matData[][] = new float[3][3];
 
     public void updateRotationMatrix() {
@@ -413,8 +432,8 @@ public abstract class ParticleGeometry extends Geometry {
             invMass = -0;
         else invMass = 1f / mass;
 
-        for (int x = particles.length; --x >= 0; )
-            particles[x].setMasses(mass, invMass);
+        Arrays.fill(particleData.mass, mass);
+        Arrays.fill(particleData.invMass, invMass);
     }
 
     /**
@@ -758,12 +777,13 @@ public abstract class ParticleGeometry extends Geometry {
     }
 
     public void initParticleLocation(int index) {
-        Particle p = particles[index];
+        Vector3f position = ParticleData.getVector(
+            particleData.position, index, workPosition);
         if (particleType == PT_GEOMBATCH) {
             // Update the triangle model on each new particle creation.
             Vector3f[] vertices = new Vector3f[3];
             ((TriangleBatch)psBatch).getTriangle(index, vertices);
-            Triangle t = p.getTriangleModel();
+            Triangle t = particleData.triModel[index];
             if (t == null)
                 t = new Triangle(vertices[0],vertices[1],vertices[2]);
             else
@@ -779,40 +799,41 @@ public abstract class ParticleGeometry extends Geometry {
                 vertices[x].multLocal(getInvScale());
                 t.set(x, vertices[x]);
             }
-            p.setTriangleModel(t);
-            psBatch.getParentGeom().localToWorld(t.getCenter(), p.getPosition());
-            p.getPosition().multLocal(getInvScale());
+            particleData.triModel[index] = t;
+            psBatch.getParentGeom().localToWorld(t.getCenter(), position);
+            position.multLocal(getInvScale());
 
         } else if (getEmitType() == ET_GEOMBATCH) {
             if (getGeomBatch() != null && getGeomBatch() instanceof TriangleBatch)
-                ((TriangleBatch)getGeomBatch()).randomPointOnTriangles(p.getPosition(), workVect3);
+                ((TriangleBatch)getGeomBatch()).randomPointOnTriangles(position, workVect3);
             else if (getGeomBatch() != null)
-                getGeomBatch().randomVertex(p.getPosition());
-            p.getPosition().multLocal(getInvScale());
+                getGeomBatch().randomVertex(position);
+            position.multLocal(getInvScale());
 
         } else if (getEmitType() == ET_FRUSTUM) {
-            p.getPosition().set(getFrustum().random());
+            position.set(getFrustum().random());
 
         } else {
             switch (getEmitType()) {
                 case ET_LINE:
-                    p.getPosition().set(getLine().random());
+                    position.set(getLine().random());
                     break;
                 case ET_RECTANGLE:
-                    p.getPosition().set(getRectangle().random());
+                    position.set(getRectangle().random());
                     break;
                 case ET_RING:
-                    p.getPosition().set(getRing().random());
+                    position.set(getRing().random());
                     break;
                 case ET_POINT:
                 default:
-                    p.getPosition().set(originOffset);
+                    position.set(originOffset);
                     break;
             }
             if (!transformParticles) {
-                emitterTransform.multPoint(p.getPosition());
+                emitterTransform.multPoint(position);
             }
         }
+        ParticleData.setVector(particleData.position, index, position);
     }
 
     public boolean isCameraFacing() {
@@ -835,6 +856,22 @@ public abstract class ParticleGeometry extends Geometry {
         return particles[i];
     }
 
+    /**
+     * Returns the arrays holding the state of the particles.
+     */
+    public ParticleData getParticleData() {
+        return particleData;
+    }
+
+    /**
+     * Updates the vertices of the living particles for the given camera and
+     * copies them into the vertex buffer.
+     */
+    protected void updateParticleVerts(Camera camera) {
+        particleData.updateVerts(camera);
+        particleData.flush();
+    }
+
     public boolean isActive() {
         return controller.isActive();
     }
@@ -888,7 +925,7 @@ public abstract class ParticleGeometry extends Geometry {
     }
 
     public void resetParticleVelocity(int i) {
-        getRandomVelocity(particles[i].getVelocity());
+        ParticleData.setVector(particleData.velocity, i, getRandomVelocity(workVelocity));
     }
 
     /**
@@ -93,6 +93,31 @@ public abstract class ParticleInfluence implements Savable {
      *            for adding small steady amounts of variation, or remembering information.
      */
     public abstract void apply(float dt, Particle particle, int index);
+
+    /**
+     * Applies the influence to all living particles of a particle system at
+     * once, working directly on its {@link ParticleData}. The default
+     * implementation calls {@link #apply(float, Particle, int)} for each
+     * particle; influences that can work on the arrays directly should
+     * override this to avoid the per-particle copies.
+     * 
+     * @param dt
+     *            amount of time since last apply call in ms.
+     * @param data
+     *            the particle data to modify.
+     * @param particleGeom
+     *            the particle system containing the influence
+     */
+    public void apply(float dt, ParticleData data, ParticleGeometry particleGeom) {
+        for (int i = 0; i < data.count; i++) {
+            if (data.status[i] == Particle.ALIVE) {
+                Particle particle = particleGeom.getParticle(i);
+                particle.bindVectors();
+                apply(dt, particle, i);
+                particle.unbindVectors();
+            }
+        }
+    }
     
     @Override
 	public void write(JMEExporter e) throws IOException {
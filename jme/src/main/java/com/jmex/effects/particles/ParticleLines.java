@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import com.jme.intersection.CollisionResults;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
-import com.jme.renderer.Camera;
 import com.jme.renderer.Renderer;
 import com.jme.scene.Spatial;
 import com.jme.scene.batch.GeomBatch;
@@ -51,7 +50,6 @@ public class ParticleLines extends ParticleGeometry {
         }
 
         appearanceColors = BufferUtils.createColorBuffer(numParticles * verts);
-        particles = new Particle[numParticles];
 
         setVertexBuffer(0, geometryCoordinates);
         setColorBuffer(0, appearanceColors);
@@ -64,19 +62,15 @@ public class ParticleLines extends ParticleGeometry {
 
         invScale = new Vector3f();
 
+        createParticles(numParticles);
         for (int k = 0; k < numParticles; k++) {
-            particles[k] = new Particle(this);
-            particles[k].init();
-            particles[k].setStartIndex(k * verts);
             for (int a = verts - 1; a >= 0; a--) {
                 int ind = (k * verts) + a;
                 BufferUtils.setInBuffer(sharedTextureData[a], getTextureBuffer(
                         0, 0), ind);
-                BufferUtils.setInBuffer(particles[k].getCurrentColor(),
-                        appearanceColors, (ind));
             }
-
         }
+        particleData.flush();
     }
 
     @Override
@@ -86,13 +80,7 @@ public class ParticleLines extends ParticleGeometry {
 
     @Override
 	public void draw(Renderer r) {
-        Camera camera = r.getCamera();
-        for (int i = 0; i < particles.length; i++) {
-            Particle particle = particles[i];
-            if (particle.getStatus() == Particle.ALIVE) {
-                particle.updateVerts(camera);
-            }
-        }
+        updateParticleVerts(r.getCamera());
 
         LineBatch batch;
         if (getBatchCount() == 1) {
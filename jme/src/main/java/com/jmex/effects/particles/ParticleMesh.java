@@ -6,7 +6,6 @@ import java.util.ArrayList;
 import com.jme.intersection.CollisionResults;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
-import com.jme.renderer.Camera;
 import com.jme.renderer.Renderer;
 import com.jme.scene.Geometry;
 import com.jme.scene.Node;
@@ -66,8 +65,10 @@ public class ParticleMesh extends ParticleGeometry {
     @Override
 	protected void initializeParticles(int numParticles) {
         TriangleBatch batch = getBatch(0);
-        particles = new Particle[numParticles];
-        if (numParticles == 0) return;
+        if (numParticles == 0) {
+            createParticles(0);
+            return;
+        }
         Vector2f sharedTextureData[];
 
         // setup texture coords
@@ -134,10 +135,8 @@ public class ParticleMesh extends ParticleGeometry {
 
         invScale = new Vector3f();
 
+        createParticles(numParticles);
         for (int k = 0; k < numParticles; k++) {
-            particles[k] = new Particle(this);
-            particles[k].init();
-            particles[k].setStartIndex(k*verts);
             for (int a = verts-1; a >= 0; a--) {
                 int ind = (k * verts) + a;
                 if (particleType == ParticleGeometry.PT_GEOMBATCH && useBatchTexCoords) {
@@ -147,22 +146,14 @@ public class ParticleMesh extends ParticleGeometry {
                 } else
                     BufferUtils.setInBuffer(sharedTextureData[a],
                             batch.getTextureBuffer(0), ind);
-                BufferUtils.setInBuffer(particles[k].getCurrentColor(),
-                        appearanceColors, (ind));
             }
-
         }
+        particleData.flush();
     }
 
     @Override
 	public void draw(Renderer r) {
-        Camera camera = r.getCamera();
-        for (int i = 0; i < particles.length; i++) {
-            Particle particle = particles[i];
-            if (particle.getStatus() == Particle.ALIVE) {
-                particle.updateVerts(camera);
-            }
-        }
+        updateParticleVerts(r.getCamera());
 
         TriangleBatch batch;
         if (getBatchCount() == 1) {
@@ -186,9 +177,10 @@ public class ParticleMesh extends ParticleGeometry {
     @Override
 	public void resetParticleVelocity(int i) {
         if (particleType == ParticleGeometry.PT_GEOMBATCH && useTriangleNormalEmit) {
-            particles[i].getVelocity().set(particles[i].getTriangleModel().getNormal());
-            particles[i].getVelocity().multLocal(emissionDirection);
-            particles[i].getVelocity().multLocal(getInitialVelocity());
+            workVelocity.set(particleData.triModel[i].getNormal());
+            workVelocity.multLocal(emissionDirection);
+            workVelocity.multLocal(getInitialVelocity());
+            ParticleData.setVector(particleData.velocity, i, workVelocity);
         } else {
             super.resetParticleVelocity(i);
         }
@@ -113,6 +113,20 @@ public final class SimpleParticleInfluenceFactory {
             float tStr = (random ? FastMath.nextRandomFloat() * strength : strength);
             p.getVelocity().scaleAdd(tStr * dt, vector, p.getVelocity());
         }
+
+        @Override
+		public void apply(float dt, ParticleData data, ParticleGeometry particleGeom) {
+            float[] vel = data.velocity;
+            for (int i = 0, vidx = 0; i < data.count; i++, vidx += 3) {
+                if (data.status[i] != Particle.ALIVE) {
+                    continue;
+                }
+                float scale = (random ? FastMath.nextRandomFloat() * strength : strength) * dt;
+                vel[vidx] = vector.x * scale + vel[vidx];
+                vel[vidx + 1] = vector.y * scale + vel[vidx + 1];
+                vel[vidx + 2] = vector.z * scale + vel[vidx + 2];
+            }
+        }
         
         @Override
 		public void write(JMEExporter e) throws IOException {
@@ -182,6 +196,19 @@ public final class SimpleParticleInfluenceFactory {
 		public void apply(float dt, Particle p, int index) {
             p.getVelocity().scaleAdd(dt, vector, p.getVelocity());
         }
+
+        @Override
+		public void apply(float dt, ParticleData data, ParticleGeometry particleGeom) {
+            float[] vel = data.velocity;
+            float dx = vector.x * dt, dy = vector.y * dt, dz = vector.z * dt;
+            for (int i = 0, vidx = 0; i < data.count; i++, vidx += 3) {
+                if (data.status[i] == Particle.ALIVE) {
+                    vel[vidx] = dx + vel[vidx];
+                    vel[vidx + 1] = dy + vel[vidx + 1];
+                    vel[vidx + 2] = dz + vel[vidx + 2];
+                }
+            }
+        }
     
         @Override
 		public void write(JMEExporter e) throws IOException {
@@ -231,6 +258,19 @@ public final class SimpleParticleInfluenceFactory {
             velocity.set(p.getVelocity());
             p.getVelocity().addLocal(velocity.multLocal(-dragCoefficient * dt * p.getInvMass()));
         }
+
+        @Override
+		public void apply(float dt, ParticleData data, ParticleGeometry particleGeom) {
+            float[] vel = data.velocity;
+            for (int i = 0, vidx = 0; i < data.count; i++, vidx += 3) {
+                if (data.status[i] == Particle.ALIVE) {
+                    float k = -dragCoefficient * dt * data.invMass[i];
+                    vel[vidx] += vel[vidx] * k;
+                    vel[vidx + 1] += vel[vidx + 1] * k;
+                    vel[vidx + 2] += vel[vidx + 2] * k;
+                }
+            }
+        }
     
         @Override
 		public void write(JMEExporter e) throws IOException {
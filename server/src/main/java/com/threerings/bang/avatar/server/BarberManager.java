@@ -9,7 +9,6 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import com.samskivert.io.PersistenceException;
-import com.samskivert.util.Invoker;
 import com.samskivert.util.ResultListener;
 import com.samskivert.util.StringUtil;
 
@@ -87,8 +86,8 @@ public class BarberManager extends ShopManager
 
     /**
      * Returns an avatar snapshot for the specified player. If they are online, it will be obtained
-     * from their loaded player object (and returned immediately), otherwise it will be loaded from
-     * the database (and require an asynchronous reply).
+     * from their loaded player object (and returned immediately), otherwise it will be obtained
+     * from the {@link SnapshotCache} (and may require an asynchronous reply).
      */
     public void getSnapshot (int playerId, ResultListener<AvatarInfo> listener)
     {
@@ -99,30 +98,8 @@ public class BarberManager extends ShopManager
             return;
         }
 
-        // otherwise we have to go to the database (TODO: cache these?)
-        final int fpid = playerId;
-        final ResultListener<AvatarInfo> flist = listener;
-        _invoker.postUnit(new Invoker.Unit("loadSnapshot") {
-            public boolean invoke () {
-                try {
-                    _snap = _lookrepo.loadSnapshot(fpid);
-                } catch (PersistenceException pe) {
-                    _error = pe;
-                }
-                return true;
-            }
-
-            public void handleResult () {
-                if (_error != null) {
-                    flist.requestFailed(_error);
-                } else {
-                    flist.requestCompleted(_snap);
-                }
-            }
-
-            protected AvatarInfo _snap;
-            protected Exception _error;
-        });
+        // otherwise we have to go to the cache or the database
+        _snapcache.getSnapshot(playerId, listener);
     }
 
     // from interface BarberProvider
@@ -318,6 +295,7 @@ public class BarberManager extends ShopManager
             }
 
             public void handleSuccess () {
+                _snapcache.snapshotUpdated(user.playerId, avatar);
                 user.addToLooks(look);
                 Handle ohandle = user.handle;
                 user.setHandle(handle);
@@ -375,6 +353,9 @@ public class BarberManager extends ShopManager
         // register our invocation service
         _bobj = (BarberObject)_plobj;
         _bobj.setService(BangServer.invmgr.registerProvider(this, BarberMarshaller.class));
+
+        // prepare our snapshot cache
+        _snapcache.init();
     }
 
     /** Used to purchase a new avatar look. */
@@ -486,4 +467,5 @@ public class BarberManager extends ShopManager
     @Inject protected PlayerRepository _playrepo;
     @Inject protected ItemRepository _itemrepo;
     @Inject protected LookRepository _lookrepo;
+    @Inject protected SnapshotCache _snapcache;
 }
@@ -0,0 +1,257 @@
+//
+// $Id$
+
+package com.threerings.bang.avatar.server;
+
+import java.util.ArrayList;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.Interval;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.LRUHashMap;
+import com.samskivert.util.ResultListener;
+
+import com.threerings.io.Streamable;
+import com.threerings.util.StreamableTuple;
+
+import com.threerings.presents.peer.server.PeerManager;
+
+import com.threerings.bang.data.AvatarInfo;
+import com.threerings.bang.server.BangInvoker;
+import com.threerings.bang.server.BangPeerManager;
+import com.threerings.bang.server.BangServer;
+
+import com.threerings.bang.avatar.server.persist.LookRepository;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Caches the "wanted poster" snapshots of offline players.  Snapshots are stored in the cache
+ * whenever they are written (and the update is passed on to our peers), so they never need to be
+ * expired.  Requests for the same snapshot made while it is being loaded share a single load, and
+ * all of the misses that occur during a single event dispatch are loaded with one query.
+ */
+@Singleton
+public class SnapshotCache
+{
+    /**
+     * Prepares the cache for operation.
+     */
+    public void init ()
+    {
+        if (_peermgr.isRunning()) {
+            _peermgr.addStaleCacheObserver(SNAPSHOT_CACHE,
+                new PeerManager.StaleCacheObserver() {
+                    @SuppressWarnings("unchecked")
+                    public void changedCacheData (Streamable data) {
+                        StreamableTuple<Integer, AvatarInfo> update =
+                            (StreamableTuple<Integer, AvatarInfo>)data;
+                        store(update.left, update.right);
+                    }
+                });
+        }
+        _reporter.schedule(REPORT_INTERVAL, true);
+    }
+
+    /**
+     * Obtains the snapshot of the specified player, from the cache if possible and otherwise from
+     * the database.  The listener will be notified immediately if the snapshot is cached.  Must be
+     * called on the dobj thread.
+     */
+    public void getSnapshot (int playerId, ResultListener<AvatarInfo> listener)
+    {
+        if (playerId <= 0) {
+            listener.requestCompleted(null);
+            return;
+        }
+        AvatarInfo snapshot = get(playerId);
+        if (snapshot != null) {
+            listener.requestCompleted(snapshot);
+            return;
+        }
+
+        // if the snapshot is already on its way, we'll be notified when it arrives
+        ArrayList<ResultListener<AvatarInfo>> listeners = _pending.get(playerId);
+        if (listeners != null) {
+            listeners.add(listener);
+            _coalesced++;
+            return;
+        }
+        listeners = new ArrayList<ResultListener<AvatarInfo>>();
+        listeners.add(listener);
+        _pending.put(playerId, listeners);
+
+        // load everything that misses before the end of this dispatch all at once
+        if (_queued.isEmpty()) {
+            BangServer.omgr.postRunnable(new Runnable() {
+                public void run () {
+                    loadQueued();
+                }
+            });
+        }
+        _queued.add(playerId);
+    }
+
+    /**
+     * Loads the snapshot of the specified player, from the cache if possible.  Must be called on
+     * the invoker thread.
+     *
+     * @return the snapshot, or <code>null</code> if the player has none.
+     */
+    public AvatarInfo loadSnapshot (int playerId)
+        throws PersistenceException
+    {
+        AvatarInfo snapshot = get(playerId);
+        if (snapshot == null) {
+            snapshot = _lookrepo.loadSnapshot(playerId);
+            noteLoaded(1, (snapshot == null) ? 0 : 1);
+            if (snapshot != null) {
+                store(playerId, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Notes that the snapshot of the specified player has been written to the database, updating
+     * our cache and those of our peers.  Must be called on the dobj thread.
+     */
+    public void snapshotUpdated (int playerId, AvatarInfo snapshot)
+    {
+        store(playerId, snapshot);
+        if (_peermgr.isRunning()) {
+            _peermgr.broadcastStaleCacheData(
+                SNAPSHOT_CACHE, new StreamableTuple<Integer, AvatarInfo>(playerId, snapshot));
+        }
+    }
+
+    /**
+     * Returns a summary of the cache's performance for the operators.
+     */
+    public String summarizeStats ()
+    {
+        synchronized (_cache) {
+            int requests = _hits + _misses;
+            return "size=" + _cache.size() + ", requests=" + requests + ", hits=" + _hits +
+                " (" + (requests == 0 ? 0 : (100 * _hits / requests)) + "%), coalesced=" +
+                _coalesced + ", queries=" + _queries + ", loaded=" + _loaded;
+        }
+    }
+
+    /**
+     * Loads the snapshots of all queued players with a single query.
+     */
+    protected void loadQueued ()
+    {
+        final ArrayIntSet playerIds = _queued;
+        _queued = new ArrayIntSet();
+        _invoker.postUnit(new Invoker.Unit("loadSnapshots") {
+            public boolean invoke () {
+                try {
+                    _snaps = _lookrepo.loadSnapshots(playerIds);
+                    noteLoaded(1, _snaps.size());
+                } catch (PersistenceException pe) {
+                    _error = pe;
+                }
+                return true;
+            }
+
+            public void handleResult () {
+                for (int playerId : playerIds) {
+                    AvatarInfo snapshot = null;
+                    if (_snaps != null && (snapshot = _snaps.get(playerId)) != null) {
+                        store(playerId, snapshot);
+                    }
+                    for (ResultListener<AvatarInfo> listener : _pending.remove(playerId)) {
+                        if (_error != null) {
+                            listener.requestFailed(_error);
+                        } else {
+                            listener.requestCompleted(snapshot);
+                        }
+                    }
+                }
+            }
+
+            protected HashIntMap<AvatarInfo> _snaps;
+            protected Exception _error;
+        });
+    }
+
+    /**
+     * Fetches a snapshot from the cache, noting the hit or miss.
+     */
+    protected AvatarInfo get (int playerId)
+    {
+        synchronized (_cache) {
+            AvatarInfo snapshot = _cache.get(playerId);
+            if (snapshot == null) {
+                _misses++;
+            } else {
+                _hits++;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Stores a snapshot in the cache.
+     */
+    protected void store (int playerId, AvatarInfo snapshot)
+    {
+        synchronized (_cache) {
+            _cache.put(playerId, snapshot);
+        }
+    }
+
+    /**
+     * Notes that we've run the specified number of queries to load the specified number of
+     * snapshots.
+     */
+    protected void noteLoaded (int queries, int loaded)
+    {
+        synchronized (_cache) {
+            _queries += queries;
+            _loaded += loaded;
+        }
+    }
+
+    /** Periodically logs our performance. */
+    protected Interval _reporter = new Interval(Interval.RUN_DIRECT) {
+        public void expired () {
+            log.info("Snapshot cache stats", "stats", summarizeStats());
+        }
+    };
+
+    /** The cached snapshots, which are also used to synchronize the statistics. */
+    protected LRUHashMap<Integer, AvatarInfo> _cache =
+        new LRUHashMap<Integer, AvatarInfo>(CACHE_SIZE);
+
+    /** The listeners waiting for each snapshot being loaded (accessed on the dobj thread). */
+    protected HashIntMap<ArrayList<ResultListener<AvatarInfo>>> _pending =
+        new HashIntMap<ArrayList<ResultListener<AvatarInfo>>>();
+
+    /** The players whose snapshots will be loaded at the end of the current dispatch. */
+    protected ArrayIntSet _queued = new ArrayIntSet();
+
+    /** Statistics reported to the operators. */
+    protected int _hits, _misses, _coalesced, _queries, _loaded;
+
+    // dependencies
+    @Inject protected BangInvoker _invoker;
+    @Inject protected BangPeerManager _peermgr;
+    @Inject protected LookRepository _lookrepo;
+
+    /** The name of our peer cache. */
+    protected static final String SNAPSHOT_CACHE = "snapshotCache";
+
+    /** The maximum number of snapshots we keep in memory. */
+    protected static final int CACHE_SIZE = 2000;
+
+    /** The interval at which we log our statistics. */
+    protected static final long REPORT_INTERVAL = 60 * 60 * 1000L;
+}
@@ -21,6 +21,9 @@ import com.samskivert.jdbc.ConnectionProvider;
 import com.samskivert.jdbc.DatabaseLiaison;
 import com.samskivert.jdbc.JDBCUtil;
 import com.samskivert.jdbc.SimpleRepository;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.StringUtil;
 
 import com.threerings.bang.avatar.data.Look;
 import com.threerings.bang.data.AvatarInfo;
@@ -156,6 +159,17 @@ public class LookRepository extends SimpleRepository
         update("delete from SNAPSHOTS where PLAYER_ID = " + playerId);
     }
 
+    /**
+     * Deletes all looks and snapshots for the specified players.
+     */
+    public void deleteAllLooks (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        String ids = StringUtil.toString(playerIds.iterator(), "(", ")");
+        update("delete from LOOKS where PLAYER_ID in " + ids);
+        update("delete from SNAPSHOTS where PLAYER_ID in " + ids);
+    }
+
     /**
      * Loads the specified player's "wanted poster" snapshot. Returns null if no snapshot could be
      * located for that player.
@@ -182,6 +196,35 @@ public class LookRepository extends SimpleRepository
         });
     }
 
+    /**
+     * Loads the "wanted poster" snapshots of the specified players.  Players for whom no snapshot
+     * could be located are omitted from the returned map.
+     */
+    public HashIntMap<AvatarInfo> loadSnapshots (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        final String query = "select PLAYER_ID, AVATAR from SNAPSHOTS where PLAYER_ID in " +
+            StringUtil.toString(playerIds.iterator(), "(", ")");
+        final HashIntMap<AvatarInfo> snaps = new HashIntMap<AvatarInfo>();
+        execute(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(query);
+                    while (rs.next()) {
+                        snaps.put(rs.getInt(1), new AvatarInfo(fromByteArray(rs.getBytes(2))));
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+        return snaps;
+    }
+
     /**
      * Updates the specified player's wanted poster snapshot.
      */
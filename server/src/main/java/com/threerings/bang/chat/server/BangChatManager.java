@@ -17,7 +17,6 @@ import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
-import com.samskivert.io.PersistenceException;
 import com.samskivert.util.Lifecycle;
 import com.samskivert.util.StringUtil;
 
@@ -30,8 +29,10 @@ import com.threerings.bang.data.BangCodes;
 import com.threerings.bang.data.Handle;
 import com.threerings.bang.data.PlayerObject;
 import com.threerings.bang.gang.server.persist.GangRepository;
+import com.threerings.bang.server.BangServer;
 import com.threerings.bang.server.PlayerLocator;
 import com.threerings.bang.server.ServerConfig;
+import com.threerings.bang.server.StartupOrchestrator;
 import com.threerings.bang.server.persist.PlayerRepository;
 
 import static com.threerings.bang.Log.log;
@@ -93,15 +94,22 @@ public class BangChatManager
             return;
         }
 
-        // load in the names of every player and gang in the database and add those to the whitelist
-        try {
-            addWhitelistWords(_playrepo.loadNameWords());
-            addWhitelistWords(_gangrepo.loadNameWords());
-        } catch (PersistenceException pe) {
-            log.warning("Failed to load name words for whitelist.", pe);
-        }
-
+        // load in the names of every player and gang in the database and add those to the
+        // whitelist; there are a great many of them, so we do so in the background rather than
+        // holding up the server startup
         log.info("Chat system using whitelist", "size", _whitelist.size());
+        _startup.addStage(new StartupOrchestrator.Stage("whitelistNames", false, "repositories") {
+            public void run () throws Exception {
+                final Set<String> words = _playrepo.loadNameWords();
+                words.addAll(_gangrepo.loadNameWords());
+                BangServer.omgr.postRunnable(new Runnable() {
+                    public void run () {
+                        addWhitelistWords(words);
+                        log.info("Added name words to whitelist", "size", _whitelist.size());
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -187,6 +195,7 @@ public class BangChatManager
     // dependencies
     @Inject protected PlayerRepository _playrepo;
     @Inject protected GangRepository _gangrepo;
+    @Inject protected StartupOrchestrator _startup;
 
     /** A predicate used to filter out short name words from the whitelist. */
     protected static final Predicate<String> VALID_NAME = new Predicate<String>() {
@@ -122,11 +122,15 @@ import com.threerings.bang.game.data.scenario.PracticeInfo;
 import com.threerings.bang.game.data.scenario.ScenarioInfo;
 import com.threerings.bang.game.data.scenario.TutorialInfo;
 import com.threerings.bang.game.server.ai.AILogic;
+import com.threerings.bang.game.server.ai.AINavigator;
+import com.threerings.bang.game.server.ai.AIScheduler;
 import com.threerings.bang.game.server.ai.PieceLogic;
 import com.threerings.bang.game.server.scenario.Practice;
 import com.threerings.bang.game.server.scenario.Scenario;
 import com.threerings.bang.game.server.scenario.Tutorial;
 
+import com.threerings.bang.saloon.server.LeaderboardManager;
+
 import static com.threerings.bang.Log.log;
 
 /**
@@ -289,6 +293,14 @@ public class BangManager extends GameManager
         return _bconfig;
     }
 
+    /**
+     * Returns the navigator shared by the AI logics in this game.
+     */
+    public AINavigator getAINavigator ()
+    {
+        return _aiNavigator;
+    }
+
     /**
      * Returns a string describing the current board. Used for debug logging.
      */
@@ -1168,6 +1180,7 @@ public class BangManager extends GameManager
 
         // setup of other piece logic
         _pLogics = new HashIntMap<PieceLogic>();
+        _aiNavigator = new AINavigator();
 
         // set up the board and pieces and select a board tour marquee
         _bangobj.board = (BangBoard)round.board.board.clone();
@@ -1705,18 +1718,6 @@ public class BangManager extends GameManager
             validateOrders();
         }
 
-        // give our AI players a chance to move but not on the zeroth tick
-        if (_bconfig.type != BangConfig.Type.TUTORIAL && tick > 0) {
-            for (int ii = 0; ii < _aiLogic.length; ii++) {
-                if (_aiLogic[ii] != null) {
-                    _aiLogic[ii].tick(pieces, tick);
-                }
-            }
-            for (PieceLogic pl : _pLogics.values()) {
-                pl.tick(pieces, tick);
-            }
-        }
-
         // tick the scenario which will do all the standard processing
         if (_scenario.tick(_bangobj, tick)) {
             validateOrders();
@@ -1750,6 +1751,45 @@ public class BangManager extends GameManager
         } finally {
             _bangobj.commitTransaction();
         }
+
+        // give our AI players a chance to plan their moves but not on the zeroth tick
+        if (_bconfig.type != BangConfig.Type.TUTORIAL && tick > 0) {
+            ArrayList<PieceLogic> logics = new ArrayList<PieceLogic>();
+            for (int ii = 0; ii < _aiLogic.length; ii++) {
+                if (_aiLogic[ii] != null) {
+                    logics.add(_aiLogic[ii]);
+                }
+            }
+            logics.addAll(_pLogics.values());
+            _aisched.schedule(this, _bangobj, logics, _aiUsage);
+        }
+    }
+
+    /**
+     * Executes the orders planned for our AI players by the {@link AIScheduler}, provided that
+     * the tick for which they were planned is still in progress.  Orders that are no longer valid
+     * (because the unit or its target has since been shot, say) are dropped.
+     */
+    public void applyAIPlan (AIScheduler.Plan plan)
+    {
+        if (!_bangobj.isActive() || !_bangobj.isInPlay() || plan.roundId != _bangobj.roundId ||
+            plan.tick != _bangobj.tick) {
+            return;
+        }
+        for (AIScheduler.Order order : plan.orders) {
+            Piece piece = _bangobj.pieces.get(order.pieceId);
+            if (!(piece instanceof Unit) || !piece.isAlive() ||
+                piece.ticksUntilMovable(plan.tick) > 0) {
+                continue;
+            }
+            try {
+                executeOrder((Unit)piece, order.x, order.y, order.targetId, true);
+            } catch (InvocationException ie) {
+                log.debug("Dropping invalid AI order", "where", where(), "unit", piece,
+                          "x", order.x, "y", order.y, "targetId", order.targetId,
+                          "reason", ie.getMessage());
+            }
+        }
     }
 
     protected void endRound ()
@@ -1974,6 +2014,14 @@ public class BangManager extends GameManager
         // note the duration of the game (in minutes and seconds)
         int gameSecs = (int)(System.currentTimeMillis() - _startStamp) / 1000;
 
+        // report the time spent planning for our AIs
+        if (_aiUsage.plans > 0) {
+            log.info("AI planning time", "where", where(), "plans", _aiUsage.plans,
+                     "avgMillis", _aiUsage.getAverageMillis(), "maxMillis", _aiUsage.maxMillis,
+                     "budget", _aisched.getBudget(), "degraded", _aiUsage.degraded,
+                     "deferred", _aiUsage.deferred, "skipped", _aiUsage.skipped);
+        }
+
         // update ratings if appropriate
         if (_bconfig.rated && !_bconfig.getScenario(0).equals(TutorialInfo.IDENT)) {
             // if we reached the minimum time, rate the matches
@@ -2982,6 +3030,7 @@ public class BangManager extends GameManager
                         ArrayList<Rating> ratings = new ArrayList<Rating>(weekRatings.values());
                         try {
                             _ratingrepo.updateRatings(prec.playerId, ratings);
+                            _leadermgr.ratingsUpdated(prec.playerId, prec.user.handle, ratings);
                         } catch (PersistenceException pe) {
                             log.warning("Failed to persist ratings", "pid", prec.playerId,
                                         "ratings", StringUtil.toString(ratings), pe);
@@ -2995,6 +3044,10 @@ public class BangManager extends GameManager
                 for (int ii = 0; ii < awards.length; ii++) {
                     int pidx = awards[ii].pidx;
                     PlayerObject player = _precords[pidx].user;
+                    if (player != null && !_precords[pidx].nratings.isEmpty()) {
+                        // their wanted poster shows their new ratings
+                        BangServer.playmgr.clearPosterInfoCache(player.handle);
+                    }
                     if (player == null || !player.isActive()) {
                         // no need to update their player object if they've already logged off
                         continue;
@@ -3426,6 +3479,12 @@ public class BangManager extends GameManager
     /** The logic for the artificial players. */
     protected AILogic[] _aiLogic;
 
+    /** Provides the AI logics with distance fields to their objectives. */
+    protected AINavigator _aiNavigator;
+
+    /** Tracks the time spent planning for the AI logics. */
+    protected AIScheduler.Usage _aiUsage = new AIScheduler.Usage();
+
     /** The time at which the round started. */
     protected long _startStamp;
 
@@ -3490,12 +3549,14 @@ public class BangManager extends GameManager
     protected ArrayList<AdvanceOrder> _orders = new ArrayList<AdvanceOrder>();
 
     // dependencies
+    @Inject protected AIScheduler _aisched;
     @Inject protected BangAdminManager _adminmgr;
     @Inject protected BangChatManager _chatmgr;
     @Inject protected BangStatRepository _statrepo;
     @Inject protected BoardManager _boardmgr;
     @Inject protected Injector _injector;
     @Inject protected ItemRepository _itemrepo;
+    @Inject protected LeaderboardManager _leadermgr;
     @Inject protected PlayerRepository _playrepo;
     @Inject protected RatingRepository _ratingrepo;
 
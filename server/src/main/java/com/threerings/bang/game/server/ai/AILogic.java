@@ -32,7 +32,7 @@ public abstract class AILogic extends PieceLogic
     public void init (BangManager bangmgr, int pidx, BangAI ai)
     {
         _bangmgr = bangmgr;
-        _bangobj = (BangObject)_bangmgr.getPlaceObject();
+        _bangobj = _gameobj = (BangObject)_bangmgr.getPlaceObject();
         _pidx = pidx;
         _ai = ai;
     }
@@ -60,7 +60,8 @@ public abstract class AILogic extends PieceLogic
 
     /**
      * Called on every tick to let the AI move its pieces.  Default implementation calls {@link
-     * #moveUnit} for each unit owned by the AI that is ready to move.
+     * #moveUnit} for each unit owned by the AI that is ready to move (or {@link #moveUnitDegraded}
+     * once past the deadline of the plan being made).
      *
      * @param pieces the array of pieces on the board.
      * @param tick the current tick.
@@ -73,11 +74,15 @@ public abstract class AILogic extends PieceLogic
                 Unit unit = (Unit)piece;
                 _moves.clear();
                 _attacks.clear();
-                unit.computeMoves(_bangobj.board, _moves, _attacks);
+                unit.computeMoves(_gameobj.board, _moves, _attacks);
 
                 // if our skill level is below 50 we have a linearly increasing probabilty of not
-                // doing what the scenario AI wants but rather doing something generic
-                if (_ai.skill < 50 && RandomUtil.getInt(50) > _ai.skill) {
+                // doing what the scenario AI wants but rather doing something generic; likewise if
+                // we've run out of time in which to plan this tick
+                if (isPastDeadline()) {
+                    _plan.degraded++;
+                    moveUnitDegraded(pieces, unit, _moves, _attacks);
+                } else if (_ai.skill < 50 && RandomUtil.getInt(50) > _ai.skill) {
                     moveUnitDegraded(pieces, unit, _moves, _attacks);
                 } else {
                     moveUnit(pieces, unit, _moves, _attacks);
@@ -114,7 +119,7 @@ public abstract class AILogic extends PieceLogic
             Piece target = null;
             for (Piece p : pieces) {
                 if (p instanceof Unit && attacks.contains(p.x, p.y) &&
-                    unit.validTarget(_bangobj, p, false)) {
+                    unit.validTarget(_gameobj, p, false)) {
                     target = p;
                     break;
                 }
@@ -206,7 +211,7 @@ public abstract class AILogic extends PieceLogic
         // let the units with 0 fire distnace handle their own attack movement
         if (tdist == -1 && unit.getMaxFireDistance() == 0) {
             target = getBestTarget(pieces, unit, dx, dy, evaluator);
-            dest = unit.computeShotLocation(_bangobj.board, target, moves, false, new PointSet());
+            dest = unit.computeShotLocation(_gameobj.board, target, moves, false, new PointSet());
         } else {
             dest = getClosestPoint(unit, moves, dx, dy, tdist);
         }
@@ -230,11 +235,11 @@ public abstract class AILogic extends PieceLogic
         Piece best = null;
         int bweight = -1;
         for (Piece p : pieces) {
-            if (!unit.validTarget(_bangobj, p, false) || !attacks.contains(p.x, p.y)) {
+            if (!unit.validTarget(_gameobj, p, false) || !attacks.contains(p.x, p.y)) {
                 continue;
             }
             int dist = p.getDistance(unit.x, unit.y);
-            int tweight = evaluator.getWeight(_bangobj, unit, p, dist, preferredMoves);
+            int tweight = evaluator.getWeight(_gameobj, unit, p, dist, preferredMoves);
             if (tweight > bweight) {
                 best = p;
                 bweight = tweight;
@@ -253,14 +258,14 @@ public abstract class AILogic extends PieceLogic
         Piece best = null;
         int bweight = -1;
         for (Piece p : pieces) {
-            if (!unit.validTarget(_bangobj, p, false)) {
+            if (!unit.validTarget(_gameobj, p, false)) {
                 continue;
             }
             int dist = p.getDistance(dx, dy);
             if (dist < unit.getMinFireDistance() || dist > unit.getMaxFireDistance()) {
                 continue;
             }
-            int tweight = evaluator.getWeight(_bangobj, unit, p, dist, EMPTY_POINT_SET);
+            int tweight = evaluator.getWeight(_gameobj, unit, p, dist, EMPTY_POINT_SET);
             if (tweight > bweight) {
                 best = p;
                 bweight = tweight;
@@ -281,15 +286,15 @@ public abstract class AILogic extends PieceLogic
         Piece best = null;
         int bweight = -1;
         for (Piece p : pieces) {
-            if (!unit.validTarget(_bangobj, p, false) || !attacks.contains(p.x, p.y)) {
+            if (!unit.validTarget(_gameobj, p, false) || !attacks.contains(p.x, p.y)) {
                continue;
             }
-            Point move = unit.computeShotLocation(_bangobj.board, p, moves, true);
+            Point move = unit.computeShotLocation(_gameobj.board, p, moves, true);
             if (move == null) {
                 continue;
             }
             int dist = p.getDistance(unit.x, unit.y);
-            int tweight = evaluator.getWeight(_bangobj, unit, p, dist, EMPTY_POINT_SET);
+            int tweight = evaluator.getWeight(_gameobj, unit, p, dist, EMPTY_POINT_SET);
             if (tweight > bweight) {
                 best = p;
                 bweight = tweight;
@@ -0,0 +1,130 @@
+//
+// $Id$
+
+package com.threerings.bang.game.server.ai;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.threerings.bang.game.data.BangBoard;
+import com.threerings.bang.game.data.BangObject;
+import com.threerings.bang.game.data.piece.Teleporter;
+import com.threerings.bang.game.data.piece.Unit;
+import com.threerings.bang.game.util.DistanceField;
+import com.threerings.bang.game.util.PointSet;
+
+/**
+ * Provides the AI logics of a game with distance fields to their objectives.  Each field is
+ * computed on demand, once per tick, for a set of objectives and a class of movement (units that
+ * traverse the board in the same way share fields), so that the many units asking how far they
+ * are from the same objective in the same tick share the work of a single search.
+ *
+ * <p> Fields are not updated as units move during the tick; a unit's actual moves are always
+ * computed afresh, so the worst a stale field can do is lead it along a slightly longer route.
+ * The navigator may be used from the {@link AIScheduler}'s threads as well as the distributed
+ * object thread.
+ */
+public class AINavigator
+{
+    /**
+     * Returns the field of distances to the tiles within the specified range of the target for
+     * units that move like the one provided.
+     *
+     * @param bangobj the game object (or the snapshot thereof) against which the logic is
+     * planning.
+     */
+    public DistanceField getField (
+        BangObject bangobj, Unit unit, int tx, int ty, int mindist, int maxdist)
+    {
+        PointSet targets = new PointSet();
+        targets.add(tx, ty);
+        return getField(bangobj, unit, targets, mindist, maxdist);
+    }
+
+    /**
+     * Returns the field of distances to the tiles within the specified range of any of the targets
+     * for units that move like the one provided.
+     */
+    public synchronized DistanceField getField (
+        BangObject bangobj, Unit unit, PointSet targets, int mindist, int maxdist)
+    {
+        // flush the fields computed on previous ticks or for previous boards (each snapshot of the
+        // game has its own board)
+        if (bangobj.tick != _tick || bangobj.board != _board) {
+            _fields.clear();
+            _tick = bangobj.tick;
+            _board = bangobj.board;
+        }
+
+        FieldKey key = new FieldKey(getMovementClass(unit), targets.toIntArray(), mindist, maxdist);
+        DistanceField field = _fields.get(key);
+        if (field == null) {
+            field = new DistanceField(_board, unit);
+            addTeleporterJumps(bangobj, field);
+            field.compute(targets, mindist, maxdist);
+            _fields.put(key, field);
+        }
+        return field;
+    }
+
+    /**
+     * Returns a value identifying the units whose traversal of the board is the same as that of
+     * the one specified (see {@link BangBoard#canTravel}).
+     */
+    protected int getMovementClass (Unit unit)
+    {
+        return (unit.owner << 3) | (unit.isFlyer() ? 1 : 0) | (unit.isCorporeal() ? 2 : 0) |
+            (unit.getMinFireDistance() == 0 ? 4 : 0);
+    }
+
+    /**
+     * Adds a jump to the field from each teleporter whose destination is known in advance (that
+     * is, each teleporter with only one partner) to its partner.
+     */
+    protected void addTeleporterJumps (BangObject bangobj, DistanceField field)
+    {
+        for (Teleporter teleporter : bangobj.getTeleporters().values()) {
+            Teleporter[] group = teleporter.getGroup(bangobj);
+            if (group.length == 2) {
+                Teleporter dest = (group[0] == teleporter) ? group[1] : group[0];
+                field.addJump(teleporter.x, teleporter.y, dest.x, dest.y);
+            }
+        }
+    }
+
+    /** Identifies a distance field. */
+    protected static class FieldKey
+    {
+        public FieldKey (int mclass, int[] targets, int mindist, int maxdist)
+        {
+            _mclass = mclass;
+            _targets = targets;
+            _mindist = mindist;
+            _maxdist = maxdist;
+        }
+
+        @Override // documentation inherited
+        public int hashCode ()
+        {
+            return ((_mclass * 31 + Arrays.hashCode(_targets)) * 31 + _mindist) * 31 + _maxdist;
+        }
+
+        @Override // documentation inherited
+        public boolean equals (Object other)
+        {
+            FieldKey okey = (FieldKey)other;
+            return _mclass == okey._mclass && _mindist == okey._mindist &&
+                _maxdist == okey._maxdist && Arrays.equals(_targets, okey._targets);
+        }
+
+        protected int _mclass, _mindist, _maxdist;
+        protected int[] _targets;
+    }
+
+    /** The board and tick for which our fields were computed. */
+    protected BangBoard _board;
+    protected short _tick = -1;
+
+    /** The fields computed this tick. */
+    protected HashMap<FieldKey, DistanceField> _fields = new HashMap<FieldKey, DistanceField>();
+}
@@ -0,0 +1,308 @@
+//
+// $Id$
+
+package com.threerings.bang.game.server.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.RunQueue;
+
+import com.threerings.presents.server.PresentsDObjectMgr;
+
+import com.threerings.bang.server.ServerConfig;
+
+import com.threerings.bang.game.data.BangObject;
+import com.threerings.bang.game.data.ModifiableDSet;
+import com.threerings.bang.game.data.piece.Piece;
+import com.threerings.bang.game.server.BangManager;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Plans the moves of the AI players (and AI controlled pieces) of all games on a pool of worker
+ * threads, rather than on the distributed object thread shared by every game and lobby on the
+ * server.  On each tick, a game hands its logics to the scheduler, which takes a snapshot of the
+ * game, has the logics plan their orders against the snapshot on a worker thread and passes the
+ * resulting plan back to the game on the distributed object thread, where the orders are validated
+ * and executed like any others.
+ *
+ * <p> Each plan has a deadline, a configurable time after the tick; logics still planning when it
+ * passes fall back to {@link AILogic#moveUnitDegraded} (and piece logics to waiting for the next
+ * tick), so that an AI under load plays worse rather than later.  A game whose previous plan has
+ * not yet come back sits the tick out.
+ */
+@Singleton
+public class AIScheduler
+    implements Lifecycle.ShutdownComponent
+{
+    /** An order planned for a unit. */
+    public static class Order
+    {
+        /** The id of the unit to be ordered. */
+        public final int pieceId;
+
+        /** The location to which to move (see {@link BangManager#executeOrder}). */
+        public final int x, y;
+
+        /** The id of the piece at which to shoot, or -1 for none. */
+        public final int targetId;
+
+        public Order (int pieceId, int x, int y, int targetId)
+        {
+            this.pieceId = pieceId;
+            this.x = x;
+            this.y = y;
+            this.targetId = targetId;
+        }
+    }
+
+    /** The orders planned for a game on a tick. */
+    public static class Plan
+    {
+        /** The round and tick for which the plan was made. */
+        public final int roundId;
+        public final short tick;
+
+        /** The time by which the plan should be finished. */
+        public final long deadline;
+
+        /** The planned orders, in the order in which they should be executed. */
+        public final List<Order> orders = new ArrayList<Order>();
+
+        /** The number of units moved in a degraded fashion for lack of time. */
+        public int degraded;
+
+        /** The number of units left until the next tick for lack of time. */
+        public int deferred;
+
+        /** The time spent planning, in milliseconds. */
+        public long elapsed;
+
+        public Plan (int roundId, short tick, long deadline)
+        {
+            this.roundId = roundId;
+            this.tick = tick;
+            this.deadline = deadline;
+        }
+    }
+
+    /** Tracks the time spent planning for a game.  Only accessed on the distributed object
+     * thread. */
+    public static class Usage
+    {
+        /** The number of plans made. */
+        public int plans;
+
+        /** The number of ticks sat out because the previous plan had not come back. */
+        public int skipped;
+
+        /** The total number of units moved in a degraded fashion or left until the next tick. */
+        public int degraded, deferred;
+
+        /** The total and maximum time spent planning, in milliseconds. */
+        public long totalMillis, maxMillis;
+
+        /**
+         * Returns the average time spent on a plan, in milliseconds.
+         */
+        public long getAverageMillis ()
+        {
+            return (plans == 0) ? 0L : totalMillis / plans;
+        }
+
+        /**
+         * Notes a plan that has come back.
+         */
+        protected void noteFinished (Plan plan)
+        {
+            _planning = false;
+            plans++;
+            degraded += plan.degraded;
+            deferred += plan.deferred;
+            totalMillis += plan.elapsed;
+            maxMillis = Math.max(maxMillis, plan.elapsed);
+        }
+
+        /** Whether a plan is in progress for the game. */
+        protected boolean _planning;
+    }
+
+    @Inject public AIScheduler (PresentsDObjectMgr omgr, Lifecycle cycle)
+    {
+        this(new RunQueue.AsExecutor(omgr),
+             ServerConfig.config.getValue("ai_threads", DEFAULT_THREADS),
+             ServerConfig.config.getValue("ai_tick_budget", DEFAULT_BUDGET));
+        cycle.addComponent(this);
+    }
+
+    /**
+     * Creates a scheduler with the specified number of worker threads.
+     *
+     * @param receiver the executor on which the plans will be passed back to their games.
+     * @param budget the time allowed for each plan, in milliseconds.
+     */
+    public AIScheduler (Executor receiver, int threads, int budget)
+    {
+        this(receiver, createPlanner(threads), budget);
+    }
+
+    /**
+     * Creates a scheduler that makes its plans on the supplied executor.
+     *
+     * @param receiver the executor on which the plans will be passed back to their games.
+     * @param planner the executor on which the plans will be made.
+     * @param budget the time allowed for each plan, in milliseconds.
+     */
+    public AIScheduler (Executor receiver, Executor planner, int budget)
+    {
+        _receiver = receiver;
+        _exec = planner;
+        _budget = budget;
+    }
+
+    /**
+     * Returns the time allowed for each plan, in milliseconds.
+     */
+    public int getBudget ()
+    {
+        return _budget;
+    }
+
+    /**
+     * Has the supplied logics plan their moves for the current tick of the game, passing the plan
+     * to {@link BangManager#applyAIPlan} when they're done.  Must be called on the distributed
+     * object thread.
+     *
+     * @param logics the logics to plan, in order.  The list must not be modified afterwards.
+     * @param usage the game's usage record, which tracks whether a plan is already in progress.
+     */
+    public void schedule (final BangManager bangmgr, BangObject bangobj,
+                          final List<? extends PieceLogic> logics, final Usage usage)
+    {
+        if (logics.isEmpty()) {
+            return;
+        }
+        if (usage._planning) {
+            usage.skipped++;
+            return;
+        }
+
+        for (PieceLogic logic : logics) {
+            logic.prepare(bangobj.tick);
+        }
+        final BangObject snapshot = createSnapshot(bangobj);
+        final Plan plan = new Plan(
+            bangobj.roundId, bangobj.tick, System.currentTimeMillis() + _budget);
+        usage._planning = true;
+
+        _exec.execute(new Runnable() {
+            public void run () {
+                long start = System.currentTimeMillis();
+                List<Piece> pieces = snapshot.getPieceArray();
+                for (PieceLogic logic : logics) {
+                    try {
+                        logic.plan(snapshot, pieces, plan.tick, plan);
+                    } catch (Throwable t) {
+                        log.warning("AI logic failed to plan", "logic", logic,
+                                    "tick", plan.tick, t);
+                    }
+                }
+                plan.elapsed = System.currentTimeMillis() - start;
+
+                _receiver.execute(new Runnable() {
+                    public void run () {
+                        usage.noteFinished(plan);
+                        bangmgr.applyAIPlan(plan);
+                    }
+                });
+            }
+        });
+    }
+
+    // from Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        if (_exec instanceof ExecutorService) {
+            ((ExecutorService)_exec).shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the pool of worker threads on which plans are made.
+     */
+    protected static ExecutorService createPlanner (int threads)
+    {
+        threads = Math.max(threads, 1);
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(
+            threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread (Runnable runnable) {
+                    Thread thread = new Thread(runnable, "AI Planner " + _tcount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+                protected AtomicInteger _tcount = new AtomicInteger();
+            });
+        exec.allowCoreThreadTimeOut(true);
+        return exec;
+    }
+
+    /**
+     * Creates a snapshot of the parts of the game object consulted by the AI, with copies of the
+     * board and pieces that can be read and modified independently of the originals.
+     */
+    protected static BangObject createSnapshot (BangObject bangobj)
+    {
+        BangObject snapshot = new BangObject();
+        snapshot.board = bangobj.board.snapshot();
+        ArrayList<Piece> pieces = new ArrayList<Piece>(bangobj.pieces.size());
+        for (Piece piece : bangobj.pieces) {
+            pieces.add((Piece)piece.clone());
+        }
+        snapshot.pieces = new ModifiableDSet<Piece>(pieces.iterator());
+        snapshot.state = bangobj.state;
+        snapshot.players = bangobj.players;
+        snapshot.playerInfo = bangobj.playerInfo;
+        snapshot.teams = bangobj.teams;
+        snapshot.points = bangobj.points.clone();
+        snapshot.townId = bangobj.townId;
+        snapshot.scenario = bangobj.scenario;
+        snapshot.bounty = bangobj.bounty;
+        snapshot.boardHash = bangobj.boardHash;
+        snapshot.boardEffect = bangobj.boardEffect;
+        snapshot.globalHindrance = bangobj.globalHindrance;
+        snapshot.maxPieceId = bangobj.maxPieceId;
+        snapshot.roundId = bangobj.roundId;
+        snapshot.tick = bangobj.tick;
+        snapshot.lastTick = bangobj.lastTick;
+        snapshot.duration = bangobj.duration;
+        return snapshot;
+    }
+
+    /** The executor on which plans are passed back to their games. */
+    protected Executor _receiver;
+
+    /** The time allowed for each plan, in milliseconds. */
+    protected int _budget;
+
+    /** The executor on which plans are made. */
+    protected Executor _exec;
+
+    /** The default number of worker threads. */
+    protected static final int DEFAULT_THREADS = 2;
+
+    /** The default time allowed for each plan, in milliseconds. */
+    protected static final int DEFAULT_BUDGET = 100;
+}
@@ -62,9 +62,9 @@ public class CattleRustlingLogic extends AILogic
                 bshot = (Unit)p;
                 continue;
 
-            } else if (unit.validTarget(_bangobj, p, false) && (ctarget == null ||
+            } else if (unit.validTarget(_gameobj, p, false) && (ctarget == null ||
                        unit.getDistance(p) < unit.getDistance(ctarget)) &&
-                       unit.validTarget(_bangobj, p, false)) {
+                       unit.validTarget(_gameobj, p, false)) {
                 ctarget = p;
                 continue;
 
@@ -78,7 +78,7 @@ public class CattleRustlingLogic extends AILogic
             }
 
             Cow cow = (Cow)p;
-            if (cow.getTeam(_bangobj) != _bangobj.getTeam(_pidx) &&
+            if (cow.getTeam(_gameobj) != _gameobj.getTeam(_pidx) &&
                 (ccow == null || unit.getDistance(cow) < unit.getDistance(ccow))) {
                 ccow = cow;
             }
@@ -154,9 +154,9 @@ public class CattleRustlingLogic extends AILogic
         Piece ctarget = null, tporter = null;
         _sresults.clear();
         for (Piece p : pieces) {
-            if (unit.validTarget(_bangobj, p, false) &&
+            if (unit.validTarget(_gameobj, p, false) &&
                 (ctarget == null || unit.getDistance(p) < unit.getDistance(ctarget)) &&
-                unit.validTarget(_bangobj, p, false)) {
+                unit.validTarget(_gameobj, p, false)) {
                 ctarget = p;
                 continue;
 
@@ -170,7 +170,7 @@ public class CattleRustlingLogic extends AILogic
             }
 
             Cow cow = (Cow)p;
-            if (cow.getTeam(_bangobj) == _bangobj.getTeam(_pidx)) {
+            if (cow.getTeam(_gameobj) == _gameobj.getTeam(_pidx)) {
                 continue;
             }
             if (ccow == null || unit.getDistance(cow) < unit.getDistance(ccow)) {
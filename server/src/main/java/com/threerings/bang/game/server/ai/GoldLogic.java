@@ -66,7 +66,7 @@ public class GoldLogic extends AILogic
                 if (claim.owner == _pidx) {
                     oclaim = claim;
                 } else if (_stealing && claim.count > 0 &&
-                           claim.getTeam(_bangobj) != _bangobj.getTeam(_pidx) &&
+                           claim.getTeam(_gameobj) != _gameobj.getTeam(_pidx) &&
                            (cclaim == null || unit.getDistance(claim) < unit.getDistance(cclaim))) {
                     cclaim = claim;
                 }
@@ -81,7 +81,7 @@ public class GoldLogic extends AILogic
                 if (NuggetEffect.isNuggetBonus(target.holding) &&
                     (ctarget == null ||
                      unit.getDistance(target) < unit.getDistance(ctarget)) &&
-                    unit.validTarget(_bangobj, target, false)) {
+                    unit.validTarget(_gameobj, target, false)) {
                     ctarget = target;
                 }
                 if (_stealing && _claimloc != null &&
@@ -63,7 +63,7 @@ public class HeroLogic extends AILogic
                 }
 
                 if (u.owner != unit.owner && attacks.contains(u.x, u.y) &&
-                        unit.killShot(_bangobj, u)) {
+                        unit.killShot(_gameobj, u)) {
                     canKill = true;
                 }
 
@@ -3,6 +3,7 @@
 
 package com.threerings.bang.game.server.ai;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import java.awt.Point;
@@ -47,8 +48,13 @@ public class LandGrabLogic extends AILogic
     @Override // from AILogic
     public void tick (List<Piece> pieces, short tick)
     {
-        if (_steads == null) {
-            _steads = _scenario.getHomesteads();
+        // find the homesteads among the pieces rather than asking the scenario, as we may be
+        // planning against a snapshot of the game
+        _steads.clear();
+        for (Piece p : pieces) {
+            if (p instanceof Homestead) {
+                _steads.add((Homestead)p);
+            }
         }
         super.tick(pieces, tick);
     }
@@ -74,7 +80,7 @@ public class LandGrabLogic extends AILogic
         int ovalue = 0;
         Homestead ostead = null;
         for (Homestead stead : _steads) {
-            if (stead.isSameTeam(_bangobj, unit) || (!isBShot && stead.owner < 0)) {
+            if (stead.isSameTeam(_gameobj, unit) || (!isBShot && stead.owner < 0)) {
                 continue;
             }
             int value = Math.max(20 - unit.getDistance(stead), 0) * 10 +
@@ -125,7 +131,7 @@ public class LandGrabLogic extends AILogic
 
         // look for a teleporter
         Piece cporter = null;
-        for (Teleporter tporter : _bangobj.getTeleporters().values()) {
+        for (Teleporter tporter : _gameobj.getTeleporters().values()) {
             if (cporter == null || unit.getDistance(tporter) < unit.getDistance(cporter)) {
                 cporter = tporter;
             }
@@ -149,7 +155,7 @@ public class LandGrabLogic extends AILogic
     protected LandGrab _scenario;
 
     /** Used to track the locations of all homestead spots. */
-    protected List<Homestead> _steads;
+    protected List<Homestead> _steads = new ArrayList<Homestead>();
 
     /** Ranks units by properties that should make them good at gathering totems: speed and attack
      * power. */
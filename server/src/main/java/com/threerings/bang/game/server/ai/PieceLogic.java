@@ -9,17 +9,15 @@ import java.util.List;
 
 import com.samskivert.util.RandomUtil;
 
-import com.threerings.media.util.AStarPathUtil;
-
 import com.threerings.presents.server.InvocationException;
 
 import com.threerings.bang.game.server.BangManager;
 
 import com.threerings.bang.game.data.BangObject;
 import com.threerings.bang.game.data.piece.Piece;
-import com.threerings.bang.game.data.piece.Teleporter;
 import com.threerings.bang.game.data.piece.Unit;
 
+import com.threerings.bang.game.util.DistanceField;
 import com.threerings.bang.game.util.PointSet;
 
 /**
@@ -36,10 +34,41 @@ public abstract class PieceLogic
     public void init (BangManager bangmgr, Piece piece)
     {
         _bangmgr = bangmgr;
-        _bangobj = (BangObject)_bangmgr.getPlaceObject();
+        _bangobj = _gameobj = (BangObject)_bangmgr.getPlaceObject();
         pieceId = piece.pieceId;
     }
 
+    /**
+     * Called on the distributed object thread before the logic plans its moves for a tick, to give
+     * it a chance to gather any state that it needs from outside the game object.
+     */
+    public void prepare (short tick)
+    {
+    }
+
+    /**
+     * Plans the logic's moves for a tick against a snapshot of the game.  The orders are recorded
+     * rather than executed (and the units moved in the snapshot, so that later moves take them
+     * into account), to be applied to the game on the distributed object thread.  The game object
+     * itself is left alone, as the distributed object thread may consult it meanwhile.
+     *
+     * @param snapshot the snapshot of the game object.
+     * @param pieces the array of pieces in the snapshot.
+     * @param plan the plan to which the orders will be added.  Once past its deadline, the logic
+     * makes cheaper, less considered moves (or none at all).
+     */
+    public void plan (BangObject snapshot, List<Piece> pieces, short tick, AIScheduler.Plan plan)
+    {
+        _gameobj = snapshot;
+        _plan = plan;
+        try {
+            tick(pieces, tick);
+        } finally {
+            _gameobj = _bangobj;
+            _plan = null;
+        }
+    }
+
     /**
      * Called on every tick to let the AI move the piece.
      */
@@ -48,10 +77,15 @@ public abstract class PieceLogic
         for (Piece p : pieces) {
             if (p instanceof Unit && p.pieceId == pieceId && p.isAlive() &&
                     p.ticksUntilMovable(tick) == 0) {
+                // if we're out of time, we'll try again next tick
+                if (isPastDeadline()) {
+                    _plan.deferred++;
+                    continue;
+                }
                 Unit unit = (Unit)p;
                 _moves.clear();
                 _attacks.clear();
-                unit.computeMoves(_bangobj.board, _moves, _attacks);
+                unit.computeMoves(_gameobj.board, _moves, _attacks);
                 moveUnit(pieces, unit, _moves, _attacks);
             }
         }
@@ -80,13 +114,16 @@ public abstract class PieceLogic
      * Short#MAX_VALUE} is supplied for x.
      * @param target the piece for the unit to shoot, or <code>null</code> for
      * none
-     * @return true if the order was executed, false if there was some error in
-     * executing the order
+     * @return true if the order was executed (or, when planning, if it passed the checks against
+     * the snapshot), false if there was some error in executing the order
      */
     protected boolean executeOrder (Unit unit, int x, int y, Piece target)
     {
+        if (_plan != null) {
+            return planOrder(unit, x, y, target);
+        }
+        int targetId = (target == null) ? -1 : target.pieceId;
         try {
-            int targetId = (target == null) ? -1 : target.pieceId;
             _bangmgr.executeOrder(unit, x, y, targetId, true);
             return true;
         } catch (InvocationException e) {
@@ -94,6 +131,57 @@ public abstract class PieceLogic
         }
     }
 
+    /**
+     * Checks an order against the snapshot of the game on which we're planning, as {@link
+     * BangManager#executeOrder} will check it against the game itself. If it passes, adds it to the
+     * plan and moves the unit in the snapshot.
+     *
+     * @return true if the order was added to the plan, false if it would fail.
+     */
+    protected boolean planOrder (Unit unit, int x, int y, Piece target)
+    {
+        // make sure the target may be shot
+        if (target != null && !unit.validTarget(_gameobj, target, false)) {
+            return false;
+        }
+
+        // compute the unit's moves as they stand after the moves already planned
+        _pmoves.clear();
+        unit.computeMoves(_gameobj.board, _pmoves, null);
+
+        // locate the spot from which to shoot if we were not given one
+        int mx = x, my = y;
+        if (x == Short.MAX_VALUE) {
+            Point spot = (target == null) ?
+                null : unit.computeShotLocation(_gameobj.board, target, _pmoves, false);
+            if (spot == null) {
+                return false;
+            }
+            mx = spot.x;
+            my = spot.y;
+        }
+
+        // make sure the move is legal and that we can shoot our target from where we land
+        boolean moving = (mx != unit.x || my != unit.y);
+        if (moving && !_pmoves.contains(mx, my)) {
+            return false;
+        }
+        if (target != null && (!unit.targetInRange(mx, my, target.x, target.y) ||
+                               !unit.checkLineOfSight(_gameobj.board, mx, my, target))) {
+            return false;
+        }
+
+        _plan.orders.add(new AIScheduler.Order(
+            unit.pieceId, x, y, (target == null) ? -1 : target.pieceId));
+        if (moving) {
+            _gameobj.board.clearShadow(unit);
+            unit.position(mx, my);
+            _gameobj.board.shadowPiece(unit);
+        }
+        unit.lastActed = _gameobj.tick;
+        return true;
+    }
+
     /**
      * Gets the closest point to the provided destination that the unit can
      * reach in one move (or <code>null</code> if the destination is
@@ -155,52 +243,32 @@ public abstract class PieceLogic
             return null;
         }
 
-        // then do a search to find further points
-        List<Point> path = AStarPathUtil.getPath(
-                _bangobj.board, getStepper(), unit,
-                getMaxLookahead(), unit.x, unit.y, dx, dy, true);
-        if (path == null || path.size() < 2) {
-            return null; // not even a partial path
-        }
-        Point pt = path.get(path.size() - 1);
-        if (Piece.getDistance(pt.x, pt.y, dx, dy) > maxdist) {
-            return null; // not close enough
+        // then consult the distance field shared by all units moving towards the same place to
+        // find the move that gets us closest
+        DistanceField field = _bangmgr.getAINavigator().getField(
+            _gameobj, unit, dx, dy, mindist, maxdist);
+        if (field.getDistance(unit.x, unit.y) > getMaxLookahead()) {
+            return null; // too far away, or unreachable
         }
-        for (int ii = path.size() - 1; ii >= 0; ii--) {
-            pt = path.get(ii);
-            if (moves.contains(pt.x, pt.y)) {
-                return pt;
-            }
-        }
-        return null;
+        int idx = field.getBestMove(moves);
+        return (idx == -1) ? null : new Point(moves.getX(idx), moves.getY(idx));
     }
 
     /**
-     * Returns the maximum lookahead for destinations beyond what units can
-     * reach in the current tick.
+     * Checks whether we're planning our moves and have run out of time in which to do so.
      */
-    protected int getMaxLookahead ()
+    protected boolean isPastDeadline ()
     {
-        return _bangobj.board.getWidth() / 2;
+        return _plan != null && System.currentTimeMillis() > _plan.deadline;
     }
 
-    protected AStarPathUtil.Stepper getStepper ()
+    /**
+     * Returns the maximum lookahead for destinations beyond what units can
+     * reach in the current tick.
+     */
+    protected int getMaxLookahead ()
     {
-        return new AStarPathUtil.Stepper() {
-            public void considerSteps (int x, int y)
-            {
-                considerStep(x, y - 1, 1);
-                considerStep(x - 1, y, 1);
-                considerStep(x + 1, y, 1);
-                considerStep(x, y + 1, 1);
-
-                Teleporter teleporter = _bangobj.getTeleporters().get(
-                        Piece.coord(x, y));
-                if (teleporter == null) {
-                    return;
-                }
-            }
-        };
+        return _gameobj.board.getWidth() / 2;
     }
 
     /** Reference to the Bang Manager. */
@@ -209,6 +277,16 @@ public abstract class PieceLogic
     /** Reference to the game object. */
     protected BangObject _bangobj;
 
+    /** The game against which we move our pieces: the game object itself or, while planning, the
+     * snapshot of it.  Only to be used by the thread moving the pieces. */
+    protected BangObject _gameobj;
+
+    /** The plan to which we record our orders when planning, or null when moving directly. */
+    protected AIScheduler.Plan _plan;
+
     /** Used to compute a unit's potential moves or attacks. */
     protected PointSet _moves = new PointSet(), _attacks = new PointSet();
+
+    /** Used to check the moves of planned orders. */
+    protected PointSet _pmoves = new PointSet();
 }
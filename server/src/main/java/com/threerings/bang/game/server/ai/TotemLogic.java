@@ -80,7 +80,7 @@ public class TotemLogic extends AILogic
                 if (TotemBonus.isHolding(target) &&
                     (ctarget == null ||
                      unit.getDistance(target) < unit.getDistance(ctarget)) &&
-                    unit.validTarget(_bangobj, target, false)) {
+                    unit.validTarget(_gameobj, target, false)) {
                     ctarget = target;
                 }
             } else if (p instanceof Teleporter && (tporter == null ||
@@ -26,13 +26,13 @@ public class UnderdogSoldierLogic extends PieceLogic
     protected void moveUnit (List<Piece> pieces, Unit unit, PointSet moves, PointSet attacks)
     {
         // determine each player's rank based on their points
-        int[] spoints = _bangobj.points.clone();
-        int[] rank = new int[_bangobj.players.length];
+        int[] spoints = _gameobj.points.clone();
+        int[] rank = new int[_gameobj.players.length];
         Arrays.sort(spoints);
         ArrayUtil.reverse(spoints);
         for (int ii = 0; ii < rank.length; ii++) {
             for (int jj = 0; jj < spoints.length; jj++) {
-                if (_bangobj.points[ii] == spoints[jj]) {
+                if (_gameobj.points[ii] == spoints[jj]) {
                     rank[ii] = jj;
                     break;
                 }
@@ -42,7 +42,7 @@ public class UnderdogSoldierLogic extends PieceLogic
         TargetOption to = null;
         Piece tporter = null;
         for (Piece p : pieces) {
-            if (p.isTargetable() && unit.validTarget(_bangobj, p, false) &&
+            if (p.isTargetable() && unit.validTarget(_gameobj, p, false) &&
                     p.owner >= 0) {
                 TargetOption option = new TargetOption(p, unit.getDistance(p), 
                         attacks.contains(p.x, p.y), rank[p.owner]);
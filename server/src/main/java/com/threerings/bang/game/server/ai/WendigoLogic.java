@@ -49,6 +49,14 @@ public class WendigoLogic extends AILogic
         return getWeightedUnitTypes(configs, OFFENSE_EVALUATOR, count);
     }
 
+    @Override // documentation inherited
+    public void prepare (short tick)
+    {
+        // note the state of the scenario for use while planning
+        _safeSpots = _scenario.getSafeSpots();
+        _prepared = _scenario.areWendigoPrepared();
+    }
+
     @Override // documentation inherited
     public void tick (List<Piece> pieces, short tick)
     {
@@ -58,7 +66,7 @@ public class WendigoLogic extends AILogic
     // documentation inherited
     protected void moveUnit (List<Piece> pieces, Unit unit, PointSet moves, PointSet attacks)
     {
-        PointSet safeSpots = _scenario.getSafeSpots();
+        PointSet safeSpots = _safeSpots;
         Unit ctarget = null;
         Piece talisman = null, tporter = null;
         ToggleSwitch tswitch = null;
@@ -71,7 +79,7 @@ public class WendigoLogic extends AILogic
                 }
 
             } else if (p instanceof ToggleSwitch &&
-                    ((ToggleSwitch)p).isActive(_bangobj.tick)) {
+                    ((ToggleSwitch)p).isActive(_gameobj.tick)) {
                 if (tswitch == null ||
                         unit.getDistance(p) < unit.getDistance(tswitch)) {
                     tswitch = (ToggleSwitch)p;
@@ -82,7 +90,7 @@ public class WendigoLogic extends AILogic
                 if (TalismanEffect.TALISMAN_BONUS.equals(target.holding) &&
                     (ctarget == null ||
                      unit.getDistance(target) < unit.getDistance(ctarget)) &&
-                    unit.validTarget(_bangobj, target, false)) {
+                    unit.validTarget(_gameobj, target, false)) {
                     ctarget = target;
                 }
 
@@ -96,7 +104,7 @@ public class WendigoLogic extends AILogic
         }
         PointSet preferredMoves = (PointSet)moves.clone();
         preferredMoves.retainAll(safeSpots);
-        boolean inDanger = _scenario.areWendigoPrepared();
+        boolean inDanger = _prepared;
         boolean holdingTalisman = TalismanEffect.TALISMAN_BONUS.equals(
                 unit.holding);
 
@@ -126,7 +134,7 @@ public class WendigoLogic extends AILogic
 
         // if there's a talisman holding target within reach, shoot it
         } else if (ctarget != null && attacks.contains(ctarget.x, ctarget.y)) {
-            Point mv = unit.computeShotLocation(_bangobj.board, ctarget,
+            Point mv = unit.computeShotLocation(_gameobj.board, ctarget,
                     moves, false, preferredMoves);
             if (mv != null) {
                 executeOrder(unit, (short)mv.x, (short)mv.y, ctarget);
@@ -147,7 +155,7 @@ public class WendigoLogic extends AILogic
         for (int ii = 0; ii < safeSpots.size(); ii++) {
             int x = safeSpots.getX(ii), y = safeSpots.getY(ii);
             int tdist = unit.getDistance(x, y);
-            if (tdist < dist && _bangobj.board.isOccupiable(x, y)) {
+            if (tdist < dist && _gameobj.board.isOccupiable(x, y)) {
                 dist = tdist;
                 safe.setLocation(x, y);
             }
@@ -228,4 +236,8 @@ public class WendigoLogic extends AILogic
 
     /** Reference to the scenario. */
     protected WendigoAttack _scenario;
+
+    /** The active safe spots and whether the wendigo are prepared, as of the last tick. */
+    protected PointSet _safeSpots;
+    protected boolean _prepared;
 }
@@ -307,7 +307,7 @@ public class LoggingRobotDelegate extends ScenarioDelegate
                     }
 
                 } else if (piece instanceof Unit &&
-                           unit.validTarget(_bangobj, piece, false) &&
+                           unit.validTarget(_gameobj, piece, false) &&
                            (cunit == null || unit.getDistance(piece) < unit.getDistance(cunit))) {
                     cunit = (Unit)piece;
 
@@ -58,7 +58,7 @@ public abstract class GangGoodProvider extends GangFinancialAction
         final String msg = MessageBundle.compose(
             getHistoryLogKey(), MessageBundle.taint(_handle), _good.getName(),
             GangUtil.getMoneyDesc(_scripCost, _coinCost, _aceCost));
-        _entryId = _gangrepo.insertHistoryEntry(_gang.gangId, msg);
+        _entryId = _histmgr.insertHistoryEntry(_gang.gangId, msg);
         _gangmgr.incLeaderLevel(_gang, _handle);
         return null;
     }
@@ -68,7 +68,7 @@ public abstract class GangGoodProvider extends GangFinancialAction
         throws PersistenceException
     {
         if (_entryId > 0) {
-            _gangrepo.deleteHistoryEntry(_entryId);
+            _histmgr.deleteHistoryEntry(_gang.gangId, _entryId);
         }
     }
 
@@ -105,4 +105,5 @@ public abstract class GangGoodProvider extends GangFinancialAction
 
     // dependencies
     @Inject protected GangManager _gangmgr;
+    @Inject protected GangHistoryManager _histmgr;
 }
@@ -94,13 +94,14 @@ import com.threerings.bang.admin.data.ServerConfigObject;
 import com.threerings.bang.admin.server.RuntimeConfig;
 
 import com.threerings.bang.avatar.data.Look;
+import com.threerings.bang.avatar.server.SnapshotCache;
 import com.threerings.bang.avatar.server.persist.LookRepository;
 import com.threerings.bang.avatar.util.ArticleCatalog;
 import com.threerings.bang.avatar.util.AvatarLogic;
 
 import com.threerings.bang.game.data.scenario.ScenarioInfo;
 
-import com.threerings.bang.saloon.server.SaloonManager;
+import com.threerings.bang.saloon.server.LeaderboardManager;
 import com.threerings.bang.saloon.server.TableGameManager;
 
 import com.threerings.bang.gang.data.GangCodes;
@@ -197,19 +198,25 @@ public class GangHandler
 
     /**
      * Fetches a batch of history entries.  This need not be forwarded to the controlling peer
-     * because it simply reads the entries from the database.
+     * because it simply reads the entries from the history cache or the database.
      */
     public void getHistoryEntries (final int offset, final int count, final String filter,
                                    final InvocationService.ResultListener listener)
     {
+        // the most recent entries are usually cached
+        HistoryEntry[] entries = _histmgr.getCachedEntries(_gangId, offset, count, filter);
+        if (entries != null) {
+            listener.requestProcessed(entries);
+            return;
+        }
         _invoker.postUnit(new PersistingUnit(listener) {
             public void invokePersistent () throws PersistenceException {
-                _entries = _gangrepo.loadHistoryEntries(_gangId, offset, count, filter);
+                _entries = _histmgr.loadEntries(_gangId, offset, count, filter);
             }
             public void handleSuccess () {
-                listener.requestProcessed(_entries.toArray(new HistoryEntry[_entries.size()]));
+                listener.requestProcessed(_entries);
             }
-            protected List<HistoryEntry> _entries;
+            protected HistoryEntry[] _entries;
         });
     }
 
@@ -743,7 +750,7 @@ public class GangHandler
             public void invokePersistent () throws PersistenceException {
                 _error = _gangrepo.insertInvite(entry.playerId, _gangId, target, message);
                 if (_error == null) {
-                    _gangrepo.insertHistoryEntry(
+                    _histmgr.insertHistoryEntry(
                         _gangId, MessageBundle.tcompose("m.invited_entry", handle, target));
                 }
             }
@@ -777,7 +784,7 @@ public class GangHandler
                     _mrec = new GangMemberRecord(playerId, _gangId, MEMBER_RANK);
                     _gangrepo.insertMember(_mrec);
                     String hmsg = MessageBundle.tcompose("m.joined_entry", handle);
-                    _gangrepo.insertHistoryEntry(_gangId, hmsg);
+                    _histmgr.insertHistoryEntry(_gangId, hmsg);
                 }
             }
             public void handleSuccess () {
@@ -787,6 +794,9 @@ public class GangHandler
                     // the gang has been deleted already
                     listener.requestFailed("e.invite_removed");
                 } else {
+                    if (_mrec != null) {
+                        _playmgr.clearPosterInfoCache(handle);
+                    }
                     handleInviteSuccess(handle, playerId, inviter, _mrec, listener);
                 }
             }
@@ -942,6 +952,10 @@ public class GangHandler
                 } finally {
                     _gangobj.commitTransaction();
                 }
+                // the buckle appears on all of the members' posters
+                for (GangMemberEntry member : _gangobj.members) {
+                    _playmgr.clearPosterInfoCache(member.handle);
+                }
                 listener.requestProcessed();
             }
         });
@@ -965,7 +979,7 @@ public class GangHandler
                 try {
                     _gangrepo.grantScrip(_gangId, scrip);
                     _gangrepo.recordDonation(entry.playerId, scrip, coins);
-                    _entryId = _gangrepo.insertHistoryEntry(_gangId,
+                    _entryId = _histmgr.insertHistoryEntry(_gangId,
                         MessageBundle.compose(
                             "m.donation_entry",
                             MessageBundle.taint(handle),
@@ -985,7 +999,7 @@ public class GangHandler
                 _gangrepo.spendScrip(_gangId, scrip);
                 _gangrepo.retractDonation(entry.playerId, scrip, coins);
                 if (_entryId > 0) {
-                    _gangrepo.deleteHistoryEntry(_entryId);
+                    _histmgr.deleteHistoryEntry(_gangId, _entryId);
                 }
             }
 
@@ -1144,7 +1158,7 @@ public class GangHandler
                     _gangrepo.deleteGang(_gangId);
                 } else {
                     deleteFromGang(entry.playerId);
-                    _entryId = _gangrepo.insertHistoryEntry(_gangId, (handle == null) ?
+                    _entryId = _histmgr.insertHistoryEntry(_gangId, (handle == null) ?
                         MessageBundle.tcompose("m.left_entry", entry.handle) :
                         MessageBundle.tcompose("m.expelled_entry", handle, entry.handle));
                     _gangmgr.incLeaderLevel(_gangobj, handle);
@@ -1183,7 +1197,7 @@ public class GangHandler
                         entry.coinsDonated, entry.title));
                 }
                 if (_entryId > 0) {
-                    _gangrepo.deleteHistoryEntry(_entryId);
+                    _histmgr.deleteHistoryEntry(_gangId, _entryId);
                 }
             }
 
@@ -1265,7 +1279,7 @@ public class GangHandler
                     }
                 }
                 _gangrepo.updateRank(entry.playerId, rank, commandOrder);
-                _gangrepo.insertHistoryEntry(_gangId, historyEntry);
+                _histmgr.insertHistoryEntry(_gangId, historyEntry);
                 _gangmgr.incLeaderLevel(_gangobj, handle);
             }
 
@@ -1309,7 +1323,7 @@ public class GangHandler
             public void invokePersistent ()
                 throws PersistenceException {
                 _gangrepo.updateTitle(entry.playerId, title);
-                _gangrepo.insertHistoryEntry(_gangId,
+                _histmgr.insertHistoryEntry(_gangId,
                     MessageBundle.compose("m.title_entry",
                         MessageBundle.taint(handle),
                         MessageBundle.taint(target),
@@ -1532,7 +1546,7 @@ public class GangHandler
         _invoker.postUnit(new Invoker.Unit() {
             public boolean invoke () {
                 try {
-                    _gangrepo.insertHistoryEntry(_gangId,
+                    _histmgr.insertHistoryEntry(_gangId,
                         MessageBundle.tcompose(
                             "m.exchange_purchase_entry", member, "" + vol, "" + price*vol));
                     _gangmgr.incLeaderLevel(_gangobj, new Handle(member));
@@ -1721,7 +1735,7 @@ public class GangHandler
                     _itemrepo.insertItems(articles[ii], userIds[ii], _items);
                 }
                 _memberCount = memberIds.size();
-                _entryId = _gangrepo.insertHistoryEntry(_gangId,
+                _entryId = _histmgr.insertHistoryEntry(_gangId,
                         MessageBundle.compose(
                             "m.outfit_entry",
                             MessageBundle.taint(handle),
@@ -1740,7 +1754,7 @@ public class GangHandler
                     _itemrepo.deleteItems(itemIds, "rollback");
                 }
                 if (_entryId > 0) {
-                    _gangrepo.deleteHistoryEntry(_entryId);
+                    _histmgr.deleteHistoryEntry(_gangId, _entryId);
                 }
             }
 
@@ -2053,16 +2067,18 @@ public class GangHandler
         _omgr.registerObject(_gangobj);
         log.info("Initialized gang object " + this + ".");
 
-        // start the interval to calculate top-ranked members
-        _rankval = new Interval(_omgr) {
-            public void expired () {
-                _saloonmgr.refreshTopRanked(
-                    _gangobj, ScenarioInfo.getScenarioIds(),
-                    "GANG_MEMBERS", "RATINGS.PLAYER_ID = GANG_MEMBERS.PLAYER_ID and " +
-                    "GANG_MEMBERS.GANG_ID = " + _gangId, TOP_RANKED_LIST_SIZE);
+        // have the leaderboard keep our top-ranked members up to date
+        LeaderboardManager.Membership members = new LeaderboardManager.Membership() {
+            public ArrayIntSet getMemberIds () {
+                ArrayIntSet playerIds = new ArrayIntSet();
+                for (GangMemberEntry entry : _gangobj.members) {
+                    playerIds.add(entry.playerId);
+                }
+                return playerIds;
             }
         };
-        _rankval.schedule(1000L, RANK_REFRESH_INTERVAL);
+        _leadermgr.registerTopRanked(
+            _gangobj, ScenarioInfo.getScenarioIds(), members, TOP_RANKED_LIST_SIZE);
 
         // and the one to update activity states
         _actival = new Interval(_omgr) {
@@ -2360,7 +2376,7 @@ public class GangHandler
      */
     protected void shutdown ()
     {
-        _rankval.cancel();
+        _leadermgr.unregisterTopRanked(_gangobj);
         _actival.cancel();
         _unloadval.cancel();
 
@@ -2415,7 +2431,7 @@ public class GangHandler
         _avatarId = leader.playerId;
         _invoker.postUnit(new RepositoryUnit("updateAvatar") {
             public void invokePersist () throws PersistenceException {
-                _avatar = _lookrepo.loadSnapshot(leader.playerId);
+                _avatar = _snapcache.loadSnapshot(leader.playerId);
             }
             public void handleSuccess () {
                 _gangobj.setAvatar(_avatar);
@@ -2552,9 +2568,6 @@ public class GangHandler
     /** The player id of the avatar set in the gang object. */
     protected int _avatarId;
 
-    /** The interval that refreshes the list of top-ranked members. */
-    protected Interval _rankval;
-
     /** The interval that refreshes members' active states. */
     protected Interval _actival;
 
@@ -2586,16 +2599,15 @@ public class GangHandler
     @Inject protected AvatarLogic _alogic;
     @Inject protected PlayerLocator _locator;
     @Inject protected PlayerManager _playmgr;
-    @Inject protected SaloonManager _saloonmgr;
+    @Inject protected LeaderboardManager _leadermgr;
     @Inject protected BangPeerManager _peermgr;
     @Inject protected HideoutManager _hideoutmgr;
     @Inject protected GangManager _gangmgr;
+    @Inject protected GangHistoryManager _histmgr;
     @Inject protected GangRepository _gangrepo;
     @Inject protected ItemRepository _itemrepo;
     @Inject protected LookRepository _lookrepo;
-
-    /** The frequency with which we update the top-ranked member lists. */
-    protected static final long RANK_REFRESH_INTERVAL = 60 * 60 * 1000L;
+    @Inject protected SnapshotCache _snapcache;
 
     /** The size of the top-ranked member lists. */
     protected static final int TOP_RANKED_LIST_SIZE = 10;
@@ -0,0 +1,311 @@
+//
+// $Id$
+
+package com.threerings.bang.gang.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.util.HashIntMap;
+
+import com.threerings.bang.gang.data.HistoryEntry;
+import com.threerings.bang.gang.server.persist.GangHistoryRecord;
+import com.threerings.bang.gang.server.persist.GangRepository;
+
+/**
+ * Records and retrieves gang history entries.  The most recent entries of each gang whose history
+ * has been requested are kept in memory, so that the first pages viewed are served without
+ * touching the database.  Pages beyond those are loaded by seeking past the last entry of the
+ * previous page (which we remember for each gang and filter) rather than by counting entries.
+ *
+ * <p> Entries added through this manager are reflected in its cache immediately; those added by
+ * other servers are picked up when the cache expires.  All methods may be called from any
+ * thread.
+ */
+@Singleton
+public class GangHistoryManager
+{
+    /**
+     * Inserts a new historical entry into the database.
+     *
+     * @return the unique id assigned to the entry, which can be used to delete it.
+     */
+    public int insertHistoryEntry (int gangId, String description)
+        throws PersistenceException
+    {
+        GangHistoryRecord record = new GangHistoryRecord(gangId, description);
+        _gangrepo.insertHistoryEntry(record);
+        HistoryCache cache = getCache(gangId, false);
+        if (cache != null) {
+            cache.entryAdded(record);
+        }
+        return record.entryId;
+    }
+
+    /**
+     * Deletes a historical entry from the database.
+     */
+    public void deleteHistoryEntry (int gangId, int entryId)
+        throws PersistenceException
+    {
+        _gangrepo.deleteHistoryEntry(entryId);
+        HistoryCache cache = getCache(gangId, false);
+        if (cache != null) {
+            cache.entryRemoved(entryId);
+        }
+    }
+
+    /**
+     * Returns a batch of history entries from the cache, if they can be served from there.
+     *
+     * @param offset the offset from the end (e.g., 0 to retrieve the last <code>count</code>
+     * entries, <code>count</code> to retrieve the next-to-last <code>count</code>)
+     * @param filter the type of entries to return, or <code>null</code> for all types.
+     * @return the entries in chronological order, or <code>null</code> if they must be loaded.
+     */
+    public HistoryEntry[] getCachedEntries (int gangId, int offset, int count, String filter)
+    {
+        HistoryCache cache = getCache(gangId, false);
+        return (cache == null) ? null : cache.getEntries(offset, count, filter);
+    }
+
+    /**
+     * Loads a batch of history entries, from the cache if possible.  This should be called on
+     * the invoker thread.
+     *
+     * @param offset the offset from the end (e.g., 0 to retrieve the last <code>count</code>
+     * entries, <code>count</code> to retrieve the next-to-last <code>count</code>)
+     * @param filter the type of entries to return, or <code>null</code> for all types.
+     * @return the entries in chronological order.
+     */
+    public HistoryEntry[] loadEntries (int gangId, int offset, int count, String filter)
+        throws PersistenceException
+    {
+        HistoryCache cache = getCache(gangId, true);
+        if (!cache.isLoaded()) {
+            int version = cache.getVersion();
+            List<GangHistoryRecord> records =
+                _gangrepo.loadHistoryRecords(gangId, null, 0, CACHE_SIZE);
+            cache.init(records, version);
+        }
+        HistoryEntry[] entries = cache.getEntries(offset, count, filter);
+        if (entries != null) {
+            return entries;
+        }
+
+        // seek past the last entry of the previous page if we know it; otherwise, fall back to
+        // counting entries
+        int beforeId = cache.getPrecedingEntryId(offset, filter);
+        List<GangHistoryRecord> records = (beforeId > 0) ?
+            _gangrepo.loadHistoryRecords(gangId, filter, beforeId, count) :
+            _gangrepo.loadHistoryRecordsAt(gangId, filter, offset, count);
+        cache.notePage(offset, filter, records);
+
+        entries = new HistoryEntry[records.size()];
+        for (int ii = 0; ii < entries.length; ii++) {
+            entries[entries.length - ii - 1] = records.get(ii).toEntry();
+        }
+        return entries;
+    }
+
+    /**
+     * Releases the cached history of the specified gang, which is no longer resolved on this
+     * server.
+     */
+    public void clearCache (int gangId)
+    {
+        synchronized (_caches) {
+            _caches.remove(gangId);
+        }
+    }
+
+    /**
+     * Returns the cache for the specified gang, optionally creating it.
+     */
+    protected HistoryCache getCache (int gangId, boolean create)
+    {
+        synchronized (_caches) {
+            HistoryCache cache = _caches.get(gangId);
+            if (cache == null && create) {
+                _caches.put(gangId, cache = new HistoryCache());
+            }
+            return cache;
+        }
+    }
+
+    /** Holds the most recent history entries of a single gang. */
+    protected class HistoryCache
+    {
+        /**
+         * Determines whether the cache has been loaded (and hasn't expired).
+         */
+        public synchronized boolean isLoaded ()
+        {
+            return _loaded > System.currentTimeMillis() - CACHE_EXPIRY;
+        }
+
+        /**
+         * Returns the current version of the cache, which is incremented whenever an entry is
+         * added or removed.
+         */
+        public synchronized int getVersion ()
+        {
+            return _version;
+        }
+
+        /**
+         * Initializes the cache with the most recent entries of the gang.
+         *
+         * @param records the most recent records, most recent first.
+         * @param version the version of the cache when the records were loaded: if entries have
+         * been added or removed in the meantime, the records may be out of date, and we'll try
+         * again on the next request.
+         */
+        public synchronized void init (List<GangHistoryRecord> records, int version)
+        {
+            _records.clear();
+            _anchors.clear();
+            if (version != _version) {
+                _loaded = 0L;
+                return;
+            }
+            _records.addAll(records);
+            _complete = (records.size() < CACHE_SIZE);
+            _loaded = System.currentTimeMillis();
+        }
+
+        /**
+         * Adds a new entry to the cache.
+         */
+        public synchronized void entryAdded (GangHistoryRecord record)
+        {
+            _version++;
+            _anchors.clear(); // offsets have shifted
+            if (_loaded == 0L) {
+                return;
+            }
+            _records.add(0, record);
+            if (_records.size() > CACHE_SIZE) {
+                _records.remove(_records.size() - 1);
+                _complete = false;
+            }
+        }
+
+        /**
+         * Removes an entry from the cache.
+         */
+        public synchronized void entryRemoved (int entryId)
+        {
+            _version++;
+            _anchors.clear();
+            for (int ii = 0, nn = _records.size(); ii < nn; ii++) {
+                if (_records.get(ii).entryId == entryId) {
+                    _records.remove(ii);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Returns the requested entries in chronological order, or <code>null</code> if they
+         * aren't all in the cache.
+         */
+        public synchronized HistoryEntry[] getEntries (int offset, int count, String filter)
+        {
+            if (!isLoaded()) {
+                return null;
+            }
+            ArrayList<HistoryEntry> entries = new ArrayList<HistoryEntry>(count);
+            int matched = 0;
+            for (int ii = 0, nn = _records.size(); ii < nn && entries.size() < count; ii++) {
+                GangHistoryRecord record = _records.get(ii);
+                if (filter == null || filter.equals(record.entryType)) {
+                    if (matched++ >= offset) {
+                        entries.add(0, record.toEntry());
+                    }
+                }
+            }
+            if (entries.size() < count && !_complete) {
+                return null;
+            }
+            return entries.toArray(new HistoryEntry[entries.size()]);
+        }
+
+        /**
+         * Returns the id of the entry that immediately precedes (is more recent than) the entry
+         * at the specified offset, or 0 if unknown.
+         */
+        public synchronized int getPrecedingEntryId (int offset, String filter)
+        {
+            if (offset == 0) {
+                return 0;
+            }
+            int matched = 0;
+            for (int ii = 0, nn = _records.size(); ii < nn; ii++) {
+                GangHistoryRecord record = _records.get(ii);
+                if ((filter == null || filter.equals(record.entryType)) && ++matched == offset) {
+                    return record.entryId;
+                }
+            }
+            HashIntMap<Integer> anchors = _anchors.get(filter);
+            Integer entryId = (anchors == null) ? null : anchors.get(offset);
+            return (entryId == null) ? 0 : entryId;
+        }
+
+        /**
+         * Notes the ids of the entries in a page loaded from the database, so that we can seek
+         * directly to the pages that follow.
+         *
+         * @param records the page of records, most recent first.
+         */
+        public synchronized void notePage (
+            int offset, String filter, List<GangHistoryRecord> records)
+        {
+            HashIntMap<Integer> anchors = _anchors.get(filter);
+            if (anchors == null) {
+                _anchors.put(filter, anchors = new HashIntMap<Integer>());
+            } else if (anchors.size() > MAX_ANCHORS) {
+                anchors.clear();
+            }
+            for (int ii = 0, nn = records.size(); ii < nn; ii++) {
+                anchors.put(offset + ii + 1, records.get(ii).entryId);
+            }
+        }
+
+        /** The most recent records, most recent first. */
+        protected ArrayList<GangHistoryRecord> _records = new ArrayList<GangHistoryRecord>();
+
+        /** Whether the cached records comprise the gang's entire history. */
+        protected boolean _complete;
+
+        /** The time at which the cache was loaded, or 0 if it hasn't been. */
+        protected long _loaded;
+
+        /** Incremented whenever an entry is added or removed. */
+        protected int _version;
+
+        /** For each filter, maps offsets to the ids of the entries immediately preceding them. */
+        protected HashMap<String, HashIntMap<Integer>> _anchors =
+            new HashMap<String, HashIntMap<Integer>>();
+    }
+
+    /** The history caches of the gangs whose history has been requested. */
+    protected HashIntMap<HistoryCache> _caches = new HashIntMap<HistoryCache>();
+
+    @Inject protected GangRepository _gangrepo;
+
+    /** The number of recent entries we cache for each gang. */
+    protected static final int CACHE_SIZE = 100;
+
+    /** The interval after which we reload the cached entries to pick up those added by other
+     * servers. */
+    protected static final long CACHE_EXPIRY = 5 * 60 * 1000L;
+
+    /** The maximum number of page anchors we track for a single filter. */
+    protected static final int MAX_ANCHORS = 1000;
+}
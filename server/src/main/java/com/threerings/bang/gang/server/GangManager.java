@@ -144,6 +144,14 @@ public class GangManager
         return gang;
     }
 
+    /**
+     * Determines whether the specified gang is resolved (or resolving) on this server.
+     */
+    public boolean isGangResolved (int gangId)
+    {
+        return _gangs.containsKey(gangId);
+    }
+
     /**
      * Registers a just-logged-on player with their Gang, if appropriate, dispatches any pending
      * Gang invitations otherwise. Called during logon after a player has resolved all of their
@@ -431,7 +439,7 @@ public class GangManager
                 }
                 _gangrepo.insertMember(
                     _mrec = new GangMemberRecord(user.playerId, _grec.gangId, LEADER_RANK));
-                _gangrepo.insertHistoryEntry(
+                _histmgr.insertHistoryEntry(
                     _grec.gangId, MessageBundle.tcompose("m.founded_entry", user.handle));
                 _grec.members.add(new GangMemberEntry(
                     user.handle, user.playerId, LEADER_RANK, 0, 0, _mrec.lastLeaderCommand,
@@ -606,6 +614,7 @@ public class GangManager
     protected void unmapGang (int gangId, Handle name)
     {
         _gangs.remove(gangId);
+        _histmgr.clearCache(gangId);
         if (name != null) {
             _names.remove(name);
         }
@@ -651,6 +660,7 @@ public class GangManager
     @Inject protected AvatarLogic _alogic;
     @Inject protected BangPeerManager _peermgr;
     @Inject protected GangRepository _gangrepo;
+    @Inject protected GangHistoryManager _histmgr;
     @Inject protected ItemRepository _itemrepo;
 
     /** The name of our gang info cache. */
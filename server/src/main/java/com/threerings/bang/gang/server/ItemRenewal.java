@@ -19,7 +19,6 @@ import com.threerings.bang.server.persist.ItemRepository;
 import com.threerings.bang.gang.data.GangObject;
 import com.threerings.bang.gang.data.RentalGood;
 import com.threerings.bang.gang.server.persist.GangFinancialAction;
-import com.threerings.bang.gang.server.persist.GangRepository;
 import com.threerings.bang.gang.util.GangUtil;
 
 /**
@@ -61,7 +60,7 @@ public class ItemRenewal extends GangFinancialAction
         _itemrepo.updateItem(_item);
 
         // insert a history entry
-        _entryId = _gangrepo.insertHistoryEntry(_gang.gangId,
+        _entryId = _histmgr.insertHistoryEntry(_gang.gangId,
                 MessageBundle.compose("m.renewal_entry", MessageBundle.taint(_handle),
                     _good.getName(), GangUtil.getMoneyDesc(_scripCost, _coinCost, _aceCost)));
         _gangmgr.incLeaderLevel(_gang, _handle);
@@ -109,6 +108,6 @@ public class ItemRenewal extends GangFinancialAction
 
     // dependencies
     @Inject GangManager _gangmgr;
-    @Inject GangRepository _gangrepo;
+    @Inject GangHistoryManager _histmgr;
     @Inject ItemRepository _itemrepo;
 }
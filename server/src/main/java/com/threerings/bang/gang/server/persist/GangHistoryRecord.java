@@ -5,6 +5,8 @@ package com.threerings.bang.gang.server.persist;
 
 import java.sql.Timestamp;
 
+import com.threerings.bang.gang.data.HistoryEntry;
+
 /**
  * Contains information loaded from the database about a historical event.
  */
@@ -19,13 +21,28 @@ public class GangHistoryRecord
     /** The time at which the event was recorded. */
     public Timestamp recorded;
 
+    /** The type of the event (the message key of its description), used for filtering. */
+    public String entryType;
+
     /** The event description. */
     public String description;
 
+    /**
+     * Returns the type of the entry with the given description: the translation key that
+     * begins the (possibly compound) message.
+     */
+    public static String getEntryType (String description)
+    {
+        int idx = description.indexOf('|');
+        return (idx == -1) ? description : description.substring(0, idx);
+    }
+
     /** Used when adding new events. */
     public GangHistoryRecord (int gangId, String description)
     {
         this.gangId = gangId;
+        this.recorded = new Timestamp(System.currentTimeMillis());
+        this.entryType = getEntryType(description);
         this.description = description;
     }
 
@@ -34,4 +51,17 @@ public class GangHistoryRecord
     {
         this.entryId = entryId;
     }
+
+    /** Used when loading records from the database. */
+    public GangHistoryRecord ()
+    {
+    }
+
+    /**
+     * Creates the entry sent to clients to describe this event.
+     */
+    public HistoryEntry toEntry ()
+    {
+        return new HistoryEntry(recorded, description);
+    }
 }
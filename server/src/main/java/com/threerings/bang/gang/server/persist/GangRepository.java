@@ -11,7 +11,6 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Set;
 
 import com.google.common.collect.Sets;
@@ -30,6 +29,7 @@ import com.samskivert.jdbc.jora.Table;
 import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.Interator;
 import com.samskivert.util.IntIntMap;
+import com.samskivert.util.StringUtil;
 
 import com.threerings.util.MessageBundle;
 
@@ -44,7 +44,6 @@ import com.threerings.bang.gang.data.GangCodes;
 import com.threerings.bang.gang.data.GangEntry;
 import com.threerings.bang.gang.data.GangInfo;
 import com.threerings.bang.gang.data.GangMemberEntry;
-import com.threerings.bang.gang.data.HistoryEntry;
 import com.threerings.bang.gang.data.OutfitArticle;
 import com.threerings.bang.gang.data.TopRankedGangList;
 import com.threerings.bang.gang.util.GangUtil;
@@ -395,6 +394,44 @@ public class GangRepository extends JORARepository
         return loadByExample(_mtable, new GangMemberRecord(playerId), _playerIdMask);
     }
 
+    /**
+     * Loads the membership records of those of the specified players who belong to gangs.
+     */
+    public ArrayList<GangMemberRecord> loadMembers (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        return loadAll(_mtable, "where PLAYER_ID in " +
+                       StringUtil.toString(playerIds.iterator(), "(", ")"));
+    }
+
+    /**
+     * Returns the subset of the specified gangs that have at least one member.
+     */
+    public ArrayIntSet loadOccupiedGangIds (final ArrayIntSet gangIds)
+        throws PersistenceException
+    {
+        final ArrayIntSet occupied = new ArrayIntSet();
+        execute(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(
+                        "select distinct GANG_ID from GANG_MEMBERS where GANG_ID in " +
+                        StringUtil.toString(gangIds.iterator(), "(", ")"));
+                    while (rs.next()) {
+                        occupied.add(rs.getInt(1));
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+        return occupied;
+    }
+
     /**
      * Loads the ids of gang members by gender.
      *
@@ -460,6 +497,16 @@ public class GangRepository extends JORARepository
         delete(_mtable, new GangMemberRecord(playerId));
     }
 
+    /**
+     * Deletes the specified users' membership records.
+     */
+    public void deleteMembers (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        update("delete from GANG_MEMBERS where PLAYER_ID in " +
+               StringUtil.toString(playerIds.iterator(), "(", ")"));
+    }
+
     /**
      * Changes the specified user's rank.
      */
@@ -620,6 +667,16 @@ public class GangRepository extends JORARepository
         update("delete from GANG_INVITES where PLAYER_ID = " + playerId);
     }
 
+    /**
+     * Deletes pending gang invitations from the database for the specified players.
+     */
+    public void deletePendingInvites (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        update("delete from GANG_INVITES where PLAYER_ID in " +
+               StringUtil.toString(playerIds.iterator(), "(", ")"));
+    }
+
     /**
      * Inserts a new historical entry into the database.
      *
@@ -628,7 +685,18 @@ public class GangRepository extends JORARepository
     public int insertHistoryEntry (int gangId, String description)
         throws PersistenceException
     {
-        return insert(_htable, new GangHistoryRecord(gangId, description));
+        return insertHistoryEntry(new GangHistoryRecord(gangId, description));
+    }
+
+    /**
+     * Inserts a new historical entry into the database, filling in its assigned id.
+     *
+     * @return the unique id assigned to the entry, which can be used to delete it.
+     */
+    public int insertHistoryEntry (GangHistoryRecord record)
+        throws PersistenceException
+    {
+        return (record.entryId = insert(_htable, record));
     }
 
     /**
@@ -641,33 +709,65 @@ public class GangRepository extends JORARepository
     }
 
     /**
-     * Loads a batch of historical entries from the database.
+     * Loads a batch of historical entries from the database, seeking directly to the entries
+     * older than a known entry rather than counting past the newer ones.
      *
-     * @param offset the offset from the end (e.g., 0 to retrieve the last <code>count</code>
-     * entries, <code>count</code> to retrieve the next-to-last <code>count</code>)
+     * @param type the type of entries to load, or <code>null</code> for all types.
+     * @param beforeId the id of the entry preceding (more recent than) those to load, or zero to
+     * load the most recent entries.
+     * @return the records loaded, most recent first.
      */
-    public ArrayList<HistoryEntry> loadHistoryEntries (int gangId, int offset, int count)
+    public ArrayList<GangHistoryRecord> loadHistoryRecords (
+            int gangId, String type, int beforeId, int count)
         throws PersistenceException
     {
-        return loadHistoryEntries(gangId, offset, count, null);
+        return loadHistoryRecords(
+            "select ENTRY_ID, RECORDED, ENTRY_TYPE, DESCRIPTION from GANG_HISTORY " +
+            "where " + getHistoryConditions(gangId, type) +
+            (beforeId > 0 ? " and ENTRY_ID < " + beforeId : "") +
+            " order by ENTRY_ID desc limit " + count, gangId);
     }
 
     /**
-     * Loads a batch of historical entries from the database.
+     * Loads a batch of historical entries from the database at an offset from the most recent.
+     * The offset is counted on the index alone, so this is cheaper than a plain offset query,
+     * but {@link #loadHistoryRecords} should be used whenever the preceding entry is known.
      *
+     * @param type the type of entries to load, or <code>null</code> for all types.
      * @param offset the offset from the end (e.g., 0 to retrieve the last <code>count</code>
      * entries, <code>count</code> to retrieve the next-to-last <code>count</code>)
-     * @param filter a string to filter the descriptions on
+     * @return the records loaded, most recent first.
      */
-    public ArrayList<HistoryEntry> loadHistoryEntries (
-            int gangId, int offset, int count, String filter)
+    public ArrayList<GangHistoryRecord> loadHistoryRecordsAt (
+            int gangId, String type, int offset, int count)
         throws PersistenceException
     {
-        final ArrayList<HistoryEntry> list = new ArrayList<HistoryEntry>();
-        final String query = "select RECORDED, DESCRIPTION from GANG_HISTORY " +
-            "where GANG_ID = " + gangId +
-            (filter == null ? "" : " and DESCRIPTION like \"" + filter + "%\"") +
-            " order by ENTRY_ID desc limit " + offset + ", " + count;
+        return loadHistoryRecords(
+            "select H.ENTRY_ID, H.RECORDED, H.ENTRY_TYPE, H.DESCRIPTION " +
+            "from GANG_HISTORY as H join (select ENTRY_ID from GANG_HISTORY " +
+            "where " + getHistoryConditions(gangId, type) +
+            " order by ENTRY_ID desc limit " + offset + ", " + count + ") as PAGE " +
+            "on H.ENTRY_ID = PAGE.ENTRY_ID order by H.ENTRY_ID desc", gangId);
+    }
+
+    /**
+     * Returns the conditions that select a gang's history entries of the specified type (or of
+     * all types, if <code>null</code>).
+     */
+    protected String getHistoryConditions (int gangId, String type)
+    {
+        return "GANG_ID = " + gangId +
+            (type == null ? "" : " and ENTRY_TYPE = " + JDBCUtil.escape(type));
+    }
+
+    /**
+     * Loads history records using the supplied query.
+     */
+    protected ArrayList<GangHistoryRecord> loadHistoryRecords (
+            final String query, final int gangId)
+        throws PersistenceException
+    {
+        final ArrayList<GangHistoryRecord> list = new ArrayList<GangHistoryRecord>();
         execute(new Operation<Object>() {
             public Object invoke (Connection conn, DatabaseLiaison liaison)
                 throws SQLException, PersistenceException
@@ -676,7 +776,13 @@ public class GangRepository extends JORARepository
                 try {
                     ResultSet rs = stmt.executeQuery(query);
                     while (rs.next()) {
-                        list.add(new HistoryEntry(rs.getTimestamp(1), rs.getString(2)));
+                        GangHistoryRecord record = new GangHistoryRecord();
+                        record.entryId = rs.getInt(1);
+                        record.gangId = gangId;
+                        record.recorded = rs.getTimestamp(2);
+                        record.entryType = rs.getString(3);
+                        record.description = rs.getString(4);
+                        list.add(record);
                     }
                     return null;
 
@@ -685,7 +791,6 @@ public class GangRepository extends JORARepository
                 }
             }
         });
-        Collections.reverse(list); // return to chronological order
         return list;
     }
 
@@ -875,11 +980,30 @@ public class GangRepository extends JORARepository
             "ENTRY_ID INTEGER NOT NULL AUTO_INCREMENT",
             "GANG_ID INTEGER NOT NULL",
             "RECORDED TIMESTAMP NOT NULL",
+            "ENTRY_TYPE VARCHAR(64) NOT NULL",
             "DESCRIPTION TEXT NOT NULL",
             "PRIMARY KEY (ENTRY_ID)",
             "INDEX (GANG_ID)",
+            "INDEX TYPE_INDEX (GANG_ID, ENTRY_TYPE, ENTRY_ID)",
         }, "");
 
+        // TEMP: add entry type column, populated from the description message keys
+        if (!JDBCUtil.tableContainsColumn(conn, "GANG_HISTORY", "ENTRY_TYPE")) {
+            JDBCUtil.addColumn(
+                conn, "GANG_HISTORY", "ENTRY_TYPE", "VARCHAR(64) NOT NULL", "RECORDED");
+            Statement stmt = conn.createStatement();
+            try {
+                // assigning RECORDED to itself keeps it from being stamped with the current time
+                stmt.executeUpdate("update GANG_HISTORY set RECORDED = RECORDED, " +
+                    "ENTRY_TYPE = SUBSTRING_INDEX(DESCRIPTION, \"|\", 1)");
+                stmt.executeUpdate(
+                    "create index TYPE_INDEX on GANG_HISTORY (GANG_ID, ENTRY_TYPE, ENTRY_ID)");
+            } finally {
+                stmt.close();
+            }
+        }
+        // END TEMP
+
         JDBCUtil.createTableIfMissing(conn, "GANG_OUTFITS", new String[] {
             "GANG_ID INTEGER NOT NULL",
             "ARTICLE VARCHAR(64) NOT NULL",
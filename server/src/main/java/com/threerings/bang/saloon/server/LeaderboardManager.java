@@ -0,0 +1,478 @@
+//
+// $Id$
+
+package com.threerings.bang.saloon.server;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.ArrayUtil;
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.Interval;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.ObjectUtil;
+
+import com.threerings.presents.dobj.DObject;
+
+import com.threerings.bang.data.Handle;
+import com.threerings.bang.data.Rating;
+import com.threerings.bang.server.BangServer;
+import com.threerings.bang.server.persist.RatingRepository.PlayerRating;
+import com.threerings.bang.server.persist.RatingRepository;
+
+import com.threerings.bang.game.data.scenario.ScenarioInfo;
+
+import com.threerings.bang.saloon.data.TopRankObject;
+import com.threerings.bang.saloon.data.TopRankedList;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Maintains the top-ranked player lists of the Saloon and of the gangs resolved on this server.
+ * Rather than querying the database for each object's lists, we keep the highest ratings in each
+ * scenario and week, along with the ratings of the members of registered gangs, in memory.  These
+ * are updated as ratings are written on this server and reloaded periodically to pick up those
+ * written on other servers.
+ *
+ * <p> All methods except {@link #ratingsUpdated} must be called on the dobj thread.
+ */
+@Singleton
+public class LeaderboardManager
+{
+    /** Supplies the members of a group whose top-ranked lists are maintained by the manager. */
+    public interface Membership
+    {
+        /** Returns the ids of the group's current members. */
+        public ArrayIntSet getMemberIds ();
+    }
+
+    /**
+     * Registers an object whose top-ranked lists for the specified scenarios (plus the overall
+     * rankings) are to be kept up to date until it is unregistered.
+     *
+     * @param members the group among whose members players are to be ranked, or
+     * <code>null</code> to rank all players.
+     * @param count the number of entries desired in each list.
+     */
+    public void registerTopRanked (
+        TopRankObject rankobj, String[] scenarios, Membership members, int count)
+    {
+        Registration reg = new Registration();
+        reg.rankobj = rankobj;
+        reg.scenarios = ArrayUtil.append(scenarios, ScenarioInfo.OVERALL_IDENT);
+        reg.members = members;
+        reg.count = count;
+        _regs.add(reg);
+
+        // (re)schedule our update shortly, coalescing registrations made in quick succession
+        if (_updater == null) {
+            _updater = new Interval(BangServer.omgr) {
+                public void expired () {
+                    update();
+                }
+            };
+        }
+        _updater.schedule(1000L, UPDATE_INTERVAL);
+    }
+
+    /**
+     * Stops maintaining the top-ranked lists of the specified object.
+     */
+    public void unregisterTopRanked (TopRankObject rankobj)
+    {
+        for (int ii = 0, nn = _regs.size(); ii < nn; ii++) {
+            if (_regs.get(ii).rankobj == rankobj) {
+                _regs.remove(ii);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the top-ranked players in the specified scenario and week.
+     *
+     * @param week the week of the ratings to rank, or <code>null</code> for lifetime ratings.
+     * @param members the ids of the players among whom to rank, or <code>null</code> for all
+     * players.
+     * @return the list, or <code>null</code> if no players qualify.
+     */
+    public TopRankedList getTopRanked (String scenario, Date week, int count, ArrayIntSet members)
+    {
+        HashMap<String, Board> boards = _boards.get(week);
+        Board board = (boards == null) ? null : boards.get(scenario);
+        if (board == null) {
+            return null;
+        }
+
+        long stale = System.currentTimeMillis() - STALE_INTERVAL;
+        ArrayList<PlayerRating> ranked = new ArrayList<PlayerRating>(count);
+        if (members == null) {
+            for (PlayerRating rating : board.order) {
+                if (ranked.size() >= count) {
+                    break;
+                }
+                if (isRankable(rating, stale)) {
+                    ranked.add(rating);
+                }
+            }
+
+        } else {
+            // it's cheaper to look up the members than to walk the whole board
+            for (int playerId : members.toIntArray()) {
+                PlayerRating rating = board.ratings.get(playerId);
+                if (rating != null && isRankable(rating, stale)) {
+                    ranked.add(rating);
+                }
+            }
+            Collections.sort(ranked, RATING_ORDER);
+        }
+        if (ranked.isEmpty()) {
+            return null;
+        }
+
+        TopRankedList list = new TopRankedList();
+        list.criterion = scenario;
+        list.week = week;
+        int size = Math.min(count, ranked.size());
+        list.playerIds = new int[size];
+        list.players = new Handle[size];
+        for (int ii = 0; ii < size; ii++) {
+            PlayerRating rating = ranked.get(ii);
+            list.playerIds[ii] = rating.playerId;
+            list.players[ii] = rating.handle;
+        }
+        return list;
+    }
+
+    /**
+     * Notes that the supplied ratings of the specified player have been written to the database.
+     * This may be called from any thread.
+     */
+    public void ratingsUpdated (int playerId, Handle handle, Collection<Rating> ratings)
+    {
+        // copy the ratings now, as the originals may continue to change
+        long now = System.currentTimeMillis();
+        final ArrayList<PlayerRating> updated = new ArrayList<PlayerRating>(ratings.size());
+        for (Rating rating : ratings) {
+            updated.add(new PlayerRating(playerId, handle, rating, now));
+        }
+        BangServer.omgr.postRunnable(new Runnable() {
+            public void run () {
+                for (PlayerRating rating : updated) {
+                    applyUpdate(rating);
+                }
+                // if we're loading, we'll need to reapply these on top of the loaded ratings
+                if (_loading) {
+                    _writes.addAll(updated);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called periodically to reload our ratings if necessary, load those of any new members, and
+     * refresh the lists of our registered objects.
+     */
+    protected void update ()
+    {
+        if (_loading) {
+            return;
+        }
+
+        // reload everything once in a while and whenever the week rolls over
+        final long now = System.currentTimeMillis();
+        final Date thisWeek = Rating.thisWeek(), lastWeek = Rating.getWeek(1);
+        final boolean reload = (now - _lastReload >= RELOAD_INTERVAL) ||
+            !thisWeek.equals(_thisWeek);
+
+        // figure out whose ratings we need to load
+        ArrayIntSet members = new ArrayIntSet();
+        for (Registration reg : _regs) {
+            if (reg.members != null) {
+                members.addAll(reg.members.getMemberIds());
+            }
+        }
+        if (!reload) {
+            members.removeAll(_tracked);
+            if (members.isEmpty()) {
+                publish();
+                return;
+            }
+        }
+        final int[] playerIds = members.toIntArray();
+
+        _loading = true;
+        BangServer.invoker.postUnit(new Invoker.Unit("leaderboardLoader") {
+            public boolean invoke () {
+                try {
+                    if (reload) {
+                        String[] scens = ArrayUtil.append(
+                            ScenarioInfo.getScenarioIds(), ScenarioInfo.OVERALL_IDENT);
+                        _leaders = new ArrayList<PlayerRating>();
+                        for (Date week : new Date[] { null, thisWeek, lastWeek }) {
+                            _leaders.addAll(_ratingrepo.loadTopRatings(scens, week, LEADER_COUNT));
+                        }
+                    }
+                    if (playerIds.length > 0) {
+                        _ratings = _ratingrepo.loadRatings(playerIds, lastWeek);
+                    }
+                } catch (PersistenceException pe) {
+                    log.warning("Failed to load ratings for top-ranked lists", "reload", reload,
+                                "players", playerIds.length, pe);
+                    _failed = true;
+                }
+                return true;
+            }
+
+            public void handleResult () {
+                _loading = false;
+                if (_failed) {
+                    _writes.clear();
+                    return;
+                }
+
+                if (reload) {
+                    _boards.clear();
+                    _tracked.clear();
+                    _thisWeek = thisWeek;
+                    _lastReload = now;
+                    for (PlayerRating rating : _leaders) {
+                        getBoard(rating.scenario, rating.week).addLeader(rating);
+                    }
+                }
+                _tracked.add(playerIds);
+                if (_ratings != null) {
+                    for (PlayerRating rating : _ratings) {
+                        getBoard(rating.scenario, rating.week).update(rating);
+                    }
+                }
+
+                // reapply anything written while we were loading, as we may have missed it
+                for (PlayerRating rating : _writes) {
+                    applyUpdate(rating);
+                }
+                _writes.clear();
+
+                publish();
+            }
+
+            protected ArrayList<PlayerRating> _leaders, _ratings;
+            protected boolean _failed;
+        });
+    }
+
+    /**
+     * Applies an updated rating to its board if we're tracking the player or the rating is high
+     * enough to be among the leaders.
+     */
+    protected void applyUpdate (PlayerRating rating)
+    {
+        Board board = getBoard(rating.scenario, rating.week);
+        if (_tracked.contains(rating.playerId) || board.ratings.containsKey(rating.playerId) ||
+            rating.rating >= board.getFloor()) {
+            board.update(rating);
+        }
+    }
+
+    /**
+     * Refreshes the lists of our registered objects.
+     */
+    protected void publish ()
+    {
+        // we don't start showing this week's top ranked until a couple days have passed
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DAY_OF_YEAR, -2);
+        boolean showThisWeek = Rating.thisWeek().before(cal.getTime());
+
+        Date[] weeks = showThisWeek ?
+            new Date[] { null, Rating.thisWeek(), Rating.getWeek(1) } :
+            new Date[] { null, Rating.getWeek(1) };
+        for (Registration reg : _regs) {
+            // make sure the object wasn't shutdown without unregistering
+            if (((DObject)reg.rankobj).isActive()) {
+                publish(reg, weeks, showThisWeek);
+            }
+        }
+    }
+
+    /**
+     * Refreshes the lists of the specified registered object, committing only those that have
+     * changed.
+     */
+    protected void publish (Registration reg, Date[] weeks, boolean showThisWeek)
+    {
+        TopRankObject rankobj = reg.rankobj;
+        if (!showThisWeek) {
+            for (TopRankedList list : rankobj.getTopRanked().toArrayList()) {
+                if (list.period == TopRankedList.THIS_WEEK) {
+                    rankobj.removeFromTopRanked(list.getKey());
+                }
+            }
+        }
+
+        ArrayIntSet members = (reg.members == null) ? null : reg.members.getMemberIds();
+        for (Date week : weeks) {
+            for (String scenario : reg.scenarios) {
+                TopRankedList list = getTopRanked(scenario, week, reg.count, members);
+                if (list == null) {
+                    continue;
+                }
+                if (week != null) {
+                    list.period = week.equals(_thisWeek) ?
+                        TopRankedList.THIS_WEEK : TopRankedList.LAST_WEEK;
+                }
+                TopRankedList olist = rankobj.getTopRanked().get(list.getKey());
+                if (olist != null && ObjectUtil.equals(olist.week, list.week) &&
+                    Arrays.equals(olist.playerIds, list.playerIds)) {
+                    continue; // no need to go fetching snapshots
+                }
+                SaloonManager.commitTopRanked(rankobj, list);
+            }
+        }
+    }
+
+    /**
+     * Returns the board for the specified scenario and week, creating it if necessary.
+     */
+    protected Board getBoard (String scenario, Date week)
+    {
+        HashMap<String, Board> boards = _boards.get(week);
+        if (boards == null) {
+            _boards.put(week, boards = new HashMap<String, Board>());
+        }
+        Board board = boards.get(scenario);
+        if (board == null) {
+            boards.put(scenario, board = new Board());
+        }
+        return board;
+    }
+
+    /**
+     * Determines whether the specified rating may appear in a top-ranked list (using the same
+     * criteria as {@link RatingRepository#loadTopRatings}).
+     *
+     * @param stale the time before which lifetime ratings are considered stale.
+     */
+    protected static boolean isRankable (PlayerRating rating, long stale)
+    {
+        return (rating.week == null) ?
+            (rating.lastPlayed > stale) : (rating.experience > MIN_WEEKLY_EXPERIENCE);
+    }
+
+    /** The ratings we know of in a single scenario and week. */
+    protected static class Board
+    {
+        /** The ratings, mapped by player id. */
+        public HashIntMap<PlayerRating> ratings = new HashIntMap<PlayerRating>();
+
+        /** The ratings in rank order. */
+        public TreeSet<PlayerRating> order = new TreeSet<PlayerRating>(RATING_ORDER);
+
+        /** The number of leaders loaded and the lowest of their ratings. */
+        public int leaders, lowest = Integer.MAX_VALUE;
+
+        /**
+         * Adds a rating loaded as one of the leaders.
+         */
+        public void addLeader (PlayerRating rating)
+        {
+            update(rating);
+            leaders++;
+            lowest = Math.min(lowest, rating.rating);
+        }
+
+        /**
+         * Adds or updates a rating.
+         */
+        public void update (PlayerRating rating)
+        {
+            PlayerRating orating = ratings.put(rating.playerId, rating);
+            if (orating != null) {
+                order.remove(orating);
+            }
+            order.add(rating);
+        }
+
+        /**
+         * Returns the rating that an untracked player must reach to be counted among the leaders:
+         * the lowest loaded leader's, unless fewer than the maximum were loaded, in which case
+         * there's no telling what we're missing.
+         */
+        public int getFloor ()
+        {
+            return (leaders < LEADER_COUNT) ? Integer.MIN_VALUE : lowest;
+        }
+    }
+
+    /** An object whose lists we keep up to date. */
+    protected static class Registration
+    {
+        public TopRankObject rankobj;
+        public String[] scenarios;
+        public Membership members;
+        public int count;
+    }
+
+    /** The registered objects. */
+    protected ArrayList<Registration> _regs = new ArrayList<Registration>();
+
+    /** The boards for each week (null for lifetime), mapped by scenario. */
+    protected HashMap<Date, HashMap<String, Board>> _boards =
+        new HashMap<Date, HashMap<String, Board>>();
+
+    /** The players whose ratings we've loaded regardless of rank. */
+    protected ArrayIntSet _tracked = new ArrayIntSet();
+
+    /** Ratings written while we were loading. */
+    protected ArrayList<PlayerRating> _writes = new ArrayList<PlayerRating>();
+
+    /** Periodically calls {@link #update}. */
+    protected Interval _updater;
+
+    /** The current week as of our last reload, and the time of that reload. */
+    protected Date _thisWeek;
+    protected long _lastReload;
+
+    /** Whether we're currently loading ratings. */
+    protected boolean _loading;
+
+    // dependencies
+    @Inject protected RatingRepository _ratingrepo;
+
+    /** Orders ratings from highest to lowest, breaking ties by player id. */
+    protected static final Comparator<PlayerRating> RATING_ORDER = new Comparator<PlayerRating>() {
+        public int compare (PlayerRating r1, PlayerRating r2) {
+            if (r1.rating != r2.rating) {
+                return (r1.rating > r2.rating) ? -1 : 1;
+            }
+            return (r1.playerId < r2.playerId) ? -1 : (r1.playerId == r2.playerId ? 0 : 1);
+        }
+    };
+
+    /** The frequency with which we load new members' ratings and refresh our lists. */
+    protected static final long UPDATE_INTERVAL = 60 * 1000L;
+
+    /** The frequency with which we reload all ratings to pick up those written elsewhere. */
+    protected static final long RELOAD_INTERVAL = 60 * 60 * 1000L;
+
+    /** The number of highest ratings we load for each scenario and week. */
+    protected static final int LEADER_COUNT = 100;
+
+    /** Lifetime ratings not played for this long are left off the lists. */
+    protected static final long STALE_INTERVAL = 14 * 24 * 60 * 60 * 1000L;
+
+    /** Weekly ratings need more than this much experience to appear on the lists. */
+    protected static final int MIN_WEEKLY_EXPERIENCE = 10;
+}
@@ -3,22 +3,14 @@
 
 package com.threerings.bang.saloon.server;
 
-import java.sql.Date;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Map;
 
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
-import com.samskivert.io.PersistenceException;
-import com.samskivert.util.ArrayUtil;
-import com.samskivert.util.Interval;
-import com.samskivert.util.Invoker;
 import com.samskivert.util.ResultListener;
 
-import com.threerings.presents.dobj.DObject;
 import com.threerings.presents.server.InvocationException;
 
 import com.threerings.crowd.data.PlaceObject;
@@ -30,7 +22,6 @@ import com.threerings.bang.data.PlayerObject;
 import com.threerings.bang.data.Rating;
 import com.threerings.bang.server.BangServer;
 import com.threerings.bang.server.ServerConfig;
-import com.threerings.bang.server.persist.RatingRepository;
 import com.threerings.bang.util.DeploymentConfig;
 
 import com.threerings.bang.game.data.scenario.ScenarioInfo;
@@ -53,68 +44,6 @@ import static com.threerings.bang.Log.log;
 public class SaloonManager extends MatchHostManager
     implements SaloonProvider
 {
-    /**
-     * Refreshes the top-ranked lists for all scenarios (plus the overall rankings) in the
-     * specified object.
-     *
-     * @param scenarios the scenarios to include (in addition to the overall scenario).
-     * @param join an additional table to join, or <code>null</code> for none.
-     * @param where additions to the where clause for the database query, or <code>null</code> for
-     * none.
-     * @param count the number of entries desired in each list.
-     */
-    public void refreshTopRanked (final TopRankObject rankobj, final String[] scenarios,
-                                         final String join, final String where, final int count)
-    {
-        BangServer.invoker.postUnit(new Invoker.Unit() {
-            public boolean invoke () {
-                String[] scens = ArrayUtil.append(scenarios, ScenarioInfo.OVERALL_IDENT);
-                try {
-                    _lists = _ratingrepo.loadTopRanked(scens, join, where, count, null);
-
-                    // we don't start showing this week's top ranked until a couple days
-                    // have passed
-                    Calendar cal = Calendar.getInstance();
-                    cal.add(Calendar.DAY_OF_YEAR, -2);
-                    Date thisWeek = Rating.thisWeek();
-                    if (thisWeek.before(cal.getTime())) {
-                        _lists.addAll(_ratingrepo.loadTopRanked(
-                                scens, join, where, count, thisWeek));
-                    } else {
-                        _clearThisWeek = true;
-                    }
-                    _lists.addAll(_ratingrepo.loadTopRanked(
-                            scens, join, where, count, Rating.getWeek(1)));
-                    return true;
-
-                } catch (PersistenceException pe) {
-                    log.warning("Failed to load top-ranked players.", pe);
-                    return false;
-                }
-            }
-
-            public void handleResult () {
-                // make sure we weren't shutdown while we were off invoking
-                if (!((DObject)rankobj).isActive()) {
-                    return;
-                }
-                if (_clearThisWeek) {
-                    for (TopRankedList list : rankobj.getTopRanked().toArrayList()) {
-                        if (list.period != TopRankedList.LIFETIME) {
-                            rankobj.removeFromTopRanked(list.getKey());
-                        }
-                    }
-                }
-                for (TopRankedList list : _lists) {
-                    commitTopRanked(rankobj, list);
-                }
-            }
-
-            protected ArrayList<TopRankedList> _lists;
-            protected boolean _clearThisWeek;
-        });
-    }
-
     // documentation inherited from interface SaloonProvider
     public void createParlor (PlayerObject caller, ParlorInfo.Type type, String password,
                               boolean matched, SaloonService.ResultListener rl)
@@ -193,15 +122,10 @@ public class SaloonManager extends MatchHostManager
         // create our default parlor
         createParlor(new Handle("!!!SERVER!!!"), ParlorInfo.Type.SOCIAL, null, true, 0, true, null);
 
-        // start up our top-ranked list refresher interval
-        _rankval = new Interval(BangServer.omgr) {
-            public void expired () {
-                refreshTopRanked(
-                    _salobj, ScenarioInfo.getScenarioIds(ServerConfig.townId, false),
-                    null, null, TOP_RANKED_LIST_SIZE);
-            }
-        };
-        _rankval.schedule(1000L, RANK_REFRESH_INTERVAL);
+        // have the leaderboard keep our top-ranked lists up to date
+        _leadermgr.registerTopRanked(
+            _salobj, ScenarioInfo.getScenarioIds(ServerConfig.townId, false), null,
+            TOP_RANKED_LIST_SIZE);
     }
 
     @Override // from PlaceManager
@@ -209,17 +133,12 @@ public class SaloonManager extends MatchHostManager
     {
         super.didShutdown();
 
-        // clear out our invocation service
+        // clear out our invocation service and stop refreshing our top-ranked lists
         if (_salobj != null) {
             BangServer.invmgr.clearDispatcher(_salobj.service);
+            _leadermgr.unregisterTopRanked(_salobj);
             _salobj = null;
         }
-
-        // stop our top-ranked list refresher
-        if (_rankval != null) {
-            _rankval.cancel();
-            _rankval = null;
-        }
     }
 
     protected void createParlor (Handle creator, ParlorInfo.Type type, final String password,
@@ -269,6 +188,10 @@ public class SaloonManager extends MatchHostManager
         }
     }
 
+    /**
+     * Adds or updates a top-ranked list in the supplied object, first obtaining a snapshot of the
+     * top-ranked player.
+     */
     protected static void commitTopRanked (final TopRankObject rankobj, final TopRankedList list)
     {
         int topRankId = (list.playerIds == null || list.playerIds.length == 0) ?
@@ -298,14 +221,10 @@ public class SaloonManager extends MatchHostManager
     }
 
     protected SaloonObject _salobj;
-    protected Interval _rankval;
     protected Map<Handle,ParlorManager> _parlors = Maps.newHashMap();
 
     // dependencies
-    @Inject protected RatingRepository _ratingrepo;
-
-    /** The frequency with which we update the top-ranked player lists. */
-    protected static final long RANK_REFRESH_INTERVAL = 60 * 60 * 1000L;
+    @Inject protected LeaderboardManager _leadermgr;
 
     /** The size of the top-ranked player lists. */
     protected static final int TOP_RANKED_LIST_SIZE = 10;
@@ -0,0 +1,339 @@
+//
+// $Id$
+
+package com.threerings.bang.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.ConnectionProvider;
+import com.samskivert.jdbc.StaticConnectionProvider;
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.util.MessageBundle;
+
+import com.threerings.bang.data.BangAuthCodes;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Processes authentication attempts on a bounded pool of worker threads, rather than one at a time
+ * on the authentication invoker.  Each worker has its own database connections, which it uses
+ * exclusively, and its own context (the repositories through which it accesses them).
+ *
+ * <p> Attempts are admitted to a queue of limited length and processed in the order in which they
+ * were admitted.  Once the queue is full, attempts are turned away immediately with a {@link
+ * BangAuthCodes#SERVER_BUSY} code reporting the number of attempts ahead of them, rather than left
+ * to time out.  Attempts that are admitted are not told their position, as the logon handshake
+ * carries a single response.  Attempts on the same account are never processed at once: a later
+ * attempt waits behind an earlier one.  A retry (a later attempt on the same account offering the
+ * same credentials) takes the place of the earlier attempt if that is still waiting in the queue,
+ * which is refused with {@link BangAuthCodes#LOGON_SUPERSEDED}.  Other attempts never displace a
+ * waiting attempt, so that one cannot lock an account out by naming it.
+ *
+ * @param <C> the type of context used by the workers to process attempts.
+ */
+public abstract class AuthPipeline<C>
+    implements Lifecycle.ShutdownComponent
+{
+    /** An attempt to authenticate. */
+    public static abstract class Attempt<C>
+    {
+        /**
+         * Creates an attempt on the specified account.
+         *
+         * @param account the account on which the attempt is being made (compared without regard
+         * to case), or null if the attempt should not be held back or coalesced.
+         * @param credentials identifies the credentials offered, which must match those of a
+         * waiting attempt on the same account for this attempt to supersede it, or null if it
+         * should not supersede any.
+         */
+        public Attempt (String account, String credentials)
+        {
+            _key = StringUtil.isBlank(account) ? null : account.toLowerCase();
+            _credentials = credentials;
+        }
+
+        /**
+         * Processes the attempt.  Called on a worker thread.
+         */
+        public abstract void process (C context)
+            throws Exception;
+
+        /**
+         * Responds to the client once the attempt has been processed.  Called on the receiving
+         * executor.
+         */
+        public abstract void respond ();
+
+        /**
+         * Responds to the client with the supplied code in lieu of processing the attempt (or
+         * because processing failed).  Called on the receiving executor.
+         */
+        public abstract void refuse (String code);
+
+        @Override // documentation inherited
+        public String toString ()
+        {
+            return (_key == null) ? "[anonymous]" : _key;
+        }
+
+        /** The lowercased account name, or null. */
+        protected String _key;
+
+        /** Identifies the credentials offered, or null. */
+        protected String _credentials;
+
+        /** The time at which the attempt was admitted to the queue. */
+        protected long _admitted;
+    }
+
+    /**
+     * Creates and starts a pipeline with the specified number of workers.
+     *
+     * @param receiver the executor on which clients will be responded to.
+     * @param jdbcConfig the configuration from which the workers' connections will be made.
+     * @param queueLimit the number of attempts that may wait in the queue.
+     */
+    public AuthPipeline (Executor receiver, Properties jdbcConfig, int workers, int queueLimit)
+    {
+        _receiver = receiver;
+        _queueLimit = Math.max(queueLimit, 1);
+        for (int ii = 0, nn = Math.max(workers, 1); ii < nn; ii++) {
+            Worker worker = new Worker(ii, jdbcConfig);
+            _workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Returns the number of workers processing attempts.
+     */
+    public int getWorkerCount ()
+    {
+        return _workers.size();
+    }
+
+    /**
+     * Returns the number of attempts waiting to be processed.
+     */
+    public synchronized int getQueueLength ()
+    {
+        return _queue.size();
+    }
+
+    /**
+     * Admits an attempt to the queue, refusing it if the queue is full.  May be called on any
+     * thread.
+     *
+     * @return the number of attempts ahead of this one in the queue, or -1 if it was turned away.
+     */
+    public int admit (final Attempt<C> attempt)
+    {
+        Attempt<C> superseded = null;
+        int position, waiting = 0;
+        synchronized (this) {
+            attempt._admitted = System.currentTimeMillis();
+            int idx = indexOfRetried(attempt);
+            if (idx != -1) {
+                // take the place of the earlier attempt with the same credentials
+                superseded = _queue.set(idx, attempt);
+                position = idx;
+                _superseded++;
+
+            } else if (_queue.size() >= _queueLimit || _shutdown) {
+                position = -1;
+                waiting = _queue.size();
+                _turnedAway++;
+
+            } else {
+                _queue.add(attempt);
+                position = _queue.size() - 1;
+                notifyAll();
+            }
+        }
+
+        if (superseded != null) {
+            refuse(superseded, BangAuthCodes.LOGON_SUPERSEDED);
+        }
+        if (position == -1) {
+            String ahead = String.valueOf(waiting);
+            refuse(attempt, MessageBundle.tcompose(BangAuthCodes.SERVER_BUSY, ahead));
+        }
+        return position;
+    }
+
+    // from Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        synchronized (this) {
+            log.info("Auth pipeline shutting down", "processed", _processed,
+                     "turnedAway", _turnedAway, "superseded", _superseded,
+                     "avgWait", (_processed == 0) ? 0L : _totalWait / _processed,
+                     "avgProcess", (_processed == 0) ? 0L : _totalProcess / _processed);
+            _shutdown = true;
+            _queue.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Creates the context used by a worker to process attempts, using the worker's connections.
+     * Called on the worker's thread the first time it processes an attempt (and again on the next
+     * attempt if creation fails).
+     */
+    protected abstract C createContext (ConnectionProvider conprov)
+        throws PersistenceException;
+
+    /**
+     * Returns the index in the queue of the waiting attempt of which the supplied attempt is a
+     * retry (on the same account, with the same credentials), or -1 if there is none.  Must be
+     * called with the lock held.
+     */
+    protected int indexOfRetried (Attempt<C> attempt)
+    {
+        if (attempt._key == null || attempt._credentials == null) {
+            return -1;
+        }
+        for (int ii = 0, nn = _queue.size(); ii < nn; ii++) {
+            Attempt<C> queued = _queue.get(ii);
+            if (attempt._key.equals(queued._key) &&
+                attempt._credentials.equals(queued._credentials)) {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes and returns the first attempt in the queue on an account that is not already being
+     * processed, waiting for one if necessary.
+     *
+     * @return the attempt, or null if the pipeline has been shut down.
+     */
+    protected synchronized Attempt<C> take ()
+        throws InterruptedException
+    {
+        while (!_shutdown) {
+            for (int ii = 0, nn = _queue.size(); ii < nn; ii++) {
+                Attempt<C> attempt = _queue.get(ii);
+                if (attempt._key == null || _active.add(attempt._key)) {
+                    _queue.remove(ii);
+                    return attempt;
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Notes that an attempt has been processed, allowing later attempts on the same account to
+     * proceed.
+     */
+    protected synchronized void noteProcessed (Attempt<C> attempt, long waited, long elapsed)
+    {
+        if (attempt._key != null) {
+            _active.remove(attempt._key);
+            notifyAll();
+        }
+        _processed++;
+        _totalWait += waited;
+        _totalProcess += elapsed;
+    }
+
+    /**
+     * Refuses the supplied attempt on the receiving executor.
+     */
+    protected void refuse (final Attempt<C> attempt, final String code)
+    {
+        _receiver.execute(new Runnable() {
+            public void run () {
+                attempt.refuse(code);
+            }
+        });
+    }
+
+    /** Processes attempts with its own connections. */
+    protected class Worker extends Thread
+    {
+        public Worker (int index, Properties jdbcConfig)
+        {
+            super("Auth Worker " + index);
+            setDaemon(true);
+            _conprov = new StaticConnectionProvider(jdbcConfig);
+        }
+
+        @Override // documentation inherited
+        public void run ()
+        {
+            try {
+                Attempt<C> attempt;
+                while ((attempt = take()) != null) {
+                    process(attempt);
+                }
+            } catch (InterruptedException ie) {
+                // time to go
+            } finally {
+                _conprov.shutdown();
+            }
+        }
+
+        protected void process (final Attempt<C> attempt)
+        {
+            long start = System.currentTimeMillis();
+            boolean processed = false;
+            try {
+                if (_context == null) {
+                    _context = createContext(_conprov);
+                }
+                attempt.process(_context);
+                processed = true;
+            } catch (Exception e) {
+                log.warning("Error authenticating user", "account", attempt, e);
+            }
+            long now = System.currentTimeMillis();
+            noteProcessed(attempt, start - attempt._admitted, now - start);
+
+            if (processed) {
+                _receiver.execute(new Runnable() {
+                    public void run () {
+                        attempt.respond();
+                    }
+                });
+            } else {
+                refuse(attempt, BangAuthCodes.SERVER_ERROR);
+            }
+        }
+
+        protected StaticConnectionProvider _conprov;
+        protected C _context;
+    }
+
+    /** The executor on which clients are responded to. */
+    protected Executor _receiver;
+
+    /** The maximum number of attempts that may wait in the queue. */
+    protected int _queueLimit;
+
+    /** Our workers. */
+    protected ArrayList<Worker> _workers = new ArrayList<Worker>();
+
+    /** The attempts waiting to be processed, in the order in which they'll be processed (accounts
+     * being processed permitting). */
+    protected ArrayList<Attempt<C>> _queue = new ArrayList<Attempt<C>>();
+
+    /** The accounts on which attempts are being processed. */
+    protected HashSet<String> _active = new HashSet<String>();
+
+    /** Set once we've been shut down. */
+    protected boolean _shutdown;
+
+    /** Statistics, reported on shutdown. */
+    protected int _processed, _turnedAway, _superseded;
+    protected long _totalWait, _totalProcess;
+}
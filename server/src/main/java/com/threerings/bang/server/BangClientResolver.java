@@ -236,12 +236,11 @@ public class BangClientResolver extends CrowdClientResolver
         }
 
         // load up this player's ratings
-        buser.ratings = new HashMap<Date, HashMap<String, Rating>>();
-        buser.ratings.put(null, _ratingrepo.loadRatings(buser.playerId, null));
-        for (int ii = 0; ii < PlayerManager.SHOW_WEEKS; ii++) {
-            Date week = Rating.getWeek(ii);
-            buser.ratings.put(week, _ratingrepo.loadRatings(buser.playerId, week));
+        Date[] weeks = new Date[PlayerManager.SHOW_WEEKS];
+        for (int ii = 0; ii < weeks.length; ii++) {
+            weeks[ii] = Rating.getWeek(ii);
         }
+        buser.ratings = _ratingrepo.loadRatings(buser.playerId, weeks);
 
         // load up this player's avatar looks and modify any looks that have now expired articles
         List<Look> looks = _lookrepo.loadLooks(player.playerId);
@@ -38,7 +38,13 @@ public class BangInvoker extends PresentsInvoker
         _injector.injectMembers(action);
         // prepare the action for operation (which may throw invocation exception to indicate
         // failure or return false to indicate that it should not be posted)
-        if (action.checkStart()) {
+        if (!action.checkStart()) {
+            return;
+        }
+        if (action.isTransactional()) {
+            // transactional actions are processed concurrently with those of other accounts
+            _finexec.post(action);
+        } else {
             // finally post the action to our queue (need super to bypass sanity check)
             super.postUnit(action);
         }
@@ -56,4 +62,5 @@ public class BangInvoker extends PresentsInvoker
     }
 
     @Inject protected Injector _injector;
+    @Inject protected FinancialExecutor _finexec;
 }
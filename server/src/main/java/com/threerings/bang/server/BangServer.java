@@ -18,6 +18,7 @@ import com.samskivert.depot.StaticConnectionProvider;
 import com.samskivert.util.AuditLogger;
 import com.samskivert.util.Interval;
 import com.samskivert.util.Invoker;
+import com.samskivert.util.RunQueue;
 
 import com.threerings.admin.server.ConfigRegistry;
 import com.threerings.admin.server.DatabaseConfigRegistry;
@@ -273,15 +274,35 @@ public class BangServer extends CrowdServer
         // create and set up our configuration registry and admin service
         ConfigRegistry confreg = new DatabaseConfigRegistry(perCtx, invoker, ServerConfig.nodename);
 
-        // initialize our depot repositories; running all of our schema and data migrations
-        _perCtx.init("bangdb", _conprov, null);
-        _perCtx.initializeRepositories(true);
+        // initialize our depot repositories, running all of our schema and data migrations, while
+        // we load up the boards (which don't need the database); the server won't accept logons
+        // until all of the required startup stages have completed
+        _startup.addStage(new StartupOrchestrator.Stage("repositories", true) {
+            public void run () throws Exception {
+                _perCtx.init("bangdb", _conprov, null);
+                _perCtx.initializeRepositories(true);
+            }
+        });
+        _startup.addStage(new StartupOrchestrator.Stage("boards", true) {
+            public void run () throws Exception {
+                _boardmgr.init();
+            }
+        });
+        _startup.start();
+
+        // everything else needs the database
+        _startup.await("repositories");
 
         // create our various supporting managers
         playmgr = _playmgr;
         gangmgr = _gangmgr;
         tournmgr = injector.getInstance(BangTourniesManager.class);
         ratingmgr = injector.getInstance(RatingManager.class);
+        _startup.addStage(new StartupOrchestrator.Stage("scoreTrackers", true, "repositories") {
+            public void run () throws Exception {
+                ratingmgr.loadScoreTrackers();
+            }
+        });
 
         // now initialize our runtime configuration
         RuntimeConfig.init(omgr, confreg);
@@ -290,7 +311,6 @@ public class BangServer extends CrowdServer
         super.init(injector);
 
         // initialize our managers
-        _boardmgr.init();
         _playmgr.init();
         _gangmgr.init();
         tournmgr.init();
@@ -304,14 +324,22 @@ public class BangServer extends CrowdServer
         townobj = omgr.registerObject(new TownObject());
         _locator.init();
 
-        // create our managers
+        // create our managers; the sheriff's office publishes the boards, so it is created on the
+        // dobj thread once they're loaded
         saloonmgr = (SaloonManager)plreg.createPlace(new SaloonConfig());
         storemgr = (StoreManager)plreg.createPlace(new StoreConfig());
         ranchmgr = (RanchManager)plreg.createPlace(new RanchConfig());
         barbermgr = (BarberManager)plreg.createPlace(new BarberConfig());
         stationmgr = (StationManager)plreg.createPlace(new StationConfig());
         hideoutmgr = (HideoutManager)plreg.createPlace(new HideoutConfig());
-        officemgr = (OfficeManager)plreg.createPlace(new OfficeConfig());
+        _startup.addStage(new StartupOrchestrator.Stage("office", true, "boards") {
+            public void run () throws Exception {
+                officemgr = (OfficeManager)plreg.createPlace(new OfficeConfig());
+            }
+        }, new RunQueue.AsExecutor(omgr));
+
+        // that's all of the stages that must complete before we accept logons
+        _startup.seal();
 
         // if we have a shared secret, assume we're running in a cluster
         String node = System.getProperty("node");
@@ -346,6 +374,10 @@ public class BangServer extends CrowdServer
             }.schedule(AUTO_RESTART_CHECK_INTERVAL, true);
         }
 
+        // if loading the boards or anything else required failed, so does initialization (and if
+        // a required stage that runs once the server is running fails, it will shut us down)
+        _startup.awaitRequired();
+
         log.info("Bang server v" + DeploymentConfig.getVersion() + " initialized.");
     }
 
@@ -455,6 +487,7 @@ public class BangServer extends CrowdServer
     @Inject protected BangPeerManager _peermgr;
     @Inject protected BangChatManager _chatmgr;
     @Inject protected BangReportManager _repmgr;
+    @Inject protected StartupOrchestrator _startup;
 
     // need to inject this guy here as he's otherwise not referenced until the office manager is
     // created which is too late in our initialization for safe repository creation
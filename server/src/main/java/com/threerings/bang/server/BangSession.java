@@ -17,8 +17,10 @@ import com.threerings.bang.admin.server.BangAdminManager;
 import com.threerings.bang.server.persist.BangStatRepository;
 import com.threerings.bang.server.persist.PlayerRepository;
 import com.threerings.bang.avatar.data.Look;
+import com.threerings.bang.avatar.server.SnapshotCache;
 import com.threerings.bang.avatar.server.persist.LookRepository;
 
+import com.threerings.bang.data.AvatarInfo;
 import com.threerings.bang.data.BangBootstrapData;
 import com.threerings.bang.data.BangCredentials;
 import com.threerings.bang.data.BangTokenRing;
@@ -155,21 +157,32 @@ public class BangSession extends CrowdSession
         String uname = "recordEndedSession:" + user.username;
         BangServer.invoker.postUnit(new Invoker.Unit(uname) {
             public boolean invoke () {
-                performDatabaseSaves(user);
-                return false;
+                return (_snapshot = performDatabaseSaves(user)) != null;
             }
+            public void handleResult () {
+                // our wanted poster snapshot changed, so the poster must be regenerated
+                _snapcache.snapshotUpdated(user.playerId, _snapshot);
+                BangServer.playmgr.clearPosterInfoCache(user.handle);
+            }
+            protected AvatarInfo _snapshot;
         });
     }
 
     /**
      * This method is called on the invoker thread and writes to the database any necessary
      * information at the end of a player's session.
+     *
+     * @return the player's new wanted poster snapshot, if it was updated, otherwise null.
      */
-    protected void performDatabaseSaves (PlayerObject user)
+    protected AvatarInfo performDatabaseSaves (PlayerObject user)
     {
         try {
             // write out any modified stats
-            _statrepo.writeModified(user.playerId, user.stats.toArrayList());
+            try {
+                _statrepo.writeModified(user.playerId, user.stats.toArrayList());
+            } finally {
+                _statrepo.releaseStats(user.playerId);
+            }
 
             // write out any modified looks
             boolean updatedWanted = false;
@@ -194,15 +207,17 @@ public class BangSession extends CrowdSession
             // if our wanted poster look changed, generate a new snapshot
             if (updatedWanted || changed[Look.Pose.WANTED_POSTER.ordinal()]) {
                 Look look = user.getLook(Look.Pose.WANTED_POSTER);
-                int[] print;
-                if (look != null && (print = look.getAvatar(user).print) != null) {
-                    _lookrepo.updateSnapshot(user.playerId, print);
+                AvatarInfo snapshot;
+                if (look != null && (snapshot = look.getAvatar(user)).print != null) {
+                    _lookrepo.updateSnapshot(user.playerId, snapshot.print);
+                    return snapshot;
                 }
             }
 
         } catch (Exception e) {
             log.warning("Failed to note ended session", "user", user.who(), e);
         }
+        return null;
     }
 
     protected String[] _startPoses;
@@ -213,4 +228,5 @@ public class BangSession extends CrowdSession
     @Inject protected PlayerRepository _playrepo;
     @Inject protected BangStatRepository _statrepo;
     @Inject protected LookRepository _lookrepo;
+    @Inject protected SnapshotCache _snapcache;
 }
@@ -0,0 +1,110 @@
+//
+// $Id$
+
+package com.threerings.bang.server;
+
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.jdbc.StaticConnectionProvider;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.RunQueue;
+
+import com.threerings.presents.server.PresentsDObjectMgr;
+
+import com.threerings.bang.server.persist.FinancialAction;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Processes transactional financial actions on a set of partition invokers, so that purchases made
+ * by different accounts proceed concurrently rather than queueing behind one another (and behind
+ * everything else on the main invoker).  Every action on an account is processed by the same
+ * partition, so actions on the same account are processed in the order in which they were posted.
+ * Each partition has its own database connections, which it uses exclusively.
+ */
+@Singleton
+public class FinancialExecutor
+    implements Lifecycle.ShutdownComponent
+{
+    @Inject public FinancialExecutor (PresentsDObjectMgr omgr, Lifecycle cycle)
+    {
+        this(new RunQueue.AsExecutor(omgr), ServerConfig.getJDBCConfig(),
+             ServerConfig.config.getValue("financial_partitions", DEFAULT_PARTITIONS));
+        cycle.addComponent(this);
+    }
+
+    /**
+     * Creates and starts an executor with the specified number of partitions.
+     *
+     * @param receiver the executor on which the actions' results will be handled.
+     * @param jdbcConfig the configuration from which the partitions' connections will be made.
+     */
+    public FinancialExecutor (Executor receiver, Properties jdbcConfig, int partitions)
+    {
+        _partitions = new Partition[Math.max(partitions, 1)];
+        for (int ii = 0; ii < _partitions.length; ii++) {
+            _partitions[ii] = new Partition(ii, receiver, jdbcConfig);
+            _partitions[ii].start();
+        }
+    }
+
+    /**
+     * Returns the number of partitions across which actions are distributed.
+     */
+    public int getPartitionCount ()
+    {
+        return _partitions.length;
+    }
+
+    /**
+     * Queues up a started financial action on the partition responsible for its account.  <em>Don't
+     * call this method, call {@link BangInvoker#post} and it will take care of everything.</em>
+     */
+    public void post (FinancialAction action)
+    {
+        int index = (action.getAccount().hashCode() & Integer.MAX_VALUE) % _partitions.length;
+        Partition partition = _partitions[index];
+        action.setConnectionProvider(partition.conprov);
+        partition.postUnit(action);
+    }
+
+    // from Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        log.info("Financial executor shutting down.");
+        for (final Partition partition : _partitions) {
+            // close the connections once everything queued before the shutdown has been processed
+            partition.postUnit(new Invoker.Unit("closeFinancialConnections") {
+                public boolean invoke () {
+                    partition.conprov.shutdown();
+                    return false;
+                }
+            });
+            partition.shutdown();
+        }
+    }
+
+    /** Processes the actions of a subset of the accounts. */
+    protected static class Partition extends Invoker
+    {
+        /** Provides the connections used (exclusively) by this partition. */
+        public final StaticConnectionProvider conprov;
+
+        public Partition (int index, Executor receiver, Properties jdbcConfig)
+        {
+            super("financial-" + index, receiver);
+            conprov = new StaticConnectionProvider(jdbcConfig);
+        }
+    }
+
+    /** Our partitions. */
+    protected Partition[] _partitions;
+
+    /** The default number of partitions. */
+    protected static final int DEFAULT_PARTITIONS = 4;
+}
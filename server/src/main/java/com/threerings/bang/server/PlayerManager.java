@@ -4,12 +4,12 @@
 package com.threerings.bang.server;
 
 import java.io.File;
-import java.lang.ref.SoftReference;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +28,7 @@ import com.samskivert.util.IntIntMap;
 import com.samskivert.util.Interator;
 import com.samskivert.util.Interval;
 import com.samskivert.util.Invoker;
+import com.samskivert.util.LRUHashMap;
 import com.samskivert.util.ListUtil;
 import com.samskivert.util.StringUtil;
 import com.samskivert.util.Tuple;
@@ -62,10 +63,8 @@ import com.threerings.util.StreamableHashMap;
 
 import com.threerings.bang.admin.server.RuntimeConfig;
 import com.threerings.bang.avatar.data.Look;
-import com.threerings.bang.avatar.server.persist.LookRepository;
+import com.threerings.bang.avatar.server.SnapshotCache;
 import com.threerings.bang.data.PlayerMarshaller;
-import com.threerings.bang.gang.server.persist.GangMemberRecord;
-import com.threerings.bang.gang.server.persist.GangRepository;
 import com.threerings.bang.saloon.data.SaloonCodes;
 import com.threerings.bang.saloon.server.Match;
 import com.threerings.bang.store.data.CardPackGood;
@@ -104,7 +103,6 @@ import com.threerings.bang.data.Warning;
 import com.threerings.bang.util.BangUtil;
 
 import com.threerings.bang.server.BangPeerManager;
-import com.threerings.bang.server.persist.BangStatRepository;
 import com.threerings.bang.server.persist.FolkRecord;
 import com.threerings.bang.server.persist.ItemRepository;
 import com.threerings.bang.server.persist.PardnerRecord;
@@ -209,7 +207,7 @@ public class PlayerManager
 
         // register our player purging interval if we're on frontier town
         if (BangCodes.FRONTIER_TOWN.equals(ServerConfig.townId)) {
-            new Interval(Interval.RUN_DIRECT) {
+            new Interval(BangServer.omgr) {
                 public void expired () {
                     purgeExpiredPlayers();
                 }
@@ -579,12 +577,14 @@ public class PlayerManager
                                final PlayerService.ResultListener listener)
         throws InvocationException
     {
-        // check the cache for previously generated posters
-        SoftReference<PosterInfo> infoRef = _posterCache.get(handle);
-        PosterInfo tmpInfo = null;
-        if (infoRef != null) {
-            tmpInfo = infoRef.get();
+        // check the cache for previously generated posters, discarding them all if the weeks
+        // they show have passed
+        java.sql.Date thisWeek = Rating.getWeek(0);
+        if (!thisWeek.equals(_posterWeek)) {
+            _posterCache.clear();
+            _posterWeek = thisWeek;
         }
+        PosterInfo tmpInfo = _posterCache.get(handle);
         boolean cached = (tmpInfo != null);
 
         final PosterInfo info;
@@ -647,12 +647,19 @@ public class PlayerManager
 
                 // for offline players, get look snapshot from repository
                 if (posterPlayer == null) {
-                    info.avatar = _lookrepo.loadSnapshot(_player.playerId);
-                    info.rankGroups.add(new PosterInfo.RankGroup(
-                                0, buildRankings(_raterepo.loadRatings(_player.playerId, null))));
+                    info.avatar = _snapcache.loadSnapshot(_player.playerId);
+
+                    // load the lifetime and weekly ratings all at once
+                    java.sql.Date[] weeks = new java.sql.Date[SHOW_WEEKS];
                     for (int ii = 0; ii < SHOW_WEEKS; ii++) {
-                        java.sql.Date week = Rating.getWeek(ii);
-                        Map<String, Rating> map = _raterepo.loadRatings(_player.playerId, week);
+                        weeks[ii] = Rating.getWeek(ii);
+                    }
+                    Map<java.sql.Date, HashMap<String, Rating>> ratings =
+                        _raterepo.loadRatings(_player.playerId, weeks);
+                    info.rankGroups.add(
+                        new PosterInfo.RankGroup(0, buildRankings(ratings.get(null))));
+                    for (java.sql.Date week : weeks) {
+                        Map<String, Rating> map = ratings.get(week);
                         if (map != null && !map.isEmpty()) {
                             info.rankGroups.add(new PosterInfo.RankGroup(
                                         week.getTime(), buildRankings(map)));
@@ -668,7 +675,7 @@ public class PlayerManager
                         MessageBundle.tcompose(BangCodes.E_NO_SUCH_PLAYER, handle));
                 } else {
                     // cache the result and return it
-                    _posterCache.put(handle, new SoftReference<PosterInfo>(info));
+                    _posterCache.put(handle, info);
                     listener.requestProcessed(info);
                 }
             }
@@ -710,7 +717,9 @@ public class PlayerManager
     }
 
     /**
-     * Clears the player's poster info from the cache.
+     * Clears the player's poster info from the cache (here and on our peers).  This must be called
+     * whenever anything shown on the poster changes: the player's ratings, wanted poster look,
+     * statement or badges, or gang membership.
      */
     public void clearPosterInfoCache (Handle handle)
     {
@@ -1054,31 +1063,7 @@ public class PlayerManager
      */
     public void purgeExpiredPlayers ()
     {
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_MONTH, -ANONYMOUS_EXPIRE_DAYS);
-        final java.sql.Date anon = new java.sql.Date(cal.getTimeInMillis());
-        cal.setTimeInMillis(System.currentTimeMillis());
-        cal.add(Calendar.DAY_OF_MONTH, -USER_EXPIRE_DAYS);
-        final java.sql.Date user = new java.sql.Date(cal.getTimeInMillis());
-
-        BangServer.invoker.postUnit(new Invoker.Unit("purgeExpiredPlayers") {
-            public boolean invoke () {
-                try {
-                    _players = _playrepo.loadExpiredPlayers(anon, user);
-                } catch (PersistenceException pe) {
-                    log.warning("Failed to load player records to be expired", "pe", pe);
-                    return false;
-                }
-                return true;
-            }
-            public void handleResult () {
-                purgePlayers(_players.iterator());
-            }
-            public long getLongThreshold () {
-                return 4000L; // this seems to take about ~3600ms every time...
-            }
-            protected List<PlayerRecord> _players;
-        });
+        _purger.purgeExpiredPlayers();
     }
 
     /**
@@ -1369,80 +1354,6 @@ public class PlayerManager
         return ident;
     }
 
-    /**
-     * Called periodically to purge players that have not logged in for
-     * a while.
-     */
-    protected void purgePlayers (final Iterator<PlayerRecord> players)
-    {
-        if (!players.hasNext()) {
-            return;
-        }
-
-        InvocationService.ConfirmListener rl = new InvocationService.ConfirmListener() {
-            public void requestProcessed () {
-                doNext();
-            }
-            public void requestFailed (String cause) {
-                log.warning(cause);
-                doNext();
-            }
-            protected void doNext () {
-                if (players.hasNext()) {
-                    purgePlayer(players.next(), this);
-                }
-            }
-        };
-
-        purgePlayer(players.next(), rl);
-    }
-
-    /**
-     * Purge a player from Bang.
-     */
-    protected void purgePlayer (
-            final PlayerRecord user, final InvocationService.ConfirmListener listener)
-    {
-        BangServer.invoker.postUnit(new PersistingUnit("purgePlayer", listener) {
-            public void invokePersistent () throws PersistenceException {
-                _pardrepo.removeAllPardners(user.playerId);
-                _playrepo.clearOpinions(user.playerId);
-                _postrepo.deletePoster(user.playerId);
-                _lookrepo.deleteAllLooks(user.playerId);
-                _statrepo.deleteStats(user.playerId);
-                _ratingrepo.deleteRatings(user.playerId);
-                _itemrepo.deleteItems(user.playerId, "purging player");
-
-                // find out if they're in a gang, and remove them from it, or remove any
-                // pending gang invitations
-                // TODO: make this play nice with gangs not currently loaded
-                GangMemberRecord gmr = _gangrepo.loadMember(user.playerId);
-                if (gmr == null) {
-                    _gangrepo.deletePendingInvites(user.playerId);
-                } else {
-                    try {
-                        BangServer.gangmgr.requireGangPeerProvider(gmr.gangId).removeFromGang(
-                                null, null, new Handle(user.handle),
-                                new InvocationService.ConfirmListener() {
-                                    public void requestProcessed () { }
-                                    public void requestFailed (String cause) { }
-                                });
-                    } catch (InvocationException ie) {
-                        log.warning("Failure removing purged player from gang! Proceeding with " +
-                                    "purge anyway", "ie", ie);
-                    }
-                }
-                _playrepo.deletePlayer(user);
-            }
-            public void handleSuccess () {
-                listener.requestProcessed();
-            }
-            public String getFailureMessage () {
-                return "Failed to purge player! [user=" + user + "].";
-            }
-        });
-    }
-
     /**
      * Called periodically (on the invoker thread) to purge download symlinks that are more than 5
      * minutes old.
@@ -1554,8 +1465,12 @@ public class PlayerManager
     /** Keeps our {@link PardnerEntry}s up to date for remote players. */
     protected RemotePlayerWatcher<PardnerEntry> _pardwatcher;
 
-    /** A light-weight cache of soft {@link PosterInfo} references. */
-    protected Map<Handle, SoftReference<PosterInfo>> _posterCache = Maps.newHashMap();
+    /** A cache of recently generated posters, which are removed explicitly when they change. */
+    protected LRUHashMap<Handle, PosterInfo> _posterCache =
+        new LRUHashMap<Handle, PosterInfo>(POSTER_CACHE_SIZE);
+
+    /** The week for which the cached posters were generated. */
+    protected java.sql.Date _posterWeek;
 
     /** Keeps a record when players have played late night games. */
     protected IntIntMap _lateNighters = new IntIntMap();
@@ -1572,17 +1487,18 @@ public class PlayerManager
     @Inject protected BangPeerManager _peermgr;
     @Inject protected PardnerRepository _pardrepo;
     @Inject protected PosterRepository _postrepo;
-    @Inject protected LookRepository _lookrepo;
+    @Inject protected SnapshotCache _snapcache;
     @Inject protected RatingRepository _raterepo;
     @Inject protected PlayerRepository _playrepo;
-    @Inject protected GangRepository _gangrepo;
     @Inject protected ItemRepository _itemrepo;
-    @Inject protected BangStatRepository _statrepo;
-    @Inject protected RatingRepository _ratingrepo;
+    @Inject protected PlayerPurger _purger;
 
     /** The name of our poster cache. */
     protected static final String POSTER_CACHE = "posterCache";
 
+    /** The maximum number of posters we keep in our cache. */
+    protected static final int POSTER_CACHE_SIZE = 1000;
+
     /** The time after which song download symlinks are purged. */
     protected static final long DOWNLOAD_PURGE_EXPIRE = 5 * 60 * 1000L;
 
@@ -1595,12 +1511,6 @@ public class PlayerManager
     /** The freqeuncy with which we clear late night players. */
     protected static final long LATE_NIGHT_INTERVAL = 60 * 1000L;
 
-    /** The number of days after which to expire anonymous players. */
-    protected static final int ANONYMOUS_EXPIRE_DAYS = 30;
-
-    /** The number of days after which to expire regular players. */
-    protected static final int USER_EXPIRE_DAYS = 180;
-
     /** The number of back weeks to show on the wanted poster. */
     protected static final int SHOW_WEEKS = 4;
 
@@ -0,0 +1,371 @@
+//
+// $Id$
+
+package com.threerings.bang.server;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.Interval;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.ResultListener;
+import com.samskivert.util.Tuple;
+
+import com.threerings.presents.client.InvocationService;
+import com.threerings.presents.peer.data.NodeObject.Lock;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.util.MessageBundle;
+
+import com.threerings.bang.avatar.server.persist.LookRepository;
+import com.threerings.bang.data.Handle;
+import com.threerings.bang.gang.data.GangObject;
+import com.threerings.bang.gang.server.GangHistoryManager;
+import com.threerings.bang.gang.server.persist.GangMemberRecord;
+import com.threerings.bang.gang.server.persist.GangRepository;
+import com.threerings.bang.server.persist.BangStatRepository;
+import com.threerings.bang.server.persist.ItemRepository;
+import com.threerings.bang.server.persist.PardnerRepository;
+import com.threerings.bang.server.persist.PlayerRecord;
+import com.threerings.bang.server.persist.PlayerRepository;
+import com.threerings.bang.server.persist.PosterRepository;
+import com.threerings.bang.server.persist.RatingRepository;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Purges players that have not logged in for a while.  Expired players are purged in chunks,
+ * deleting each chunk's data from every table with a single statement, and pausing between chunks
+ * so as not to monopolize the invoker.  The last player purged in each pass is recorded in the
+ * database, so that subsequent searches (including those after a restart) resume from there
+ * rather than rescanning the players that could not be purged.
+ */
+@Singleton
+public class PlayerPurger
+{
+    /**
+     * Starts purging expired players, if we're not already doing so.  Must be called on the dobj
+     * thread.
+     */
+    public void purgeExpiredPlayers ()
+    {
+        if (_purging) {
+            return;
+        }
+        _purging = true;
+        _pass = 0;
+        _purged = 0;
+        loadChunk();
+    }
+
+    /**
+     * Loads the next chunk of players to purge in the current pass.
+     */
+    protected void loadChunk ()
+    {
+        final Pass pass = PASSES[_pass];
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DAY_OF_MONTH, -pass.expireDays);
+        final Date cutoff = new Date(cal.getTimeInMillis());
+
+        BangServer.invoker.postUnit(new Invoker.Unit("loadExpiredPlayers") {
+            public boolean invoke () {
+                try {
+                    if (!_progress.containsKey(pass.name)) {
+                        _progress.put(pass.name, _playrepo.loadPurgeProgress(pass.name));
+                    }
+                    _players = _playrepo.loadExpiredPlayers(
+                        cutoff, pass.anonymous, _progress.get(pass.name), CHUNK_SIZE);
+                    if (!_players.isEmpty()) {
+                        ArrayIntSet playerIds = new ArrayIntSet();
+                        for (PlayerRecord player : _players) {
+                            playerIds.add(player.playerId);
+                        }
+                        _members = _gangrepo.loadMembers(playerIds);
+                    }
+                } catch (PersistenceException pe) {
+                    log.warning("Failed to load players to be expired", "pass", pass.name, pe);
+                    _players = null;
+                }
+                return true;
+            }
+            public void handleResult () {
+                if (_players == null) {
+                    _purging = false;
+                } else if (_players.isEmpty()) {
+                    passCompleted();
+                } else {
+                    leaveResolvedGangs(_players, _members);
+                }
+            }
+            protected ArrayList<PlayerRecord> _players;
+            protected List<GangMemberRecord> _members;
+        });
+    }
+
+    /**
+     * Removes those of the supplied members whose gangs are resolved (here or on a peer) through
+     * their gang handlers, so that the gang objects remain consistent, then purges the chunk.
+     * Members of unresolved gangs are removed directly from the database in the purge itself.
+     */
+    protected void leaveResolvedGangs (
+        final ArrayList<PlayerRecord> players, List<GangMemberRecord> members)
+    {
+        final ArrayList<GangMemberRecord> unresolved = new ArrayList<GangMemberRecord>();
+        final ArrayList<Tuple<Integer, Handle>> leavers = new ArrayList<Tuple<Integer, Handle>>();
+        for (GangMemberRecord member : members) {
+            if (isGangResolved(member.gangId)) {
+                leavers.add(new Tuple<Integer, Handle>(
+                    member.gangId, new Handle(getPlayer(players, member.playerId).handle)));
+            } else {
+                unresolved.add(member);
+            }
+        }
+        if (leavers.isEmpty()) {
+            purgeChunk(players, unresolved);
+            return;
+        }
+
+        // purge the chunk once all of the resolved gangs have responded
+        final InvocationService.ConfirmListener listener =
+            new InvocationService.ConfirmListener() {
+            public void requestProcessed () {
+                if (--_remaining == 0) {
+                    purgeChunk(players, unresolved);
+                }
+            }
+            public void requestFailed (String cause) {
+                log.warning("Failed to remove purged player from gang; proceeding with purge " +
+                            "anyway", "cause", cause);
+                requestProcessed();
+            }
+            protected int _remaining = leavers.size();
+        };
+        for (final Tuple<Integer, Handle> leaver : leavers) {
+            BangServer.gangmgr.resolveGang(leaver.left).getGangObject(
+                new ResultListener<GangObject>() {
+                public void requestCompleted (GangObject gangobj) {
+                    try {
+                        BangServer.gangmgr.requireGangPeerProvider(leaver.left).removeFromGang(
+                            null, null, leaver.right, listener);
+                    } catch (InvocationException ie) {
+                        listener.requestFailed(ie.getMessage());
+                    }
+                }
+                public void requestFailed (Exception cause) {
+                    listener.requestFailed(cause.toString());
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes the data of the supplied chunk of players.
+     *
+     * @param unresolved the membership records of players belonging to gangs that are not
+     * resolved anywhere.
+     */
+    protected void purgeChunk (
+        final ArrayList<PlayerRecord> players, final ArrayList<GangMemberRecord> unresolved)
+    {
+        final Pass pass = PASSES[_pass];
+        final ArrayIntSet playerIds = new ArrayIntSet();
+        for (PlayerRecord player : players) {
+            playerIds.add(player.playerId);
+        }
+        PlayerRecord last = players.get(players.size() - 1);
+        final Tuple<Timestamp, Integer> progress =
+            new Tuple<Timestamp, Integer>(last.lastSession, last.playerId);
+
+        BangServer.invoker.postUnit(new Invoker.Unit("purgeExpiredPlayers") {
+            public boolean invoke () {
+                try {
+                    _pardrepo.removeAllPardners(playerIds);
+                    _playrepo.clearOpinions(playerIds);
+                    _postrepo.deletePosters(playerIds);
+                    _lookrepo.deleteAllLooks(playerIds);
+                    for (int playerId : playerIds) {
+                        // stats live in a Depot repository, which keys them by player
+                        _statrepo.purgeStats(playerId);
+                    }
+                    _ratingrepo.deleteRatings(playerIds);
+                    _itemrepo.deleteOwnedItems(playerIds, "purging player");
+                    _gangrepo.deletePendingInvites(playerIds);
+                    if (!unresolved.isEmpty()) {
+                        leaveUnresolvedGangs(players, unresolved);
+                    }
+                    _playrepo.deletePlayers(playerIds);
+
+                    _playrepo.notePurgeProgress(pass.name, progress);
+                    _progress.put(pass.name, progress);
+
+                } catch (PersistenceException pe) {
+                    log.warning("Failed to purge players", "pass", pass.name,
+                                "playerIds", playerIds, pe);
+                    _failed = true;
+                }
+                return true;
+            }
+            public void handleResult () {
+                if (_failed) {
+                    _purging = false; // we'll try again next time
+                    return;
+                }
+                _purged += players.size();
+                if (players.size() < CHUNK_SIZE) {
+                    passCompleted();
+                } else {
+                    // give everyone else a turn before continuing
+                    new Interval(BangServer.omgr) {
+                        public void expired () {
+                            loadChunk();
+                        }
+                    }.schedule(CHUNK_DELAY);
+                }
+            }
+            public long getLongThreshold () {
+                return 10 * 1000L;
+            }
+            protected boolean _failed;
+        });
+    }
+
+    /**
+     * Removes the supplied members from their (unresolved) gangs, recording their departures and
+     * deleting any gangs they leave empty.  Called on the invoker thread.
+     */
+    protected void leaveUnresolvedGangs (
+        ArrayList<PlayerRecord> players, ArrayList<GangMemberRecord> members)
+        throws PersistenceException
+    {
+        ArrayIntSet playerIds = new ArrayIntSet(), gangIds = new ArrayIntSet();
+        for (GangMemberRecord member : members) {
+            playerIds.add(member.playerId);
+            gangIds.add(member.gangId);
+        }
+        _gangrepo.deleteMembers(playerIds);
+
+        ArrayIntSet occupied = _gangrepo.loadOccupiedGangIds(gangIds);
+        for (int gangId : gangIds) {
+            if (!occupied.contains(gangId)) {
+                _gangrepo.deleteGang(gangId);
+            }
+        }
+        for (GangMemberRecord member : members) {
+            if (occupied.contains(member.gangId)) {
+                _histmgr.insertHistoryEntry(member.gangId, MessageBundle.tcompose(
+                    "m.left_entry", getPlayer(players, member.playerId).handle));
+            }
+        }
+    }
+
+    /**
+     * Called when we've run out of players to purge in the current pass.
+     */
+    protected void passCompleted ()
+    {
+        if (_purged > 0) {
+            log.info("Purged expired players", "pass", PASSES[_pass].name, "count", _purged);
+        }
+        _purged = 0;
+        if (++_pass < PASSES.length) {
+            loadChunk();
+        } else {
+            _purging = false;
+        }
+    }
+
+    /**
+     * Determines whether the specified gang is resolved on this server or any of our peers.
+     */
+    protected boolean isGangResolved (int gangId)
+    {
+        return BangServer.gangmgr.isGangResolved(gangId) ||
+            (_peermgr.isRunning() && _peermgr.queryLock(new Lock("gang", gangId)) != null);
+    }
+
+    /**
+     * Finds the record of the identified player in the supplied list.
+     */
+    protected static PlayerRecord getPlayer (List<PlayerRecord> players, int playerId)
+    {
+        for (PlayerRecord player : players) {
+            if (player.playerId == playerId) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    /** Identifies a class of expired players, each of which is purged in its own pass. */
+    protected static class Pass
+    {
+        /** The name under which we record our progress. */
+        public final String name;
+
+        /** Whether this pass is limited to players that never chose a handle. */
+        public final boolean anonymous;
+
+        /** The number of days after which players expire. */
+        public final int expireDays;
+
+        public Pass (String name, boolean anonymous, int expireDays)
+        {
+            this.name = name;
+            this.anonymous = anonymous;
+            this.expireDays = expireDays;
+        }
+    }
+
+    /** Whether we're currently purging. */
+    protected boolean _purging;
+
+    /** The index of the current pass. */
+    protected int _pass;
+
+    /** The number of players purged so far in the current pass. */
+    protected int _purged;
+
+    /** The last player purged in each pass, accessed only on the invoker thread. */
+    protected HashMap<String, Tuple<Timestamp, Integer>> _progress =
+        new HashMap<String, Tuple<Timestamp, Integer>>();
+
+    // dependencies
+    @Inject protected BangPeerManager _peermgr;
+    @Inject protected GangHistoryManager _histmgr;
+    @Inject protected PardnerRepository _pardrepo;
+    @Inject protected PosterRepository _postrepo;
+    @Inject protected LookRepository _lookrepo;
+    @Inject protected PlayerRepository _playrepo;
+    @Inject protected GangRepository _gangrepo;
+    @Inject protected ItemRepository _itemrepo;
+    @Inject protected BangStatRepository _statrepo;
+    @Inject protected RatingRepository _ratingrepo;
+
+    /** The number of days after which to expire anonymous players. */
+    protected static final int ANONYMOUS_EXPIRE_DAYS = 30;
+
+    /** The number of days after which to expire users with handles. */
+    protected static final int USER_EXPIRE_DAYS = 180;
+
+    /** Our passes, in the order in which they are run. */
+    protected static final Pass[] PASSES = {
+        new Pass("registered", false, USER_EXPIRE_DAYS),
+        new Pass("anonymous", true, ANONYMOUS_EXPIRE_DAYS),
+    };
+
+    /** The number of players purged at once. */
+    protected static final int CHUNK_SIZE = 100;
+
+    /** The delay between chunks of a pass. */
+    protected static final long CHUNK_DELAY = 1000L;
+}
@@ -42,12 +42,7 @@ public class RatingManager
      * Prepares the rating manager for operation.
      */
     public void init ()
-        throws PersistenceException
     {
-        // load up our scoring percentile trackers
-        _trackers = new HashMap<TrackerKey, Percentiler>();
-        _ratingrepo.loadScoreTrackers(_trackers);
-
         // if we're a town server, queue up an interval to periodically grind our ratings tables
         // and one to sync our score trackers
         if (ServerConfig.isTownServer) {
@@ -62,6 +57,18 @@ public class RatingManager
         createRankReloadInterval();
     }
 
+    /**
+     * Loads up our scoring percentile trackers.  This is done on a startup thread, before the
+     * server accepts logons.
+     */
+    public void loadScoreTrackers ()
+        throws PersistenceException
+    {
+        HashMap<TrackerKey, Percentiler> trackers = new HashMap<TrackerKey, Percentiler>();
+        _ratingrepo.loadScoreTrackers(trackers);
+        _trackers = trackers;
+    }
+
     /**
      * Given a numeric rating, returns its rank level.  This method must be thread-safe, as it is
      * called from both the dobj and the invoker thread.
@@ -274,8 +281,9 @@ public class RatingManager
     /** Provides access to the rating database. */
     @Inject protected RatingRepository _ratingrepo;
 
-    /** Score percentile trackers. */
-    protected HashMap<TrackerKey, Percentiler> _trackers;
+    /** Score percentile trackers (loaded on a startup thread). */
+    protected volatile HashMap<TrackerKey, Percentiler> _trackers =
+        new HashMap<TrackerKey, Percentiler>();
 
     /** A map of rating types to rank levels, reloaded every so often */
     protected volatile HashMap<String, RankLevels> _rankLevels = new HashMap<String, RankLevels>();
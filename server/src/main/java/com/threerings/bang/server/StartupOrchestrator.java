@@ -0,0 +1,381 @@
+//
+// $Id$
+
+package com.threerings.bang.server;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.util.Lifecycle;
+
+import static com.threerings.bang.Log.log;
+
+/**
+ * Runs the stages of server startup, each as soon as the stages on which it depends have
+ * completed, so that independent stages (parsing the boards and migrating the database, say)
+ * proceed in parallel.  Stages run either on a pool of startup threads or on an executor of their
+ * choosing (the distributed object manager, for stages that create places and the like).
+ *
+ * <p> Stages are either required or optional.  The server does not accept logons until every
+ * required stage has completed (see {@link #isReady}); optional stages (warming caches and the
+ * like) finish in the background.  The server initialization can also block until particular
+ * stages have completed (see {@link #await}) when it needs their results in order to proceed.
+ *
+ * <p> A required stage that fails causes startup to fail: the server initialization finishes by
+ * waiting for the required stages running on the startup threads (see {@link #awaitRequired}),
+ * which throws if any of them failed, and if a required stage fails after that (one running on
+ * the distributed object thread, say), the server is shut down.
+ */
+@Singleton
+public class StartupOrchestrator
+{
+    /** A stage of startup. */
+    public static abstract class Stage
+    {
+        /** The name of the stage. */
+        public final String name;
+
+        /** Whether or not the stage must complete before logons are accepted. */
+        public final boolean required;
+
+        /** The names of the stages that must complete before this one runs. */
+        public final String[] deps;
+
+        public Stage (String name, boolean required, String... deps)
+        {
+            this.name = name;
+            this.required = required;
+            this.deps = deps;
+        }
+
+        /**
+         * Performs the work of the stage.
+         */
+        public abstract void run ()
+            throws Exception;
+
+        @Override // documentation inherited
+        public String toString ()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Adds a stage to be run on the pool of startup threads.  Stages may be added before or after
+     * startup has begun (required stages only until the orchestrator is {@link #seal}ed), but
+     * their dependencies must already have been added.
+     */
+    public void addStage (Stage stage)
+    {
+        addStage(stage, null);
+    }
+
+    /**
+     * Adds a stage to be run on the specified executor.
+     */
+    public synchronized void addStage (Stage stage, Executor exec)
+    {
+        if (_stages.containsKey(stage.name)) {
+            throw new IllegalArgumentException("Duplicate startup stage: " + stage.name);
+        }
+        for (String dep : stage.deps) {
+            if (!_stages.containsKey(dep)) {
+                throw new IllegalArgumentException(
+                    "Startup stage depends on unknown stage: " + stage.name + " -> " + dep);
+            }
+        }
+        if (stage.required) {
+            if (_sealed) {
+                throw new IllegalStateException("Required startup stage added after sealing: " +
+                                                stage.name);
+            }
+            _pendingRequired++;
+        }
+        _stages.put(stage.name, new StageRecord(stage, exec));
+        if (_started) {
+            dispatchRunnable();
+        }
+    }
+
+    /**
+     * Starts running the stages.  Stages whose dependencies are met are dispatched immediately;
+     * the rest are dispatched as their dependencies complete.
+     */
+    public synchronized void start ()
+    {
+        _started = true;
+        _startStamp = System.currentTimeMillis();
+        dispatchRunnable();
+    }
+
+    /**
+     * Notes that all of the required stages have been added, so that the server will be ready as
+     * soon as they have completed.
+     */
+    public synchronized void seal ()
+    {
+        _sealed = true;
+        noteIfReady();
+    }
+
+    /**
+     * Blocks until the named stages have completed.  Must not be used to wait for a stage that
+     * runs on an executor serviced by the calling thread (the distributed object manager, before
+     * the server is running).
+     *
+     * @exception Exception thrown if any of the stages (or one on which they depend) failed; the
+     * cause is that of the first failed stage.
+     */
+    public synchronized void await (String... names)
+        throws Exception
+    {
+        for (String name : names) {
+            StageRecord record = _stages.get(name);
+            if (record == null) {
+                throw new IllegalArgumentException("Unknown startup stage: " + name);
+            }
+            while (record.state == PENDING || record.state == RUNNING) {
+                wait();
+            }
+            if (record.state == FAILED) {
+                throw new Exception("Startup stage failed: " + name, record.failure);
+            }
+        }
+    }
+
+    /**
+     * Blocks until all of the required stages that run on the startup threads have completed.
+     * From then on, the failure of any required stage shuts down the server.  Must be called after
+     * the orchestrator has been {@link #seal}ed.
+     *
+     * @exception Exception thrown if any required stage has failed; the cause is that of the first
+     * failed stage.
+     */
+    public synchronized void awaitRequired ()
+        throws Exception
+    {
+        for (StageRecord record : _stages.values()) {
+            if (!record.stage.required) {
+                continue;
+            }
+            while (record.exec == null && (record.state == PENDING || record.state == RUNNING)) {
+                wait();
+            }
+            if (record.state == FAILED) {
+                throw new Exception("Required startup stage failed: " + record.stage,
+                                    record.failure);
+            }
+        }
+        _awaited = true;
+    }
+
+    /**
+     * Checks whether all of the required stages have completed, and thus whether the server is
+     * ready to accept logons.
+     */
+    public synchronized boolean isReady ()
+    {
+        return _sealed && _started && _pendingRequired == 0 && !_requiredFailed;
+    }
+
+    /**
+     * Dispatches all pending stages whose dependencies have completed, and fails those whose
+     * dependencies have failed.
+     */
+    protected void dispatchRunnable ()
+    {
+        boolean changed;
+        do {
+            changed = false;
+            for (final StageRecord record : _stages.values()) {
+                if (record.state != PENDING) {
+                    continue;
+                }
+                int state = getDependencyState(record.stage);
+                if (state == FAILED) {
+                    noteFinished(record, null, new Exception("Dependency failed"));
+                    changed = true;
+
+                } else if (state == COMPLETE) {
+                    record.state = RUNNING;
+                    Executor exec = (record.exec == null) ? getPool() : record.exec;
+                    exec.execute(new Runnable() {
+                        public void run () {
+                            runStage(record);
+                        }
+                    });
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * Returns {@link #COMPLETE} if all of the stage's dependencies have completed, {@link #FAILED}
+     * if any have failed, and {@link #PENDING} otherwise.
+     */
+    protected int getDependencyState (Stage stage)
+    {
+        int state = COMPLETE;
+        for (String dep : stage.deps) {
+            int dstate = _stages.get(dep).state;
+            if (dstate == FAILED) {
+                return FAILED;
+            } else if (dstate != COMPLETE) {
+                state = PENDING;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Runs a stage and notes its completion.
+     */
+    protected void runStage (StageRecord record)
+    {
+        long start = System.currentTimeMillis();
+        Exception failure = null;
+        try {
+            record.stage.run();
+        } catch (Exception e) {
+            failure = e;
+        }
+        boolean fatal;
+        synchronized (this) {
+            noteFinished(record, System.currentTimeMillis() - start, failure);
+            dispatchRunnable();
+            fatal = _awaited && _requiredFailed;
+        }
+        if (fatal) {
+            _cycle.shutdown();
+        }
+    }
+
+    /**
+     * Records the completion or failure of a stage.  Must be called with the lock held.
+     *
+     * @param elapsed the time spent running the stage, or null if it never ran.
+     */
+    protected void noteFinished (StageRecord record, Long elapsed, Exception failure)
+    {
+        Stage stage = record.stage;
+        if (failure == null) {
+            record.state = COMPLETE;
+            log.info("Startup stage completed", "stage", stage, "millis", elapsed,
+                     "sinceStart", System.currentTimeMillis() - _startStamp);
+        } else {
+            record.state = FAILED;
+            record.failure = failure;
+            if (stage.required) {
+                _requiredFailed = true;
+                log.warning("Required startup stage failed, aborting startup", "stage", stage,
+                            failure);
+            } else {
+                log.warning("Optional startup stage failed", "stage", stage, failure);
+            }
+        }
+        if (stage.required) {
+            _pendingRequired--;
+            noteIfReady();
+        }
+        if (++_finished == _stages.size() && _pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Logs our readiness if we have just become ready.  Must be called with the lock held.
+     */
+    protected void noteIfReady ()
+    {
+        if (isReady()) {
+            log.info("Required startup stages completed, accepting logons",
+                     "millis", System.currentTimeMillis() - _startStamp);
+        }
+    }
+
+    /**
+     * Returns the pool of startup threads, creating it if necessary.
+     */
+    protected ExecutorService getPool ()
+    {
+        if (_pool == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                POOL_SIZE, POOL_SIZE, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(
+                            runnable, "Startup Stage " + _tcount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                    protected AtomicInteger _tcount = new AtomicInteger();
+                });
+            pool.allowCoreThreadTimeOut(true);
+            _pool = pool;
+        }
+        return _pool;
+    }
+
+    /** Tracks the state of a stage. */
+    protected static class StageRecord
+    {
+        public final Stage stage;
+        public final Executor exec;
+        public int state = PENDING;
+        public Exception failure;
+
+        public StageRecord (Stage stage, Executor exec)
+        {
+            this.stage = stage;
+            this.exec = exec;
+        }
+    }
+
+    /** The stages, in the order in which they were added. */
+    protected LinkedHashMap<String, StageRecord> _stages = new LinkedHashMap<String, StageRecord>();
+
+    /** The number of stages that have completed or failed. */
+    protected int _finished;
+
+    /** The number of required stages yet to complete. */
+    protected int _pendingRequired;
+
+    /** Set if a required stage has failed. */
+    protected boolean _requiredFailed;
+
+    /** Whether or not we've started running stages. */
+    protected boolean _started;
+
+    /** Whether or not all of the required stages have been added. */
+    protected boolean _sealed;
+
+    /** Whether or not the server initialization has waited for the required stages. */
+    protected boolean _awaited;
+
+    /** The time at which we started running stages. */
+    protected long _startStamp;
+
+    /** The pool on which stages run by default. */
+    protected ExecutorService _pool;
+
+    /** Used to shut down the server if a required stage fails late. */
+    @Inject protected Lifecycle _cycle;
+
+    /** Stage states. */
+    protected static final int PENDING = 0, RUNNING = 1, COMPLETE = 2, FAILED = 3;
+
+    /** The number of startup threads. */
+    protected static final int POOL_SIZE = 4;
+}
@@ -0,0 +1,45 @@
+//
+// $Id$
+
+package com.threerings.bang.server.ooo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the account names given to new anonymous players.  Each name combines the name of the
+ * server node, the time at which the source was created and a counter, so names never collide
+ * with those generated by other nodes, by earlier runs of this node or by other threads, and no
+ * name needs to be checked against the database before it is handed out.
+ */
+public class AnonymousNameSource
+{
+    /**
+     * Creates a source for the specified server node.
+     */
+    public AnonymousNameSource (String nodename)
+    {
+        this(nodename, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a source for the specified server node and start time.
+     */
+    public AnonymousNameSource (String nodename, long stamp)
+    {
+        _prefix = nodename.toLowerCase() + "." + Long.toString(stamp, 36) + ".";
+    }
+
+    /**
+     * Returns the next name.  May be called on any thread.
+     */
+    public String next ()
+    {
+        return _prefix + Long.toString(_counter.incrementAndGet(), 36);
+    }
+
+    /** The prefix of all of our names. */
+    protected String _prefix;
+
+    /** The number of names generated. */
+    protected AtomicLong _counter = new AtomicLong();
+}
@@ -8,6 +8,8 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executor;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -20,7 +22,10 @@ import com.samskivert.servlet.user.Password;
 import com.samskivert.servlet.user.UserExistsException;
 import com.samskivert.servlet.user.Username;
 import com.samskivert.util.HashIntMap;
-import com.samskivert.util.RandomUtil;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.ResultListener;
+import com.samskivert.util.RunQueue;
 import com.samskivert.util.StringUtil;
 
 import com.threerings.util.MessageBundle;
@@ -37,7 +42,9 @@ import com.threerings.user.RewardRepository;
 import com.threerings.presents.net.AuthRequest;
 import com.threerings.presents.net.AuthResponse;
 import com.threerings.presents.net.AuthResponseData;
+import com.threerings.presents.net.Credentials;
 
+import com.threerings.presents.server.PresentsDObjectMgr;
 import com.threerings.presents.server.net.AuthingConnection;
 
 import com.threerings.bang.admin.server.RuntimeConfig;
@@ -46,10 +53,12 @@ import com.threerings.bang.data.BangAuthResponseData;
 import com.threerings.bang.data.BangCodes;
 import com.threerings.bang.data.BangCredentials;
 import com.threerings.bang.data.BangTokenRing;
+import com.threerings.bang.server.AuthPipeline;
 import com.threerings.bang.server.BangAuthenticator;
 import com.threerings.bang.server.BangClientResolver;
 import com.threerings.bang.server.BangServer;
 import com.threerings.bang.server.ServerConfig;
+import com.threerings.bang.server.StartupOrchestrator;
 import com.threerings.bang.server.persist.PlayerRecord;
 import com.threerings.bang.server.persist.PlayerRepository;
 import com.threerings.bang.util.BangUtil;
@@ -60,7 +69,8 @@ import static com.threerings.bang.Log.log;
 import static com.threerings.bang.data.BangAuthCodes.*;
 
 /**
- * Delegates authentication to the OOO user manager.
+ * Delegates authentication to the OOO user manager.  Connections are authenticated on an {@link
+ * AuthPipeline}, each of whose workers has its own user and player repositories.
  */
 @Singleton
 public class OOOAuthenticator extends BangAuthenticator
@@ -78,7 +88,59 @@ public class OOOAuthenticator extends BangAuthenticator
 
         } catch (PersistenceException pe) {
             log.warning("Failed to initialize OOO authenticator.", pe);
+            return;
+        }
+
+        String nodename = StringUtil.isBlank(ServerConfig.nodename) ?
+            ServerConfig.townId : ServerConfig.nodename;
+        _anonNames = new AnonymousNameSource(nodename);
+        _pipeline = createPipeline(
+            new RunQueue.AsExecutor(_omgr), ServerConfig.getJDBCConfig(),
+            ServerConfig.config.getValue("auth_threads", DEFAULT_AUTH_THREADS),
+            ServerConfig.config.getValue("auth_queue_limit", DEFAULT_AUTH_QUEUE_LIMIT));
+        _cycle.addComponent(_pipeline);
+    }
+
+    @Override // from Authenticator
+    public void authenticateConnection (Invoker invoker, final AuthingConnection conn,
+                                        final ResultListener<AuthingConnection> onComplete)
+    {
+        // if we failed to initialize, let the invoker report the failure
+        if (_pipeline == null) {
+            super.authenticateConnection(invoker, conn, onComplete);
+            return;
+        }
+
+        // attempts by the same account are processed in turn, and a retry from the same machine
+        // with the same password replaces one still waiting; those by new anonymous players are
+        // neither held back nor replaced
+        Credentials creds = conn.getAuthRequest().getCredentials();
+        String account = null, offered = null;
+        if (creds instanceof BangCredentials && ((BangCredentials)creds).getUsername() != null) {
+            BangCredentials bcreds = (BangCredentials)creds;
+            account = bcreds.getUsername().toString();
+            offered = bcreds.getPassword() + ":" + bcreds.ident;
         }
+
+        final AuthResponseData rdata = createResponseData();
+        final AuthResponse rsp = new AuthResponse(rdata);
+        _pipeline.admit(new AuthPipeline.Attempt<AuthRepos>(account, offered) {
+            public void process (AuthRepos repos) throws Exception {
+                processAuthentication(conn, rsp, repos);
+            }
+            public void respond () {
+                // stuff the response into the connection for later use and send it to the client
+                conn.setAuthResponse(rsp);
+                conn.postMessage(rsp);
+                if (AuthResponseData.SUCCESS.equals(rdata.code)) {
+                    onComplete.requestCompleted(conn);
+                }
+            }
+            public void refuse (String code) {
+                rdata.code = code;
+                respond();
+            }
+        });
     }
 
     @Override // from abstract BangAuthenticator
@@ -172,6 +234,34 @@ public class OOOAuthenticator extends BangAuthenticator
     @Override // from abstract Authenticator
     protected void processAuthentication (AuthingConnection conn, AuthResponse rsp)
         throws PersistenceException
+    {
+        processAuthentication(conn, rsp, new AuthRepos(_authrep, _playrepo));
+    }
+
+    /**
+     * Creates the pipeline on which connections are authenticated, each of whose workers has its
+     * own user and player repositories.
+     *
+     * @param receiver the executor on which clients will be responded to.
+     * @param jdbcConfig the configuration from which the workers' connections will be made.
+     */
+    protected AuthPipeline<AuthRepos> createPipeline (
+        Executor receiver, Properties jdbcConfig, int workers, int queueLimit)
+    {
+        return new AuthPipeline<AuthRepos>(receiver, jdbcConfig, workers, queueLimit) {
+            protected AuthRepos createContext (ConnectionProvider conprov)
+                throws PersistenceException {
+                return new AuthRepos(new OOOUserRepository(conprov), new PlayerRepository(conprov));
+            }
+        };
+    }
+
+    /**
+     * Authenticates a connection using the supplied repositories.
+     */
+    protected void processAuthentication (
+        AuthingConnection conn, AuthResponse rsp, AuthRepos repos)
+        throws PersistenceException
     {
         AuthRequest req = conn.getAuthRequest();
         BangAuthResponseData rdata = (BangAuthResponseData) rsp.getData();
@@ -182,6 +272,12 @@ public class OOOAuthenticator extends BangAuthenticator
             return;
         }
 
+        // make sure the server has finished starting up
+        if (!_startup.isReady()) {
+            rdata.code = SERVER_STARTING;
+            return;
+        }
+
         // make sure they've got the correct version
         long cvers = 0L;
         long svers = DeploymentConfig.getVersion();
@@ -240,13 +336,13 @@ public class OOOAuthenticator extends BangAuthenticator
         }
 
         // load up their user account record
-        OOOUser user = _authrep.loadUser(username, true);
+        OOOUser user = repos.authrep.loadUser(username, true);
 
         // we need to find out if this account has ever logged in so that we can decide how to
         // handle tainted idents; we load up the player record for this account; if this player
         // makes it through the gauntlet, we'll stash this away in a place that the client resolver
         // can get it so that we can avoid loading the record twice during authentication
-        PlayerRecord prec = _playrepo.loadPlayer(username);
+        PlayerRecord prec = repos.playrepo.loadPlayer(username);
         String password = creds.getPassword();
 
         if (user == null && prec == null &&
@@ -263,20 +359,9 @@ public class OOOAuthenticator extends BangAuthenticator
         }
 
         if (anonymous && StringUtil.isBlank(username)) {
-            // we're a new anonymous client, so better make up fake username
-            int attempts = 0;
-            do {
-                username = StringUtil.md5hex(Integer.toString(
-                            RandomUtil.getInt(Integer.MAX_VALUE)));
-                prec = _playrepo.loadPlayer(username);
-                attempts++;
-            } while (prec != null && attempts < MAX_LOOP);
-
-            // well crap, can't find them a username
-            if (prec != null) {
-                rdata.code = SERVER_ERROR;
-                return;
-            }
+            // we're a new anonymous client, so make up a fake username (which is unique by
+            // construction, so there's no need to check that it's unused)
+            username = _anonNames.next();
         }
 
         // now check their password
@@ -293,7 +378,7 @@ public class OOOAuthenticator extends BangAuthenticator
         // see if they're a coin buyer
         if (!anonymous && prec != null && !prec.isSet(PlayerRecord.IS_COIN_BUYER)) {
             if (user.hasBoughtCoins() || user.isSupportPlus()) {
-                _playrepo.markAsCoinBuyer(prec.playerId);
+                repos.playrepo.markAsCoinBuyer(prec.playerId);
                 prec.flags = prec.flags | PlayerRecord.IS_COIN_BUYER;
             }
         }
@@ -331,8 +416,10 @@ public class OOOAuthenticator extends BangAuthenticator
         // check to see whether this account has been banned or if this is a first time user
         // logging in from a tainted machine
         int vc = anonymous ?
-                _authrep.validateMachIdent(creds.ident, prec == null, OOOUser.BANGHOWDY_SITE_ID) :
-                _authrep.validateUser(OOOUser.BANGHOWDY_SITE_ID, user, creds.ident, prec == null);
+                repos.authrep.validateMachIdent(
+                    creds.ident, prec == null, OOOUser.BANGHOWDY_SITE_ID) :
+                repos.authrep.validateUser(
+                    OOOUser.BANGHOWDY_SITE_ID, user, creds.ident, prec == null);
         switch (vc) {
         case OOOUserRepository.ACCOUNT_BANNED:
             log.info("Rejecting banned account", "who", username);
@@ -406,7 +493,7 @@ public class OOOAuthenticator extends BangAuthenticator
 
         // stash their age information
         if (user != null) {
-            OOOAuxData auxData = _authrep.getAuxRecord(user.userId);
+            OOOAuxData auxData = repos.authrep.getAuxRecord(user.userId);
             if (auxData != null) {
                 Calendar coppa = Calendar.getInstance();
                 coppa.roll(Calendar.YEAR, -BangCodes.COPPA_YEAR);
@@ -476,24 +563,48 @@ public class OOOAuthenticator extends BangAuthenticator
         try {
             siteId = Integer.decode(affiliate);
         } catch (Exception e) {
-            siteId = _siteident.getSiteId(affiliate);
+            // we may be called on any of the authentication threads
+            synchronized (_siteident) {
+                siteId = _siteident.getSiteId(affiliate);
+            }
         }
         return siteId;
     }
 
+    /** The repositories used to authenticate connections. */
+    protected static class AuthRepos
+    {
+        public final OOOUserRepository authrep;
+        public final PlayerRepository playrepo;
+
+        public AuthRepos (OOOUserRepository authrep, PlayerRepository playrepo)
+        {
+            this.authrep = authrep;
+            this.playrepo = playrepo;
+        }
+    }
+
     protected JDBCTableSiteIdentifier _siteident;
     protected OOOUserManager _usermgr;
     protected OOOUserRepository _authrep;
     protected RewardRepository _rewardrep;
     protected HashIntMap<RewardInfo> _rewards = new HashIntMap<RewardInfo>();
+    protected AuthPipeline<AuthRepos> _pipeline;
+    protected AnonymousNameSource _anonNames;
 
     // dependencies
     @Inject protected ConnectionProvider _conprov;
     @Inject protected PlayerRepository _playrepo;
+    @Inject protected StartupOrchestrator _startup;
+    @Inject protected PresentsDObjectMgr _omgr;
+    @Inject protected Lifecycle _cycle;
 
     /** We only allow two accounts with the same machine ident to redeem a reward. */
     protected static final int MAX_RELATED_REDEEMERS = 2;
 
-    /** Max times we'll try to generate an anonymous username before giving up. */
-    protected static final int MAX_LOOP = 1000;
+    /** The default number of threads on which connections are authenticated. */
+    protected static final int DEFAULT_AUTH_THREADS = 4;
+
+    /** The default number of connections that may wait to be authenticated. */
+    protected static final int DEFAULT_AUTH_QUEUE_LIMIT = 200;
 }
@@ -9,6 +9,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -16,15 +22,23 @@ import com.samskivert.depot.PersistenceContext;
 import com.samskivert.depot.Stats;
 import com.samskivert.depot.impl.Fetcher;
 import com.samskivert.depot.impl.jdbc.DatabaseLiaison;
+import com.samskivert.io.PersistenceException;
 import com.samskivert.jdbc.JDBCUtil;
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntTuple;
+import com.samskivert.util.Tuple;
 
+import com.threerings.stats.data.IntStat;
 import com.threerings.stats.data.Stat;
 import com.threerings.stats.server.persist.StatRepository;
 
 import com.threerings.bang.data.StatType;
 
+import static com.threerings.bang.Log.log;
+
 /**
- * Extends the standard StatRepository with some Bang-specific bits.
+ * Extends the standard StatRepository with some Bang-specific bits, including the maintenance of
+ * the stat summaries stored in the {@link StatAggregateRepository}.
  */
 @Singleton
 public class BangStatRepository extends StatRepository
@@ -42,11 +56,131 @@ public class BangStatRepository extends StatRepository
     }
 
     /**
-     * Constructs a new statistics repository with the specified persistence context.
+     * Constructs a new statistics repository with the specified persistence context, which will
+     * keep the summaries in the supplied aggregate repository up to date.
      */
-    @Inject public BangStatRepository (PersistenceContext ctx)
+    @Inject public BangStatRepository (PersistenceContext ctx, StatAggregateRepository aggrepo)
     {
         super(ctx);
+        _aggrepo = aggrepo;
+    }
+
+    /**
+     * Writes out any of the supplied stats that have been modified and updates their summaries.
+     */
+    public void writeModified (int playerId, Stat[] stats)
+    {
+        writeModified(playerId, Arrays.asList(stats));
+    }
+
+    @Override // documentation inherited
+    public List<Stat> loadStats (int playerId)
+    {
+        List<Stat> stats = super.loadStats(playerId);
+        notePersisted(playerId, stats, true);
+        return stats;
+    }
+
+    /**
+     * Writes out any of the supplied stats that have been modified and updates their summaries.
+     * The summaries are updated according to the difference between the written stats and those
+     * last loaded or written for the player, if we still have them, otherwise the previous stats
+     * are loaded from the database.
+     */
+    public void writeModified (int playerId, Iterable<Stat> stats)
+    {
+        // note (and copy) the stats that will be written before we write them
+        ArrayList<Stat> modified = new ArrayList<Stat>();
+        for (Stat stat : stats) {
+            if (stat.getType().isPersistent() && stat.isModified()) {
+                modified.add(stat.clone());
+            }
+        }
+        List<Stat> previous = null;
+        if (!modified.isEmpty()) {
+            previous = getPersisted(playerId, modified);
+            if (previous == null) {
+                previous = loadSummarizedStats(playerId);
+            }
+        }
+        if (previous == null) {
+            super.writeModified(playerId, stats);
+            return;
+        }
+
+        final int fplayerId = playerId;
+        final Iterable<Stat> fstats = stats;
+        updateSummaries(playerId, previous, modified, new Runnable() {
+            public void run () {
+                BangStatRepository.super.writeModified(fplayerId, fstats);
+            }
+        });
+        notePersisted(playerId, modified, false);
+    }
+
+    /**
+     * Releases the copies of the specified player's stats that we keep in order to update the
+     * summaries when they're written.  Should be called when the player's session ends, after
+     * their stats have been written.
+     */
+    public void releaseStats (int playerId)
+    {
+        synchronized (_persisted) {
+            _persisted.remove(playerId);
+        }
+    }
+
+    /**
+     * Deletes all of the stats of the specified player and removes them from the summaries.
+     */
+    public void purgeStats (int playerId)
+    {
+        releaseStats(playerId);
+        List<Stat> previous = loadSummarizedStats(playerId);
+        if (previous == null) {
+            deleteStats(playerId);
+            return;
+        }
+
+        final int fplayerId = playerId;
+        updateSummaries(playerId, previous, Collections.<Stat>emptyList(), new Runnable() {
+            public void run () {
+                deleteStats(fplayerId);
+            }
+        });
+    }
+
+    /**
+     * Computes (or resumes computing) the summaries of the specified stat from the stats stored
+     * in the database, reading them in chunks of the specified size ordered by player id.  This
+     * need only be done once for each stat, after which the summaries are maintained as stats are
+     * written.
+     *
+     * @param restart if true, the summaries are cleared and recomputed from scratch.
+     * @return the number of stats summarized.
+     */
+    public int backfillSummaries (Stat.Type type, int chunkSize, boolean restart)
+        throws PersistenceException
+    {
+        int statCode = type.code();
+        if (restart || !_aggrepo.loadBackfillProgress().containsKey(statCode)) {
+            _aggrepo.startBackfill(statCode);
+        }
+        int summarized = 0, count;
+        StatAggregateRepository.StatReader reader = createReader(type);
+        while ((count = _aggrepo.backfillChunk(statCode, chunkSize, reader)) >= 0) {
+            summarized += count;
+        }
+        return summarized;
+    }
+
+    /**
+     * Loads the precomputed summary of the specified stat.
+     */
+    public StatAggregateRepository.Rollup loadRollup (Stat.Type type)
+        throws PersistenceException
+    {
+        return _aggrepo.loadRollup(type);
     }
 
     /**
@@ -56,6 +190,7 @@ public class BangStatRepository extends StatRepository
      * paying player and one for non-payers less than six months old; millions of rows if the game
      * is at all successful). Don't call this method willy nilly and the summarized results should
      * be cached for at least 12 hours. (Stats don't change that frequently in the aggregate.)
+     * Where counts, sums, histograms or the top holders suffice, use {@link #loadRollup}.
      */
     public void processStats (final Processor processor, Stat.Type type)
     {
@@ -87,6 +222,182 @@ public class BangStatRepository extends StatRepository
         });
     }
 
+    /**
+     * Creates a reader of the stored stats of the specified type, which reads them using the
+     * aggregate repository's connection.
+     */
+    protected StatAggregateRepository.StatReader createReader (final Stat.Type type)
+    {
+        return new StatAggregateRepository.StatReader() {
+            public IntTuple readStats (Connection conn, int afterPlayerId, int count,
+                                       List<Tuple<Integer, Stat>> stats)
+                throws SQLException
+            {
+                IntTuple scanned = new IntTuple(0, afterPlayerId); // rows read, last player id
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(
+                        "select PLAYER_ID, STAT_DATA from STATS " +
+                        "where STAT_CODE = " + type.code() + " and PLAYER_ID > " +
+                        afterPlayerId + " order by PLAYER_ID limit " + count);
+                    while (rs.next()) {
+                        scanned.left++;
+                        scanned.right = rs.getInt(1);
+                        Stat stat = type.newStat();
+                        if (decodeStat(stat, (byte[])rs.getObject(2), (byte)0) != null) {
+                            stats.add(new Tuple<Integer, Stat>(scanned.right, stat));
+                        }
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return scanned;
+            }
+        };
+    }
+
+    /**
+     * Returns the last loaded or written versions of the supplied stats of the specified player,
+     * or null if we're not keeping the player's stats (in which case they must be loaded).
+     */
+    protected List<Stat> getPersisted (int playerId, List<Stat> stats)
+    {
+        synchronized (_persisted) {
+            HashIntMap<Stat> persisted = _persisted.get(playerId);
+            if (persisted == null) {
+                return null;
+            }
+            ArrayList<Stat> previous = new ArrayList<Stat>();
+            for (Stat stat : stats) {
+                Stat pstat = persisted.get(stat.getType().code());
+                if (pstat != null) {
+                    previous.add(pstat);
+                }
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * Records copies of the supplied stats as the last loaded or written versions of the
+     * specified player's stats.
+     *
+     * @param loaded if true, the stats were loaded (and replace any we already had), otherwise
+     * they were written, and are recorded only if we're keeping the player's stats.
+     */
+    protected void notePersisted (int playerId, List<Stat> stats, boolean loaded)
+    {
+        synchronized (_persisted) {
+            HashIntMap<Stat> persisted = _persisted.get(playerId);
+            if (loaded) {
+                _persisted.put(playerId, persisted = new HashIntMap<Stat>());
+            } else if (persisted == null) {
+                return;
+            }
+            for (Stat stat : stats) {
+                if (stat.getType().isPersistent()) {
+                    persisted.put(stat.getType().code(), loaded ? stat.clone() : stat);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the stats of the specified player that are summarized, or returns null if they can't
+     * be loaded, in which case the summaries are left as they are.
+     */
+    protected List<Stat> loadSummarizedStats (int playerId)
+    {
+        try {
+            return super.loadStats(playerId);
+        } catch (Exception e) {
+            log.warning("Failed to load previous stats for summaries", "playerId", playerId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the specified player's stats and updates their summaries.  Changes to stats whose
+     * backfill has not yet reached the player are discarded by the aggregate repository.  If the
+     * summaries cannot be updated, the stats are written nonetheless.
+     *
+     * @param previous the player's stats before the update (at least those being replaced).
+     * @param updated the stats to be written (which replace those previously stored).
+     * @param write writes the stats.
+     */
+    protected void updateSummaries (int playerId, List<Stat> previous, List<Stat> updated,
+                                    final Runnable write)
+    {
+        // the write is run by the aggregate repository in the midst of its transaction; make sure
+        // that it's run once, and that its failure is reported as such
+        final boolean[] written = new boolean[1];
+        final RuntimeException[] failure = new RuntimeException[1];
+        Runnable once = new Runnable() {
+            public void run () {
+                if (written[0]) {
+                    return;
+                }
+                try {
+                    write.run();
+                    written[0] = true;
+                } catch (RuntimeException re) {
+                    failure[0] = re;
+                    throw re;
+                }
+            }
+        };
+
+        List<Integer> depleted = Collections.emptyList();
+        try {
+            HashMap<Integer, Stat> oldStats = new HashMap<Integer, Stat>();
+            for (Stat stat : previous) {
+                oldStats.put(stat.getType().code(), stat);
+            }
+
+            ArrayList<StatAggregateRepository.Delta> deltas =
+                new ArrayList<StatAggregateRepository.Delta>();
+            HashMap<Integer, Integer> values = new HashMap<Integer, Integer>();
+            ArrayList<Integer> removed = new ArrayList<Integer>();
+            // if nothing is written, the player's stats are all being deleted
+            List<Stat> changed = updated.isEmpty() ? previous : updated;
+            for (Stat stat : changed) {
+                int statCode = stat.getType().code();
+                StatAggregateRepository.Delta delta = new StatAggregateRepository.Delta(statCode);
+                Stat ostat = oldStats.get(statCode);
+                if (ostat != null) {
+                    delta.add(ostat, -1);
+                }
+                if (!updated.isEmpty()) {
+                    delta.add(stat, 1);
+                    if (stat instanceof IntStat) {
+                        values.put(statCode, ((IntStat)stat).getValue());
+                    }
+                } else if (stat instanceof IntStat) {
+                    removed.add(statCode);
+                }
+                deltas.add(delta);
+            }
+            depleted = _aggrepo.applyDeltas(playerId, deltas, values, removed, once);
+
+        } catch (Exception e) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            log.warning("Failed to update stat summaries", "playerId", playerId, e);
+        }
+        once.run();
+
+        // refill the leaders of any stats from which too many have dropped out
+        for (int statCode : depleted) {
+            try {
+                _aggrepo.rebuildLeaders(
+                    statCode, LEADER_REBUILD_CHUNK, createReader(Stat.getType(statCode)));
+            } catch (Exception e) {
+                log.warning("Failed to rebuild stat leaders", "statCode", statCode, e);
+            }
+        }
+    }
+
     @Override // documentation inherited
     protected void loadStringCodes (Stat.Type type)
     {
@@ -96,4 +407,14 @@ public class BangStatRepository extends StatRepository
         // now back to our regular scheduled programming
         super.loadStringCodes(type);
     }
+
+    /** The number of stats read at a time when rebuilding the leaders of a stat. */
+    protected static final int LEADER_REBUILD_CHUNK = 1000;
+
+    /** Maintains our summaries. */
+    protected StatAggregateRepository _aggrepo;
+
+    /** Copies of the last loaded or written stats of the players whose sessions are active,
+     * mapped by player id and then stat code. */
+    protected HashIntMap<HashIntMap<Stat>> _persisted = new HashIntMap<HashIntMap<Stat>>();
 }
@@ -3,12 +3,17 @@
 
 package com.threerings.bang.server.persist;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Map;
 
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 
 import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.ConnectionProvider;
+import com.samskivert.jdbc.DatabaseLiaison;
+import com.samskivert.jdbc.LiaisonRegistry;
 import com.samskivert.util.Invoker;
 
 import com.threerings.presents.annotation.MainInvoker;
@@ -18,13 +23,16 @@ import com.threerings.bang.data.BangCodes;
 import com.threerings.bang.data.PlayerObject;
 import com.threerings.bang.server.BangInvoker;
 import com.threerings.bang.server.BangServer;
+import com.threerings.bang.server.FinancialExecutor;
 import com.threerings.bang.util.DeploymentConfig;
 
 import static com.threerings.bang.Log.log;
 
 /**
  * Provides a robust framework for doing something in exchange for a player's money. Financial
- * actions must be posted via {@link BangInvoker#post}.
+ * actions must be posted via {@link BangInvoker#post}.  Actions that are {@link #isTransactional}
+ * spend their cash and take their persistent action in a single database transaction on the
+ * {@link FinancialExecutor}; others are processed on the main invoker.
  */
 public abstract class FinancialAction extends Invoker.Unit
 {
@@ -39,6 +47,34 @@ public abstract class FinancialAction extends Invoker.Unit
         return true;
     }
 
+    /**
+     * Returns the account on which this action operates.  Actions on the same account are
+     * processed one at a time, in the order in which they were posted.
+     */
+    public String getAccount ()
+    {
+        return getCoinAccount();
+    }
+
+    /**
+     * Returns true if this action spends its cash and takes its persistent action in a single
+     * transaction (through {@link #transactionalAction}), in which case it will be processed on the
+     * {@link FinancialExecutor} rather than on the main invoker.
+     */
+    public boolean isTransactional ()
+    {
+        return false;
+    }
+
+    /**
+     * Configures the provider from which a transactional action obtains its connection.  Called by
+     * the {@link FinancialExecutor} when the action is posted.
+     */
+    public void setConnectionProvider (ConnectionProvider conprov)
+    {
+        _conprov = conprov;
+    }
+
     @Override // documentation inherited
     public boolean invoke ()
     {
@@ -52,19 +88,12 @@ public abstract class FinancialAction extends Invoker.Unit
                 }
             }
 
-            if (shouldSpendCash()) {
-                // spend the in-game cash
-                spendCash();
-                _cashSpent = true;
-            }
-
-            // then do our persistent business
-            String errmsg = persistentAction();
+            // spend the in-game cash and do our persistent business
+            String errmsg = isTransactional() ? invokeTransaction() : invokeSeparately();
             if (errmsg != null) {
                 fail(errmsg);
                 return true;
             }
-            _actionTaken = true;
 
             if (DeploymentConfig.usesCoins() && _coinCost > 0) {
                 // finally "spend" our reserved coins
@@ -83,6 +112,83 @@ public abstract class FinancialAction extends Invoker.Unit
         return true;
     }
 
+    /**
+     * Spends the in-game cash and takes the persistent action one after the other, each with its
+     * own connection.
+     *
+     * @return null if the action was taken, a translatable error string if not.
+     */
+    protected String invokeSeparately ()
+        throws PersistenceException
+    {
+        if (shouldSpendCash()) {
+            // spend the in-game cash
+            spendCash();
+            _cashSpent = true;
+        }
+
+        // then do our persistent business
+        String errmsg = persistentAction();
+        if (errmsg == null) {
+            _actionTaken = true;
+        }
+        return errmsg;
+    }
+
+    /**
+     * Spends the in-game cash and takes the persistent action in a single transaction, so that
+     * either both or neither take effect and no compensating writes are needed if the action
+     * cannot be taken.
+     *
+     * @return null if the action was taken, a translatable error string if not.
+     */
+    protected String invokeTransaction ()
+        throws PersistenceException
+    {
+        if (_conprov == null) {
+            log.warning("Transactional action posted without a connection provider " + this);
+            return BangCodes.INTERNAL_ERROR;
+        }
+
+        Connection conn = _conprov.getConnection(PlayerRepository.PLAYER_DB_IDENT, false);
+        try {
+            conn.setAutoCommit(false);
+            String errmsg;
+            boolean committed = false;
+            try {
+                if (shouldSpendCash()) {
+                    spendCash(conn);
+                }
+                errmsg = transactionalAction(conn, LiaisonRegistry.getLiaison(conn));
+                if (errmsg == null) {
+                    conn.commit();
+                    committed = true;
+                }
+            } finally {
+                if (!committed) {
+                    conn.rollback();
+                }
+                conn.setAutoCommit(true);
+            }
+            if (errmsg == null) {
+                // from here on out, the cash and action are treated as any others
+                _cashSpent = shouldSpendCash();
+                _actionTaken = true;
+            }
+            return errmsg;
+
+        } catch (SQLException sqe) {
+            _conprov.connectionFailed(PlayerRepository.PLAYER_DB_IDENT, false, conn, sqe);
+            conn = null;
+            throw new PersistenceException("Financial transaction failed " + this, sqe);
+
+        } finally {
+            if (conn != null) {
+                _conprov.releaseConnection(PlayerRepository.PLAYER_DB_IDENT, false, conn);
+            }
+        }
+    }
+
     @Override // documentation inherited
     public void handleResult ()
     {
@@ -147,8 +253,23 @@ public abstract class FinancialAction extends Invoker.Unit
     }
 
     /**
-     * Any action taken in {@link #persistentAction} must be revoked in this method, which is
-     * called if we fail to finalize
+     * Transactional actions take their persistent action in this method rather than {@link
+     * #persistentAction}, using the supplied connection, which is in the same transaction as the
+     * spending of the actor's cash.  The caller takes care of committing or rolling back the
+     * transaction.
+     *
+     * @return null if the action was taken, a translatable error string if the action could not be
+     * taken for whatever reason (in which case the transaction will be rolled back).
+     */
+    protected String transactionalAction (Connection conn, DatabaseLiaison liaison)
+        throws SQLException, PersistenceException
+    {
+        return null;
+    }
+
+    /**
+     * Any action taken in {@link #persistentAction} or {@link #transactionalAction} must be
+     * revoked in this method, which is called if we fail to finalize
      */
     protected void rollbackPersistentAction ()
         throws PersistenceException
@@ -327,6 +448,16 @@ public abstract class FinancialAction extends Invoker.Unit
         _playrepo.spendScrip(_user.playerId, _scripCost);
     }
 
+    /**
+     * Updates the database to spend the actor's non-coin currency using the supplied connection,
+     * as part of the transaction of a transactional action.
+     */
+    protected void spendCash (Connection conn)
+        throws SQLException, PersistenceException
+    {
+        _playrepo.spendScrip(conn, _user.playerId, _scripCost);
+    }
+
     /**
      * Updates the database to grant the cost in non-coin currency to the actor.
      */
@@ -373,6 +504,9 @@ public abstract class FinancialAction extends Invoker.Unit
     protected String _failmsg;
     protected int _coinres = -1;
 
+    /** The provider of our connection, if we're transactional. */
+    protected ConnectionProvider _conprov;
+
     @Inject protected @MainInvoker Invoker _invoker;
     @Inject protected PlayerRepository _playrepo;
 
@@ -5,7 +5,10 @@ package com.threerings.bang.server.persist;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import java.sql.Connection;
@@ -25,7 +28,6 @@ import com.samskivert.jdbc.DatabaseLiaison;
 import com.samskivert.jdbc.JDBCUtil;
 import com.samskivert.jdbc.SimpleRepository;
 import com.samskivert.util.ArrayIntSet;
-import com.samskivert.util.Interator;
 import com.samskivert.util.StringUtil;
 import com.threerings.io.ObjectInputStream;
 
@@ -110,64 +112,79 @@ public class ItemRepository extends SimpleRepository
     public boolean insertItem (final Item item)
         throws PersistenceException
     {
-        // determine the prototype's assigned item type and serialize it
-        final int itemType = getItemType(item);
-        final byte[] itemData = persistItem(item).toByteArray();
-
-        // now insert the flattened data into the database
-        return executeUpdate(new Operation<Boolean>() {
+        boolean inserted = executeUpdate(new Operation<Boolean>() {
             public Boolean invoke (Connection conn, DatabaseLiaison liaison)
                 throws SQLException, PersistenceException
             {
-                PreparedStatement stmt = null;
-                String query = "select count(*) from ITEMS where GANG_OWNED = ? " +
-                    "and OWNER_ID = ? and ITEM_TYPE = ? and ITEM_DATA = ?";
-                String insert = "insert into ITEMS " +
-                    "(GANG_OWNED, OWNER_ID, ITEM_TYPE, ITEM_DATA, GANG_ID, EXPIRES) " +
-                    "values (?, ?, ?, ?, ?, ?)";
-                try {
-                    if (!item.allowsDuplicates()) {
-                        stmt = conn.prepareStatement(query);
-                        stmt.setBoolean(1, item.isGangOwned());
-                        stmt.setInt(2, item.getOwnerId());
-                        stmt.setInt(3, itemType);
-                        stmt.setBytes(4, itemData);
-                        ResultSet rs = stmt.executeQuery();
-                        if (rs.next() && rs.getInt(1) > 0) {
-                            return false;
-                        }
-                    }
-                    stmt = conn.prepareStatement(insert);
-                    stmt.setBoolean(1, item.isGangOwned());
-                    stmt.setInt(2, item.getOwnerId());
-                    stmt.setInt(3, itemType);
-                    stmt.setBytes(4, itemData);
-                    stmt.setInt(5, item.getGangId());
-                    stmt.setDate(6, item.getExpiryDate());
-
-                    // do the insertion
-                    JDBCUtil.checkedUpdate(stmt, 1);
-
-                    // grab and fill in the item id
-                    item.setItemId(liaison.lastInsertedId(conn, stmt, "ITEMS", "ITEM_ID"));
-
-                    // record the insertion
-                    BangServer.itemLog("item_created id:" + item.getItemId() +
-                                       (item.isGangOwned() ? " gang_owned" : "") +
-                                       " oid:" + item.getOwnerId() +
-                                       " type:" + item.getClass().getName());
-                    return true;
-
-                } finally {
-                    JDBCUtil.close(stmt);
-                }
+                return insertItem(conn, liaison, item);
             }
         });
+        if (inserted) {
+            noteItemCreated(item);
+        }
+        return inserted;
+    }
+
+    /**
+     * Inserts the specified item into the database using the supplied connection, so that the
+     * insertion may be made in the same transaction as other changes. The caller is responsible
+     * for calling {@link #noteItemCreated} once the transaction has been committed.
+     *
+     * @return true if the item was inserted, false if the user already owns an equivalent item and
+     * the item does not allow duplicates.
+     */
+    public boolean insertItem (Connection conn, DatabaseLiaison liaison, Item item)
+        throws SQLException, PersistenceException
+    {
+        // determine the item's assigned type and serialize it
+        int itemType = getItemType(item);
+        byte[] itemData = persistItem(item).toByteArray();
+        byte[] itemDigest = digestItem(item, itemData);
+
+        // now insert the flattened data into the database; if the item does not allow duplicates,
+        // the unique digest index will cause the insertion of an equivalent item to be ignored
+        PreparedStatement stmt = conn.prepareStatement(
+            "insert " + (itemDigest == null ? "" : "ignore ") + "into ITEMS " +
+            "(GANG_OWNED, OWNER_ID, ITEM_TYPE, ITEM_DATA, ITEM_DIGEST, GANG_ID, EXPIRES) " +
+            "values (?, ?, ?, ?, ?, ?, ?)");
+        try {
+            stmt.setBoolean(1, item.isGangOwned());
+            stmt.setInt(2, item.getOwnerId());
+            stmt.setInt(3, itemType);
+            stmt.setBytes(4, itemData);
+            stmt.setBytes(5, itemDigest);
+            stmt.setInt(6, item.getGangId());
+            stmt.setDate(7, item.getExpiryDate());
+
+            // do the insertion
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+
+            // grab and fill in the item id
+            item.setItemId(liaison.lastInsertedId(conn, stmt, "ITEMS", "ITEM_ID"));
+            return true;
+
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Records the creation of the specified item in the item log.
+     */
+    public void noteItemCreated (Item item)
+    {
+        BangServer.itemLog("item_created id:" + item.getItemId() +
+                           (item.isGangOwned() ? " gang_owned" : "") +
+                           " oid:" + item.getOwnerId() +
+                           " type:" + item.getClass().getName());
     }
 
     /**
      * Inserts copies of the given prototype item into the inventories of the identified users and
-     * stores the created items in the provided list.
+     * stores the created items in the provided list.  If the item does not allow duplicates, users
+     * that already own an equivalent item are skipped.
      */
     public void insertItems (final Item prototype, final ArrayIntSet userIds, final List<Item> items)
         throws PersistenceException
@@ -175,41 +192,86 @@ public class ItemRepository extends SimpleRepository
         // determine the prototype's assigned item type and serialize it
         final int itemType = getItemType(prototype);
         final byte[] itemData = persistItem(prototype).toByteArray();
+        final byte[] itemDigest = digestItem(prototype, itemData);
         final int gangId = prototype.getGangId();
         final Date expires = prototype.getExpiryDate();
+        final int[] ownerIds = userIds.toIntArray();
 
-        // now insert the flattened data into the database
+        // now insert the flattened data into the database, as many rows at a time as we can
         executeUpdate(new Operation<Object>() {
             public Object invoke (Connection conn, DatabaseLiaison liaison)
                 throws SQLException, PersistenceException
             {
-                PreparedStatement stmt = null;
-                String query = "insert into ITEMS " +
-                    "(GANG_OWNED, OWNER_ID, ITEM_TYPE, ITEM_DATA, GANG_ID, EXPIRES) " +
-                    "values (FALSE, ?, ?, ?, ?, ?)";
+                for (int ii = 0; ii < ownerIds.length; ii += MAX_ROWS_PER_INSERT) {
+                    int count = Math.min(ownerIds.length - ii, MAX_ROWS_PER_INSERT);
+                    insertCopies(conn, liaison, ii, count);
+                }
+                return null;
+            }
+
+            protected void insertCopies (
+                Connection conn, DatabaseLiaison liaison, int offset, int count)
+                throws SQLException, PersistenceException
+            {
+                StringBuilder query = new StringBuilder("insert ").append(
+                    itemDigest == null ? "" : "ignore ").append("into ITEMS " +
+                    "(GANG_OWNED, OWNER_ID, ITEM_TYPE, ITEM_DATA, ITEM_DIGEST, GANG_ID, EXPIRES) " +
+                    "values ");
+                for (int ii = 0; ii < count; ii++) {
+                    query.append(ii == 0 ? "" : ", ").append("(FALSE, ?, ?, ?, ?, ?, ?)");
+                }
+
+                // insert the rows, noting the id assigned to the first of them
+                int inserted, firstId;
+                PreparedStatement stmt = conn.prepareStatement(query.toString());
+                try {
+                    for (int ii = 0, idx = 1; ii < count; ii++) {
+                        stmt.setInt(idx++, ownerIds[offset + ii]);
+                        stmt.setInt(idx++, itemType);
+                        stmt.setBytes(idx++, itemData);
+                        stmt.setBytes(idx++, itemDigest);
+                        stmt.setInt(idx++, gangId);
+                        stmt.setDate(idx++, expires);
+                    }
+                    if ((inserted = stmt.executeUpdate()) == 0) {
+                        return;
+                    }
+                    firstId = liaison.lastInsertedId(conn, stmt, "ITEMS", "ITEM_ID");
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+
+                // then find out which ids went to which owners (ignored rows may leave gaps in the
+                // assigned ids, so we can't simply count up from the first)
+                ArrayIntSet chunkIds = new ArrayIntSet();
+                for (int ii = 0; ii < count; ii++) {
+                    chunkIds.add(ownerIds[offset + ii]);
+                }
+                stmt = conn.prepareStatement(
+                    "select ITEM_ID, OWNER_ID from ITEMS where ITEM_ID >= " + firstId +
+                    " and OWNER_ID in " + StringUtil.toString(chunkIds.iterator(), "(", ")") +
+                    " and GANG_OWNED = FALSE and ITEM_TYPE = " + itemType + " and " +
+                    (itemDigest == null ? "ITEM_DATA" : "ITEM_DIGEST") + " = ?");
                 try {
-                    stmt = conn.prepareStatement(query);
-                    stmt.setInt(2, itemType);
-                    stmt.setBytes(3, itemData);
-                    stmt.setInt(4, gangId);
-                    stmt.setDate(5, expires);
-
-                    // do the insertions
-                    for (Interator it = userIds.interator(); it.hasNext(); ) {
+                    stmt.setBytes(1, itemDigest == null ? itemData : itemDigest);
+                    ResultSet rs = stmt.executeQuery();
+                    int found = 0;
+                    while (rs.next()) {
                         Item item = (Item)prototype.clone();
-                        item.setOwnerId(it.nextInt());
-                        stmt.setInt(1, item.getOwnerId());
-                        JDBCUtil.checkedUpdate(stmt, 1);
-                        item.setItemId(liaison.lastInsertedId(conn, stmt, "ITEMS", "ITEM_ID"));
+                        item.setItemId(rs.getInt(1));
+                        item.setOwnerId(rs.getInt(2));
                         items.add(item);
+                        found++;
 
                         // record the insertion
                         BangServer.itemLog("item_created id:" + item.getItemId() +
                                            " oid:" + item.getOwnerId() +
                                            " type:" + item.getClass().getName());
                     }
-                    return null;
-
+                    if (found != inserted) {
+                        log.warning("Bulk item insert funny business", "item", prototype,
+                                    "inserted", inserted, "found", found);
+                    }
                 } finally {
                     JDBCUtil.close(stmt);
                 }
@@ -247,11 +309,32 @@ public class ItemRepository extends SimpleRepository
      * Transfers the specified item to the specified player. The database will be updated as well
      * as the item's <code>ownerId</code> field.
      */
-    public void transferItem (Item item, int newOwnerId)
+    public void transferItem (final Item item, final int newOwnerId)
         throws PersistenceException
     {
-        if (update("update ITEMS set OWNER_ID = " + newOwnerId +
-                   " where ITEM_ID = " + item.getItemId()) == 0) {
+        int updated = executeUpdate(new Operation<Integer>() {
+            public Integer invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                String query = "update ITEMS set OWNER_ID = " + newOwnerId;
+                String where = " where ITEM_ID = " + item.getItemId();
+                Statement stmt = conn.createStatement();
+                try {
+                    try {
+                        return stmt.executeUpdate(query + where);
+                    } catch (SQLException sqe) {
+                        if (!liaison.isDuplicateRowException(sqe)) {
+                            throw sqe;
+                        }
+                        // the new owner already has an equivalent item; let them have two
+                        return stmt.executeUpdate(query + ", ITEM_DIGEST = NULL" + where);
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+            }
+        });
+        if (updated == 0) {
             log.warning("Requested to transfer non-persisted item", "item", item, "to", newOwnerId);
 
         } else {
@@ -270,30 +353,40 @@ public class ItemRepository extends SimpleRepository
     public void updateItem (final Item item)
         throws PersistenceException
     {
-        // first serialize the item
-        final ByteArrayOutInputStream out = persistItem(item);
-
-        // now insert the flattened data into the database
         executeUpdate(new Operation<Object>() {
             public Object invoke (Connection conn, DatabaseLiaison liaison)
                 throws SQLException, PersistenceException
             {
-                PreparedStatement stmt = conn.prepareStatement(
-                    "update ITEMS set ITEM_DATA = ?, EXPIRES = ? where ITEM_ID = ?");
-                try {
-                    stmt.setBinaryStream(1, out.getInputStream(), out.size());
-                    stmt.setDate(2, item.getExpiryDate());
-                    stmt.setInt(3, item.getItemId());
-                    JDBCUtil.checkedUpdate(stmt, 1);
-                    return null;
-
-                } finally {
-                    JDBCUtil.close(stmt);
-                }
+                updateItem(conn, liaison, item);
+                return null;
             }
         });
     }
 
+    /**
+     * Updates the specified item in the database using the supplied connection, so that the update
+     * may be made in the same transaction as other changes.
+     */
+    public void updateItem (Connection conn, DatabaseLiaison liaison, Item item)
+        throws SQLException, PersistenceException
+    {
+        // first serialize the item
+        byte[] itemData = persistItem(item).toByteArray();
+        byte[] itemDigest = digestItem(item, itemData);
+
+        // now write the flattened data into the database
+        try {
+            updateItem(conn, item, itemData, itemDigest);
+        } catch (SQLException sqe) {
+            if (itemDigest == null || !liaison.isDuplicateRowException(sqe)) {
+                throw sqe;
+            }
+            // the owner already has an item equivalent to the updated one, which we can't prevent
+            // at this point, so we just exempt it from the index
+            updateItem(conn, item, itemData, null);
+        }
+    }
+
     /**
      * Deletes the specified item from the database.
      */
@@ -362,18 +455,29 @@ public class ItemRepository extends SimpleRepository
     /**
      * Deletes all items owned by the specified player.
      */
-    public void deleteItems (final int playerId, final String why)
+    public void deleteItems (int playerId, String why)
+        throws PersistenceException
+    {
+        ArrayIntSet ownerIds = new ArrayIntSet();
+        ownerIds.add(playerId);
+        deleteOwnedItems(ownerIds, why);
+    }
+
+    /**
+     * Deletes all items owned by the specified players.
+     */
+    public void deleteOwnedItems (final ArrayIntSet ownerIds, String why)
         throws PersistenceException
     {
         final ArrayIntSet itemIds = new ArrayIntSet();
 
-        // first enumerate all items owned by this player
+        // first enumerate all items owned by these players
         execute(new Operation<Object>() {
             public Object invoke (Connection conn, DatabaseLiaison liaison)
                 throws SQLException, PersistenceException
             {
-                String query = "select ITEM_ID from ITEMS where OWNER_ID = " + playerId +
-                    " and GANG_OWNED = false";
+                String query = "select ITEM_ID from ITEMS where OWNER_ID in " +
+                    StringUtil.toString(ownerIds.iterator(), "(", ")") + " and GANG_OWNED = false";
                 Statement stmt = conn.createStatement();
                 try {
                     ResultSet rs = stmt.executeQuery(query);
@@ -407,9 +511,16 @@ public class ItemRepository extends SimpleRepository
             return new ArrayIntSet();
         }
 
-        // serialize the item prototype
-        final ByteArrayOutInputStream out = persistItem(item),
-            aout = (alt == null) ? null : persistItem(alt);
+        // serialize the item prototype; if it (and the alternate) do not allow duplicates, we can
+        // match their digests through the index rather than comparing data
+        byte[] data = persistItem(item).toByteArray(),
+            adata = (alt == null) ? null : persistItem(alt).toByteArray();
+        byte[] digest = digestItem(item, data),
+            adigest = (alt == null) ? null : digestItem(alt, adata);
+        final boolean digested = (digest != null && (alt == null || adigest != null));
+        final byte[] match = digested ? digest : data,
+            amatch = (alt == null) ? null : (digested ? adigest : adata);
+        final String column = digested ? "ITEM_DIGEST" : "ITEM_DATA";
         final int itemType = getItemType(item);
         final ArrayIntSet owners = new ArrayIntSet();
         execute(new Operation<Object>() {
@@ -419,13 +530,13 @@ public class ItemRepository extends SimpleRepository
                 PreparedStatement stmt = conn.prepareStatement(
                     "select OWNER_ID from ITEMS where GANG_OWNED = FALSE and OWNER_ID in " +
                     StringUtil.toString(playerIds.iterator(), "(", ")") +
-                    " and ITEM_TYPE = ? and (ITEM_DATA = ?" +
-                    (aout == null ? ")" : " or ITEM_DATA = ?)"));
+                    " and ITEM_TYPE = ? and (" + column + " = ?" +
+                    (amatch == null ? ")" : " or " + column + " = ?)"));
                 try {
                     stmt.setInt(1, itemType);
-                    stmt.setBinaryStream(2, out.getInputStream(), out.size());
-                    if (aout != null) {
-                        stmt.setBinaryStream(3, aout.getInputStream(), out.size());
+                    stmt.setBytes(2, match);
+                    if (amatch != null) {
+                        stmt.setBytes(3, amatch);
                     }
                     ResultSet rs = stmt.executeQuery();
                     while (rs.next()) {
@@ -511,6 +622,44 @@ public class ItemRepository extends SimpleRepository
         }
     }
 
+    /**
+     * Writes the serialized data of an item over its existing row.
+     */
+    protected void updateItem (Connection conn, Item item, byte[] itemData, byte[] itemDigest)
+        throws SQLException, PersistenceException
+    {
+        PreparedStatement stmt = conn.prepareStatement(
+            "update ITEMS set ITEM_DATA = ?, ITEM_DIGEST = ?, EXPIRES = ? where ITEM_ID = ?");
+        try {
+            stmt.setBytes(1, itemData);
+            stmt.setBytes(2, itemDigest);
+            stmt.setDate(3, item.getExpiryDate());
+            stmt.setInt(4, item.getItemId());
+            JDBCUtil.checkedUpdate(stmt, 1);
+
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Computes the digest of the serialized form of the specified item, which is stored with the
+     * item so that duplicates can be detected through the index.
+     *
+     * @return the digest, or <code>null</code> if the item allows duplicates.
+     */
+    protected static byte[] digestItem (Item item, byte[] itemData)
+    {
+        if (item.allowsDuplicates()) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("MD5").digest(itemData);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("JVM does not support MD5!?", nsae);
+        }
+    }
+
     /**
      * Returns the integer item type of the specified item.
      */
@@ -539,8 +688,101 @@ public class ItemRepository extends SimpleRepository
             "GANG_ID INTEGER NOT NULL",
             "ITEM_TYPE INTEGER NOT NULL",
             "ITEM_DATA BLOB NOT NULL",
+            "ITEM_DIGEST BINARY(16) DEFAULT NULL",
             "PRIMARY KEY (ITEM_ID)",
             "KEY (OWNER_ID)",
+            "UNIQUE KEY ITEM_DIGEST_INDEX (OWNER_ID, GANG_OWNED, ITEM_TYPE, ITEM_DIGEST)",
         }, "");
+
+        // TEMP: add and populate the item digest column
+        if (!JDBCUtil.tableContainsColumn(conn, "ITEMS", "ITEM_DIGEST")) {
+            JDBCUtil.addColumn(conn, "ITEMS", "ITEM_DIGEST", "BINARY(16) DEFAULT NULL",
+                               "ITEM_DATA");
+            digestItems(conn);
+            Statement stmt = conn.createStatement();
+            try {
+                stmt.executeUpdate("alter table ITEMS add UNIQUE KEY ITEM_DIGEST_INDEX " +
+                                   "(OWNER_ID, GANG_OWNED, ITEM_TYPE, ITEM_DIGEST)");
+            } finally {
+                JDBCUtil.close(stmt);
+            }
+        }
+        // END TEMP
     }
+
+    /**
+     * Computes and stores the digests of all existing items that do not allow duplicates.  Where
+     * an owner already holds duplicates, only the first is given a digest.  The items are read in
+     * chunks of {@link #DIGEST_CHUNK} in order of owner (then id) and their digests are written a
+     * chunk at a time.
+     */
+    protected void digestItems (Connection conn)
+        throws SQLException, PersistenceException
+    {
+        PreparedStatement qstmt = conn.prepareStatement(
+            "select ITEM_ID, ITEM_TYPE, GANG_OWNED, OWNER_ID, ITEM_DATA from ITEMS " +
+            "where OWNER_ID > ? or (OWNER_ID = ? and ITEM_ID > ?) " +
+            "order by OWNER_ID, ITEM_ID limit " + DIGEST_CHUNK);
+        PreparedStatement ustmt = conn.prepareStatement(
+            "update ITEMS set ITEM_DIGEST = ? where ITEM_ID = ?");
+        try {
+            // the digests of the current owner's items, prefixed by ownership and type
+            HashSet<String> digests = new HashSet<String>();
+            int lastOwnerId = Integer.MIN_VALUE, lastItemId = 0, digested = 0, duplicates = 0;
+            int read;
+            do {
+                qstmt.setInt(1, lastOwnerId);
+                qstmt.setInt(2, lastOwnerId);
+                qstmt.setInt(3, lastItemId);
+                ResultSet rs = qstmt.executeQuery();
+                int batched = 0;
+                for (read = 0; rs.next(); read++) {
+                    int itemId = rs.getInt(1), itemType = rs.getInt(2), ownerId = rs.getInt(4);
+                    boolean gangOwned = rs.getBoolean(3);
+                    byte[] data = rs.getBytes(5);
+                    if (ownerId != lastOwnerId) {
+                        digests.clear();
+                        lastOwnerId = ownerId;
+                    }
+                    lastItemId = itemId;
+                    Item item;
+                    try {
+                        item = decodeItem(itemId, itemType, gangOwned, ownerId, data, 0, null);
+                    } catch (PersistenceException pe) {
+                        log.warning("Not digesting undecodable item", "itemId", itemId, pe);
+                        continue;
+                    }
+                    byte[] digest = digestItem(item, data);
+                    if (digest == null) {
+                        continue;
+                    }
+                    if (!digests.add(gangOwned + ":" + itemType + ":" +
+                                     StringUtil.hexlate(digest))) {
+                        duplicates++;
+                        continue;
+                    }
+                    ustmt.setBytes(1, digest);
+                    ustmt.setInt(2, itemId);
+                    ustmt.addBatch();
+                    batched++;
+                }
+                rs.close();
+                if (batched > 0) {
+                    ustmt.executeBatch();
+                    digested += batched;
+                }
+            } while (read == DIGEST_CHUNK);
+            log.info("Digested items", "digested", digested, "duplicates", duplicates);
+
+        } finally {
+            JDBCUtil.close(ustmt);
+            JDBCUtil.close(qstmt);
+        }
+    }
+
+    /** The number of items read at a time when computing the digests of existing items. */
+    protected static final int DIGEST_CHUNK = 1000;
+
+    /** The maximum number of rows we insert with a single statement. */
+    protected static final int MAX_ROWS_PER_INSERT = 500;
 }
@@ -19,6 +19,8 @@ import com.samskivert.jdbc.ConnectionProvider;
 import com.samskivert.jdbc.DatabaseLiaison;
 import com.samskivert.jdbc.JDBCUtil;
 import com.samskivert.jdbc.SimpleRepository;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.StringUtil;
 
 import com.threerings.util.MessageBundle;
 import com.threerings.util.Name;
@@ -229,6 +231,16 @@ public class PardnerRepository extends SimpleRepository
                " or PLAYER_ID2 = " + playerId);
     }
 
+    /**
+     * Removes all pardner relationships involving any of the specified players.
+     */
+    public void removeAllPardners (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        String ids = StringUtil.toString(playerIds.iterator(), "(", ")");
+        update("delete from PARDNERS where PLAYER_ID1 in " + ids + " or PLAYER_ID2 in " + ids);
+    }
+
     /**
      * Returns the number of active pardnerships to which the specified player belongs.
      */
@@ -29,6 +29,9 @@ import com.samskivert.jdbc.JDBCUtil;
 import com.samskivert.jdbc.JORARepository;
 import com.samskivert.jdbc.jora.FieldMask;
 import com.samskivert.jdbc.jora.Table;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.StringUtil;
+import com.samskivert.util.Tuple;
 
 import com.threerings.util.Name;
 
@@ -254,6 +257,24 @@ public class PlayerRepository extends JORARepository
         updateScrip("PLAYER_ID = " + playerId + " and SCRIP >= " + amount, amount, "spend");
     }
 
+    /**
+     * Deducts the specified amount of scrip from the specified player's account using the supplied
+     * connection, so that the deduction may be made in the same transaction as changes to other
+     * tables of the database.
+     */
+    public void spendScrip (Connection conn, int playerId, int amount)
+        throws SQLException, PersistenceException
+    {
+        String where = "PLAYER_ID = " + playerId + " and SCRIP >= " + amount;
+        Statement stmt = conn.createStatement();
+        try {
+            checkScripUpdate(where, amount, "spend",
+                             stmt.executeUpdate(getScripUpdate(where, amount, "spend")));
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
     /**
      * Adds the specified amount of scrip to the specified player's account.
      */
@@ -324,15 +345,76 @@ public class PlayerRepository extends JORARepository
     }
 
     /**
-     * Returns 5 player records that can be expired.
+     * Loads players whose last session began before the specified cutoff, in order of their last
+     * session, skipping coin buyers (who are never expired).
+     *
+     * @param anonymous if true, only players who never chose a handle are loaded.
+     * @param after the last session time and id of the player after which to resume, or
+     * <code>null</code> to start with the earliest.
+     */
+    public ArrayList<PlayerRecord> loadExpiredPlayers (
+        Date cutoff, boolean anonymous, Tuple<Timestamp, Integer> after, int count)
+        throws PersistenceException
+    {
+        StringBuilder where = new StringBuilder("where LAST_SESSION < '").append(cutoff);
+        where.append("' and FLAGS & ").append(PlayerRecord.IS_COIN_BUYER).append(" = 0");
+        if (anonymous) {
+            where.append(" and HANDLE is NULL");
+        }
+        if (after != null) {
+            where.append(" and (LAST_SESSION > '").append(after.left).append("' or ");
+            where.append("(LAST_SESSION = '").append(after.left).append("' and PLAYER_ID > ");
+            where.append(after.right).append("))");
+        }
+        where.append(" order by LAST_SESSION, PLAYER_ID limit ").append(count);
+        return loadAll(_ptable, where.toString());
+    }
+
+    /**
+     * Deletes the specified players' records.  Their associated data should be deleted first.
      */
-    public ArrayList<PlayerRecord> loadExpiredPlayers (Date anon, Date user)
+    public void deletePlayers (ArrayIntSet playerIds)
         throws PersistenceException
     {
-        return loadAll(_ptable, "where FLAGS & " + PlayerRecord.IS_COIN_BUYER + " = 0 and " +
-                "((HANDLE is NULL and LAST_SESSION < '" + anon + "') " +
-                "or LAST_SESSION < '" + user + "'" +
-                ") order by LAST_SESSION asc limit " + MAX_EXPIRED_PLAYERS_PER_CALL);
+        update("delete from PLAYERS where PLAYER_ID in " +
+               StringUtil.toString(playerIds.iterator(), "(", ")"));
+    }
+
+    /**
+     * Loads the last session time and id of the last player processed by the specified purge, or
+     * returns <code>null</code> if no progress has been recorded.
+     */
+    public Tuple<Timestamp, Integer> loadPurgeProgress (final String purge)
+        throws PersistenceException
+    {
+        return execute(new Operation<Tuple<Timestamp, Integer>>() {
+            public Tuple<Timestamp, Integer> invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(
+                        "select LAST_SESSION, PLAYER_ID from PURGE_PROGRESS where PURGE = " +
+                        JDBCUtil.escape(purge));
+                    return rs.next() ?
+                        new Tuple<Timestamp, Integer>(rs.getTimestamp(1), rs.getInt(2)) : null;
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the last session time and id of the last player processed by the specified purge.
+     */
+    public void notePurgeProgress (String purge, Tuple<Timestamp, Integer> progress)
+        throws PersistenceException
+    {
+        update("insert into PURGE_PROGRESS (PURGE, LAST_SESSION, PLAYER_ID) values (" +
+               JDBCUtil.escape(purge) + ", '" + progress.left + "', " + progress.right + ") " +
+               "on duplicate key update LAST_SESSION = values(LAST_SESSION), " +
+               "PLAYER_ID = values(PLAYER_ID)");
     }
 
     /**
@@ -396,6 +478,16 @@ public class PlayerRepository extends JORARepository
         update("delete from FOLKS where PLAYER_ID = " + playerId + " or TARGET_ID = " + playerId);
     }
 
+    /**
+     * Clears all registered opinions on/of the specified players.
+     */
+    public void clearOpinions (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        String ids = StringUtil.toString(playerIds.iterator(), "(", ")");
+        update("delete from FOLKS where PLAYER_ID in " + ids + " or TARGET_ID in " + ids);
+    }
+
     /**
      * Returns the player id corresponding to the given handle, or -1 if no such player exists.
      */
@@ -481,6 +573,16 @@ public class PlayerRepository extends JORARepository
     /** Helper function for {@link #spendScrip} and {@link #grantScrip}. */
     protected void updateScrip (String where, int amount, String type)
         throws PersistenceException
+    {
+        checkScripUpdate(where, amount, type, update(getScripUpdate(where, amount, type)));
+    }
+
+    /**
+     * Returns the query that grants or spends scrip for the players matching the specified
+     * condition.
+     */
+    protected String getScripUpdate (String where, int amount, String type)
+        throws PersistenceException
     {
         if (amount <= 0) {
             throw new PersistenceException(
@@ -488,9 +590,15 @@ public class PlayerRepository extends JORARepository
         }
 
         String action = type.equals("grant") ? "+" : "-";
-        String query = "update PLAYERS set SCRIP = SCRIP " + action + " " + amount +
-            " where " + where;
-        int mods = update(query);
+        return "update PLAYERS set SCRIP = SCRIP " + action + " " + amount + " where " + where;
+    }
+
+    /**
+     * Checks that a scrip grant or spend modified exactly one row.
+     */
+    protected void checkScripUpdate (String where, int amount, String type, int mods)
+        throws PersistenceException
+    {
         if (mods == 0) {
             throw new PersistenceException("Scrip " + type + " modified zero rows [where=" + where +
                                            ", amount=" + amount + "]");
@@ -535,6 +643,13 @@ public class PlayerRepository extends JORARepository
             "UNIQUE (PLAYER_ID, TARGET_ID)",
         }, "");
 
+        JDBCUtil.createTableIfMissing(conn, "PURGE_PROGRESS", new String[] {
+            "PURGE VARCHAR(32) NOT NULL",
+            "LAST_SESSION DATETIME NOT NULL",
+            "PLAYER_ID INTEGER NOT NULL",
+            "PRIMARY KEY (PURGE)",
+        }, "");
+
         // TEMP: remove gang fields
         JDBCUtil.dropColumn(conn, "PLAYERS", "GANG_ID");
         JDBCUtil.dropColumn(conn, "PLAYERS", "GANG_RANK");
@@ -586,8 +701,4 @@ public class PlayerRepository extends JORARepository
     protected Table<PlayerRecord> _ptable;
     protected Table<FolkRecord> _ftable;
     protected FieldMask _byNameMask;
-
-    /** The maximum number of expired players we'll return in a single call (as the server will go
-     * on to delete all the players we return and we don't want to overload it). */
-    protected static final int MAX_EXPIRED_PLAYERS_PER_CALL = 5;
 }
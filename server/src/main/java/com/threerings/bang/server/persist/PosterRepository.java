@@ -15,6 +15,8 @@ import com.samskivert.jdbc.JDBCUtil;
 import com.samskivert.jdbc.DatabaseLiaison;
 import com.samskivert.jdbc.jora.Table;
 import com.samskivert.io.PersistenceException;
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.StringUtil;
 
 /**
  * Manages persistent per-player poster information.
@@ -76,6 +78,16 @@ public class PosterRepository extends JORARepository
         update("delete from POSTERS where PLAYER_ID = " + playerId);
     }
 
+    /**
+     * Deletes the posters for the specified players from the repository.
+     */
+    public void deletePosters (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        update("delete from POSTERS where PLAYER_ID in " +
+               StringUtil.toString(playerIds.iterator(), "(", ")"));
+    }
+
     @Override // from SimpleRepository
     protected void migrateSchema (Connection conn, DatabaseLiaison liaison)
         throws SQLException, PersistenceException
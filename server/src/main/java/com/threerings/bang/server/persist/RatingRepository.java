@@ -10,6 +10,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,6 +24,7 @@ import com.samskivert.jdbc.ConnectionProvider;
 import com.samskivert.jdbc.DatabaseLiaison;
 import com.samskivert.jdbc.JDBCUtil;
 import com.samskivert.jdbc.SimpleRepository;
+import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.IntIntMap;
 import com.samskivert.util.IntTuple;
 import com.samskivert.util.QuickSort;
@@ -34,7 +36,6 @@ import com.threerings.bang.data.BangCodes;
 import com.threerings.bang.data.Handle;
 import com.threerings.bang.data.Rating;
 import com.threerings.bang.game.data.scenario.ScenarioInfo;
-import com.threerings.bang.saloon.data.TopRankedList;
 import com.threerings.bang.server.ServerConfig;
 
 /**
@@ -88,6 +89,36 @@ public class RatingRepository extends SimpleRepository
         }
     }
 
+    /** A player's rating in a single scenario and week, as shown in the top-ranked lists. */
+    public static class PlayerRating
+    {
+        public int playerId;
+        public Handle handle;
+        public String scenario;
+        public Date week;
+        public int rating;
+        public int experience;
+        public long lastPlayed;
+
+        public PlayerRating (int playerId, Handle handle, Rating rating, long lastPlayed)
+        {
+            this(playerId, handle, rating.scenario, rating.week, rating.rating,
+                 rating.experience, lastPlayed);
+        }
+
+        public PlayerRating (int playerId, Handle handle, String scenario, Date week,
+                             int rating, int experience, long lastPlayed)
+        {
+            this.playerId = playerId;
+            this.handle = handle;
+            this.scenario = scenario;
+            this.week = week;
+            this.rating = rating;
+            this.experience = experience;
+            this.lastPlayed = lastPlayed;
+        }
+    }
+
     public static String whereWeek (Date week)
     {
         return "WEEK " + (week == null ? "IS NULL" : " ='" + week + "'");
@@ -145,6 +176,59 @@ public class RatingRepository extends SimpleRepository
         return rats;
     }
 
+    /**
+     * Loads the lifetime ratings and the ratings for each of the specified weeks for the specified
+     * player with a single query.
+     *
+     * @return a map from week to ratings, with the lifetime ratings mapped to <code>null</code>.
+     * Each of the requested periods is present in the map, even if the player has no ratings for
+     * it.
+     */
+    public HashMap<Date, HashMap<String, Rating>> loadRatings (
+        final int playerId, final Date[] weeks)
+        throws PersistenceException
+    {
+        final HashMap<Date, HashMap<String, Rating>> rats =
+            new HashMap<Date, HashMap<String, Rating>>();
+        rats.put(null, new HashMap<String, Rating>());
+        StringBuilder query = new StringBuilder("select SCENARIO, WEEK, RATING, EXPERIENCE " +
+            "from RATINGS where PLAYER_ID = " + playerId + " and (WEEK IS NULL");
+        if (weeks.length > 0) {
+            query.append(" or WEEK in (");
+            for (int ii = 0; ii < weeks.length; ii++) {
+                rats.put(weeks[ii], new HashMap<String, Rating>());
+                query.append(ii > 0 ? ", '" : "'").append(weeks[ii]).append("'");
+            }
+            query.append(")");
+        }
+        final String fquery = query.append(")").toString();
+        execute(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(fquery);
+                    while (rs.next()) {
+                        Rating rat = new Rating();
+                        rat.scenario = rs.getString(1);
+                        rat.week = rs.getDate(2);
+                        rat.rating = rs.getInt(3);
+                        rat.experience = rs.getInt(4);
+                        HashMap<String, Rating> map = rats.get(rat.week);
+                        if (map != null) {
+                            map.put(rat.scenario, rat);
+                        }
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+        return rats;
+    }
+
     /**
      * Deletes the ratings for the specified player.
      */
@@ -154,6 +238,16 @@ public class RatingRepository extends SimpleRepository
         update("delete from RATINGS where PLAYER_ID = " + playerId);
     }
 
+    /**
+     * Deletes the ratings for the specified players.
+     */
+    public void deleteRatings (ArrayIntSet playerIds)
+        throws PersistenceException
+    {
+        update("delete from RATINGS where PLAYER_ID in " +
+               StringUtil.toString(playerIds.iterator(), "(", ")"));
+    }
+
     /**
      * Deletes the ratings for weeks before the specified date.
      */
@@ -218,67 +312,78 @@ public class RatingRepository extends SimpleRepository
     }
 
     /**
-     * Loads the top-ranked players in each of the supplied scenario types.
-     *
-     * @param join an additional table to join (e.g., "GANG_MEMBERS")
-     * @param where additions to the where clause (e.g., "RATINGS.PLAYER_ID =
-     * GANG_MEMBERS.PLAYER_ID and GANG_ID = 32"), or <code>null</code> for none
+     * Loads the highest ratings in each of the supplied scenario types, omitting those that would
+     * not appear in the top-ranked lists (stale lifetime ratings and weekly ratings without enough
+     * experience).
      */
-    public ArrayList<TopRankedList> loadTopRanked (final String[] scenarios, final String join,
-            final String where, final int count, final Date week)
+    public ArrayList<PlayerRating> loadTopRatings (
+        final String[] scenarios, final Date week, final int count)
         throws PersistenceException
     {
-        final ArrayList<TopRankedList> lists = new ArrayList<TopRankedList>();
+        final ArrayList<PlayerRating> ratings = new ArrayList<PlayerRating>();
         execute(new Operation<Object>() {
             public Object invoke (Connection conn, DatabaseLiaison liaison)
                 throws SQLException, PersistenceException
             {
-                String query = "select RATINGS.PLAYER_ID, HANDLE " +
-                    "from RATINGS, PLAYERS" +
-                    (join == null ? "" : (", " + join)) +
-                    " where RATINGS.SCENARIO = ? and " + whereWeek(week) + " " +
-                    (where == null ? "" : ("and " + where + " ")) +
+                String query = "select RATINGS.PLAYER_ID, HANDLE, SCENARIO, WEEK, RATING, " +
+                    "EXPERIENCE, LAST_PLAYED from RATINGS, PLAYERS " +
+                    "where RATINGS.SCENARIO = ? and " + whereWeek(week) + " " +
                     (week == null ? ("and LAST_PLAYED > " + STALE_DATE + " ") :
                                      "and EXPERIENCE > 10 ") +
                     "and RATINGS.PLAYER_ID = PLAYERS.PLAYER_ID " +
                     "order by RATING desc limit " + count;
                 PreparedStatement stmt = conn.prepareStatement(query);
-
                 try {
                     for (String scenario : scenarios) {
-                        // load the info from the database
-                        ArrayList<Handle> handles = new ArrayList<Handle>();
-                        ArrayList<Integer> ids = new ArrayList<Integer>();
                         stmt.setString(1, scenario);
-                        ResultSet rs = stmt.executeQuery();
-                        while (rs.next()) {
-                            ids.add(rs.getInt(1));
-                            handles.add(new Handle(rs.getString(2)));
-                        }
-                        if (ids.isEmpty()) {
-                            continue;
-                        }
+                        readRatings(stmt.executeQuery(), ratings);
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+        return ratings;
+    }
 
-                        // convert it into a TopRankedList object
-                        TopRankedList list = new TopRankedList();
-                        list.week = week;
-                        list.criterion = scenario;
-                        list.playerIds = new int[ids.size()];
-                        list.players = new Handle[handles.size()];
-                        for (int ii = 0; ii < list.playerIds.length; ii++) {
-                            list.playerIds[ii] = ids.get(ii);
-                            list.players[ii] = handles.get(ii);
+    /**
+     * Loads the lifetime ratings and the weekly ratings since the specified week for the
+     * specified players.
+     */
+    public ArrayList<PlayerRating> loadRatings (final int[] playerIds, final Date since)
+        throws PersistenceException
+    {
+        final ArrayList<PlayerRating> ratings = new ArrayList<PlayerRating>();
+        execute(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    for (int ii = 0; ii < playerIds.length; ii += MAX_IDS_PER_QUERY) {
+                        StringBuilder ids = new StringBuilder();
+                        int end = Math.min(playerIds.length, ii + MAX_IDS_PER_QUERY);
+                        for (int jj = ii; jj < end; jj++) {
+                            if (jj > ii) {
+                                ids.append(",");
+                            }
+                            ids.append(playerIds[jj]);
                         }
-                        lists.add(list);
+                        readRatings(stmt.executeQuery(
+                            "select RATINGS.PLAYER_ID, HANDLE, SCENARIO, WEEK, RATING, " +
+                            "EXPERIENCE, LAST_PLAYED from RATINGS, PLAYERS " +
+                            "where RATINGS.PLAYER_ID in (" + ids + ") " +
+                            "and (WEEK IS NULL or WEEK >= '" + since + "') " +
+                            "and RATINGS.PLAYER_ID = PLAYERS.PLAYER_ID"), ratings);
                     }
-
                 } finally {
                     JDBCUtil.close(stmt);
                 }
                 return null;
             }
         });
-        return lists;
+        return ratings;
     }
 
     /**
@@ -713,6 +818,24 @@ public class RatingRepository extends SimpleRepository
         protected IntIntMap _buckets = new IntIntMap();
     }
 
+    /**
+     * Reads the {@link PlayerRating}s selected by one of our queries and closes the result set.
+     */
+    protected static void readRatings (ResultSet rs, ArrayList<PlayerRating> ratings)
+        throws SQLException
+    {
+        try {
+            while (rs.next()) {
+                Timestamp lastPlayed = rs.getTimestamp(7);
+                ratings.add(new PlayerRating(
+                    rs.getInt(1), new Handle(rs.getString(2)), rs.getString(3), rs.getDate(4),
+                    rs.getInt(5), rs.getInt(6), (lastPlayed == null) ? 0L : lastPlayed.getTime()));
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
     /**
      * The percentage of users that must have a lower rating than you
      * in order for you to be a part of a given rank.
@@ -724,4 +847,7 @@ public class RatingRepository extends SimpleRepository
      * considered when calculating standings or for top scores. */
     protected static final String STALE_DATE =
         "DATE_SUB(NOW(), INTERVAL 2 WEEK)";
+
+    /** The maximum number of player ids we include in a single <code>in</code> clause. */
+    protected static final int MAX_IDS_PER_QUERY = 500;
 }
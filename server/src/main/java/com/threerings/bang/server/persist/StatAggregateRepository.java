@@ -0,0 +1,781 @@
+//
+// $Id$
+
+package com.threerings.bang.server.persist;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.ConnectionProvider;
+import com.samskivert.jdbc.DatabaseLiaison;
+import com.samskivert.jdbc.JDBCUtil;
+import com.samskivert.jdbc.SimpleRepository;
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntTuple;
+import com.samskivert.util.Tuple;
+
+import com.threerings.stats.data.IntStat;
+import com.threerings.stats.data.Stat;
+import com.threerings.stats.data.StringSetStat;
+
+/**
+ * Maintains precomputed summaries of the persistent stats: for each stat, the number of players
+ * holding it and the sum of their values, the number of holders of each value (bucketed for
+ * integer stats) and the players with the highest values of integer stats.  The summaries are
+ * updated incrementally as stats are written (see {@link BangStatRepository}) and are initially
+ * computed by a backfill, which scans the stats of each type in chunks ordered by player id.
+ * Stats are only summarized for the players the backfill has already passed.
+ *
+ * <p> So that the leaders can be refilled when one of them drops out, more candidates than are
+ * reported are kept for each stat, along with a floor that no holder who isn't a candidate
+ * exceeds.  Should fewer than {@link #LEADER_COUNT} candidates reach the floor, the candidates are
+ * rebuilt from the stored stats.
+ */
+@Singleton
+public class StatAggregateRepository extends SimpleRepository
+{
+    /**
+     * The database identifier used when establishing a database connection. This value being
+     * <code>statdb</code>.
+     */
+    public static final String STAT_DB_IDENT = "statdb";
+
+    /** The number of players with the highest values tracked for each integer stat. */
+    public static final int LEADER_COUNT = 100;
+
+    /** The number of candidates for the leaders kept for each integer stat. */
+    public static final int LEADER_DEPTH = 2 * LEADER_COUNT;
+
+    /** The (inclusive) upper bounds of the buckets into which integer stat values are counted;
+     * values beyond the last are counted in a final bucket. */
+    public static final int[] INT_BUCKETS = {
+        0, 1, 2, 3, 4, 5, 10, 20, 50, 100, 200, 500, 1000, 5000, 10000, 50000 };
+
+    /** Accumulates the changes to the summaries of a single stat. */
+    public static class Delta
+    {
+        /** The code of the stat being summarized. */
+        public final int statCode;
+
+        /** The change in the number of holders. */
+        public int holders;
+
+        /** The change in the sum of the holders' values. */
+        public long total;
+
+        /** The changes in the number of holders of each value (or bucket). */
+        public HashMap<String, Integer> counts = new HashMap<String, Integer>();
+
+        public Delta (int statCode)
+        {
+            this.statCode = statCode;
+        }
+
+        /**
+         * Adds (if <code>sign</code> is 1) or removes (if -1) the contribution of the supplied
+         * stat.
+         */
+        public void add (Stat stat, int sign)
+        {
+            holders += sign;
+            if (stat instanceof IntStat) {
+                int value = ((IntStat)stat).getValue();
+                total += sign * value;
+                count(getBucket(value), sign);
+            } else if (stat instanceof StringSetStat) {
+                for (String value : ((StringSetStat)stat).values()) {
+                    total += sign;
+                    count(value, sign);
+                }
+            }
+        }
+
+        /**
+         * Returns true if this delta doesn't change anything.
+         */
+        public boolean isEmpty ()
+        {
+            if (holders != 0 || total != 0) {
+                return false;
+            }
+            for (Integer count : counts.values()) {
+                if (count != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected void count (String value, int sign)
+        {
+            Integer count = counts.get(value);
+            counts.put(value, (count == null ? 0 : count) + sign);
+        }
+    }
+
+    /** The precomputed summary of a single stat. */
+    public static class Rollup
+    {
+        /** The number of players holding the stat. */
+        public int holders;
+
+        /** The sum of the holders' values (or the sizes of their sets). */
+        public long total;
+
+        /** The number of holders of each value, or of each bucket for integer stats (in order). */
+        public LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+        /** The players with the highest values (for integer stats), highest first. */
+        public ArrayList<Leader> leaders = new ArrayList<Leader>();
+
+        /** Whether the backfill of this stat has completed, which is to say whether the summary
+         * covers all players. */
+        public boolean complete;
+
+        /**
+         * Returns the average value held by a holder.
+         */
+        public float getAverage ()
+        {
+            return (holders == 0) ? 0f : (total / (float)holders);
+        }
+    }
+
+    /** One of the players with the highest values of a stat. */
+    public static class Leader
+    {
+        public int playerId;
+        public String accountName;
+        public String handle;
+        public int value;
+    }
+
+    /** Reads the stored stats being summarized. */
+    public static interface StatReader
+    {
+        /**
+         * Reads the stats of the type being summarized held by up to <code>count</code> players
+         * after the specified player, in order of player id, adding those that can be decoded
+         * (with the ids of their holders) to the supplied list.
+         *
+         * @return the number of rows read (including any that could not be decoded) and the id of
+         * the last player read.
+         */
+        public IntTuple readStats (Connection conn, int afterPlayerId, int count,
+                                   List<Tuple<Integer, Stat>> stats)
+            throws SQLException;
+    }
+
+    /**
+     * Returns the label of the bucket into which the specified integer stat value is counted.
+     */
+    public static String getBucket (int value)
+    {
+        for (int bound : INT_BUCKETS) {
+            if (value <= bound) {
+                return String.valueOf(bound);
+            }
+        }
+        return INT_BUCKETS[INT_BUCKETS.length-1] + "+";
+    }
+
+    /**
+     * Constructs a new stat aggregate repository with the specified connection provider.
+     *
+     * @param conprov the connection provider via which we will obtain our database connection.
+     */
+    @Inject public StatAggregateRepository (ConnectionProvider conprov)
+        throws PersistenceException
+    {
+        super(conprov, STAT_DB_IDENT);
+    }
+
+    /**
+     * Loads the progress of the backfills of all stats.
+     *
+     * @return a map from stat code to the id of the last player whose stats have been summarized
+     * (or {@link Integer#MAX_VALUE} for stats whose backfills have completed).
+     */
+    public HashIntMap<Integer> loadBackfillProgress ()
+        throws PersistenceException
+    {
+        final HashIntMap<Integer> progress = new HashIntMap<Integer>();
+        execute(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(
+                        "select STAT_CODE, LAST_PLAYER_ID, COMPLETE from STAT_BACKFILLS");
+                    while (rs.next()) {
+                        progress.put(rs.getInt(1),
+                                     rs.getBoolean(3) ? Integer.MAX_VALUE : rs.getInt(2));
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+        return progress;
+    }
+
+    /**
+     * Clears the summaries of the specified stat and notes that its backfill is starting.
+     */
+    public void startBackfill (final int statCode)
+        throws PersistenceException
+    {
+        executeUpdate(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    for (String table : SUMMARY_TABLES) {
+                        stmt.executeUpdate(
+                            "delete from " + table + " where STAT_CODE = " + statCode);
+                    }
+                    stmt.executeUpdate("insert into STAT_BACKFILLS " +
+                                       "(STAT_CODE, LAST_PLAYER_ID, COMPLETE) " +
+                                       "values (" + statCode + ", 0, false)");
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Summarizes the next chunk of the backfill of the specified stat and notes the backfill's
+     * progress.  The backfill's row is locked before the chunk is read, and the chunk is read and
+     * summarized in the same transaction, so that the stats read agree with the progress seen by
+     * concurrent calls to {@link #applyDeltas} (which hold the lock while their stats are
+     * written).  The stats must therefore be stored in the same database as the summaries.
+     *
+     * @param chunkSize the maximum number of stats to read.
+     * @return the number of stats summarized, or -1 if the backfill has completed (or has been
+     * cleared).
+     */
+    public int backfillChunk (final int statCode, final int chunkSize, final StatReader reader)
+        throws PersistenceException
+    {
+        return executeUpdate(new Operation<Integer>() {
+            public Integer invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                HashIntMap<Integer> backfills =
+                    lockBackfills(conn, String.valueOf(statCode), true);
+                Integer progress = backfills.get(statCode);
+                if (progress == null || progress == Integer.MAX_VALUE) {
+                    return -1;
+                }
+                ArrayList<Tuple<Integer, Stat>> chunk = new ArrayList<Tuple<Integer, Stat>>();
+                IntTuple scanned = reader.readStats(conn, progress, chunkSize, chunk);
+                boolean complete = (scanned.left < chunkSize);
+
+                // summarize the chunk, noting the highest integer values
+                Delta delta = new Delta(statCode);
+                ArrayList<IntTuple> leaders = new ArrayList<IntTuple>();
+                for (Tuple<Integer, Stat> entry : chunk) {
+                    delta.add(entry.right, 1);
+                    if (entry.right instanceof IntStat) {
+                        leaders.add(new IntTuple(entry.left, ((IntStat)entry.right).getValue()));
+                    }
+                }
+                int floor = trimLeaders(leaders, Integer.MIN_VALUE);
+
+                applyDelta(conn, delta);
+                for (IntTuple leader : leaders) {
+                    noteValue(conn, statCode, leader.left, leader.right);
+                }
+                raiseLeaderFloor(conn, statCode, floor);
+                int last = (scanned.left == 0) ? progress : scanned.right;
+                Statement stmt = conn.createStatement();
+                try {
+                    stmt.executeUpdate("update STAT_BACKFILLS set LAST_PLAYER_ID = " + last +
+                                       ", COMPLETE = " + complete +
+                                       " where STAT_CODE = " + statCode);
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                if (isDepleted(conn, statCode)) {
+                    rebuildLeaders(conn, statCode, complete ? Integer.MAX_VALUE : last,
+                                   chunkSize, reader);
+                }
+                return chunk.size();
+            }
+        });
+    }
+
+    /**
+     * Writes a player's stats and applies the changes to their summaries.  Changes to stats whose
+     * backfill has not yet reached the player are discarded, as the backfill will pick them up.
+     * The backfills' rows are locked (shared with other writers) before the stats are written and
+     * until the changes have been applied, so that a backfill reads a player's stats either before
+     * they're written (and sees the changes applied) or after (and sees them discarded).
+     *
+     * @param deltas the changes to the summaries of each stat.
+     * @param values the new values of the player's integer stats, mapped by stat code.
+     * @param removed the codes of any integer stats that the player no longer holds.
+     * @param write writes the player's stats (using a connection of its own).
+     * @return the codes of any stats whose leaders must be rebuilt (see {@link #rebuildLeaders}).
+     */
+    public List<Integer> applyDeltas (final int playerId, final List<Delta> deltas,
+                                      final Map<Integer, Integer> values,
+                                      final List<Integer> removed, final Runnable write)
+        throws PersistenceException
+    {
+        if (deltas.isEmpty()) {
+            write.run();
+            return Collections.emptyList();
+        }
+        return executeUpdate(new Operation<List<Integer>>() {
+            public List<Integer> invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                StringBuilder codes = new StringBuilder();
+                for (Delta delta : deltas) {
+                    codes.append(codes.length() == 0 ? "" : ", ").append(delta.statCode);
+                }
+                HashIntMap<Integer> progress = lockBackfills(conn, codes.toString(), false);
+                write.run();
+                for (Delta delta : deltas) {
+                    if (isSummarized(progress, delta.statCode, playerId)) {
+                        applyDelta(conn, delta);
+                    }
+                }
+                // note the stats whose candidates were lowered or removed
+                ArrayList<Integer> lowered = new ArrayList<Integer>();
+                for (Map.Entry<Integer, Integer> entry : values.entrySet()) {
+                    if (isSummarized(progress, entry.getKey(), playerId) &&
+                        noteValue(conn, entry.getKey(), playerId, entry.getValue())) {
+                        lowered.add(entry.getKey());
+                    }
+                }
+                Statement stmt = conn.createStatement();
+                try {
+                    for (int statCode : removed) {
+                        if (isSummarized(progress, statCode, playerId) &&
+                            stmt.executeUpdate("delete from STAT_LEADERS where STAT_CODE = " +
+                                               statCode + " and PLAYER_ID = " + playerId) > 0) {
+                            lowered.add(statCode);
+                        }
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+
+                ArrayList<Integer> depleted = new ArrayList<Integer>();
+                for (int statCode : lowered) {
+                    if (isDepleted(conn, statCode)) {
+                        depleted.add(statCode);
+                    }
+                }
+                return depleted;
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the candidates for the leaders of the specified stat from the stored stats of the
+     * players its backfill has passed, if too few remain (see {@link #applyDeltas}).  The
+     * backfill's row is locked exclusively while the stats are read, which holds off the writers
+     * of the stat.
+     *
+     * @param chunkSize the maximum number of stats to read at a time.
+     */
+    public void rebuildLeaders (final int statCode, final int chunkSize, final StatReader reader)
+        throws PersistenceException
+    {
+        executeUpdate(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Integer progress =
+                    lockBackfills(conn, String.valueOf(statCode), true).get(statCode);
+                if (progress != null && isDepleted(conn, statCode)) {
+                    rebuildLeaders(conn, statCode, progress, chunkSize, reader);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Loads the summary of the specified stat.
+     */
+    public Rollup loadRollup (final Stat.Type type)
+        throws PersistenceException
+    {
+        final int statCode = type.code();
+        final Rollup rollup = new Rollup();
+        execute(new Operation<Object>() {
+            public Object invoke (Connection conn, DatabaseLiaison liaison)
+                throws SQLException, PersistenceException
+            {
+                Statement stmt = conn.createStatement();
+                try {
+                    ResultSet rs = stmt.executeQuery(
+                        "select COMPLETE from STAT_BACKFILLS where STAT_CODE = " + statCode);
+                    rollup.complete = rs.next() && rs.getBoolean(1);
+
+                    rs = stmt.executeQuery("select HOLDERS, TOTAL from STAT_SUMMARIES " +
+                                           "where STAT_CODE = " + statCode);
+                    if (rs.next()) {
+                        rollup.holders = rs.getInt(1);
+                        rollup.total = rs.getLong(2);
+                    }
+
+                    HashMap<String, Integer> counts = new HashMap<String, Integer>();
+                    rs = stmt.executeQuery("select VALUE, HOLDERS from STAT_COUNTS " +
+                                           "where STAT_CODE = " + statCode + " and HOLDERS > 0 " +
+                                           "order by VALUE");
+                    while (rs.next()) {
+                        counts.put(rs.getString(1), rs.getInt(2));
+                    }
+                    if (type.newStat() instanceof IntStat) {
+                        // report the buckets in order, including the empty ones
+                        for (int bound : INT_BUCKETS) {
+                            String bucket = getBucket(bound);
+                            Integer count = counts.remove(bucket);
+                            rollup.counts.put(bucket, (count == null) ? 0 : count);
+                        }
+                    }
+                    rollup.counts.putAll(counts);
+
+                    rs = stmt.executeQuery(
+                        "select STAT_LEADERS.PLAYER_ID, ACCOUNT_NAME, HANDLE, VALUE " +
+                        "from STAT_LEADERS, PLAYERS " +
+                        "where STAT_CODE = " + statCode + " " +
+                        "and STAT_LEADERS.PLAYER_ID = PLAYERS.PLAYER_ID " +
+                        "order by VALUE desc limit " + LEADER_COUNT);
+                    while (rs.next()) {
+                        Leader leader = new Leader();
+                        leader.playerId = rs.getInt(1);
+                        leader.accountName = rs.getString(2);
+                        leader.handle = rs.getString(3);
+                        leader.value = rs.getInt(4);
+                        rollup.leaders.add(leader);
+                    }
+                } finally {
+                    JDBCUtil.close(stmt);
+                }
+                return null;
+            }
+        });
+        return rollup;
+    }
+
+    /**
+     * Reads and locks the backfill progress of the specified stats until the end of the current
+     * transaction.
+     *
+     * @param codes a comma separated list of stat codes.
+     * @param exclusive whether to lock the rows exclusively (to advance the backfills) or shared
+     * with other writers of stats.
+     * @return a map from stat code to the id of the last player whose stats have been summarized
+     * (or {@link Integer#MAX_VALUE} for stats whose backfills have completed).
+     */
+    protected HashIntMap<Integer> lockBackfills (Connection conn, String codes, boolean exclusive)
+        throws SQLException
+    {
+        HashIntMap<Integer> progress = new HashIntMap<Integer>();
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(
+                "select STAT_CODE, LAST_PLAYER_ID, COMPLETE from STAT_BACKFILLS " +
+                "where STAT_CODE in (" + codes + ") " +
+                (exclusive ? "for update" : "lock in share mode"));
+            while (rs.next()) {
+                progress.put(rs.getInt(1), rs.getBoolean(3) ? Integer.MAX_VALUE : rs.getInt(2));
+            }
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+        return progress;
+    }
+
+    /**
+     * Determines whether the backfill of the specified stat has reached the specified player,
+     * according to the supplied progress.
+     */
+    protected static boolean isSummarized (
+        HashIntMap<Integer> progress, int statCode, int playerId)
+    {
+        Integer backfilled = progress.get(statCode);
+        return (backfilled != null && playerId <= backfilled);
+    }
+
+    /**
+     * Adds the supplied changes to the summaries.
+     */
+    protected void applyDelta (Connection conn, Delta delta)
+        throws SQLException
+    {
+        if (delta.isEmpty()) {
+            return;
+        }
+        PreparedStatement stmt = conn.prepareStatement(
+            "insert into STAT_SUMMARIES (STAT_CODE, HOLDERS, TOTAL) values (?, ?, ?) " +
+            "on duplicate key update HOLDERS = HOLDERS + values(HOLDERS), " +
+            "TOTAL = TOTAL + values(TOTAL)");
+        try {
+            stmt.setInt(1, delta.statCode);
+            stmt.setInt(2, delta.holders);
+            stmt.setLong(3, delta.total);
+            stmt.executeUpdate();
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+
+        stmt = conn.prepareStatement(
+            "insert into STAT_COUNTS (STAT_CODE, VALUE, HOLDERS) values (?, ?, ?) " +
+            "on duplicate key update HOLDERS = HOLDERS + values(HOLDERS)");
+        try {
+            for (Map.Entry<String, Integer> entry : delta.counts.entrySet()) {
+                if (entry.getValue() != 0) {
+                    stmt.setInt(1, delta.statCode);
+                    stmt.setString(2, entry.getKey());
+                    stmt.setInt(3, entry.getValue());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Records a player's new value of an integer stat in the candidates for the leaders, if
+     * they're already among them or if it's above the floor.  The lowest candidates beyond
+     * {@link #LEADER_DEPTH} are dropped, raising the floor to their values.
+     *
+     * @return true if the player was a candidate whose value was lowered.
+     */
+    protected boolean noteValue (Connection conn, int statCode, int playerId, int value)
+        throws SQLException
+    {
+        Statement stmt = conn.createStatement();
+        try {
+            String where = " where STAT_CODE = " + statCode;
+            ResultSet rs = stmt.executeQuery(
+                "select VALUE from STAT_LEADERS" + where + " and PLAYER_ID = " + playerId);
+            if (rs.next()) {
+                int previous = rs.getInt(1);
+                if (previous != value) {
+                    stmt.executeUpdate("update STAT_LEADERS set VALUE = " + value + where +
+                                       " and PLAYER_ID = " + playerId);
+                }
+                return (value < previous);
+            }
+            if (value <= getLeaderFloor(conn, statCode)) {
+                return false;
+            }
+            stmt.executeUpdate("insert into STAT_LEADERS (STAT_CODE, PLAYER_ID, VALUE) values (" +
+                               statCode + ", " + playerId + ", " + value + ")");
+            rs = stmt.executeQuery("select count(*) from STAT_LEADERS" + where);
+            rs.next();
+            int excess = rs.getInt(1) - LEADER_DEPTH;
+            if (excess > 0) {
+                rs = stmt.executeQuery(
+                    "select max(VALUE) from (select VALUE from STAT_LEADERS" + where +
+                    " order by VALUE limit " + excess + ") as DROPPED");
+                rs.next();
+                int floor = rs.getInt(1);
+                stmt.executeUpdate(
+                    "delete from STAT_LEADERS" + where + " order by VALUE limit " + excess);
+                raiseLeaderFloor(conn, statCode, floor);
+            }
+            return false;
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Returns the floor of the candidates for the leaders of the specified stat.
+     */
+    protected int getLeaderFloor (Connection conn, int statCode)
+        throws SQLException
+    {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(
+                "select LEADER_FLOOR from STAT_SUMMARIES where STAT_CODE = " + statCode);
+            return rs.next() ? rs.getInt(1) : Integer.MIN_VALUE;
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Raises the floor of the candidates for the leaders of the specified stat to the specified
+     * value, if it's higher.
+     */
+    protected void raiseLeaderFloor (Connection conn, int statCode, int floor)
+        throws SQLException
+    {
+        if (floor == Integer.MIN_VALUE) {
+            return;
+        }
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate(
+                "insert into STAT_SUMMARIES (STAT_CODE, HOLDERS, TOTAL, LEADER_FLOOR) " +
+                "values (" + statCode + ", 0, 0, " + floor + ") on duplicate key update " +
+                "LEADER_FLOOR = greatest(LEADER_FLOOR, values(LEADER_FLOOR))");
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Determines whether too few candidates for the leaders of the specified stat remain at or
+     * above its floor for the leaders to be known.
+     */
+    protected boolean isDepleted (Connection conn, int statCode)
+        throws SQLException
+    {
+        int floor = getLeaderFloor(conn, statCode);
+        if (floor == Integer.MIN_VALUE) {
+            return false; // every holder is a candidate
+        }
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("select count(*) from STAT_LEADERS " +
+                                             "where STAT_CODE = " + statCode +
+                                             " and VALUE >= " + floor);
+            rs.next();
+            return (rs.getInt(1) < LEADER_COUNT);
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+    }
+
+    /**
+     * Replaces the candidates for the leaders of the specified stat with the highest values held
+     * by the players up to and including the specified player.  The caller must hold the lock on
+     * the stat's backfill.
+     */
+    protected void rebuildLeaders (Connection conn, int statCode, int lastPlayerId,
+                                   int chunkSize, StatReader reader)
+        throws SQLException
+    {
+        ArrayList<IntTuple> leaders = new ArrayList<IntTuple>();
+        int floor = Integer.MIN_VALUE, after = 0;
+        IntTuple scanned;
+        do {
+            ArrayList<Tuple<Integer, Stat>> chunk = new ArrayList<Tuple<Integer, Stat>>();
+            scanned = reader.readStats(conn, after, chunkSize, chunk);
+            after = scanned.right;
+            for (Tuple<Integer, Stat> entry : chunk) {
+                if (entry.left <= lastPlayerId && entry.right instanceof IntStat) {
+                    leaders.add(new IntTuple(entry.left, ((IntStat)entry.right).getValue()));
+                }
+            }
+            floor = trimLeaders(leaders, floor);
+        } while (scanned.left == chunkSize && after < lastPlayerId);
+
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("delete from STAT_LEADERS where STAT_CODE = " + statCode);
+            stmt.executeUpdate("update STAT_SUMMARIES set LEADER_FLOOR = " + floor +
+                               " where STAT_CODE = " + statCode);
+        } finally {
+            JDBCUtil.close(stmt);
+        }
+        PreparedStatement pstmt = conn.prepareStatement(
+            "insert into STAT_LEADERS (STAT_CODE, PLAYER_ID, VALUE) values (?, ?, ?)");
+        try {
+            for (IntTuple leader : leaders) {
+                pstmt.setInt(1, statCode);
+                pstmt.setInt(2, leader.left);
+                pstmt.setInt(3, leader.right);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } finally {
+            JDBCUtil.close(pstmt);
+        }
+    }
+
+    /**
+     * Sorts the supplied (player id, value) pairs by decreasing value and drops those beyond
+     * {@link #LEADER_DEPTH}.
+     *
+     * @return the higher of the supplied floor and the highest value dropped.
+     */
+    protected static int trimLeaders (List<IntTuple> leaders, int floor)
+    {
+        Collections.sort(leaders, VALUE_ORDER);
+        while (leaders.size() > LEADER_DEPTH) {
+            floor = Math.max(floor, leaders.remove(leaders.size() - 1).right);
+        }
+        return floor;
+    }
+
+    @Override // documentation inherited
+    protected void migrateSchema (Connection conn, DatabaseLiaison liaison)
+        throws SQLException, PersistenceException
+    {
+        JDBCUtil.createTableIfMissing(conn, "STAT_SUMMARIES", new String[] {
+            "STAT_CODE INTEGER NOT NULL",
+            "HOLDERS INTEGER NOT NULL",
+            "TOTAL BIGINT NOT NULL",
+            "LEADER_FLOOR INTEGER NOT NULL DEFAULT " + Integer.MIN_VALUE,
+            "PRIMARY KEY (STAT_CODE)",
+        }, "");
+
+        JDBCUtil.createTableIfMissing(conn, "STAT_COUNTS", new String[] {
+            "STAT_CODE INTEGER NOT NULL",
+            "VALUE VARCHAR(255) NOT NULL",
+            "HOLDERS INTEGER NOT NULL",
+            "PRIMARY KEY (STAT_CODE, VALUE)",
+        }, "");
+
+        JDBCUtil.createTableIfMissing(conn, "STAT_LEADERS", new String[] {
+            "STAT_CODE INTEGER NOT NULL",
+            "PLAYER_ID INTEGER NOT NULL",
+            "VALUE INTEGER NOT NULL",
+            "PRIMARY KEY (STAT_CODE, PLAYER_ID)",
+            "KEY (STAT_CODE, VALUE)",
+        }, "");
+
+        JDBCUtil.createTableIfMissing(conn, "STAT_BACKFILLS", new String[] {
+            "STAT_CODE INTEGER NOT NULL",
+            "LAST_PLAYER_ID INTEGER NOT NULL",
+            "COMPLETE BOOLEAN NOT NULL",
+            "PRIMARY KEY (STAT_CODE)",
+        }, "");
+    }
+
+    /** Orders (player id, value) pairs by decreasing value. */
+    protected static final Comparator<IntTuple> VALUE_ORDER = new Comparator<IntTuple>() {
+        public int compare (IntTuple t1, IntTuple t2) {
+            return (t2.right < t1.right) ? -1 : ((t2.right == t1.right) ? 0 : 1);
+        }
+    };
+
+    /** The tables from which a stat's rows are cleared when its backfill (re)starts. */
+    protected static final String[] SUMMARY_TABLES = {
+        "STAT_SUMMARIES", "STAT_COUNTS", "STAT_LEADERS", "STAT_BACKFILLS" };
+}
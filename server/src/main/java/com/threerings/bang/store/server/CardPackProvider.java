@@ -3,11 +3,14 @@
 
 package com.threerings.bang.store.server;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import com.google.inject.Inject;
 import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.DatabaseLiaison;
 
 import com.threerings.presents.server.InvocationException;
 
@@ -62,15 +65,21 @@ public class CardPackProvider extends Provider
     }
 
     @Override // documentation inherited
-    protected String persistentAction ()
-        throws PersistenceException
+    public boolean isTransactional ()
+    {
+        return true;
+    }
+
+    @Override // documentation inherited
+    protected String transactionalAction (Connection conn, DatabaseLiaison liaison)
+        throws SQLException, PersistenceException
     {
         // insert or update the various items
         for (CardItem item : _items.values()) {
             if (item.getItemId() == 0) {
-                _itemrepo.insertItem(item);
+                _itemrepo.insertItem(conn, liaison, item);
             } else {
-                _itemrepo.updateItem(item);
+                _itemrepo.updateItem(conn, liaison, item);
             }
         }
         return null;
@@ -104,6 +113,7 @@ public class CardPackProvider extends Provider
             if (_user.inventory.contains(item)) {
                 _user.updateInventory(item);
             } else {
+                _itemrepo.noteItemCreated(item);
                 _user.addToInventory(item);
             }
         }
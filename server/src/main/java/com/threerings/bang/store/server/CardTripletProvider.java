@@ -3,8 +3,12 @@
 
 package com.threerings.bang.store.server;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+
 import com.google.inject.Inject;
 import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.DatabaseLiaison;
 
 import com.threerings.presents.server.InvocationException;
 
@@ -51,14 +55,20 @@ public class CardTripletProvider extends Provider
     }
 
     @Override // documentation inherited
-    protected String persistentAction ()
-        throws PersistenceException
+    public boolean isTransactional ()
+    {
+        return true;
+    }
+
+    @Override // documentation inherited
+    protected String transactionalAction (Connection conn, DatabaseLiaison liaison)
+        throws SQLException, PersistenceException
     {
         // insert or update the card item
         if (_item.getItemId() == 0) {
-            _itemrepo.insertItem(_item);
+            _itemrepo.insertItem(conn, liaison, _item);
         } else {
-            _itemrepo.updateItem(_item);
+            _itemrepo.updateItem(conn, liaison, _item);
         }
         return null;
     }
@@ -85,6 +95,7 @@ public class CardTripletProvider extends Provider
         if (_user.inventory.contains(_item)) {
             _user.updateInventory(_item);
         } else {
+            _itemrepo.noteItemCreated(_item);
             _user.addToInventory(_item);
         }
 
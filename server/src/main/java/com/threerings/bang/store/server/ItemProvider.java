@@ -3,8 +3,12 @@
 
 package com.threerings.bang.store.server;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+
 import com.google.inject.Inject;
 import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.DatabaseLiaison;
 import com.threerings.presents.server.InvocationException;
 
 import com.threerings.bang.data.PlayerObject;
@@ -29,12 +33,18 @@ public class ItemProvider extends Provider
     }
 
     @Override // documentation inherited
-    protected String persistentAction ()
-        throws PersistenceException
+    public boolean isTransactional ()
+    {
+        return true;
+    }
+
+    @Override // documentation inherited
+    protected String transactionalAction (Connection conn, DatabaseLiaison liaison)
+        throws SQLException, PersistenceException
     {
         // we check here as well as on the dobj thread because another server may have
         // created the item
-        return (_itemrepo.insertItem(_item) ? null : "m.already_owned");
+        return (_itemrepo.insertItem(conn, liaison, _item) ? null : "m.already_owned");
     }
 
     @Override // documentation inherited
@@ -47,6 +57,7 @@ public class ItemProvider extends Provider
     @Override // documentation inherited
     protected void actionCompleted ()
     {
+        _itemrepo.noteItemCreated(_item);
         _user.addToInventory(_item);
         super.actionCompleted();
     }
@@ -0,0 +1,366 @@
+//
+// $Id$
+
+package com.threerings.bang.tests.server;
+
+import java.sql.Date;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.StaticConnectionProvider;
+import com.samskivert.servlet.user.Password;
+import com.samskivert.servlet.user.Username;
+import com.samskivert.util.ResultListener;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.net.AuthRequest;
+import com.threerings.presents.net.AuthResponse;
+import com.threerings.presents.net.AuthResponseData;
+import com.threerings.presents.net.DownstreamMessage;
+import com.threerings.presents.server.net.AuthingConnection;
+import com.threerings.util.IdentUtil;
+import com.threerings.util.Name;
+
+import com.threerings.user.OOOUser;
+import com.threerings.user.OOOUserRepository;
+
+import com.threerings.bang.admin.server.RuntimeConfig;
+import com.threerings.bang.data.BangAuthCodes;
+import com.threerings.bang.data.BangCredentials;
+import com.threerings.bang.server.AuthPipeline;
+import com.threerings.bang.server.StartupOrchestrator;
+import com.threerings.bang.server.ooo.AnonymousNameSource;
+import com.threerings.bang.server.ooo.OOOAuthenticator;
+import com.threerings.bang.util.DeploymentConfig;
+
+/**
+ * A standalone load test of authentication, which logs a storm of clients on through the {@link
+ * OOOAuthenticator} (and its {@link AuthPipeline}, each of whose workers has its own user and
+ * player repositories) against an embedded (HSQLDB) database: every account attempts to log on
+ * several times in quick succession (as clients retrying a slow server do) and a number of new
+ * anonymous players log on alongside them.  The test runs with a single worker, with several and
+ * then with a short queue, reports the throughput of each run and verifies that every attempt was
+ * answered exactly once, that no account was authenticated on two workers at once, that the last
+ * attempt of each account was never superseded, that turned away attempts were told how many were
+ * ahead of them and that every anonymous player was given a distinct account name.
+ *
+ * <p> Usage: <code>AuthLoadTest [accounts [attempts [workers]]]</code>, with the server's test
+ * classpath (which includes HSQLDB).  The repositories create their own tables using MySQL syntax,
+ * so the embedded database runs in its MySQL compatibility mode.  A different database may be used
+ * by supplying the <code>test.driver</code>, <code>test.url</code>, <code>test.username</code> and
+ * <code>test.password</code> system properties.
+ */
+public class AuthLoadTest
+{
+    public static void main (String[] args)
+    {
+        int accounts = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int attempts = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int workers = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+
+        try {
+            // new anonymous players are turned away unless anonymous access is enabled
+            RuntimeConfig.server.anonymousAccessEnabled = true;
+
+            int total = accounts * (attempts + 1);
+            int[][] runs = { { 1, total }, { workers, total }, { workers, accounts / 4 } };
+            boolean passed = true;
+            for (int ii = 0; ii < runs.length; ii++) {
+                AuthLoadTest test = new AuthLoadTest(
+                    ii + 1, accounts, attempts, runs[ii][0], runs[ii][1]);
+                passed = test.run() && passed;
+            }
+            System.exit(passed ? 0 : 1);
+
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    public AuthLoadTest (int run, int accounts, int attempts, int workers, int queueLimit)
+    {
+        _run = run;
+        _accounts = accounts;
+        _attempts = attempts;
+        _workers = workers;
+        _queueLimit = queueLimit;
+        _conns = new TestConnection[accounts * (attempts + 1)];
+
+        _config.setProperty("default.driver", System.getProperty(
+            "test.driver", "org.hsqldb.jdbcDriver"));
+        _config.setProperty("default.url", System.getProperty(
+            "test.url", "jdbc:hsqldb:mem:auth" + run + ";sql.syntax_mys=true"));
+        _config.setProperty("default.username", System.getProperty("test.username", "sa"));
+        _config.setProperty("default.password", System.getProperty("test.password", ""));
+    }
+
+    /**
+     * Runs the test, reporting the results.
+     *
+     * @return true if all went as it should.
+     */
+    public boolean run ()
+        throws Exception
+    {
+        StaticConnectionProvider conprov = new StaticConnectionProvider(_config);
+        try {
+            OOOUserRepository authrep = new OOOUserRepository(conprov);
+            createAccounts(authrep);
+
+            // a single thread stands in for the distributed object thread
+            _omgr = Executors.newSingleThreadExecutor();
+            _auther = new TestAuthenticator(authrep, _omgr);
+            for (int id = 0; id < _conns.length; id++) {
+                _conns[id] = new TestConnection(id, (id < _accounts * _attempts) ?
+                                                getAccount(id % _accounts) : null);
+            }
+            _remaining = new CountDownLatch(_conns.length);
+
+            final ResultListener<AuthingConnection> onComplete =
+                new ResultListener<AuthingConnection>() {
+                public void requestCompleted (AuthingConnection conn) {
+                    _authenticated.incrementAndGet();
+                }
+                public void requestFailed (Exception cause) {
+                    // not called by the authenticator
+                }
+            };
+
+            long start = System.currentTimeMillis();
+            _omgr.execute(new Runnable() {
+                public void run () {
+                    // each account makes its attempts in a burst, interleaved with the others,
+                    // and then the new anonymous players show up
+                    for (TestConnection conn : _conns) {
+                        _auther.authenticateConnection(null, conn, onComplete);
+                    }
+                }
+            });
+            _remaining.await();
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1L);
+
+            System.out.println("Workers: " + _workers + ", queue: " + _queueLimit +
+                               ", attempts: " + _conns.length + ", processed: " +
+                               _processed.get() + ", elapsed: " + elapsed + "ms, throughput: " +
+                               (_processed.get() * 1000L / elapsed) + "/s");
+
+            _auther.shutdownPipeline();
+            _omgr.shutdown();
+            return verify();
+
+        } finally {
+            conprov.shutdown();
+        }
+    }
+
+    /**
+     * Creates the accounts that log on.
+     */
+    protected void createAccounts (OOOUserRepository authrep)
+        throws Exception
+    {
+        Date birthdate = new Date(0L);
+        for (int ii = 0; ii < _accounts; ii++) {
+            String account = getAccount(ii);
+            authrep.createUser(new Username(account), Password.makeFromClear(PASSWORD),
+                               account + "@test.com", OOOUser.BANGHOWDY_SITE_ID, 0, birthdate,
+                               (byte)-1, null);
+        }
+    }
+
+    /**
+     * Checks the outcomes of the attempts.
+     *
+     * @return true if all is well.
+     */
+    protected boolean verify ()
+    {
+        boolean passed = !_overlapped && _duplicates.get() == 0;
+        if (!passed) {
+            System.err.println("Attempts overlapped or were answered twice [duplicates=" +
+                               _duplicates.get() + "].");
+        }
+
+        int named = _accounts * _attempts, succeeded = 0, superseded = 0, turnedAway = 0;
+        Set<Name> anonymous = new HashSet<Name>();
+        for (TestConnection conn : _conns) {
+            String outcome = conn.outcome;
+            if (outcome == null) {
+                System.err.println("Attempt never answered [id=" + conn.id + "].");
+                passed = false;
+            } else if (outcome.equals(AuthResponseData.SUCCESS)) {
+                succeeded++;
+                Name name = conn.getAuthName();
+                if (conn.account == null) {
+                    anonymous.add(name);
+                } else if (name == null || !name.toString().equals(conn.account)) {
+                    System.err.println("Wrong auth name [id=" + conn.id + ", name=" + name + "].");
+                    passed = false;
+                }
+            } else if (outcome.equals(BangAuthCodes.LOGON_SUPERSEDED)) {
+                superseded++;
+                if (conn.id >= named - _accounts) {
+                    System.err.println("Last attempt superseded [id=" + conn.id + "].");
+                    passed = false;
+                }
+            } else if (outcome.startsWith(BangAuthCodes.SERVER_BUSY)) {
+                turnedAway++;
+                if (outcome.indexOf('|') == -1) {
+                    System.err.println("Turned away without a position [id=" + conn.id + "].");
+                    passed = false;
+                }
+            } else {
+                System.err.println("Attempt failed [id=" + conn.id + ", outcome=" +
+                                   outcome + "].");
+                passed = false;
+            }
+        }
+        int anonSucceeded = 0;
+        for (int id = named; id < _conns.length; id++) {
+            if (AuthResponseData.SUCCESS.equals(_conns[id].outcome)) {
+                anonSucceeded++;
+            }
+        }
+        if (anonymous.size() != anonSucceeded) {
+            System.err.println("Anonymous names collided [names=" + anonymous.size() +
+                               ", anonymous=" + anonSucceeded + "].");
+            passed = false;
+        }
+        if (_authenticated.get() != succeeded) {
+            System.err.println("Successes not reported [authenticated=" + _authenticated.get() +
+                               ", succeeded=" + succeeded + "].");
+            passed = false;
+        }
+        if (_queueLimit < _conns.length - _workers && turnedAway == 0) {
+            System.err.println("Nothing turned away by a short queue.");
+            passed = false;
+        }
+
+        System.out.println("Superseded: " + superseded + ", turned away: " + turnedAway +
+                           ", anonymous: " + anonSucceeded);
+        System.out.println("Verification " + (passed ? "passed." : "FAILED."));
+        return passed;
+    }
+
+    /**
+     * Returns the name of the specified account.
+     */
+    protected static String getAccount (int index)
+    {
+        return "account" + index;
+    }
+
+    /** Authenticates against the test database, noting attempts that overlap. */
+    protected class TestAuthenticator extends OOOAuthenticator
+    {
+        public TestAuthenticator (OOOUserRepository authrep, Executor receiver)
+        {
+            _authrep = authrep;
+            _startup = new StartupOrchestrator();
+            _startup.start();
+            _startup.seal();
+            _anonNames = new AnonymousNameSource("test" + _run);
+            _pipeline = createPipeline(receiver, _config, _workers, _queueLimit);
+        }
+
+        public void shutdownPipeline ()
+        {
+            _pipeline.shutdown();
+        }
+
+        @Override // from OOOAuthenticator
+        protected void processAuthentication (
+            AuthingConnection conn, AuthResponse rsp, AuthRepos repos)
+            throws PersistenceException
+        {
+            String account = ((TestConnection)conn).account;
+            if (account != null && _busy.putIfAbsent(account, conn) != null) {
+                _overlapped = true;
+            }
+            try {
+                super.processAuthentication(conn, rsp, repos);
+            } finally {
+                if (account != null) {
+                    _busy.remove(account);
+                }
+                _processed.incrementAndGet();
+            }
+        }
+    }
+
+    /** A client logging on as an account (or as a new anonymous player). */
+    protected class TestConnection extends AuthingConnection
+    {
+        public final int id;
+        public final String account;
+
+        /** The response code sent to the client (accessed on the "dobj" thread). */
+        public String outcome;
+
+        public TestConnection (int id, String account)
+        {
+            this.id = id;
+            this.account = account;
+
+            BangCredentials creds = (account == null) ?
+                new BangCredentials(new Name(""), null) :
+                new BangCredentials(new Name(account), Password.makeFromClear(PASSWORD));
+            // each account (and each anonymous player) has its own machine, as players sharing one
+            // may be refused, and an account's retries come from the same machine
+            String machine = (account == null) ? ("machine" + id) : account;
+            creds.ident = "C" + IdentUtil.encodeIdent(StringUtil.md5hex(machine));
+            creds.affiliate = "1";
+            _req = new AuthRequest(
+                creds, String.valueOf(DeploymentConfig.getVersion()), new String[0]);
+        }
+
+        @Override // from AuthingConnection
+        public AuthRequest getAuthRequest ()
+        {
+            return _req;
+        }
+
+        @Override // from Connection
+        public void postMessage (DownstreamMessage msg)
+        {
+            if (outcome != null) {
+                _duplicates.incrementAndGet();
+                return;
+            }
+            outcome = ((AuthResponse)msg).getData().code;
+            _remaining.countDown();
+        }
+
+        protected AuthRequest _req;
+    }
+
+    protected int _run, _accounts, _attempts, _workers, _queueLimit;
+    protected Properties _config = new Properties();
+
+    protected ExecutorService _omgr;
+    protected TestAuthenticator _auther;
+    protected CountDownLatch _remaining;
+
+    /** The clients, in the order in which they attempt to log on. */
+    protected TestConnection[] _conns;
+
+    /** The accounts being processed, used to detect overlapping attempts. */
+    protected ConcurrentHashMap<String, AuthingConnection> _busy =
+        new ConcurrentHashMap<String, AuthingConnection>();
+    protected volatile boolean _overlapped;
+
+    protected AtomicInteger _processed = new AtomicInteger(), _duplicates = new AtomicInteger(),
+        _authenticated = new AtomicInteger();
+
+    /** The password of every account. */
+    protected static final String PASSWORD = "secret";
+}
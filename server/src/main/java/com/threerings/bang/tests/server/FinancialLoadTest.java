@@ -0,0 +1,382 @@
+//
+// $Id$
+
+package com.threerings.bang.tests.server;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.jdbc.DatabaseLiaison;
+import com.samskivert.jdbc.JDBCUtil;
+import com.samskivert.jdbc.StaticConnectionProvider;
+
+import com.threerings.util.Name;
+
+import com.threerings.bang.data.CardItem;
+import com.threerings.bang.data.Item;
+import com.threerings.bang.data.PlayerObject;
+import com.threerings.bang.server.FinancialExecutor;
+import com.threerings.bang.server.persist.FinancialAction;
+import com.threerings.bang.server.persist.ItemRepository;
+import com.threerings.bang.server.persist.PlayerRecord;
+import com.threerings.bang.server.persist.PlayerRepository;
+
+/**
+ * A standalone load test of the {@link FinancialExecutor}, which makes concurrent purchases for a
+ * number of players against an embedded (HSQLDB) database, first with a single partition and then
+ * with several, reports the throughput of each and verifies that every purchase either spent its
+ * scrip and granted its item or did neither, and that each player's purchases were processed in
+ * the order in which they were posted.  Purchases spend their scrip through the {@link
+ * PlayerRepository} and insert their items through the {@link ItemRepository}, simulate the
+ * latency of a remote database, and some of them fail after inserting their items so that their
+ * transactions must be rolled back.  All of each player's purchases are posted at once (bypassing
+ * the account lock of {@link FinancialAction#checkStart}), so that they queue up behind one
+ * another on their partition.
+ *
+ * <p> Usage: <code>FinancialLoadTest [players [purchases [partitions [latency]]]]</code>, with the
+ * server's test classpath (which includes HSQLDB).  The repositories create their own tables using
+ * MySQL syntax, so the embedded database runs in its MySQL compatibility mode.  A different
+ * database may be used by supplying the <code>test.driver</code>, <code>test.url</code>,
+ * <code>test.username</code> and <code>test.password</code> system properties.
+ */
+public class FinancialLoadTest
+{
+    public static void main (String[] args)
+    {
+        int players = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int purchases = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int partitions = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+        long latency = (args.length > 3) ? Long.parseLong(args[3]) : 5L;
+
+        try {
+            boolean passed = true;
+            int run = 0;
+            for (int count : new int[] { 1, partitions }) {
+                FinancialLoadTest test =
+                    new FinancialLoadTest(++run, players, purchases, count, latency);
+                passed = test.run() && passed;
+            }
+            System.exit(passed ? 0 : 1);
+
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    public FinancialLoadTest (int run, int players, int purchases, int partitions, long latency)
+    {
+        _players = players;
+        _purchases = purchases;
+        _partitions = partitions;
+        _latency = latency;
+
+        _config.setProperty("default.driver", System.getProperty(
+            "test.driver", "org.hsqldb.jdbcDriver"));
+        _config.setProperty("default.url", System.getProperty(
+            "test.url", "jdbc:hsqldb:mem:financial" + run + ";sql.syntax_mys=true"));
+        _config.setProperty("default.username", System.getProperty("test.username", "sa"));
+        _config.setProperty("default.password", System.getProperty("test.password", ""));
+    }
+
+    /**
+     * Runs the test, reporting the results.
+     *
+     * @return true if the database was consistent at the end of the run.
+     */
+    public boolean run ()
+        throws Exception
+    {
+        StaticConnectionProvider conprov = new StaticConnectionProvider(_config);
+        try {
+            allowConcurrentTransactions(conprov);
+            _playrepo = new PlayerRepository(conprov);
+            _itemrepo = new ItemRepository(conprov);
+            createPlayers();
+
+            // a single thread stands in for the distributed object thread
+            _omgr = Executors.newSingleThreadExecutor();
+            _finexec = new FinancialExecutor(_omgr, _config, _partitions);
+            _remaining = new CountDownLatch(_players * _purchases);
+            _completed = new int[_players];
+            _failed = new int[_players];
+            _processed = new int[_players];
+            _itemIds = new int[_players][_purchases];
+
+            long start = System.currentTimeMillis();
+            _omgr.execute(new Runnable() {
+                public void run () {
+                    // each player posts all of their purchases at once, interleaved with the others
+                    for (int ii = 0; ii < _purchases; ii++) {
+                        for (int jj = 0; jj < _players; jj++) {
+                            _finexec.post(new Purchase(jj, ii, _playrepo, _itemrepo));
+                        }
+                    }
+                }
+            });
+            _remaining.await();
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1L);
+
+            int total = _players * _purchases;
+            System.out.println("Partitions: " + _partitions + ", purchases: " + total +
+                               ", elapsed: " + elapsed + "ms, throughput: " +
+                               (total * 1000L / elapsed) + "/s");
+
+            _finexec.shutdown();
+            _omgr.shutdown();
+            return verify();
+
+        } finally {
+            conprov.shutdown();
+        }
+    }
+
+    /**
+     * Allows the partitions' transactions to proceed concurrently, if the database supports it.
+     */
+    protected void allowConcurrentTransactions (StaticConnectionProvider conprov)
+        throws Exception
+    {
+        Connection conn = conprov.getConnection(PlayerRepository.PLAYER_DB_IDENT, false);
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("set database transaction control mvcc");
+        } catch (SQLException sqe) {
+            // not HSQLDB 2.x; carry on with the default locking
+        } finally {
+            JDBCUtil.close(stmt);
+            conprov.releaseConnection(PlayerRepository.PLAYER_DB_IDENT, false, conn);
+        }
+    }
+
+    /**
+     * Creates the players that make purchases, giving each their starting scrip.
+     */
+    protected void createPlayers ()
+        throws PersistenceException
+    {
+        _users = new PlayerObject[_players];
+        for (int ii = 0; ii < _players; ii++) {
+            PlayerRecord prec = new PlayerRecord("player" + ii);
+            prec.scrip = START_SCRIP;
+            _playrepo.insertPlayer(prec);
+
+            _users[ii] = new PlayerObject();
+            _users[ii].playerId = prec.playerId;
+            _users[ii].username = new Name(prec.accountName);
+            _users[ii].scrip = prec.scrip;
+        }
+    }
+
+    /**
+     * Called on the "dobj" thread when a purchase has been processed.
+     */
+    protected void purchaseProcessed (Purchase purchase, boolean completed)
+    {
+        int pidx = purchase.index;
+        if (purchase.sequence != _processed[pidx]) {
+            System.err.println("Purchase processed out of order [purchase=" + purchase +
+                               ", expected=" + _processed[pidx] + "].");
+            _outOfOrder = true;
+        }
+        _processed[pidx] = purchase.sequence + 1;
+        if (completed) {
+            _completed[pidx]++;
+            _itemIds[pidx][purchase.sequence] = purchase.item.getItemId();
+        } else {
+            _failed[pidx]++;
+        }
+        _remaining.countDown();
+    }
+
+    /**
+     * Checks that the database agrees with the outcomes reported for each player's purchases.
+     *
+     * @return true if all is well.
+     */
+    protected boolean verify ()
+        throws PersistenceException
+    {
+        boolean passed = !_outOfOrder;
+
+        int expectedFailures = 0;
+        for (int ii = 0; ii < _purchases; ii++) {
+            if (shouldFail(ii)) {
+                expectedFailures++;
+            }
+        }
+
+        for (int ii = 0; ii < _players; ii++) {
+            PlayerObject user = _users[ii];
+            int scrip = _playrepo.loadPlayer(user.username.toString()).scrip;
+            Set<Integer> owned = new HashSet<Integer>();
+            for (Item item : _itemrepo.loadItems(user.playerId)) {
+                owned.add(item.getItemId());
+            }
+
+            // the items of the completed purchases must have been inserted in the order in which
+            // the purchases were posted, and must be the only items the player owns
+            int lastId = 0;
+            for (int seq = 0; seq < _purchases; seq++) {
+                int itemId = _itemIds[ii][seq];
+                if (itemId == 0) {
+                    continue;
+                }
+                if (itemId <= lastId || !owned.contains(itemId)) {
+                    System.err.println("Item missing or inserted out of order [playerId=" +
+                                       user.playerId + ", sequence=" + seq + ", itemId=" +
+                                       itemId + ", after=" + lastId + "].");
+                    passed = false;
+                }
+                lastId = itemId;
+            }
+
+            if (owned.size() != _completed[ii] || scrip + COST * owned.size() != START_SCRIP ||
+                _failed[ii] != expectedFailures) {
+                System.err.println("Inconsistent player [playerId=" + user.playerId +
+                                   ", scrip=" + scrip + ", items=" + owned.size() +
+                                   ", completed=" + _completed[ii] + ", failed=" + _failed[ii] +
+                                   ", expectedFailures=" + expectedFailures + "].");
+                passed = false;
+            }
+        }
+        System.out.println("Verification " + (passed ? "passed." : "FAILED."));
+        return passed;
+    }
+
+    /**
+     * Determines whether the purchase with the specified sequence number should fail after
+     * inserting its item.
+     */
+    protected static boolean shouldFail (int sequence)
+    {
+        return (sequence % FAILURE_INTERVAL) == FAILURE_INTERVAL - 1;
+    }
+
+    /** Spends scrip on an item in a single transaction. */
+    protected class Purchase extends FinancialAction
+    {
+        /** The index of the purchasing player and the order in which they posted the purchase. */
+        public final int index, sequence;
+
+        /** The item purchased, which is distinct from each of the player's other purchases. */
+        public final CardItem item;
+
+        public Purchase (int index, int sequence, PlayerRepository playrepo,
+                         ItemRepository itemrepo)
+        {
+            super(_users[index], COST, 0);
+            this.index = index;
+            this.sequence = sequence;
+            item = new CardItem(_user.playerId, "test" + sequence);
+            item.addCard();
+            _playrepo = playrepo;
+            _itemrepo = itemrepo;
+        }
+
+        @Override // from FinancialAction
+        public boolean isTransactional ()
+        {
+            return true;
+        }
+
+        @Override // from FinancialAction
+        protected void returnCost ()
+        {
+            // we have no distributed object manager with which to update the player object
+        }
+
+        @Override // from FinancialAction
+        protected void spendCash (Connection conn)
+            throws SQLException, PersistenceException
+        {
+            simulateLatency();
+            super.spendCash(conn);
+        }
+
+        @Override // from FinancialAction
+        protected String transactionalAction (Connection conn, DatabaseLiaison liaison)
+            throws SQLException, PersistenceException
+        {
+            simulateLatency();
+            if (!_itemrepo.insertItem(conn, liaison, item)) {
+                return "m.duplicate_item";
+            }
+            // fail after everything has been written, so that it all must be rolled back
+            return shouldFail(sequence) ? "m.injected_failure" : null;
+        }
+
+        @Override // from FinancialAction
+        protected void actionCompleted ()
+        {
+            purchaseProcessed(this, true);
+        }
+
+        @Override // from FinancialAction
+        protected void actionFailed (String cause)
+        {
+            purchaseProcessed(this, false);
+        }
+
+        @Override // from FinancialAction
+        protected String getGoodType ()
+        {
+            return "test";
+        }
+
+        @Override // from FinancialAction
+        protected void toString (StringBuffer buf)
+        {
+            buf.append("playerId=").append(_user.playerId).append(", sequence=").append(sequence);
+        }
+
+        protected void simulateLatency ()
+        {
+            if (_latency > 0) {
+                try {
+                    Thread.sleep(_latency);
+                } catch (InterruptedException ie) {
+                    // no problem
+                }
+            }
+        }
+
+        protected ItemRepository _itemrepo;
+    }
+
+    protected int _players, _purchases, _partitions;
+    protected long _latency;
+    protected Properties _config = new Properties();
+
+    protected PlayerRepository _playrepo;
+    protected ItemRepository _itemrepo;
+    protected PlayerObject[] _users;
+
+    protected ExecutorService _omgr;
+    protected FinancialExecutor _finexec;
+    protected CountDownLatch _remaining;
+
+    /** The number of purchases completed and failed by each player, the number of each player's
+     * purchases processed so far and the ids of the items granted by each player's purchases, by
+     * sequence (all accessed on the "dobj" thread). */
+    protected int[] _completed, _failed, _processed;
+    protected int[][] _itemIds;
+    protected boolean _outOfOrder;
+
+    /** The scrip with which each player starts. */
+    protected static final int START_SCRIP = 1000000;
+
+    /** The cost of each purchase. */
+    protected static final int COST = 100;
+
+    /** Every this many purchases by a player fails. */
+    protected static final int FAILURE_INTERVAL = 5;
+}
@@ -9,6 +9,7 @@ import com.samskivert.depot.PersistenceContext;
 import com.threerings.bang.data.StatType;
 import com.threerings.bang.server.ServerConfig;
 import com.threerings.bang.server.persist.BangStatRepository;
+import com.threerings.bang.server.persist.StatAggregateRepository;
 
 /**
  * A standalone test for the stat repository dynamically assigned string code
@@ -21,7 +22,10 @@ public class StringCodeTest
         try {
             BangStatRepository statrepo = new BangStatRepository(
                 new PersistenceContext(
-                    "bangdb", new StaticConnectionProvider(ServerConfig.getJDBCConfig()), null));
+                    "bangdb", new StaticConnectionProvider(ServerConfig.getJDBCConfig()), null),
+                new StatAggregateRepository(
+                    new com.samskivert.jdbc.StaticConnectionProvider(
+                        ServerConfig.getJDBCConfig())));
 
             // this should generate a warning
             System.out.println("Looking for missing code: " +
@@ -0,0 +1,287 @@
+//
+// $Id$
+
+package com.threerings.bang.game.server.ai;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import com.threerings.presents.dobj.DObjectManager;
+
+import com.threerings.bang.data.UnitConfig;
+
+import com.threerings.bang.game.data.BangAI;
+import com.threerings.bang.game.data.BangBoard;
+import com.threerings.bang.game.data.BangObject;
+import com.threerings.bang.game.data.ModifiableDSet;
+import com.threerings.bang.game.data.piece.Piece;
+import com.threerings.bang.game.data.piece.Unit;
+import com.threerings.bang.game.server.BangManager;
+import com.threerings.bang.game.util.PointSet;
+
+/**
+ * Runs plans through the {@link AIScheduler} with both the planning and the delivery of the plans
+ * on the calling thread, checking that orders are validated against the snapshot, that logics
+ * fall back to degraded (or deferred) moves once past the deadline and that plans for ticks that
+ * have since passed are dropped by {@link BangManager#applyAIPlan}.
+ */
+public class AISchedulerUnitTest extends TestCase
+{
+    public AISchedulerUnitTest ()
+    {
+        super(AISchedulerUnitTest.class.getName());
+    }
+
+    public void runTest ()
+    {
+        checkPlan();
+        checkDeadline();
+        checkStale();
+    }
+
+    /**
+     * Checks that the orders of a plan made within the budget are validated against the snapshot
+     * as they're planned and executed on the game.
+     */
+    protected void checkPlan ()
+    {
+        BangObject bangobj = createGame();
+        TestManager bangmgr = new TestManager(bangobj);
+        AIScheduler sched = new AIScheduler(DIRECT, DIRECT, 60 * 1000);
+
+        // the first unit takes the tile, which is then no longer free for its teammate, and
+        // the other team's unit cannot move that far
+        MoveLogic first = new MoveLogic(1, ORIGIN + 1, ORIGIN),
+            second = new MoveLogic(2, ORIGIN + 1, ORIGIN),
+            far = new MoveLogic(3, ORIGIN, ORIGIN + 12);
+        first._bangobj = bangobj;
+        AIScheduler.Usage usage = new AIScheduler.Usage();
+        sched.schedule(bangmgr, bangobj, Arrays.asList(first, second, far), usage);
+
+        assertEquals(Boolean.TRUE, first.result);
+        assertEquals(Boolean.FALSE, second.result);
+        assertEquals(Boolean.FALSE, far.result);
+        // the game object seen by the distributed object thread is left alone while planning
+        assertSame(bangobj, first.game);
+        assertEquals(1, usage.plans);
+        assertEquals(0, usage.degraded);
+        assertEquals(0, usage.deferred);
+        assertEquals(1, bangmgr.orders.size());
+        assertEquals(1, bangmgr.orders.get(0).pieceId);
+        assertEquals(ORIGIN + 1, bangmgr.orders.get(0).x);
+
+        // the units were moved in the snapshot, not in the game
+        Piece unit = bangobj.pieces.get(1);
+        assertEquals(ORIGIN, unit.x);
+        assertEquals(ORIGIN, unit.y);
+    }
+
+    /**
+     * Checks that AI logics move their units in a degraded fashion, and piece logics leave them
+     * until the next tick, when the plan is past its deadline.
+     */
+    protected void checkDeadline ()
+    {
+        BangObject bangobj = createGame();
+        TestManager bangmgr = new TestManager(bangobj);
+
+        // a negative budget puts each plan past its deadline from the start
+        AIScheduler sched = new AIScheduler(DIRECT, DIRECT, -1);
+        MoveLogic far = new MoveLogic(3, ORIGIN + 8, ORIGIN + 9);
+        AIScheduler.Usage usage = new AIScheduler.Usage();
+        sched.schedule(bangmgr, bangobj, Arrays.asList(new DegradedLogic(0), far), usage);
+
+        assertEquals(1, usage.plans);
+        assertEquals(2, usage.degraded);
+        assertEquals(1, usage.deferred);
+        assertNull(far.result);
+        for (AIScheduler.Order order : bangmgr.orders) {
+            assertTrue("Order for deferred unit: " + order.pieceId, order.pieceId != 3);
+        }
+    }
+
+    /**
+     * Checks that a game sits out the ticks during which its previous plan is outstanding and that
+     * plans are dropped if they come back after their tick.
+     */
+    protected void checkStale ()
+    {
+        BangObject bangobj = createGame();
+        TestManager bangmgr = new TestManager(bangobj);
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        AIScheduler sched = new AIScheduler(new Executor() {
+            public void execute (Runnable runnable) {
+                pending.add(runnable);
+            }
+        }, DIRECT, 60 * 1000);
+
+        AIScheduler.Usage usage = new AIScheduler.Usage();
+        List<MoveLogic> logics = Arrays.asList(new MoveLogic(1, ORIGIN + 1, ORIGIN));
+        sched.schedule(bangmgr, bangobj, logics, usage);
+        sched.schedule(bangmgr, bangobj, logics, usage);
+        assertEquals(1, pending.size());
+        assertEquals(1, usage.skipped);
+
+        // the plan comes back after the next tick has started
+        bangobj.tick++;
+        pending.remove(0).run();
+        assertEquals(1, usage.plans);
+        assertEquals(0, bangmgr.orders.size());
+
+        // whereas one that comes back in time is executed
+        sched.schedule(bangmgr, bangobj, logics, usage);
+        pending.remove(0).run();
+        assertEquals(2, usage.plans);
+        assertEquals(1, bangmgr.orders.size());
+    }
+
+    /**
+     * Creates a game in play with two units on one team and one on the other.
+     */
+    protected BangObject createGame ()
+    {
+        BangObject bangobj = new BangObject();
+        bangobj.setManager(createManager());
+        bangobj.state = BangObject.IN_PLAY;
+        bangobj.roundId = 1;
+        bangobj.tick = TICK;
+        bangobj.teams = new int[] { 0, 1 };
+        bangobj.points = new int[2];
+
+        ArrayList<Piece> pieces = new ArrayList<Piece>();
+        pieces.add(new TestUnit(1, 0, ORIGIN, ORIGIN));
+        pieces.add(new TestUnit(2, 0, ORIGIN + 1, ORIGIN + 2));
+        pieces.add(new TestUnit(3, 1, ORIGIN + 8, ORIGIN + 8));
+        bangobj.pieces = new ModifiableDSet<Piece>(pieces.iterator());
+
+        bangobj.board = new BangBoard(SIZE, SIZE);
+        bangobj.board.init(bangobj.teams, bangobj.pieces.iterator());
+        return bangobj;
+    }
+
+    /**
+     * Creates a distributed object manager that does nothing, which allows the game object to
+     * report itself as active.
+     */
+    protected static DObjectManager createManager ()
+    {
+        return (DObjectManager)Proxy.newProxyInstance(
+            DObjectManager.class.getClassLoader(), new Class<?>[] { DObjectManager.class },
+            new InvocationHandler() {
+                public Object invoke (Object proxy, Method method, Object[] args) {
+                    return (method.getReturnType() == Boolean.TYPE) ? Boolean.FALSE : null;
+                }
+            });
+    }
+
+    /** Records the orders executed on the game rather than executing them. */
+    protected static class TestManager extends BangManager
+    {
+        /** The orders executed, in order. */
+        public List<AIScheduler.Order> orders = new ArrayList<AIScheduler.Order>();
+
+        public TestManager (BangObject bangobj)
+        {
+            _bangobj = bangobj;
+        }
+
+        @Override
+        public void executeOrder (Unit unit, int x, int y, int targetId, boolean recheckOrders)
+        {
+            orders.add(new AIScheduler.Order(unit.pieceId, x, y, targetId));
+        }
+    }
+
+    /** A logic that orders its unit to a fixed location. */
+    protected static class MoveLogic extends PieceLogic
+    {
+        /** The result of the order, or null if none was given. */
+        public Boolean result;
+
+        /** The game object as it stood while the order was given. */
+        public BangObject game;
+
+        public MoveLogic (int pieceId, int x, int y)
+        {
+            this.pieceId = pieceId;
+            _x = x;
+            _y = y;
+        }
+
+        @Override
+        protected void moveUnit (List<Piece> pieces, Unit unit, PointSet moves, PointSet attacks)
+        {
+            game = _bangobj;
+            result = executeOrder(unit, _x, _y, null);
+        }
+
+        /** The location to which to move. */
+        protected int _x, _y;
+    }
+
+    /** An AI player that only knows how to play once out of time. */
+    protected static class DegradedLogic extends AILogic
+    {
+        public DegradedLogic (int pidx)
+        {
+            _pidx = pidx;
+            _ai = new BangAI();
+            _ai.skill = 100;
+        }
+
+        @Override
+        public String getBigShotType ()
+        {
+            return null;
+        }
+
+        @Override
+        public String[] getUnitTypes (int count)
+        {
+            return null;
+        }
+    }
+
+    /** A ground unit that needs no configuration resources. */
+    protected static class TestUnit extends Unit
+    {
+        public TestUnit (int pieceId, int owner, int x, int y)
+        {
+            UnitConfig config = new UnitConfig();
+            config.type = "test";
+            config.mode = UnitConfig.Mode.GROUND;
+            config.make = UnitConfig.Make.HUMAN;
+            config.moveDistance = 2;
+            config.minFireDistance = config.maxFireDistance = 1;
+            init(config);
+            this.pieceId = pieceId;
+            this.owner = owner;
+            lastActed = (short)(TICK - 10);
+            position(x, y);
+        }
+    }
+
+    /** Plans and delivers plans on the calling thread. */
+    protected static final Executor DIRECT = new Executor() {
+        public void execute (Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    /** The size of the test board, which includes the border around the play area. */
+    protected static final int SIZE = 2 * BangBoard.BORDER_SIZE + 16;
+
+    /** The coordinates of the first unit. */
+    protected static final int ORIGIN = BangBoard.BORDER_SIZE + 2;
+
+    /** The tick of the test games. */
+    protected static final short TICK = 20;
+}
@@ -6,6 +6,7 @@ package com.threerings.bang.tools;
 import java.sql.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeSet;
 
 import com.samskivert.depot.StaticConnectionProvider;
@@ -20,6 +21,7 @@ import com.threerings.stats.data.StringSetStat;
 import com.threerings.bang.data.StatType;
 import com.threerings.bang.server.ServerConfig;
 import com.threerings.bang.server.persist.BangStatRepository;
+import com.threerings.bang.server.persist.StatAggregateRepository;
 
 /**
  * Dumps information on a particular statistic.
@@ -60,7 +62,19 @@ public class DumpStat
 
         BangStatRepository statrepo = new BangStatRepository(
             new PersistenceContext(
-                "bangdb", new StaticConnectionProvider(ServerConfig.getJDBCConfig()), null));
+                "bangdb", new StaticConnectionProvider(ServerConfig.getJDBCConfig()), null),
+            new StatAggregateRepository(
+                new com.samskivert.jdbc.StaticConnectionProvider(ServerConfig.getJDBCConfig())));
+
+        // these actions work from the precomputed summaries rather than the raw stats
+        if (action == Action.BACKFILL) {
+            int count = statrepo.backfillSummaries(type, BACKFILL_CHUNK, false);
+            System.out.println("Summarized " + count + " " + type + " stats.");
+            return;
+        } else if (action == Action.ROLLUP) {
+            printRollup(statrepo.loadRollup(type));
+            return;
+        }
 
         Grinder grinder = null;
         switch (action) {
@@ -80,6 +94,22 @@ public class DumpStat
         }
     }
 
+    protected static void printRollup (StatAggregateRepository.Rollup rollup)
+    {
+        if (!rollup.complete) {
+            System.out.println("(summaries are still being backfilled)");
+        }
+        System.out.println("holders " + rollup.holders + " total " + rollup.total +
+                           " average " + rollup.getAverage());
+        for (Map.Entry<String, Integer> entry : rollup.counts.entrySet()) {
+            System.out.println(entry.getKey() + " " + entry.getValue());
+        }
+        for (StatAggregateRepository.Leader leader : rollup.leaders) {
+            System.out.println(leader.playerId + " " + leader.accountName + " " +
+                               leader.handle + " " + leader.value);
+        }
+    }
+
     protected static Grinder getSummaryGrinder (StatType type)
     {
         Stat stat = type.newStat();
@@ -270,5 +300,8 @@ public class DumpStat
             new HashMap<Date,CountHashMap<String>>();
     }
 
-    protected enum Action { DUMP, DATE_COUNT, SUMMARY, DATE_SUMMARY };
+    protected enum Action { DUMP, DATE_COUNT, SUMMARY, DATE_SUMMARY, BACKFILL, ROLLUP };
+
+    /** The number of stats read at once when backfilling summaries. */
+    protected static final int BACKFILL_CHUNK = 1000;
 }
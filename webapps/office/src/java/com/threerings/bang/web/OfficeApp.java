@@ -29,6 +29,7 @@ import com.threerings.bang.server.ServerConfig;
 import com.threerings.bang.server.persist.BangStatRepository;
 import com.threerings.bang.server.persist.ItemRepository;
 import com.threerings.bang.server.persist.PlayerStatRepository;
+import com.threerings.bang.server.persist.StatAggregateRepository;
 
 import static com.threerings.bang.Log.log;
 
@@ -92,7 +93,7 @@ public class OfficeApp extends Application
 
             // create our repositories
             _playrepo = new PlayerStatRepository(_conprov);
-            _statrepo = new BangStatRepository(_perCtx);
+            _statrepo = new BangStatRepository(_perCtx, new StatAggregateRepository(_conprov));
             _itemrepo = new ItemRepository(_conprov);
 
             // initialize our repositories, run any migrations, etc.